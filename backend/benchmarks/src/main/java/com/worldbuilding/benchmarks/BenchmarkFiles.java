@@ -0,0 +1,30 @@
+package com.worldbuilding.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Directorios temporales de los benchmarks: nunca se tocan los respaldos ni los assets reales.
+ */
+final class BenchmarkFiles {
+
+    private BenchmarkFiles() {
+    }
+
+    static Path createTempDir(String prefix) throws IOException {
+        return Files.createTempDirectory("wb-bench-" + prefix);
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (root != null && Files.exists(root)) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.worldbuilding.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Datos sintéticos reproducibles para los benchmarks: cada generador parte de una semilla fija, de modo que dos
+ * ejecuciones (o dos máquinas) miden exactamente los mismos bytes. Imitan la forma de los datos reales
+ * (páginas SQLite con texto repetitivo, mapas con zonas de color, manuscritos con acentos) para que la compresión
+ * y la decodificación se comporten como en producción.
+ */
+public final class Datasets {
+
+    public static final long SEED = 0x5EED_2024L;
+
+    private static final String[] WORDS = {
+            "reino", "dragón", "montaña", "río", "ciudad", "imperio", "magia", "espada", "guerra", "alianza",
+            "bosque", "torre", "consejo", "linaje", "profecía", "frontera", "puerto", "señor", "hechicera", "ruinas",
+            "norte", "sur", "éter", "crónica", "año", "batalla", "tratado", "dinastía", "sombra", "luz"
+    };
+    private static final String[] ENTITY_TYPES = {"PERSONAJE", "LUGAR", "FACCION", "OBJETO", "EVENTO", "CRIATURA"};
+    private static final String[] FOLDER_TYPES = {"FOLDER", "TIMELINE", "DIMENSION", "CONLANG", "MAPS", "ARCHIVE"};
+    private static final int SQLITE_PAGE_SIZE = 4096;
+
+    private Datasets() {
+    }
+
+    /**
+     * Nombres de proyecto con la mezcla que llega del frontend: ASCII, acentos en NFC y NFD, mojibake
+     * (UTF-8 leído como Latin-1) y espacios sobrantes.
+     */
+    public static String[] projectNames(int count) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            String base = "Crónicas de " + capitalize(word(random)) + " " + random.nextInt(1000);
+            switch (i % 4) {
+                case 0:
+                    names[i] = Normalizer.normalize(base, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+                    break;
+                case 1:
+                    names[i] = Normalizer.normalize(base, Normalizer.Form.NFD);
+                    break;
+                case 2:
+                    names[i] = new String(base.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+                    break;
+                default:
+                    names[i] = "  " + base + " ";
+                    break;
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Bytes con estructura de base SQLite: cabecera, páginas de 4 KB con filas de texto y huecos a cero.
+     */
+    public static byte[] sqliteLike(int size, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        byte[] data = new byte[size];
+        byte[] header = "SQLite format 3\0".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(header, 0, data, 0, Math.min(header.length, size));
+
+        for (int page = 0; page * SQLITE_PAGE_SIZE < size; page++) {
+            int start = Math.max(page * SQLITE_PAGE_SIZE, header.length);
+            int end = Math.min((page + 1) * SQLITE_PAGE_SIZE, size);
+            // Las páginas se llenan entre un 40 % y un 90 %; el resto queda a cero como en una base real
+            int fill = start + (int) ((end - start) * (0.4 + random.nextDouble() * 0.5));
+            int offset = start;
+            while (offset < fill) {
+                byte[] row = (random.nextInt(100_000) + "|" + word(random) + " " + word(random) + "|"
+                        + ENTITY_TYPES[random.nextInt(ENTITY_TYPES.length)] + "|").getBytes(StandardCharsets.UTF_8);
+                int length = Math.min(row.length, fill - offset);
+                System.arraycopy(row, 0, data, offset, length);
+                offset += length;
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Mapa sintético: regiones de color liso con bordes ruidosos, que comprime como un mapa dibujado a mano.
+     */
+    public static BufferedImage mapImage(int width, int height, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int cell = 64;
+        int columns = (width + cell - 1) / cell;
+        int rows = (height + cell - 1) / cell;
+        int[] palette = new int[columns * rows];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = 0x204020 + (random.nextInt(0x80) << 16) + (random.nextInt(0x80) << 8) + random.nextInt(0x40);
+        }
+        int[] line = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int jitterX = x + random.nextInt(9) - 4;
+                int jitterY = y + random.nextInt(9) - 4;
+                int column = Math.min(columns - 1, Math.max(0, jitterX / cell));
+                int row = Math.min(rows - 1, Math.max(0, jitterY / cell));
+                line[x] = palette[row * columns + column];
+            }
+            image.setRGB(0, y, width, 1, line, 0, width);
+        }
+        return image;
+    }
+
+    public static byte[] encode(BufferedImage image, String format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            if (!ImageIO.write(image, format, out)) {
+                throw new IllegalArgumentException("ImageIO no sabe escribir " + format);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * HTML del editor con títulos, párrafos con formato, listas y tablas; sin cerrar algunas etiquetas,
+     * como llega del editor, para que jsoup tenga que repararlo.
+     */
+    public static String editorHtml(int paragraphs, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder html = new StringBuilder(paragraphs * 600);
+        html.append("<h1>").append(capitalize(sentence(random, 4))).append("</h1>");
+        for (int i = 0; i < paragraphs; i++) {
+            if (i % 10 == 0) {
+                html.append("<h2>").append(capitalize(sentence(random, 3))).append("</h2>");
+            }
+            html.append("<p>").append(capitalize(sentence(random, 20)))
+                    .append(" <strong>").append(sentence(random, 3)).append("</strong> ")
+                    .append("<em>").append(sentence(random, 4)).append("</em>. ")
+                    .append(capitalize(sentence(random, 30))).append('.');
+            if (i % 3 != 0) {
+                html.append("</p>");
+            }
+            if (i % 7 == 6) {
+                html.append("<ul>");
+                for (int item = 0; item < 4; item++) {
+                    html.append("<li>").append(capitalize(sentence(random, 6)));
+                }
+                html.append("</ul>");
+            }
+            if (i % 25 == 24) {
+                html.append("<table><tr><th>Nombre</th><th>Tipo</th><th>Año</th></tr>");
+                for (int row = 0; row < 5; row++) {
+                    html.append("<tr><td>").append(capitalize(word(random))).append("</td><td>")
+                            .append(ENTITY_TYPES[random.nextInt(ENTITY_TYPES.length)]).append("</td><td>")
+                            .append(random.nextInt(3000)).append("</td></tr>");
+                }
+                html.append("</table>");
+            }
+        }
+        return html.toString();
+    }
+
+    /**
+     * Cuerpo de POST /sync/payload con la forma de SyncRealtimePayload: proyecto, carpetas, entidades
+     * (con descripción HTML y contenido_json) y relaciones.
+     */
+    public static byte[] syncPayloadJson(int entities, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        String timestamp = "2024-05-01T12:00:00.000Z";
+        int folderCount = Math.max(1, entities / 25);
+
+        Map<String, Object> project = new LinkedHashMap<>();
+        project.put("id", 1);
+        project.put("nombre", "Crónicas de " + capitalize(word(random)));
+        project.put("descripcion", sentence(random, 12));
+        project.put("fecha_creacion", timestamp);
+        project.put("ultima_modificacion", timestamp);
+
+        List<Map<String, Object>> folders = new ArrayList<>(folderCount);
+        for (int i = 1; i <= folderCount; i++) {
+            Map<String, Object> folder = new LinkedHashMap<>();
+            folder.put("id", i);
+            folder.put("nombre", capitalize(word(random)) + " " + i);
+            folder.put("project_id", 1);
+            folder.put("padre_id", i > 1 && random.nextInt(3) == 0 ? random.nextInt(1, i) : null);
+            folder.put("tipo", FOLDER_TYPES[random.nextInt(FOLDER_TYPES.length)]);
+            folder.put("slug", "carpeta-" + i);
+            folder.put("borrado", 0);
+            folders.add(folder);
+        }
+
+        List<Map<String, Object>> entityList = new ArrayList<>(entities);
+        for (int i = 1; i <= entities; i++) {
+            Map<String, Object> entity = new LinkedHashMap<>();
+            entity.put("id", i);
+            entity.put("nombre", capitalize(word(random)) + " " + capitalize(word(random)));
+            entity.put("slug", "entidad-" + i);
+            entity.put("tipo", ENTITY_TYPES[random.nextInt(ENTITY_TYPES.length)]);
+            entity.put("descripcion", "<p>" + capitalize(sentence(random, 25)) + ".</p>");
+            entity.put("contenido_json", "{\"blocks\":[{\"type\":\"paragraph\",\"text\":\"" + sentence(random, 40) + "\"}]}");
+            entity.put("project_id", 1);
+            entity.put("carpeta_id", random.nextInt(1, folderCount + 1));
+            entity.put("folder_slug", null);
+            entity.put("imagen_url", null);
+            entity.put("fecha_creacion", timestamp);
+            entity.put("fecha_actualizacion", timestamp);
+            entity.put("borrado", random.nextInt(50) == 0 ? 1 : 0);
+            entityList.add(entity);
+        }
+
+        List<Map<String, Object>> relationships = new ArrayList<>(entities * 2);
+        for (int i = 1; i <= entities * 2; i++) {
+            Map<String, Object> relation = new LinkedHashMap<>();
+            relation.put("id", i);
+            relation.put("origen_id", random.nextInt(1, entities + 1));
+            relation.put("destino_id", random.nextInt(1, entities + 1));
+            relation.put("tipo", word(random));
+            relation.put("descripcion", random.nextBoolean() ? sentence(random, 6) : null);
+            relation.put("project_id", 1);
+            relation.put("created_at", timestamp);
+            relationships.add(relation);
+        }
+
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("schemaVersion", 1);
+        payload.put("exportedAt", timestamp);
+        payload.put("project", project);
+        payload.put("folders", folders);
+        payload.put("entities", entityList);
+        payload.put("relationships", relationships);
+        try {
+            return new ObjectMapper().writeValueAsBytes(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String word(SplittableRandom random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String sentence(SplittableRandom random, int words) {
+        StringBuilder sentence = new StringBuilder(words * 8);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(i % 9 == 8 ? ", " : " ");
+            }
+            sentence.append(word(random));
+        }
+        return sentence.toString();
+    }
+
+    private static String capitalize(String value) {
+        return value.isEmpty() ? value : Character.toUpperCase(value.charAt(0)) + value.substring(1);
+    }
+}
@@ -0,0 +1,84 @@
+package com.worldbuilding.benchmarks;
+
+import com.worldbuilding.domains.mapeditor.service.MapAssetProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Obtención de la resolución de un mapa recién subido. {@code readDimensions} es el camino actual de
+ * MapAssetProcessor (decodifica la imagen entera); {@code headerOnly} lee solo la cabecera con un ImageReader
+ * y sirve de referencia de lo que costaría no decodificar los píxeles.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xmx2g", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class MapImageProbeBenchmark {
+
+    @Param({"1024", "4096"})
+    public int edge;
+
+    @Param({"png", "jpg"})
+    public String format;
+
+    private Path root;
+    private Path image;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = BenchmarkFiles.createTempDir("image");
+        image = root.resolve("mapa." + format);
+        Files.write(image, Datasets.encode(Datasets.mapImage(edge, edge, Datasets.SEED), format));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteTree(root);
+    }
+
+    @Benchmark
+    public Dimension readDimensions() {
+        return MapAssetProcessor.readDimensions(image);
+    }
+
+    @Benchmark
+    public Dimension headerOnly() throws IOException {
+        Dimension dimensions = null;
+        try (ImageInputStream input = ImageIO.createImageInputStream(image.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(input, true, true);
+                    dimensions = new Dimension(reader.getWidth(0), reader.getHeight(0));
+                } finally {
+                    reader.dispose();
+                }
+            }
+        }
+        return dimensions;
+    }
+}
@@ -0,0 +1,60 @@
+package com.worldbuilding.benchmarks;
+
+import com.worldbuilding.core.controller.EditorExportController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exportación del editor a PDF: limpieza del HTML con jsoup y maquetación con Flying Saucer.
+ * {@code exportToPdf} llama al controlador tal cual; {@code jsoupCleanup} aísla la primera fase.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class PdfRenderBenchmark {
+
+    @Param({"10", "200"})
+    public int paragraphs;
+
+    private final EditorExportController controller = new EditorExportController();
+    private Map<String, String> payload;
+
+    @Setup
+    public void setUp() {
+        payload = new HashMap<>();
+        payload.put("html", Datasets.editorHtml(paragraphs, Datasets.SEED));
+        payload.put("title", "Manuscrito");
+    }
+
+    @Benchmark
+    public byte[] exportToPdf() {
+        byte[] pdf = controller.exportToPdf(payload).getBody();
+        if (pdf == null) {
+            throw new IllegalStateException("La exportación a PDF falló");
+        }
+        return pdf;
+    }
+
+    @Benchmark
+    public String jsoupCleanup() {
+        org.jsoup.nodes.Document doc = org.jsoup.Jsoup.parse(payload.get("html"));
+        doc.outputSettings().syntax(org.jsoup.nodes.Document.OutputSettings.Syntax.xml);
+        return doc.html();
+    }
+}
@@ -0,0 +1,195 @@
+package com.worldbuilding.benchmarks;
+
+import com.worldbuilding.core.service.ContentStore;
+import com.worldbuilding.core.service.ProjectArchiveService;
+import com.worldbuilding.core.service.ProjectCatalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Exportación e importación del ZIP de un proyecto con tres tamaños de archivo:
+ * small (1 MB de base y 2 mapas de 512 px), medium (16 MB y 8 mapas de 1024 px) y large (64 MB y 16 mapas de 2048 px).
+ * La importación reproduce el bucle de DatabaseController.processImportJob sobre el almacén por contenido,
+ * tanto en un almacén vacío como reimportando un proyecto que ya tiene todos sus trozos.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class ProjectArchiveBenchmark {
+
+    private static final String PROJECT = "bench";
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private Path root;
+    private Path dbPath;
+    private List<Path> assets;
+    private Path zipPath;
+    private ExecutorService archiveExecutor;
+    private ProjectArchiveService archiveService;
+    private ProjectCatalog reimportCatalog;
+    private ContentStore reimportStore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int dbBytes;
+        int assetCount;
+        int assetEdge;
+        switch (size) {
+            case "small":
+                dbBytes = 1 << 20;
+                assetCount = 2;
+                assetEdge = 512;
+                break;
+            case "medium":
+                dbBytes = 16 << 20;
+                assetCount = 8;
+                assetEdge = 1024;
+                break;
+            case "large":
+                dbBytes = 64 << 20;
+                assetCount = 16;
+                assetEdge = 2048;
+                break;
+            default:
+                throw new IllegalArgumentException("Tamaño desconocido: " + size);
+        }
+
+        root = BenchmarkFiles.createTempDir("archive");
+        dbPath = root.resolve(PROJECT + ".sqlite");
+        Files.write(dbPath, Datasets.sqliteLike(dbBytes, Datasets.SEED));
+        Path assetsDir = Files.createDirectories(root.resolve("maps_assets"));
+        assets = new ArrayList<>();
+        for (int i = 0; i < assetCount; i++) {
+            Path asset = assetsDir.resolve(PROJECT + "_mapa_" + i + ".png");
+            Files.write(asset, Datasets.encode(Datasets.mapImage(assetEdge, assetEdge, Datasets.SEED + i), "png"));
+            assets.add(asset);
+        }
+
+        // Mismo ejecutor que archiveTaskExecutor: un hilo por núcleo
+        archiveExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        archiveService = new ProjectArchiveService(archiveExecutor);
+        zipPath = root.resolve(PROJECT + ".zip");
+        try (OutputStream out = Files.newOutputStream(zipPath)) {
+            archiveService.writeProjectArchive(PROJECT, dbPath, assets, out);
+        }
+
+        reimportCatalog = new ProjectCatalog(root.resolve("reimport"));
+        reimportStore = new ContentStore(reimportCatalog);
+        importArchive(reimportStore, root.resolve("reimport"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        archiveExecutor.shutdownNow();
+        reimportCatalog.close();
+        BenchmarkFiles.deleteTree(root);
+    }
+
+    /**
+     * Almacén vacío para cada invocación: mide una importación en frío, con todos los trozos nuevos.
+     */
+    @State(Scope.Thread)
+    public static class FreshStore {
+        Path dir;
+        ProjectCatalog catalog;
+        ContentStore store;
+
+        @Setup(Level.Invocation)
+        public void setUp() throws IOException {
+            dir = BenchmarkFiles.createTempDir("import");
+            catalog = new ProjectCatalog(dir);
+            store = new ContentStore(catalog);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            catalog.close();
+            BenchmarkFiles.deleteTree(dir);
+        }
+    }
+
+    @Benchmark
+    public long exportZip() throws IOException {
+        return archiveService.writeProjectArchive(PROJECT, dbPath, assets, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public long importIntoEmptyStore(FreshStore fresh) throws IOException {
+        return importArchive(fresh.store, fresh.dir);
+    }
+
+    @Benchmark
+    public long reimportUnchanged() throws IOException {
+        return importArchive(reimportStore, root.resolve("reimport"));
+    }
+
+    /**
+     * Mismo recorrido que processImportJob, sin el seguimiento de progreso. Devuelve los bytes nuevos escritos.
+     */
+    private long importArchive(ContentStore store, Path targetDir) throws IOException {
+        long newBytes = 0;
+        Path assetsDir = targetDir.resolve("maps_assets");
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(Files.newInputStream(zipPath)))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                String name = entry.getName();
+                ContentStore.StoreResult stored = null;
+                if (name.endsWith(".sqlite")) {
+                    stored = store.store(ContentStore.databaseRef(PROJECT), new EntryStream(zis),
+                            targetDir.resolve(PROJECT + ".sqlite"), false);
+                } else if (name.startsWith(ProjectArchiveService.ASSETS_ENTRY_PREFIX)) {
+                    String fileName = name.substring(ProjectArchiveService.ASSETS_ENTRY_PREFIX.length());
+                    stored = store.store(ContentStore.assetRef(fileName), new EntryStream(zis), assetsDir.resolve(fileName),
+                            ProjectArchiveService.isAlreadyCompressed(fileName));
+                }
+                if (stored != null) {
+                    newBytes += stored.newBytes;
+                }
+                zis.closeEntry();
+            }
+        }
+        return newBytes;
+    }
+
+    private static final class EntryStream extends FilterInputStream {
+        EntryStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // El ZipInputStream lo cierra el llamante.
+        }
+    }
+}
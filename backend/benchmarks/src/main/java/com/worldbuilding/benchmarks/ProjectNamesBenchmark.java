@@ -0,0 +1,55 @@
+package com.worldbuilding.benchmarks;
+
+import com.worldbuilding.core.service.ProjectNames;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Canonicalización de nombres de proyecto, que se ejecuta en casi todas las peticiones de /db y en cada
+ * búsqueda del catálogo. Cada operación recorre el mismo lote de nombres (ASCII, NFD, mojibake, espacios).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ProjectNamesBenchmark {
+
+    private static final int NAMES = 64;
+
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        names = Datasets.projectNames(NAMES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NAMES)
+    public void sanitizeProjectName(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(ProjectNames.sanitizeProjectName(name));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NAMES)
+    public void foldProjectLookupKey(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(ProjectNames.foldProjectLookupKey(name));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.worldbuilding.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.worldbuilding.core.service.SyncPayloadArchiver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Archivado de POST /sync/payload: el camino antiguo enlazaba el cuerpo JSON a un Map (@RequestBody) y lo volvía
+ * a serializar con sangría; el actual copia los tokens al archivo con SyncPayloadArchiver. Con -prof gc se ve
+ * la memoria por petición de cada uno.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class SyncPayloadBenchmark {
+
+    private static final TypeReference<Map<String, Object>> PAYLOAD_TYPE = new TypeReference<>() {
+    };
+
+    @Param({"1000", "20000"})
+    public int entities;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectWriter indentedWriter = mapper.writer().with(SerializationFeature.INDENT_OUTPUT);
+    private final SyncPayloadArchiver archiver = new SyncPayloadArchiver();
+    private byte[] body;
+    private Path root;
+
+    @Setup
+    public void setUp() throws IOException {
+        body = Datasets.syncPayloadJson(entities, Datasets.SEED);
+        root = BenchmarkFiles.createTempDir("sync");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteTree(root);
+    }
+
+    @Benchmark
+    public Map<String, Object> bindToMap() throws IOException {
+        return mapper.readValue(body, PAYLOAD_TYPE);
+    }
+
+    @Benchmark
+    public void bindAndWriteIndented() throws IOException {
+        Map<String, Object> payload = mapper.readValue(body, PAYLOAD_TYPE);
+        indentedWriter.writeValue(OutputStream.nullOutputStream(), payload);
+    }
+
+    @Benchmark
+    public SyncPayloadArchiver.ArchiveResult streamToArchive() throws IOException, SyncPayloadArchiver.InvalidPayloadException {
+        return archiver.archive(new ByteArrayInputStream(body), root.resolve("bench.sync.json"));
+    }
+}
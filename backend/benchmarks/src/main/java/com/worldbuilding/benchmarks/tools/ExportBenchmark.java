@@ -0,0 +1,252 @@
+package com.worldbuilding.benchmarks.tools;
+
+import com.worldbuilding.benchmarks.Datasets;
+import com.worldbuilding.core.service.ProjectArchiveService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compara la exportación ZIP de un proyecto grande (1 GB por defecto) por el camino anterior, que construía el ZIP
+ * en un archivo temporal y luego lo servía, y por el actual, que comprime directamente sobre la respuesta
+ * (ProjectArchiveService). Por ronda mide el tiempo hasta el primer byte que recibiría el cliente, el tiempo total
+ * y el pico de disco ocupado durante la exportación (espacio libre del sistema de archivos de trabajo muestreado
+ * cada 20 ms, así que conviene lanzarlo sin otras escrituras en marcha). El cliente es un flujo que descarta los
+ * bytes: se mide el servidor, no la red.
+ *
+ * <pre>
+ * java -Xmx1g -cp backend/benchmarks/target/benchmarks.jar com.worldbuilding.benchmarks.tools.ExportBenchmark
+ *     --size-mb 1024 --assets 16 --rounds 3 --dir /tmp/export-bench
+ * </pre>
+ */
+public final class ExportBenchmark {
+
+    private static final String PROJECT = "bench";
+    private static final int DB_PIECE_BYTES = 64 << 20;
+    private static final int ASSET_EDGE = 2048;
+    private static final long DISK_SAMPLE_MS = 20;
+
+    private ExportBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = 1024;
+        int assetCount = 16;
+        int rounds = 3;
+        Path dir = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--size-mb":
+                    sizeMb = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--assets":
+                    assetCount = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--dir":
+                    dir = Path.of(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento desconocido: " + args[i]);
+            }
+        }
+
+        Path root = dir != null ? Files.createDirectories(dir) : Files.createTempDirectory("export-bench");
+        ExecutorService archiveExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            Path dbPath = root.resolve(PROJECT + ".sqlite");
+            List<Path> assets = createProject(root, dbPath, (long) sizeMb << 20, assetCount);
+            long projectBytes = Files.size(dbPath);
+            for (Path asset : assets) {
+                projectBytes += Files.size(asset);
+            }
+            System.out.println("Export of " + (projectBytes >> 20) + " MB (" + assets.size() + " map assets), "
+                    + rounds + " rounds, working dir " + root);
+
+            // Mismo ejecutor que archiveTaskExecutor: un hilo por núcleo
+            ProjectArchiveService archiveService = new ProjectArchiveService(archiveExecutor);
+            FileStore store = Files.getFileStore(root);
+            Result tempFile = new Result("temp file");
+            Result streaming = new Result("streaming");
+            for (int round = 0; round < rounds; round++) {
+                // Se alternan los caminos para repartir la caché de páginas y el ruido de fondo entre ambos
+                tempFile.add(measure(store, sink -> exportThroughTempFile(root, dbPath, assets, sink)));
+                streaming.add(measure(store, sink -> archiveService.writeProjectArchive(PROJECT, dbPath, assets, sink)));
+            }
+            tempFile.print();
+            streaming.print();
+        } finally {
+            archiveExecutor.shutdownNow();
+            if (dir == null) {
+                deleteTree(root);
+            }
+        }
+    }
+
+    /**
+     * Base con estructura SQLite en trozos de 64 MB (sin tenerla entera en memoria) y mapas PNG del proyecto.
+     */
+    private static List<Path> createProject(Path root, Path dbPath, long dbBytes, int assetCount) throws IOException {
+        try (OutputStream out = Files.newOutputStream(dbPath)) {
+            long written = 0;
+            for (int piece = 0; written < dbBytes; piece++) {
+                int length = (int) Math.min(DB_PIECE_BYTES, dbBytes - written);
+                out.write(Datasets.sqliteLike(length, Datasets.SEED + piece));
+                written += length;
+            }
+        }
+        Path assetsDir = Files.createDirectories(root.resolve(ProjectArchiveService.ASSETS_DIR));
+        List<Path> assets = new ArrayList<>();
+        for (int i = 0; i < assetCount; i++) {
+            Path asset = assetsDir.resolve(PROJECT + "_mapa_" + i + ".png");
+            Files.write(asset, Datasets.encode(Datasets.mapImage(ASSET_EDGE, ASSET_EDGE, Datasets.SEED + i), "png"));
+            assets.add(asset);
+        }
+        return assets;
+    }
+
+    /**
+     * Camino anterior de exportProjectZip: ZIP completo en un temporal (DEFLATE en un solo hilo, también para los
+     * PNG) y después la copia del temporal a la respuesta. El original nunca borraba el temporal; aquí se borra
+     * al terminar la ronda para que las rondas no se acumulen.
+     */
+    private static long exportThroughTempFile(Path root, Path dbPath, List<Path> assets, OutputStream sink) throws IOException {
+        Path zipPath = Files.createTempFile(root, PROJECT + "_backup_", ".zip");
+        try {
+            try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipPath))) {
+                zos.putNextEntry(new ZipEntry(PROJECT + ".sqlite"));
+                Files.copy(dbPath, zos);
+                zos.closeEntry();
+                for (Path asset : assets) {
+                    zos.putNextEntry(new ZipEntry(ProjectArchiveService.ASSETS_ENTRY_PREFIX + asset.getFileName()));
+                    Files.copy(asset, zos);
+                    zos.closeEntry();
+                }
+            }
+            return Files.copy(zipPath, sink);
+        } finally {
+            Files.deleteIfExists(zipPath);
+        }
+    }
+
+    private static Round measure(FileStore store, Export export) throws Exception {
+        long baseline = store.getUsableSpace();
+        AtomicLong peakDisk = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread sampler = new Thread(() -> {
+            while (running.get()) {
+                try {
+                    peakDisk.accumulateAndGet(baseline - store.getUsableSpace(), Math::max);
+                    Thread.sleep(DISK_SAMPLE_MS);
+                } catch (IOException | InterruptedException e) {
+                    return;
+                }
+            }
+        }, "export-bench-disk");
+        sampler.setDaemon(true);
+
+        FirstByteSink sink = new FirstByteSink();
+        Round round = new Round();
+        sampler.start();
+        long start = System.nanoTime();
+        try {
+            export.run(sink);
+            round.totalNanos = System.nanoTime() - start;
+        } finally {
+            running.set(false);
+            sampler.join();
+        }
+        round.firstByteNanos = sink.firstByteAt - start;
+        round.bytes = sink.bytes;
+        round.peakDiskBytes = Math.max(0, peakDisk.get());
+        return round;
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private interface Export {
+        long run(OutputStream sink) throws IOException;
+    }
+
+    /**
+     * Cliente que descarta lo recibido y anota cuándo llegó el primer byte.
+     */
+    private static final class FirstByteSink extends OutputStream {
+        long firstByteAt;
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            if (bytes == 0 && length > 0) {
+                firstByteAt = System.nanoTime();
+            }
+            bytes += length;
+        }
+    }
+
+    private static final class Round {
+        long firstByteNanos;
+        long totalNanos;
+        long bytes;
+        long peakDiskBytes;
+    }
+
+    /**
+     * Agregado de todas las rondas de un camino.
+     */
+    private static final class Result {
+        final String label;
+        final List<Round> rounds = new ArrayList<>();
+
+        Result(String label) {
+            this.label = label;
+        }
+
+        void add(Round round) {
+            rounds.add(round);
+        }
+
+        void print() {
+            System.out.println(String.format(Locale.ROOT,
+                    "%-10s first byte p50 %9.1f ms | total p50 %9.1f ms | peak disk %7.1f MB | %d bytes/export",
+                    label, median(rounds.stream().mapToLong(round -> round.firstByteNanos).toArray()) / 1_000_000.0,
+                    median(rounds.stream().mapToLong(round -> round.totalNanos).toArray()) / 1_000_000.0,
+                    rounds.stream().mapToLong(round -> round.peakDiskBytes).max().orElse(0) / (1024.0 * 1024.0),
+                    rounds.isEmpty() ? 0 : rounds.get(rounds.size() - 1).bytes));
+        }
+
+        private static long median(long[] values) {
+            long[] sorted = values.clone();
+            Arrays.sort(sorted);
+            return sorted.length == 0 ? 0 : sorted[(sorted.length - 1) / 2];
+        }
+    }
+}
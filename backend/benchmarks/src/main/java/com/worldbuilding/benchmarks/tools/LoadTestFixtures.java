@@ -0,0 +1,342 @@
+package com.worldbuilding.benchmarks.tools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Datos del arnés de carga, generados una vez por ejecución a partir de una semilla: respaldos SQLite reales
+ * (con las tablas que lee el índice de búsqueda) y variantes con pocas filas cambiadas, el ZIP de importación,
+ * un mapa PNG, HTML del editor y un payload de sincronización. Los cuerpos multipart se construyen aquí
+ * para que el generador de carga no compita con el servidor por CPU ni memoria durante la medición.
+ */
+final class LoadTestFixtures {
+
+    static final int BACKUP_VARIANTS = 4;
+    static final int MAP_NAMES = 4;
+
+    private static final String[] WORDS = {
+            "reino", "dragón", "montaña", "río", "ciudad", "imperio", "magia", "espada", "guerra", "alianza",
+            "bosque", "torre", "consejo", "linaje", "profecía", "frontera", "puerto", "señor", "hechicera", "ruinas"
+    };
+    private static final String[] ENTITY_TYPES = {"PERSONAJE", "LUGAR", "FACCION", "OBJETO", "EVENTO", "CRIATURA"};
+    private static final String TIMESTAMP = "2024-05-01T12:00:00.000Z";
+
+    final List<Multipart> backupBodies = new ArrayList<>();
+    final Multipart importBody;
+    final List<Multipart> mapBodies = new ArrayList<>();
+    final int mapBytes;
+    final byte[] pdfRequest;
+    final byte[] syncPayload;
+
+    LoadTestFixtures(Path dir, int entities, int mapEdge, long seed) throws IOException {
+        Files.createDirectories(dir);
+        SplittableRandom random = new SplittableRandom(seed);
+
+        Path base = dir.resolve("base.sqlite");
+        Files.deleteIfExists(base);
+        createDatabase(base, entities, random);
+        byte[] baseBytes = Files.readAllBytes(base);
+        for (int variant = 0; variant < BACKUP_VARIANTS; variant++) {
+            // Cada variante es el respaldo tras una sesión de edición: unas pocas entidades modificadas
+            Path copy = dir.resolve("variant-" + variant + ".sqlite");
+            Files.copy(base, copy, StandardCopyOption.REPLACE_EXISTING);
+            editDatabase(copy, entities, random);
+            backupBodies.add(new Multipart(seed + variant).file("file", "backup.sqlite", "application/octet-stream",
+                    Files.readAllBytes(copy)));
+        }
+
+        byte[] map = encodePng(mapImage(mapEdge, mapEdge, random));
+        mapBytes = map.length;
+        for (int i = 0; i < MAP_NAMES; i++) {
+            mapBodies.add(new Multipart(seed + i).field("name", mapName(i)).file("file", "mapa.png", "image/png", map));
+        }
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            out.putNextEntry(new ZipEntry("proyecto.sqlite"));
+            out.write(baseBytes);
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("assets/proyecto_mapa.png"));
+            out.write(map);
+            out.closeEntry();
+        }
+        importBody = new Multipart(seed).file("file", "proyecto.zip", "application/zip", zip.toByteArray());
+
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, String> pdf = new LinkedHashMap<>();
+        pdf.put("title", "Manuscrito");
+        pdf.put("html", editorHtml(60, random));
+        pdfRequest = mapper.writeValueAsBytes(pdf);
+        syncPayload = mapper.writeValueAsBytes(syncPayload(entities, random));
+    }
+
+    /**
+     * Nombre del mapa {@code i} y el archivo que le asigna MapAssetProcessor ("mapa-0" → "mapa_0.png").
+     */
+    static String mapName(int i) {
+        return "mapa-" + i;
+    }
+
+    static String mapFileName(int i) {
+        return "mapa_" + i + ".png";
+    }
+
+    private static void createDatabase(Path file, int entities, SplittableRandom random) throws IOException {
+        int folders = Math.max(1, entities / 25);
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.toAbsolutePath())) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE carpetas (id INTEGER PRIMARY KEY, nombre TEXT, project_id INTEGER, "
+                        + "padre_id INTEGER, tipo TEXT, slug TEXT, borrado INTEGER DEFAULT 0)");
+                statement.execute("CREATE TABLE entidades (id INTEGER PRIMARY KEY, nombre TEXT, slug TEXT, tipo TEXT, "
+                        + "descripcion TEXT, contenido_json TEXT, project_id INTEGER, carpeta_id INTEGER, "
+                        + "fecha_creacion TEXT, fecha_actualizacion TEXT, borrado INTEGER DEFAULT 0)");
+                statement.execute("CREATE TABLE valores (id INTEGER PRIMARY KEY, entidad_id INTEGER, valor TEXT)");
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO carpetas (id, nombre, project_id, tipo, slug) VALUES (?, ?, 1, 'FOLDER', ?)")) {
+                for (int id = 1; id <= folders; id++) {
+                    insert.setInt(1, id);
+                    insert.setString(2, capitalize(word(random)) + " " + id);
+                    insert.setString(3, "carpeta-" + id);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO entidades (id, nombre, slug, tipo, "
+                    + "descripcion, contenido_json, project_id, carpeta_id, fecha_creacion, fecha_actualizacion) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, 1, ?, ?, ?)");
+                 PreparedStatement value = connection.prepareStatement("INSERT INTO valores (entidad_id, valor) VALUES (?, ?)")) {
+                for (int id = 1; id <= entities; id++) {
+                    insert.setInt(1, id);
+                    insert.setString(2, capitalize(word(random)) + " " + capitalize(word(random)));
+                    insert.setString(3, "entidad-" + id);
+                    insert.setString(4, ENTITY_TYPES[random.nextInt(ENTITY_TYPES.length)]);
+                    insert.setString(5, "<p>" + capitalize(sentence(random, 25)) + ".</p>");
+                    insert.setString(6, "{\"blocks\":[{\"type\":\"paragraph\",\"text\":\"" + sentence(random, 40) + "\"}]}");
+                    insert.setInt(7, random.nextInt(1, folders + 1));
+                    insert.setString(8, TIMESTAMP);
+                    insert.setString(9, TIMESTAMP);
+                    insert.addBatch();
+                    value.setInt(1, id);
+                    value.setString(2, sentence(random, 5));
+                    value.addBatch();
+                }
+                insert.executeBatch();
+                value.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IOException("No se pudo crear la base de prueba: " + e.getMessage(), e);
+        }
+    }
+
+    private static void editDatabase(Path file, int entities, SplittableRandom random) throws IOException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.toAbsolutePath());
+             PreparedStatement update = connection.prepareStatement(
+                     "UPDATE entidades SET descripcion = ?, fecha_actualizacion = ? WHERE id = ?")) {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < Math.max(1, entities / 100); i++) {
+                update.setString(1, "<p>" + capitalize(sentence(random, 30)) + ".</p>");
+                update.setString(2, "2024-05-02T09:" + (10 + random.nextInt(50)) + ":00.000Z");
+                update.setInt(3, random.nextInt(1, entities + 1));
+                update.addBatch();
+            }
+            update.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IOException("No se pudo modificar la base de prueba: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Mapa con regiones de color liso y bordes ruidosos: comprime en PNG como un mapa dibujado a mano.
+     */
+    private static BufferedImage mapImage(int width, int height, SplittableRandom random) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int cell = 64;
+        int columns = (width + cell - 1) / cell;
+        int rows = (height + cell - 1) / cell;
+        int[] palette = new int[columns * rows];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = 0x204020 + (random.nextInt(0x80) << 16) + (random.nextInt(0x80) << 8) + random.nextInt(0x40);
+        }
+        int[] line = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int column = Math.min(columns - 1, Math.max(0, (x + random.nextInt(9) - 4) / cell));
+                int row = Math.min(rows - 1, Math.max(0, (y + random.nextInt(9) - 4) / cell));
+                line[x] = palette[row * columns + column];
+            }
+            image.setRGB(0, y, width, 1, line, 0, width);
+        }
+        return image;
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static String editorHtml(int paragraphs, SplittableRandom random) {
+        StringBuilder html = new StringBuilder(paragraphs * 600);
+        html.append("<h1>").append(capitalize(sentence(random, 4))).append("</h1>");
+        for (int i = 0; i < paragraphs; i++) {
+            if (i % 10 == 0) {
+                html.append("<h2>").append(capitalize(sentence(random, 3))).append("</h2>");
+            }
+            html.append("<p>").append(capitalize(sentence(random, 20)))
+                    .append(" <strong>").append(sentence(random, 3)).append("</strong> ")
+                    .append(capitalize(sentence(random, 30))).append(".</p>");
+            if (i % 7 == 6) {
+                html.append("<ul>");
+                for (int item = 0; item < 4; item++) {
+                    html.append("<li>").append(capitalize(sentence(random, 6))).append("</li>");
+                }
+                html.append("</ul>");
+            }
+        }
+        return html.toString();
+    }
+
+    private static Map<String, Object> syncPayload(int entities, SplittableRandom random) {
+        int folderCount = Math.max(1, entities / 25);
+        List<Map<String, Object>> folders = new ArrayList<>(folderCount);
+        for (int id = 1; id <= folderCount; id++) {
+            Map<String, Object> folder = new LinkedHashMap<>();
+            folder.put("id", id);
+            folder.put("nombre", capitalize(word(random)) + " " + id);
+            folder.put("project_id", 1);
+            folder.put("padre_id", null);
+            folder.put("tipo", "FOLDER");
+            folder.put("slug", "carpeta-" + id);
+            folder.put("borrado", 0);
+            folders.add(folder);
+        }
+        List<Map<String, Object>> entityList = new ArrayList<>(entities);
+        for (int id = 1; id <= entities; id++) {
+            Map<String, Object> entity = new LinkedHashMap<>();
+            entity.put("id", id);
+            entity.put("nombre", capitalize(word(random)) + " " + capitalize(word(random)));
+            entity.put("slug", "entidad-" + id);
+            entity.put("tipo", ENTITY_TYPES[random.nextInt(ENTITY_TYPES.length)]);
+            entity.put("descripcion", "<p>" + capitalize(sentence(random, 25)) + ".</p>");
+            entity.put("contenido_json", "{\"blocks\":[{\"type\":\"paragraph\",\"text\":\"" + sentence(random, 40) + "\"}]}");
+            entity.put("project_id", 1);
+            entity.put("carpeta_id", random.nextInt(1, folderCount + 1));
+            entity.put("fecha_creacion", TIMESTAMP);
+            entity.put("fecha_actualizacion", TIMESTAMP);
+            entity.put("borrado", 0);
+            entityList.add(entity);
+        }
+        List<Map<String, Object>> relationships = new ArrayList<>(entities);
+        for (int id = 1; id <= entities; id++) {
+            Map<String, Object> relation = new LinkedHashMap<>();
+            relation.put("id", id);
+            relation.put("origen_id", random.nextInt(1, entities + 1));
+            relation.put("destino_id", random.nextInt(1, entities + 1));
+            relation.put("tipo", word(random));
+            relation.put("descripcion", null);
+            relation.put("project_id", 1);
+            relation.put("created_at", TIMESTAMP);
+            relationships.add(relation);
+        }
+
+        Map<String, Object> project = new LinkedHashMap<>();
+        project.put("id", 1);
+        project.put("nombre", "Proyecto de carga");
+        project.put("fecha_creacion", TIMESTAMP);
+        project.put("ultima_modificacion", TIMESTAMP);
+
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("schemaVersion", 1);
+        payload.put("exportedAt", TIMESTAMP);
+        payload.put("project", project);
+        payload.put("folders", folders);
+        payload.put("entities", entityList);
+        payload.put("relationships", relationships);
+        return payload;
+    }
+
+    private static String word(SplittableRandom random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String sentence(SplittableRandom random, int words) {
+        StringBuilder sentence = new StringBuilder(words * 8);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(word(random));
+        }
+        return sentence.toString();
+    }
+
+    private static String capitalize(String value) {
+        return Character.toUpperCase(value.charAt(0)) + value.substring(1);
+    }
+
+    /**
+     * Cuerpo multipart/form-data ya serializado.
+     */
+    static final class Multipart {
+        private final String boundary;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private byte[] bytes;
+
+        Multipart(long seed) {
+            this.boundary = "----worldbuilding-load-" + Long.toHexString(seed);
+        }
+
+        Multipart field(String name, String value) {
+            write("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value + "\r\n");
+            return this;
+        }
+
+        Multipart file(String name, String fileName, String contentType, byte[] content) {
+            write("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name + "\"; filename=\"" + fileName
+                    + "\"\r\nContent-Type: " + contentType + "\r\n\r\n");
+            body.writeBytes(content);
+            write("\r\n");
+            return this;
+        }
+
+        byte[] bytes() {
+            if (bytes == null) {
+                write("--" + boundary + "--\r\n");
+                bytes = body.toByteArray();
+            }
+            return bytes;
+        }
+
+        String contentType() {
+            return "multipart/form-data; boundary=" + boundary;
+        }
+
+        private void write(String text) {
+            body.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
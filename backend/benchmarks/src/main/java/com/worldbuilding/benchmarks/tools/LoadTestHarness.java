@@ -0,0 +1,520 @@
+package com.worldbuilding.benchmarks.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.worldbuilding.core.AuxServerApplication;
+import com.worldbuilding.core.service.LatencyHistogram;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Arnés de carga de extremo a extremo: arranca el servidor completo (AuxServerApplication.createServer) en esta misma
+ * JVM sobre un puerto libre y lo somete a mezclas de tráfico realistas con N clientes en bucle cerrado:
+ * respaldos concurrentes, importaciones asíncronas con sondeo de estado, subidas de mapas y lecturas por rangos
+ * de la imagen (teselas), exportaciones a PDF y payloads de sincronización.
+ * Por escenario informa de rendimiento, latencia p50/p99/p999 por operación y heap/GC/asignación, y con --csv
+ * añade una línea por operación para comparar ejecuciones (p. ej. -Dworldbuilding.threads=virtual frente a platform).
+ *
+ * <p>El servidor usa rutas relativas (backup/, maps_assets/...), así que hay que lanzarlo desde un directorio
+ * de trabajo vacío; el arnés se niega a arrancar junto a datos reales. El heap y el GC medidos incluyen también
+ * al generador de carga, que comparte JVM; los cuerpos se preconstruyen para que su parte sea pequeña.</p>
+ *
+ * <pre>
+ * mkdir -p target/loadtest && cd target/loadtest
+ * java -Xmx2g -cp ../../benchmarks/target/benchmarks.jar com.worldbuilding.benchmarks.tools.LoadTestHarness
+ *     --scenario all --duration 60 --warmup 10 --concurrency 16 --label baseline --csv ../loadtest-history.csv
+ * </pre>
+ */
+public final class LoadTestHarness {
+
+    private static final String MARKER_FILE = ".worldbuilding-loadtest";
+    private static final List<String> DATA_DIRS = List.of("backup", "maps_assets", "exports", "compiled_fonts");
+    private static final String MAP_PROJECT = "load-maps";
+    private static final int TILE_BYTES = 64 * 1024;
+    private static final long POLL_INTERVAL_MS = 50;
+    private static final long IMPORT_TIMEOUT_MS = 120_000;
+    private static final int STATUS_IO_ERROR = -1;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    // Mezcla de producción: la mayoría del tráfico son lecturas de mapas y sincronizaciones, con respaldos
+    // periódicos y exportaciones e importaciones ocasionales
+    private static final Map<String, Map<String, Integer>> SCENARIOS = new LinkedHashMap<>();
+
+    static {
+        SCENARIOS.put("backups", Map.of("backup-upload", 1));
+        SCENARIOS.put("imports", Map.of("import-async", 1));
+        SCENARIOS.put("maps", Map.of("map-upload", 1, "tile-fetch", 19));
+        SCENARIOS.put("pdf", Map.of("pdf-export", 1));
+        SCENARIOS.put("sync", Map.of("sync-payload", 1));
+        SCENARIOS.put("mixed", Map.of("backup-upload", 10, "import-async", 2, "map-upload", 3, "tile-fetch", 45,
+                "pdf-export", 10, "sync-payload", 30));
+    }
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final LoadTestFixtures fixtures;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ConcurrentMap<String, String> mapEtags = new ConcurrentHashMap<>();
+
+    private LoadTestHarness(HttpClient client, String baseUrl, LoadTestFixtures fixtures) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.fixtures = fixtures;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int durationSeconds = 30;
+        int warmupSeconds = 5;
+        int concurrency = 16;
+        int entities = 2000;
+        int mapEdge = 2048;
+        long seed = 42;
+        String label = "default";
+        String scenario = "all";
+        Path csv = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--duration":
+                    durationSeconds = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--warmup":
+                    warmupSeconds = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--entities":
+                    entities = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--map-size":
+                    mapEdge = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                case "--label":
+                    label = args[i + 1];
+                    break;
+                case "--scenario":
+                    scenario = args[i + 1];
+                    break;
+                case "--csv":
+                    csv = Path.of(args[i + 1]).toAbsolutePath();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento desconocido: " + args[i]);
+            }
+        }
+        List<String> scenarios = "all".equals(scenario) ? new ArrayList<>(SCENARIOS.keySet()) : List.of(scenario.split(","));
+        for (String name : scenarios) {
+            if (!SCENARIOS.containsKey(name)) {
+                throw new IllegalArgumentException("Escenario desconocido: " + name + " (disponibles: " + SCENARIOS.keySet() + ", all)");
+            }
+        }
+        checkScratchDirectory();
+
+        System.out.println("Generating fixtures (" + entities + " entities, " + mapEdge + " px map, seed " + seed + ")...");
+        LoadTestFixtures fixtures = new LoadTestFixtures(Path.of(".loadtest-fixtures"), entities, mapEdge, seed);
+
+        Server server = AuxServerApplication.createServer(0);
+        server.start();
+        int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        String threads = System.getProperty("worldbuilding.threads", "platform");
+        System.out.println("Server listening on port " + port + " (threads: " + threads + ")");
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newCachedThreadPool())
+                .build();
+        LoadTestHarness harness = new LoadTestHarness(client, "http://localhost:" + port, fixtures);
+        try {
+            harness.seedMaps();
+            for (String name : scenarios) {
+                ScenarioResult result = harness.runScenario(name, concurrency, warmupSeconds, durationSeconds, seed);
+                result.print(System.out);
+                if (csv != null) {
+                    result.appendCsv(csv, label, threads);
+                }
+                // Que las importaciones e indexaciones en cola del escenario anterior no contaminen el siguiente
+                Thread.sleep(2_000);
+                System.gc();
+            }
+        } finally {
+            server.stop();
+        }
+        // Los ejecutores del cliente HTTP no son demonio: terminar explícitamente
+        System.exit(0);
+    }
+
+    /**
+     * El servidor escribe en rutas relativas al directorio actual: solo se permite uno vacío o uno ya usado por el arnés.
+     */
+    private static void checkScratchDirectory() throws IOException {
+        Path marker = Path.of(MARKER_FILE);
+        if (!Files.exists(marker)) {
+            for (String dir : DATA_DIRS) {
+                if (Files.exists(Path.of(dir))) {
+                    throw new IllegalStateException("El directorio actual contiene " + dir + "/: ejecuta el arnés desde un "
+                            + "directorio de trabajo vacío para no tocar datos reales.");
+                }
+            }
+            Files.writeString(marker, "Directorio de trabajo del arnés de carga; se puede borrar entero.\n");
+        }
+    }
+
+    /**
+     * Sube los mapas que leerán las operaciones tile-fetch.
+     */
+    private void seedMaps() throws IOException, InterruptedException {
+        for (int i = 0; i < LoadTestFixtures.MAP_NAMES; i++) {
+            int status = post("/api/mapeditor/assets/" + MAP_PROJECT + "/upload", fixtures.mapBodies.get(i));
+            if (status != 200) {
+                throw new IOException("No se pudo subir el mapa inicial " + i + ": HTTP " + status);
+            }
+        }
+    }
+
+    private ScenarioResult runScenario(String name, int concurrency, int warmupSeconds, int durationSeconds, long seed)
+            throws InterruptedException {
+        Map<String, Integer> weights = SCENARIOS.get(name);
+        List<String> operations = new ArrayList<>();
+        for (Map.Entry<String, Integer> weight : new TreeMap<>(weights).entrySet()) {
+            for (int i = 0; i < weight.getValue(); i++) {
+                operations.add(weight.getKey());
+            }
+        }
+
+        ScenarioResult result = new ScenarioResult(name, concurrency, durationSeconds);
+        long measureStart = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long measureEnd = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+        System.out.println("Scenario " + name + ": " + warmupSeconds + " s warmup, " + durationSeconds + " s measured, "
+                + concurrency + " clients");
+
+        List<Thread> workers = new ArrayList<>();
+        for (int id = 0; id < concurrency; id++) {
+            int workerId = id;
+            SplittableRandom random = new SplittableRandom(seed * 31 + id);
+            Thread worker = new Thread(() -> {
+                long now;
+                while ((now = System.nanoTime()) < measureEnd) {
+                    String operation = operations.get(random.nextInt(operations.size()));
+                    int status = execute(operation, workerId, random, result, now >= measureStart);
+                    if (now >= measureStart) {
+                        result.record(operation, status, System.nanoTime() - now);
+                    }
+                }
+            }, "load-client-" + id);
+            workers.add(worker);
+        }
+
+        JvmSampler sampler = new JvmSampler();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.schedule(sampler::begin, Math.max(0, measureStart - System.nanoTime()), TimeUnit.NANOSECONDS);
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        scheduler.shutdownNow();
+        result.jvm = sampler.end();
+        return result;
+    }
+
+    private int execute(String operation, int workerId, SplittableRandom random, ScenarioResult result, boolean measured) {
+        int status;
+        try {
+            switch (operation) {
+                case "backup-upload":
+                    status = post("/api/db/upload/load-backup-" + (workerId % 8),
+                            fixtures.backupBodies.get(random.nextInt(LoadTestFixtures.BACKUP_VARIANTS)));
+                    break;
+                case "import-async":
+                    status = importAndPoll(workerId, result, measured);
+                    break;
+                case "map-upload":
+                    status = post("/api/mapeditor/assets/" + MAP_PROJECT + "/upload",
+                            fixtures.mapBodies.get(random.nextInt(LoadTestFixtures.MAP_NAMES)));
+                    break;
+                case "tile-fetch":
+                    status = fetchTile(random);
+                    break;
+                case "pdf-export":
+                    status = postJson("/api/editor/export-pdf", fixtures.pdfRequest);
+                    break;
+                case "sync-payload":
+                    status = postJson("/api/sync/payload/load-sync-" + (workerId % 4), fixtures.syncPayload);
+                    break;
+                default:
+                    throw new IllegalStateException("Operación desconocida: " + operation);
+            }
+        } catch (IOException e) {
+            status = STATUS_IO_ERROR;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = STATUS_IO_ERROR;
+        }
+        return status;
+    }
+
+    /**
+     * Sube el ZIP y sondea el estado hasta que el trabajo termina: la latencia es la de la importación completa.
+     * Cada sondeo se registra además como operación import-status.
+     */
+    private int importAndPoll(int workerId, ScenarioResult result, boolean measured) throws IOException, InterruptedException {
+        LoadTestFixtures.Multipart body = fixtures.importBody;
+        HttpResponse<byte[]> accepted = client.send(HttpRequest.newBuilder(uri("/api/db/import/async/load-import-" + workerId))
+                .header("Content-Type", body.contentType())
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.bytes()))
+                .build(), HttpResponse.BodyHandlers.ofByteArray());
+        int status = accepted.statusCode();
+        if (status == 202) {
+            String jobId = mapper.readTree(accepted.body()).path("jobId").asText();
+            long deadline = System.currentTimeMillis() + IMPORT_TIMEOUT_MS;
+            String jobStatus = "queued";
+            while (!"completed".equals(jobStatus) && !"failed".equals(jobStatus) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(POLL_INTERVAL_MS);
+                long pollStart = System.nanoTime();
+                HttpResponse<byte[]> poll = client.send(HttpRequest.newBuilder(uri("/api/db/import/status/" + jobId)).GET().build(),
+                        HttpResponse.BodyHandlers.ofByteArray());
+                if (measured) {
+                    result.record("import-status", poll.statusCode(), System.nanoTime() - pollStart);
+                }
+                JsonNode state = poll.statusCode() == 200 ? mapper.readTree(poll.body()) : null;
+                jobStatus = state != null ? state.path("status").asText() : "failed";
+            }
+            status = "completed".equals(jobStatus) ? 200 : 500;
+        }
+        return status;
+    }
+
+    /**
+     * Lectura de un trozo de 64 KB del mapa como haría el visor al hacer zoom; una de cada cinco revalida con ETag.
+     */
+    private int fetchTile(SplittableRandom random) throws IOException, InterruptedException {
+        String fileName = LoadTestFixtures.mapFileName(random.nextInt(LoadTestFixtures.MAP_NAMES));
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri("/api/mapeditor/assets/" + MAP_PROJECT + "/download/" + fileName));
+        String etag = mapEtags.get(fileName);
+        if (etag != null && random.nextInt(5) == 0) {
+            request.header("If-None-Match", etag);
+        } else {
+            long start = (long) random.nextInt(Math.max(1, fixtures.mapBytes / TILE_BYTES)) * TILE_BYTES;
+            request.header("Range", "bytes=" + start + "-" + (start + TILE_BYTES - 1));
+        }
+        HttpResponse<byte[]> response = client.send(request.GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+        response.headers().firstValue("ETag").ifPresent(value -> mapEtags.put(fileName, value));
+        return response.statusCode();
+    }
+
+    private int post(String path, LoadTestFixtures.Multipart body) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", body.contentType())
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.bytes()))
+                .build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private int postJson(String path, byte[] json) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json))
+                .build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    /**
+     * Contadores de una operación dentro de un escenario.
+     */
+    private static final class OperationStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+    }
+
+    private static final class ScenarioResult {
+        final String name;
+        final int concurrency;
+        final int durationSeconds;
+        final ConcurrentMap<String, OperationStats> operations = new ConcurrentHashMap<>();
+        final OperationStats total = new OperationStats();
+        JvmSample jvm;
+
+        ScenarioResult(String name, int concurrency, int durationSeconds) {
+            this.name = name;
+            this.concurrency = concurrency;
+            this.durationSeconds = durationSeconds;
+        }
+
+        void record(String operation, int status, long nanos) {
+            OperationStats stats = operations.computeIfAbsent(operation, key -> new OperationStats());
+            for (OperationStats target : new OperationStats[]{stats, total}) {
+                target.latency.record(nanos);
+                if (status == TOO_MANY_REQUESTS) {
+                    target.rejected.increment();
+                } else if (status < 200 || status >= 400) {
+                    target.errors.increment();
+                }
+            }
+        }
+
+        void print(PrintStream out) {
+            out.println(String.format(Locale.ROOT, "%-14s %8s %9s %10s %10s %10s %7s %7s",
+                    "operation", "ops", "ops/s", "p50 ms", "p99 ms", "p999 ms", "errors", "429s"));
+            for (Map.Entry<String, OperationStats> entry : new TreeMap<>(operations).entrySet()) {
+                out.println(row(entry.getKey(), entry.getValue()));
+            }
+            out.println(row("total", total));
+            out.println(String.format(Locale.ROOT,
+                    "heap avg %.0f MB, peak %.0f MB | GC %d collections, %d ms (%.1f%% of wall) | allocated %.0f MB/s",
+                    jvm.heapAverageBytes / 1048576.0, jvm.heapPeakBytes / 1048576.0, jvm.gcCount, jvm.gcMillis,
+                    100.0 * jvm.gcMillis / Math.max(1, jvm.wallMillis), jvm.allocatedBytes / 1048576.0 / Math.max(0.001, jvm.wallMillis / 1000.0)));
+            out.println();
+        }
+
+        private String row(String operation, OperationStats stats) {
+            long[] quantiles = stats.latency.quantilesMicros(QUANTILES);
+            return String.format(Locale.ROOT, "%-14s %8d %9.1f %10.1f %10.1f %10.1f %7d %7d",
+                    operation, stats.latency.count(), stats.latency.count() / (double) durationSeconds,
+                    quantiles[0] / 1000.0, quantiles[1] / 1000.0, quantiles[2] / 1000.0, stats.errors.sum(), stats.rejected.sum());
+        }
+
+        void appendCsv(Path csv, String label, String threads) throws IOException {
+            StringBuilder lines = new StringBuilder();
+            if (!Files.exists(csv)) {
+                lines.append("timestamp,label,threads,scenario,concurrency,operation,ops,ops_per_s,p50_ms,p99_ms,p999_ms,"
+                        + "errors,rejected,heap_peak_mb,gc_count,gc_ms,alloc_mb_per_s").append(System.lineSeparator());
+            }
+            Map<String, OperationStats> rows = new TreeMap<>(operations);
+            rows.put("total", total);
+            String timestamp = Instant.now().toString();
+            double allocRate = jvm.allocatedBytes / 1048576.0 / Math.max(0.001, jvm.wallMillis / 1000.0);
+            for (Map.Entry<String, OperationStats> entry : rows.entrySet()) {
+                OperationStats stats = entry.getValue();
+                long[] quantiles = stats.latency.quantilesMicros(QUANTILES);
+                lines.append(String.format(Locale.ROOT, "%s,%s,%s,%s,%d,%s,%d,%.2f,%.2f,%.2f,%.2f,%d,%d,%.0f,%d,%d,%.1f",
+                        timestamp, label, threads, name, concurrency, entry.getKey(), stats.latency.count(),
+                        stats.latency.count() / (double) durationSeconds, quantiles[0] / 1000.0, quantiles[1] / 1000.0,
+                        quantiles[2] / 1000.0, stats.errors.sum(), stats.rejected.sum(), jvm.heapPeakBytes / 1048576.0,
+                        jvm.gcCount, jvm.gcMillis, allocRate)).append(System.lineSeparator());
+            }
+            Files.writeString(csv, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    private static final class JvmSample {
+        long wallMillis;
+        long heapAverageBytes;
+        long heapPeakBytes;
+        long gcCount;
+        long gcMillis;
+        long allocatedBytes;
+    }
+
+    /**
+     * Muestrea el heap usado cada 100 ms durante la medición y calcula el GC y la asignación entre begin() y end().
+     */
+    private static final class JvmSampler {
+        private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-jvm-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final AtomicLong peak = new AtomicLong();
+        private final LongAdder sum = new LongAdder();
+        private final LongAdder samples = new LongAdder();
+        private volatile long startNanos;
+        private volatile long startGcCount;
+        private volatile long startGcMillis;
+        private volatile long startAllocated = -1;
+
+        void begin() {
+            startNanos = System.nanoTime();
+            startGcCount = gcCount();
+            startGcMillis = gcMillis();
+            startAllocated = allocatedBytes();
+            sampler.scheduleAtFixedRate(() -> {
+                long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+                peak.accumulateAndGet(used, Math::max);
+                sum.add(used);
+                samples.increment();
+            }, 0, 100, TimeUnit.MILLISECONDS);
+        }
+
+        JvmSample end() {
+            sampler.shutdownNow();
+            JvmSample sample = new JvmSample();
+            sample.wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            sample.heapPeakBytes = peak.get();
+            sample.heapAverageBytes = sum.sum() / Math.max(1, samples.sum());
+            sample.gcCount = gcCount() - startGcCount;
+            sample.gcMillis = gcMillis() - startGcMillis;
+            long allocated = allocatedBytes();
+            sample.allocatedBytes = allocated >= 0 && startAllocated >= 0 ? allocated - startAllocated : 0;
+            return sample;
+        }
+
+        private static long gcCount() {
+            long count = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+            }
+            return count;
+        }
+
+        private static long gcMillis() {
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            return millis;
+        }
+
+        /**
+         * Bytes asignados por todos los hilos desde el arranque (HotSpot), o -1 si la JVM no lo mide.
+         */
+        private static long allocatedBytes() {
+            long allocated = -1;
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+                if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                    allocated = hotspot.getTotalThreadAllocatedBytes();
+                }
+            }
+            return allocated;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.worldbuilding.benchmarks.tools;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Compara una carga en frío de la aplicación sobre HTTP/1.1 y sobre HTTP/2 sin cifrar (h2c) contra un servidor
+ * arrancado con -Dworldbuilding.http2=true. En HTTP/1.1 se imita el límite de conexiones por host del navegador
+ * (6 por defecto, cada una con una petición a la vez); en h2c todas las peticiones se multiplexan en una conexión.
+ * Cada ronda usa un cliente nuevo, así que incluye el establecimiento de las conexiones.
+ *
+ * <pre>
+ * java -cp backend/benchmarks/target/benchmarks.jar com.worldbuilding.benchmarks.tools.PageLoadBenchmark
+ *     --url http://localhost:8080 --rounds 20 --dist frontend/dist --path /api/system/status
+ * </pre>
+ */
+public final class PageLoadBenchmark {
+
+    private static final Pattern INDEX_REFERENCE = Pattern.compile("(?:src|href)=\"(/[^\"]+)\"");
+
+    private PageLoadBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = "http://localhost:8080";
+        int rounds = 20;
+        int connections = 6;
+        Path dist = null;
+        List<String> extraPaths = new ArrayList<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--url":
+                    baseUrl = args[i + 1].replaceAll("/+$", "");
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--connections":
+                    connections = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--dist":
+                    dist = Path.of(args[i + 1]);
+                    break;
+                case "--path":
+                    extraPaths.add(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento desconocido: " + args[i]);
+            }
+        }
+
+        List<String> paths = discoverPaths(baseUrl, dist, extraPaths);
+        System.out.println("Cold load of " + paths.size() + " resources from " + baseUrl + ", " + rounds + " rounds");
+
+        // Una ronda de calentamiento por modo para que el JIT del servidor no penalice al primero
+        runRound(baseUrl, paths, HttpClient.Version.HTTP_1_1, connections);
+        runRound(baseUrl, paths, HttpClient.Version.HTTP_2, connections);
+
+        Result http1 = new Result("HTTP/1.1 x" + connections);
+        Result http2 = new Result("h2c");
+        for (int round = 0; round < rounds; round++) {
+            // Se alternan los modos para repartir el ruido de fondo entre ambos
+            http1.add(runRound(baseUrl, paths, HttpClient.Version.HTTP_1_1, connections));
+            http2.add(runRound(baseUrl, paths, HttpClient.Version.HTTP_2, connections));
+        }
+        http1.print();
+        http2.print();
+    }
+
+    /**
+     * Recursos de index.html, más los de dist si se indica (los trozos que la SPA pide al arrancar) y los extra.
+     */
+    private static List<String> discoverPaths(String baseUrl, Path dist, List<String> extraPaths) throws IOException, InterruptedException {
+        Set<String> paths = new LinkedHashSet<>();
+        paths.add("/");
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String index = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/")).build(), HttpResponse.BodyHandlers.ofString()).body();
+        Matcher matcher = INDEX_REFERENCE.matcher(index);
+        while (matcher.find()) {
+            paths.add(matcher.group(1));
+        }
+        if (dist != null && Files.isDirectory(dist.resolve("assets"))) {
+            Path root = dist.toAbsolutePath().normalize();
+            try (Stream<Path> files = Files.walk(root.resolve("assets"))) {
+                files.filter(Files::isRegularFile)
+                        .map(file -> "/" + root.relativize(file).toString().replace('\\', '/'))
+                        .filter(path -> !path.endsWith(".br") && !path.endsWith(".gz"))
+                        .sorted()
+                        .forEach(paths::add);
+            }
+        }
+        paths.addAll(extraPaths);
+        return new ArrayList<>(paths);
+    }
+
+    private static Round runRound(String baseUrl, List<String> paths, HttpClient.Version version, int connections) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+        HttpClient client = HttpClient.newBuilder().version(version).executor(executor).connectTimeout(Duration.ofSeconds(10)).build();
+        Round round = new Round(paths.size());
+        long start = System.nanoTime();
+        try {
+            // La primera petición abre la conexión (y en h2c hace el upgrade), como el documento HTML en un navegador
+            fetch(client, baseUrl, paths.get(0), round);
+            List<String> rest = paths.subList(1, paths.size());
+
+            if (version == HttpClient.Version.HTTP_2) {
+                List<CompletableFuture<Void>> inFlight = new ArrayList<>();
+                for (String path : rest) {
+                    long requestStart = System.nanoTime();
+                    inFlight.add(client.sendAsync(request(baseUrl, path), HttpResponse.BodyHandlers.ofByteArray())
+                            .thenAccept(response -> round.record(response, requestStart)));
+                }
+                CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).join();
+            } else {
+                ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>(rest);
+                ExecutorService workers = Executors.newFixedThreadPool(connections);
+                try {
+                    List<Future<?>> lanes = new ArrayList<>();
+                    for (int i = 0; i < connections; i++) {
+                        lanes.add(workers.submit(() -> {
+                            String path;
+                            while ((path = queue.poll()) != null) {
+                                fetch(client, baseUrl, path, round);
+                            }
+                            return null;
+                        }));
+                    }
+                    for (Future<?> lane : lanes) {
+                        lane.get();
+                    }
+                } finally {
+                    workers.shutdownNow();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        round.totalNanos = System.nanoTime() - start;
+        return round;
+    }
+
+    private static void fetch(HttpClient client, String baseUrl, String path, Round round) throws IOException, InterruptedException {
+        long requestStart = System.nanoTime();
+        round.record(client.send(request(baseUrl, path), HttpResponse.BodyHandlers.ofByteArray()), requestStart);
+    }
+
+    private static HttpRequest request(String baseUrl, String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Accept-Encoding", "br, gzip")
+                .timeout(Duration.ofSeconds(60))
+                .GET()
+                .build();
+    }
+
+    /**
+     * Mediciones de una carga completa.
+     */
+    private static final class Round {
+        final long[] requestNanos;
+        final AtomicLong recorded = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final Set<String> protocols = ConcurrentHashMap.newKeySet();
+        long totalNanos;
+
+        Round(int requests) {
+            this.requestNanos = new long[requests];
+        }
+
+        void record(HttpResponse<byte[]> response, long requestStart) {
+            long elapsed = System.nanoTime() - requestStart;
+            int slot = (int) recorded.getAndIncrement();
+            if (slot < requestNanos.length) {
+                requestNanos[slot] = elapsed;
+            }
+            bytes.addAndGet(response.body().length);
+            protocols.add(response.version().name());
+        }
+    }
+
+    /**
+     * Agregado de todas las rondas de un modo.
+     */
+    private static final class Result {
+        final String label;
+        final List<Long> pageNanos = new ArrayList<>();
+        final List<Long> requestNanos = new ArrayList<>();
+        final Set<String> protocols = new LinkedHashSet<>();
+        long bytes;
+
+        Result(String label) {
+            this.label = label;
+        }
+
+        void add(Round round) {
+            pageNanos.add(round.totalNanos);
+            for (long nanos : Arrays.copyOf(round.requestNanos, (int) Math.min(round.recorded.get(), round.requestNanos.length))) {
+                requestNanos.add(nanos);
+            }
+            protocols.addAll(round.protocols);
+            bytes = round.bytes.get();
+        }
+
+        void print() {
+            System.out.println(String.format(Locale.ROOT,
+                    "%-14s page load p50 %7.1f ms  p95 %7.1f ms | request p50 %6.1f ms  p99 %6.1f ms | %d bytes/load | %s",
+                    label, percentile(pageNanos, 0.50), percentile(pageNanos, 0.95),
+                    percentile(requestNanos, 0.50), percentile(requestNanos, 0.99), bytes, protocols));
+        }
+
+        private static double percentile(List<Long> values, double quantile) {
+            long[] sorted = values.stream().mapToLong(Long::longValue).sorted().toArray();
+            return sorted.length == 0 ? 0.0 : sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.worldbuilding.benchmarks.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Mide el arranque en frío del servidor empaquetado: lanza el JAR varias veces por variante (argumentos de JVM)
+ * y registra el tiempo hasta la línea "Startup completed in N ms", tanto el medido desde fuera (lanzamiento del
+ * proceso incluido) como el que informa la JVM. Con --csv añade una línea por variante para seguir la evolución.
+ *
+ * Desde backend/, con el JAR del servidor y el de benchmarks ya empaquetados:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.worldbuilding.benchmarks.tools.StartupBenchmark --jar target/aux-server-1.0.0.jar --runs 10
+ *     --variant "default=" --variant "fast=-Dworldbuilding.startup=fast"
+ *     --variant "fast+cds=-Dworldbuilding.startup=fast -XX:SharedArchiveFile=target/aux-server.jsa"
+ *     --csv target/startup-history.csv
+ * </pre>
+ */
+public final class StartupBenchmark {
+
+    private static final Pattern STARTUP_LINE = Pattern.compile("Startup completed in (\\d+) ms");
+    private static final long STARTUP_TIMEOUT_MS = 120_000;
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path jar = Path.of("target/aux-server-1.0.0.jar");
+        int runs = 10;
+        int port = 18081;
+        Path csv = null;
+        Map<String, List<String>> variants = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--jar":
+                    jar = Path.of(args[i + 1]);
+                    break;
+                case "--runs":
+                    runs = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--port":
+                    port = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--csv":
+                    csv = Path.of(args[i + 1]);
+                    break;
+                case "--variant":
+                    String spec = args[i + 1];
+                    int separator = spec.indexOf('=');
+                    String jvmArgs = spec.substring(separator + 1).trim();
+                    variants.put(spec.substring(0, separator), jvmArgs.isEmpty() ? List.of() : Arrays.asList(jvmArgs.split("\\s+")));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento desconocido: " + args[i]);
+            }
+        }
+        if (variants.isEmpty()) {
+            variants.put("default", List.of());
+            variants.put("fast", List.of("-Dworldbuilding.startup=fast"));
+        }
+
+        Path workDir = Files.createTempDirectory("startup-bench");
+        System.out.println("Cold start of " + jar + ", " + runs + " runs per variant (working dir " + workDir + ")");
+        for (Map.Entry<String, List<String>> variant : variants.entrySet()) {
+            long[] wallMs = new long[runs];
+            long[] reportedMs = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                long[] sample = launch(jar, variant.getValue(), port, workDir);
+                wallMs[run] = sample[0];
+                reportedMs[run] = sample[1];
+            }
+            Arrays.sort(wallMs);
+            Arrays.sort(reportedMs);
+            System.out.println(String.format(Locale.ROOT,
+                    "%-12s wall p50 %6d ms  min %6d ms  p90 %6d ms | JVM-reported p50 %6d ms",
+                    variant.getKey(), percentile(wallMs, 0.5), wallMs[0], percentile(wallMs, 0.9), percentile(reportedMs, 0.5)));
+            if (csv != null) {
+                String line = Instant.now() + "," + variant.getKey() + "," + percentile(wallMs, 0.5) + ","
+                        + percentile(wallMs, 0.9) + "," + percentile(reportedMs, 0.5) + System.lineSeparator();
+                Files.writeString(csv, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+        }
+    }
+
+    /**
+     * Devuelve {ms hasta la línea de arranque medidos desde fuera, ms informados por el servidor}.
+     */
+    private static long[] launch(Path jar, List<String> jvmArgs, int port, Path workDir) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-Dworldbuilding.port=" + port);
+        command.add("-jar");
+        command.add(jar.toAbsolutePath().toString());
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).directory(workDir.toFile()).redirectErrorStream(true).start();
+        long[] sample = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while (sample == null && (line = reader.readLine()) != null) {
+                Matcher matcher = STARTUP_LINE.matcher(line);
+                if (matcher.find()) {
+                    sample = new long[]{TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Long.parseLong(matcher.group(1))};
+                } else if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) > STARTUP_TIMEOUT_MS) {
+                    break;
+                }
+            }
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+        if (sample == null) {
+            throw new IOException("El servidor no llegó a arrancar: " + String.join(" ", command));
+        }
+        return sample;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.max(0, Math.ceil(quantile * sorted.length) - 1))];
+    }
+}
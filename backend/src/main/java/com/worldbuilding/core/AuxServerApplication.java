@@ -1,8 +1,21 @@
 package com.worldbuilding.core;
  
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Bean;
@@ -14,21 +27,58 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.MultipartConfigElement;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
 import org.eclipse.jetty.servlet.FilterHolder;
 import org.springframework.web.context.ContextLoaderListener;
 import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.filter.DelegatingFilterProxy;
 import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import java.util.EnumSet;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
  
 @Configuration
 @ComponentScan(basePackages = {"com.worldbuilding.core", "com.worldbuilding.domains"})
 @EnableWebMvc
 @EnableAsync
-public class AuxServerApplication {
+public class AuxServerApplication implements WebMvcConfigurer {
+
+    // Las respuestas en streaming (exportaciones ZIP) pueden durar bastante más que el timeout por defecto de Jetty (30s)
+    private static final long ASYNC_REQUEST_TIMEOUT_MS = 30L * 60L * 1000L;
+
+    // -Dworldbuilding.threads=virtual ejecuta Jetty y las tareas de E/S en hilos virtuales (por defecto, hilos de plataforma)
+    static final boolean VIRTUAL_THREADS = "virtual".equalsIgnoreCase(System.getProperty("worldbuilding.threads", "platform"));
+
+    // -Dworldbuilding.startup=fast: beans perezosos y calentamiento en segundo plano tras abrir el puerto;
+    // training: ejecución de entrenamiento de AppCDS (perfil Maven appcds), que calienta y se detiene
+    static final String STARTUP_MODE = System.getProperty("worldbuilding.startup", "default");
+    static final boolean FAST_STARTUP = "fast".equalsIgnoreCase(STARTUP_MODE);
+    static final boolean TRAINING_RUN = "training".equalsIgnoreCase(STARTUP_MODE);
+
+    // -Dworldbuilding.http2=true acepta HTTP/2 sin cifrar (h2c, por upgrade o prior knowledge) en el mismo puerto que HTTP/1.1
+    static final boolean HTTP2 = Boolean.getBoolean("worldbuilding.http2");
+
+    // Con -Dworldbuilding.tls.keystore se abre además un conector TLS que negocia h2 o http/1.1 por ALPN
+    // (los navegadores solo usan HTTP/2 sobre TLS)
+    private static final String TLS_KEYSTORE = System.getProperty("worldbuilding.tls.keystore");
+    private static final int TLS_PORT = Integer.getInteger("worldbuilding.tls.port", 8443);
+
+    // Una carga en frío pide decenas de trozos JS, el wasm y teselas a la vez: se admiten muchos flujos por conexión
+    private static final int HTTP2_MAX_CONCURRENT_STREAMS = Integer.getInteger("worldbuilding.http2.maxConcurrentStreams", 256);
+    // Ventanas de recepción amplias para que las subidas grandes (respaldos, imágenes de mapa) no se frenen por control de flujo
+    private static final int HTTP2_STREAM_RECV_WINDOW = 1024 * 1024;
+    private static final int HTTP2_SESSION_RECV_WINDOW = 8 * 1024 * 1024;
+
+    // Máximo del QueuedThreadPool por defecto de Jetty
+    private static final int MVC_STREAM_THREADS = 200;
  
     @Bean(name = "multipartResolver")
     public MultipartResolver multipartResolver() {
@@ -37,6 +87,9 @@ public class AuxServerApplication {
 
     @Bean(name = "dbTaskExecutor")
     public Executor dbTaskExecutor() {
+        if (VIRTUAL_THREADS) {
+            return virtualThreadExecutor("db-import-");
+        }
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(2);
         executor.setMaxPoolSize(6);
@@ -45,16 +98,165 @@ public class AuxServerApplication {
         executor.initialize();
         return executor;
     }
+
+    @Bean(name = "archiveTaskExecutor")
+    public Executor archiveTaskExecutor() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(cores);
+        executor.setMaxPoolSize(cores);
+        executor.setThreadNamePrefix("archive-deflate-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "mvcAsyncExecutor")
+    public AsyncTaskExecutor mvcAsyncExecutor() {
+        if (VIRTUAL_THREADS) {
+            return virtualThreadExecutor("mvc-stream-");
+        }
+        // Cada descarga, exportación o resultado de consulta ocupa un hilo mientras dura la transferencia: se dimensiona
+        // como el pool de Jetty que los servía antes (200 hilos). Núcleo igual a máximo para que el hilo se cree al
+        // llegar la petición, no al llenarse la cola, y los que sobran se retiran tras un minuto ocioso.
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(MVC_STREAM_THREADS);
+        executor.setMaxPoolSize(MVC_STREAM_THREADS);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setKeepAliveSeconds(60);
+        executor.setThreadNamePrefix("mvc-stream-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Un hilo virtual por tarea: las copias bloqueantes ya no limitan la concurrencia a un tamaño de pool.
+     * La compresión (archiveTaskExecutor) sigue en hilos de plataforma porque es trabajo de CPU.
+     */
+    private static AsyncTaskExecutor virtualThreadExecutor(String namePrefix) {
+        return new TaskExecutorAdapter(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory()));
+    }
+
+    /**
+     * Conector HTTP/1.1 en {@code port}, con h2c si está activado, y conector TLS con ALPN si hay keystore.
+     */
+    private static void addConnectors(Server server, int port) {
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        HttpConnectionFactory http1 = new HttpConnectionFactory(httpConfig);
+        ServerConnector connector = HTTP2
+                ? newConnector(server, "jetty-io-", http1, configureHttp2(new HTTP2CServerConnectionFactory(httpConfig)))
+                : newConnector(server, "jetty-io-", http1);
+        connector.setPort(port);
+        server.addConnector(connector);
+
+        if (TLS_KEYSTORE != null) {
+            HttpConfiguration httpsConfig = new HttpConfiguration(httpConfig);
+            httpsConfig.addCustomizer(new SecureRequestCustomizer());
+
+            SslContextFactory.Server sslContextFactory = new SslContextFactory.Server();
+            sslContextFactory.setKeyStorePath(TLS_KEYSTORE);
+            sslContextFactory.setKeyStorePassword(System.getProperty("worldbuilding.tls.password", ""));
+            // HTTP/2 prohíbe los cifrados de la lista negra de la RFC 7540
+            sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+
+            ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory("h2", "http/1.1");
+            alpn.setDefaultProtocol("http/1.1");
+            ServerConnector tlsConnector = newConnector(server, "jetty-tls-io-",
+                    new SslConnectionFactory(sslContextFactory, alpn.getProtocol()),
+                    alpn,
+                    configureHttp2(new HTTP2ServerConnectionFactory(httpsConfig)),
+                    new HttpConnectionFactory(httpsConfig));
+            tlsConnector.setPort(TLS_PORT);
+            server.addConnector(tlsConnector);
+        }
+    }
+
+    /**
+     * Con hilos virtuales, los aceptadores y selectores del conector van en hilos de plataforma propios
+     * y solo el manejo de las conexiones pasa al pool virtual del servidor.
+     */
+    private static ServerConnector newConnector(Server server, String ioThreadPrefix, ConnectionFactory... factories) {
+        ServerConnector connector;
+        if (VIRTUAL_THREADS) {
+            ConnectorExecutor executor = new ConnectorExecutor(ioThreadPrefix, server.getThreadPool());
+            connector = new ServerConnector(server, executor, null, null, -1, -1, factories);
+            executor.setLoops(connector.getAcceptors() + connector.getSelectorManager().getSelectorCount());
+        } else {
+            connector = new ServerConnector(server, factories);
+        }
+        return connector;
+    }
+
+    private static <T extends AbstractHTTP2ServerConnectionFactory> T configureHttp2(T factory) {
+        factory.setMaxConcurrentStreams(HTTP2_MAX_CONCURRENT_STREAMS);
+        factory.setInitialStreamRecvWindow(HTTP2_STREAM_RECV_WINDOW);
+        factory.setInitialSessionRecvWindow(HTTP2_SESSION_RECV_WINDOW);
+        return factory;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(mvcAsyncExecutor());
+        configurer.setDefaultTimeout(ASYNC_REQUEST_TIMEOUT_MS);
+    }
  
     public static void main(String[] args) throws Exception {
-        int port = 8080;
+        int port = Integer.getInteger("worldbuilding.port", 8080);
         System.out.println("--- Starting WorldbuildingAuxServer (Spring v4 + Java 21) on port " + port + " ---");
  
-        Server server = new Server(port);
+        Server server = createServer(port);
+
+        try {
+            server.start();
+            System.out.println("Server started at http://localhost:" + port + (HTTP2 ? " (HTTP/1.1 + h2c)" : ""));
+            if (TLS_KEYSTORE != null) {
+                System.out.println("TLS (h2, http/1.1) at https://localhost:" + TLS_PORT);
+            }
+            System.out.println("Startup completed in " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
+
+            if (TRAINING_RUN) {
+                StartupWarmup.run(port);
+                server.stop();
+                // Al salir la JVM vuelca el archivo de AppCDS (-XX:ArchiveClassesAtExit)
+                System.exit(0);
+            } else if (FAST_STARTUP) {
+                StartupWarmup.startInBackground(port);
+            }
+            server.join();
+        } catch (Exception e) {
+            System.err.println("Failed to start server: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Construye el servidor completo (conectores, contexto de Spring, filtros y estáticos) sin arrancarlo.
+     * Con {@code port} 0 el sistema elige un puerto libre; el arnés de carga arranca así el servidor en su propia JVM.
+     */
+    public static Server createServer(int port) {
+        Server server;
+        if (VIRTUAL_THREADS) {
+            System.out.println("Thread mode: virtual");
+            server = new Server(new VirtualThreadPool("jetty-vt-"));
+        } else {
+            server = new Server();
+        }
+        addConnectors(server, port);
  
         // Configurar el contexto de Spring Web
         AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext();
         context.register(AuxServerApplication.class);
+        if (FAST_STARTUP) {
+            System.out.println("Startup mode: fast (lazy beans)");
+            // Los servicios (almacén, índice de búsqueda, instantáneas...) se crean con la primera petición que los usa
+            context.addBeanFactoryPostProcessor(beanFactory -> {
+                for (String beanName : beanFactory.getBeanDefinitionNames()) {
+                    BeanDefinition definition = beanFactory.getBeanDefinition(beanName);
+                    if (definition.getRole() == BeanDefinition.ROLE_APPLICATION) {
+                        definition.setLazyInit(true);
+                    }
+                }
+            });
+        }
  
         ServletContextHandler handler = new ServletContextHandler(ServletContextHandler.SESSIONS);
         handler.setContextPath("/");
@@ -68,6 +270,7 @@ public class AuxServerApplication {
  
         // 1. Configurar el DispatcherServlet de Spring MVC para los endpoints de API
         ServletHolder servletHolder = new ServletHolder(new DispatcherServlet(context));
+        servletHolder.setAsyncSupported(true);
         handler.addServlet(servletHolder, "/api/*");
  
         // Habilitar la subida de archivos multipart en Jetty para este servlet (límite de 500MB)
@@ -75,20 +278,24 @@ public class AuxServerApplication {
                 "",
                 1024L * 1024L * 500L, // maxFileSize: 500MB
                 1024L * 1024L * 1000L, // maxRequestSize: 1000MB (1GB)
-                1024 * 1024 * 100 // fileSizeThreshold: 100MB
+                1024 * 1024 // fileSizeThreshold: 1MB (las partes mayores se vuelcan a disco en vez de al heap)
         );
         servletHolder.getRegistration().setMultipartConfig(multipartConfigElement);
 
-        // 2. Servidor de archivos estáticos (Vite dist) mediante DefaultServlet
-        ServletHolder defaultServlet = new ServletHolder("default", org.eclipse.jetty.servlet.DefaultServlet.class);
-        defaultServlet.setInitParameter("resourceBase", distPath);
-        defaultServlet.setInitParameter("dirAllowed", "false");
-        defaultServlet.setInitParameter("welcomeServlets", "true");
-        defaultServlet.setInitParameter("redirectWelcome", "false");
+        // 2. Servidor de archivos estáticos (Vite dist) residente en memoria: política de caché por huella,
+        //    variantes precomprimidas y fallback de la SPA a index.html
+        ServletHolder defaultServlet = new ServletHolder("default", new StaticAssetServlet(Path.of(distPath)));
+        // Indexar y comprimir al arrancar, no en la primera petición
+        defaultServlet.setInitOrder(1);
         handler.addServlet(defaultServlet, "/");
 
+        // Métricas por ruta: primer filtro de la cadena, para que la latencia incluya también a los demás
+        FilterHolder metricsFilter = new FilterHolder(new DelegatingFilterProxy("metricsFilter", context));
+        metricsFilter.setAsyncSupported(true);
+        handler.addFilter(metricsFilter, "/*", EnumSet.of(DispatcherType.REQUEST));
+
         // 3. Añadir Cabeceras de Seguridad y Control de Caché
-        handler.addFilter(new FilterHolder(new Filter() {
+        FilterHolder headersFilter = new FilterHolder(new Filter() {
             @Override public void init(FilterConfig filterConfig) throws ServletException {}
             @Override public void destroy() {}
             @Override
@@ -111,38 +318,25 @@ public class AuxServerApplication {
                 res.setHeader("Cross-Origin-Opener-Policy", "same-origin");
                 res.setHeader("Cross-Origin-Embedder-Policy", "credentialless");
                 
-                // Evitar caché en desarrollo/lanzamiento para asegurar carga de bundles nuevos
-                res.setHeader("Cache-Control", "no-store, no-cache, must-revalidate, max-age=0");
-                res.setHeader("Pragma", "no-cache");
-                
+                // La política de caché la fija quien responde: StaticAssetServlet para dist
+                // (inmutable con huella, no-store para index.html) y cada descarga de la API (ETag + revalidación).
+
                 // Tipos MIME y Headers de Seguridad adicionales
                 res.setHeader("X-Content-Type-Options", "nosniff");
                 
-                String uri = ((javax.servlet.http.HttpServletRequest)request).getRequestURI();
-                if (uri != null) {
-                    if (uri.endsWith(".wasm")) res.setContentType("application/wasm");
-                }
-                
+                // El fallback de la SPA (rutas del cliente -> index.html) lo resuelve StaticAssetServlet en su tabla de rutas
                 chain.doFilter(request, response);
-
-                // SPA Fallback: Si no se encuentra el recurso y no es la API, servir index.html
-                if (res.getStatus() == 404 && uri != null && !uri.startsWith("/api/")) {
-                    res.setStatus(200);
-                    res.setContentType("text/html");
-                    request.getRequestDispatcher("/index.html").forward(request, response);
-                }
             }
-        }), "/*", EnumSet.of(DispatcherType.REQUEST));
+        });
+        headersFilter.setAsyncSupported(true);
+        handler.addFilter(headersFilter, "/*", EnumSet.of(DispatcherType.REQUEST));
 
-        server.setHandler(handler);
+        // 4. Control de admisión de operaciones pesadas (antes de que Spring lea el multipart)
+        FilterHolder admissionFilter = new FilterHolder(new DelegatingFilterProxy("admissionFilter", context));
+        admissionFilter.setAsyncSupported(true);
+        handler.addFilter(admissionFilter, "/api/*", EnumSet.of(DispatcherType.REQUEST));
 
-        try {
-            server.start();
-            System.out.println("Server started at http://localhost:" + port);
-            server.join();
-        } catch (Exception e) {
-            System.err.println("Failed to start server: " + e.getMessage());
-            e.printStackTrace();
-        }
+        server.setHandler(handler);
+        return server;
     }
 }
@@ -0,0 +1,71 @@
+package com.worldbuilding.core;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.TryExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ejecutor de un conector de Jetty cuando el servidor usa hilos virtuales.
+ * Los bucles de larga duración del conector (aceptadores y selectores) ocupan hilos de plataforma propios: pasan
+ * su vida bloqueados en accept/select y en un hilo virtual dejarían su portador fijado igualmente. Jetty 9.4 los lanza
+ * al arrancar el conector, antes que cualquier otra tarea, así que son las primeras {@code loops} que recibe; el resto
+ * (atender las conexiones que producen los selectores) se delega en el pool de hilos virtuales del servidor.
+ */
+public class ConnectorExecutor extends AbstractLifeCycle implements TryExecutor {
+
+    private final String namePrefix;
+    private final Executor requestExecutor;
+    private final AtomicInteger pendingLoops = new AtomicInteger();
+    private volatile int loops;
+    private volatile ExecutorService loopExecutor;
+
+    public ConnectorExecutor(String namePrefix, Executor requestExecutor) {
+        this.namePrefix = namePrefix;
+        this.requestExecutor = requestExecutor;
+    }
+
+    /**
+     * Número de aceptadores más selectores del conector; se fija tras construirlo y antes de arrancarlo.
+     */
+    public void setLoops(int loops) {
+        this.loops = loops;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        loopExecutor = Executors.newThreadPerTaskExecutor(Thread.ofPlatform().name(namePrefix, 0).factory());
+        pendingLoops.set(loops);
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        // Los bucles terminan al cerrarse el conector
+        loopExecutor.shutdown();
+        loopExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (pendingLoops.getAndUpdate(pending -> Math.max(0, pending - 1)) > 0) {
+            loopExecutor.execute(task);
+        } else {
+            requestExecutor.execute(task);
+        }
+    }
+
+    /**
+     * Sin hilos reservados: el selector sigue produciendo en su hilo de plataforma y delega cada tarea con
+     * {@link #execute}, en lugar de ceder la producción a un hilo nuevo.
+     */
+    @Override
+    public boolean tryExecute(Runnable task) {
+        return false;
+    }
+}
@@ -0,0 +1,53 @@
+package com.worldbuilding.core;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Trabajo de arranque que no debe retrasar la apertura del puerto: inicializa el DispatcherServlet y la pila de Jackson
+ * con peticiones locales y carga las clases pesadas (plugins de ImageIO, Flying Saucer, jsoup) para que la primera
+ * exportación o subida de mapa no pague esa carga. En la ejecución de entrenamiento de AppCDS se hace de forma
+ * síncrona, de modo que esas clases también entren en el archivo compartido.
+ */
+final class StartupWarmup {
+
+    private static final List<String> WARMUP_PATHS = List.of("/api/system/ping", "/api/system/status", "/api/db/list", "/");
+
+    private StartupWarmup() {
+    }
+
+    static void startInBackground(int port) {
+        Thread thread = new Thread(() -> run(port), "startup-warmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    static void run(int port) {
+        long start = System.nanoTime();
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        for (String path : WARMUP_PATHS) {
+            try {
+                client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                        .timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.discarding());
+            } catch (Exception ignored) {
+                // Calentamiento opcional: un fallo solo significa que esa ruta se inicializará en su primera petición.
+            }
+        }
+
+        try {
+            // Registro de plugins de ImageIO (se recorre el classpath la primera vez)
+            javax.imageio.ImageIO.getReaderFormatNames();
+            // Flying Saucer carga fuentes y la factoría de OpenPDF al construir el renderer
+            new org.xhtmlrenderer.pdf.ITextRenderer();
+            org.jsoup.Jsoup.parse("<p>warmup</p>").html();
+        } catch (Exception | LinkageError ignored) {
+            // Igual que arriba: la clase se cargará cuando se use por primera vez.
+        }
+        System.out.println("Startup warmup finished in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
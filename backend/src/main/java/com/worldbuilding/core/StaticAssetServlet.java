@@ -0,0 +1,299 @@
+package com.worldbuilding.core;
+
+import com.worldbuilding.core.service.FileDownloadService;
+import org.eclipse.jetty.server.HttpOutput;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sirve el build de Vite (dist) con una política de caché por tipo de archivo: los archivos con huella de contenido
+ * en el nombre (assets/nombre-hash.ext) son inmutables y se cachean un año, index.html no se guarda nunca y el resto
+ * se revalida con ETag. Las variantes comprimidas se preparan al arrancar: brotli si el build generó nombre.br
+ * (el JDK no trae codificador brotli) y gzip desde nombre.gz o comprimiendo en ese momento; se eligen por Accept-Encoding.
+ * Todo dist queda residente al arrancar: los archivos pequeños en el heap y los grandes mapeados en memoria, con una
+ * tabla ruta → archivo. Cualquier ruta que no esté en la tabla es una ruta de la SPA y se resuelve a index.html
+ * en la misma búsqueda, sin pasar por el sistema de archivos ni redespachar la petición.
+ */
+public class StaticAssetServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+    private static final Pattern FINGERPRINTED = Pattern.compile("^/assets/.+-[A-Za-z0-9_-]{8}\\.[A-Za-z0-9]+$");
+    private static final String INDEX = "/index.html";
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String NO_STORE = "no-store, no-cache, must-revalidate, max-age=0";
+    private static final String REVALIDATE = "no-cache";
+    private static final Set<String> COMPRESSIBLE_EXTENSIONS = Set.of(
+            "js", "mjs", "css", "html", "json", "wasm", "svg", "txt", "map", "xml", "ico");
+    private static final int MIN_COMPRESSIBLE_SIZE = 1024;
+    // Solo se guarda una variante si ahorra al menos un 10 %
+    private static final double MAX_COMPRESSION_RATIO = 0.9;
+    // A partir de este tamaño el contenido se mapea en lugar de copiarse al heap
+    private static final long MAP_THRESHOLD = 256L * 1024L;
+
+    // El servlet nunca se serializa: la tabla de dist se construye en init() y no tiene sentido fuera de este proceso
+    private final transient Path root;
+    private transient volatile Map<String, Asset> assets = Collections.emptyMap();
+    private transient volatile Asset fallback;
+
+    /**
+     * Archivo de dist con sus cabeceras ya calculadas y su contenido (y variantes comprimidas) en buffers
+     * de solo lectura; cada respuesta escribe un duplicado para no compartir la posición.
+     */
+    private static final class Asset {
+        final String contentType;
+        final long length;
+        final String etag;
+        final String cacheControl;
+        final ByteBuffer content;
+        final ByteBuffer brotli;
+        final ByteBuffer gzip;
+
+        Asset(String contentType, String etag, String cacheControl, ByteBuffer content, byte[] brotli, byte[] gzip) {
+            this.contentType = contentType;
+            this.length = content.remaining();
+            this.etag = etag;
+            this.cacheControl = cacheControl;
+            this.content = content;
+            this.brotli = brotli == null ? null : ByteBuffer.wrap(brotli).asReadOnlyBuffer();
+            this.gzip = gzip == null ? null : ByteBuffer.wrap(gzip).asReadOnlyBuffer();
+        }
+
+        boolean hasVariants() {
+            return brotli != null || gzip != null;
+        }
+    }
+
+    public StaticAssetServlet(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void init() {
+        Map<String, Asset> loaded = new HashMap<>();
+        long originalBytes = 0;
+        long compressedBytes = 0;
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    String name = file.getFileName().toString();
+                    boolean variantFile = (name.endsWith(".br") || name.endsWith(".gz"))
+                            && Files.isRegularFile(file.resolveSibling(name.substring(0, name.length() - 3)));
+                    if (!variantFile) {
+                        Asset asset = load(file);
+                        loaded.put(requestPath(file), asset);
+                        if (asset.hasVariants()) {
+                            originalBytes += asset.length;
+                            compressedBytes += asset.brotli != null ? asset.brotli.remaining() : asset.gzip.remaining();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Could not index static content in " + root + ": " + e.getMessage());
+            }
+        }
+        assets = Collections.unmodifiableMap(loaded);
+        fallback = loaded.get(INDEX);
+        System.out.println("Static assets indexed: " + loaded.size() + " files, compressed variants "
+                + originalBytes + " -> " + compressedBytes + " bytes");
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(request, response, true);
+    }
+
+    @Override
+    protected void doHead(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(request, response, false);
+    }
+
+    private void serve(HttpServletRequest request, HttpServletResponse response, boolean sendBody) throws IOException {
+        String path = request.getServletPath() + (request.getPathInfo() == null ? "" : request.getPathInfo());
+        if (path.isEmpty() || path.equals("/")) {
+            path = INDEX;
+        }
+        // /api/* lo atiende el DispatcherServlet: lo que no está en dist es una ruta del enrutador del cliente
+        Asset asset = assets.getOrDefault(path, fallback);
+
+        if (asset == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        } else {
+            List<String> acceptEncoding = Collections.list(request.getHeaders("Accept-Encoding"));
+            String encoding = null;
+            ByteBuffer body = asset.content;
+            if (asset.brotli != null && FileDownloadService.acceptsEncoding(acceptEncoding, "br")) {
+                encoding = "br";
+                body = asset.brotli;
+            } else if (asset.gzip != null && FileDownloadService.acceptsEncoding(acceptEncoding, "gzip")) {
+                encoding = "gzip";
+                body = asset.gzip;
+            }
+            String etag = encoding == null ? asset.etag : asset.etag.substring(0, asset.etag.length() - 1) + "-" + encoding + "\"";
+
+            response.setHeader("Cache-Control", asset.cacheControl);
+            response.setHeader("ETag", etag);
+            if (asset.hasVariants()) {
+                response.setHeader("Vary", "Accept-Encoding");
+            }
+
+            if (matchesNoneMatch(request.getHeader("If-None-Match"), etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            } else {
+                response.setContentType(asset.contentType);
+                if (encoding != null) {
+                    response.setHeader("Content-Encoding", encoding);
+                }
+                response.setContentLengthLong(body.remaining());
+                if (sendBody) {
+                    write(body.duplicate(), response.getOutputStream());
+                }
+            }
+        }
+    }
+
+    /**
+     * Con Jetty el buffer (del heap o mapeado) se entrega directamente al conector, sin copias intermedias.
+     */
+    private static void write(ByteBuffer body, OutputStream out) throws IOException {
+        if (out instanceof HttpOutput) {
+            ((HttpOutput) out).write(body);
+        } else {
+            Channels.newChannel(out).write(body);
+        }
+    }
+
+    private Asset load(Path file) throws IOException {
+        String path = requestPath(file);
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String extension = dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+
+        ByteBuffer content;
+        long size = Files.size(file);
+        if (size >= MAP_THRESHOLD) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // El mapeo sigue siendo válido tras cerrar el canal
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        } else {
+            content = ByteBuffer.wrap(Files.readAllBytes(file)).asReadOnlyBuffer();
+        }
+        int length = content.remaining();
+        CRC32C crc = new CRC32C();
+        crc.update(content.duplicate());
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(crc.getValue()) + "\"";
+
+        String cacheControl;
+        if (path.equals(INDEX)) {
+            cacheControl = NO_STORE;
+        } else if (FINGERPRINTED.matcher(path).matches()) {
+            cacheControl = IMMUTABLE;
+        } else {
+            cacheControl = REVALIDATE;
+        }
+
+        byte[] brotli = null;
+        byte[] gzip = null;
+        if (COMPRESSIBLE_EXTENSIONS.contains(extension) && length >= MIN_COMPRESSIBLE_SIZE) {
+            brotli = readVariant(file.resolveSibling(name + ".br"), length);
+            gzip = readVariant(file.resolveSibling(name + ".gz"), length);
+            if (gzip == null) {
+                gzip = keepIfSmaller(gzip(content.duplicate()), length);
+            }
+        }
+        return new Asset(contentType(name, extension), etag, cacheControl, content, brotli, gzip);
+    }
+
+    private String contentType(String name, String extension) {
+        String contentType;
+        switch (extension) {
+            case "wasm":
+                contentType = "application/wasm";
+                break;
+            case "js":
+            case "mjs":
+                contentType = "text/javascript;charset=utf-8";
+                break;
+            case "html":
+                contentType = "text/html;charset=utf-8";
+                break;
+            case "css":
+                contentType = "text/css;charset=utf-8";
+                break;
+            default:
+                contentType = getServletContext().getMimeType(name);
+                if (contentType == null) {
+                    contentType = "application/octet-stream";
+                }
+                break;
+        }
+        return contentType;
+    }
+
+    private String requestPath(Path file) {
+        return "/" + root.relativize(file).toString().replace('\\', '/');
+    }
+
+    /**
+     * Variante generada por el build (nombre.br / nombre.gz); se ignora si no es más pequeña que el original.
+     */
+    private static byte[] readVariant(Path variant, int originalLength) throws IOException {
+        return Files.isRegularFile(variant) ? keepIfSmaller(Files.readAllBytes(variant), originalLength) : null;
+    }
+
+    private static byte[] keepIfSmaller(byte[] compressed, int originalLength) {
+        return compressed.length <= originalLength * MAX_COMPRESSION_RATIO ? compressed : null;
+    }
+
+    private static byte[] gzip(ByteBuffer content) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.remaining() / 3);
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            Channels.newChannel(out).write(content);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static boolean matchesNoneMatch(String ifNoneMatch, String etag) {
+        boolean matches = false;
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                // If-None-Match usa comparación débil: se ignora el prefijo W/
+                String value = candidate.trim();
+                if (value.startsWith("W/")) {
+                    value = value.substring(2);
+                }
+                if ("*".equals(value) || etag.equals(value)) {
+                    matches = true;
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,84 @@
+package com.worldbuilding.core;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.util.thread.TryExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool de hilos de Jetty que ejecuta cada tarea en un hilo virtual nuevo.
+ * Jetty 9.4 no trae soporte propio para hilos virtuales; esta implementación sustituye al QueuedThreadPool
+ * para que las peticiones bloqueadas en E/S no agoten un número fijo de hilos de plataforma.
+ * Solo atiende peticiones: los aceptadores y selectores de cada conector van en hilos de plataforma
+ * ({@link ConnectorExecutor}).
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool, TryExecutor {
+
+    private final String namePrefix;
+    private final AtomicInteger activeThreads = new AtomicInteger();
+    private volatile ExecutorService executor;
+
+    public VirtualThreadPool(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(() -> {
+            activeThreads.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                activeThreads.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * No hay hilos reservados. Devolver true haría que las estrategias de Jetty cedieran la producción del selector
+     * a un hilo virtual nuevo en cada tarea; los conectores usan además su propio {@link ConnectorExecutor}.
+     */
+    @Override
+    public boolean tryExecute(Runnable task) {
+        return false;
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        while (!executor.awaitTermination(1, TimeUnit.DAYS)) {
+            // Sigue esperando hasta que el servidor se detenga.
+        }
+    }
+
+    @Override
+    public int getThreads() {
+        return activeThreads.get();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+}
@@ -0,0 +1,129 @@
+package com.worldbuilding.core.controller;
+
+import com.worldbuilding.core.service.AdmissionControl;
+import com.worldbuilding.core.service.AdmissionControl.OperationClass;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Aplica el control de admisión a las peticiones pesadas antes de que el DispatcherServlet lea el multipart.
+ * Las respuestas asíncronas (exportaciones en streaming) conservan su reserva hasta que termina la escritura.
+ */
+@Component("admissionFilter")
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final AdmissionControl admissionControl;
+
+    public AdmissionFilter(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        OperationClass operationClass = classify(request.getMethod(), request.getPathInfo());
+
+        if (operationClass == null) {
+            chain.doFilter(request, response);
+        } else {
+            AdmissionControl.Permit permit = null;
+            try {
+                permit = admissionControl.acquire(operationClass,
+                        AdmissionControl.estimateBytes(operationClass, request.getContentLengthLong()));
+            } catch (AdmissionControl.AdmissionRejectedException e) {
+                response.setStatus(TOO_MANY_REQUESTS);
+                response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()));
+                response.setContentType("text/plain;charset=UTF-8");
+                response.getWriter().write(e.getMessage());
+            }
+
+            if (permit != null) {
+                boolean async = false;
+                try {
+                    chain.doFilter(request, response);
+                    if (request.isAsyncStarted()) {
+                        request.getAsyncContext().addListener(new ReleasingListener(permit));
+                        async = true;
+                    }
+                } finally {
+                    if (!async) {
+                        permit.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Relaciona la ruta bajo /api con la clase de operación que consume presupuesto; null si es ligera.
+     */
+    static OperationClass classify(String method, String path) {
+        OperationClass operationClass = null;
+        if (path != null) {
+            if ("POST".equals(method) && (path.startsWith("/db/import/") || path.equals("/db/upload") || path.startsWith("/db/upload/"))) {
+                operationClass = OperationClass.IMPORT;
+            } else if (isBackupWrite(method, path)) {
+                // Bloques y confirmación de subidas reanudables, deltas de páginas y restauraciones: escriben el
+                // respaldo igual que una importación y comparten su presupuesto
+                operationClass = OperationClass.IMPORT;
+            } else if ("GET".equals(method) && path.startsWith("/db/export/")) {
+                operationClass = OperationClass.EXPORT;
+            } else if ("POST".equals(method) && (path.equals("/editor/export-pdf") || path.startsWith("/worldbible/export/"))) {
+                operationClass = OperationClass.PDF;
+            } else if ("POST".equals(method) && path.startsWith("/mapeditor/assets/")) {
+                operationClass = OperationClass.MAP_UPLOAD;
+            } else if ("POST".equals(method) && path.startsWith("/db/query/")) {
+                operationClass = OperationClass.QUERY;
+            }
+        }
+        return operationClass;
+    }
+
+    private static boolean isBackupWrite(String method, String path) {
+        boolean uploadSession = path.startsWith("/db/upload-sessions")
+                && ("PUT".equals(method) || ("POST".equals(method) && path.endsWith("/commit")));
+        boolean pageDelta = "POST".equals(method) && path.startsWith("/db/pages/") && path.endsWith("/delta");
+        boolean snapshotRestore = "POST".equals(method) && path.startsWith("/db/snapshots/") && path.endsWith("/restore");
+        return uploadSession || pageDelta || snapshotRestore;
+    }
+
+    private static final class ReleasingListener implements AsyncListener {
+        private final AdmissionControl.Permit permit;
+
+        ReleasingListener(AdmissionControl.Permit permit) {
+            this.permit = permit;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Un nuevo ciclo asíncrono descarta los listeners: volver a registrarse para no perder la liberación
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -1,5 +1,20 @@
 package com.worldbuilding.core.controller;
 
+import com.worldbuilding.core.jfr.ProjectExportEvent;
+import com.worldbuilding.core.jfr.ProjectImportEvent;
+import com.worldbuilding.core.service.AdmissionControl;
+import com.worldbuilding.core.service.ChunkedUploadService;
+import com.worldbuilding.core.service.ContentStore;
+import com.worldbuilding.core.service.FileDownloadService;
+import com.worldbuilding.core.service.ImportJobEvents;
+import com.worldbuilding.core.service.ImportJobStore;
+import com.worldbuilding.core.service.ImportJobStore.ImportJobState;
+import com.worldbuilding.core.service.PageDeltaService;
+import com.worldbuilding.core.service.ProjectArchiveService;
+import com.worldbuilding.core.service.ProjectCatalog;
+import com.worldbuilding.core.service.ProjectQueryService;
+import com.worldbuilding.core.service.SearchIndexService;
+import com.worldbuilding.core.service.SnapshotService;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
@@ -8,39 +23,46 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.Normalizer;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
-import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
+
+import static com.worldbuilding.core.service.ProjectNames.SQLITE_EXTENSION;
+import static com.worldbuilding.core.service.ProjectNames.sanitizeProjectName;
 
 @RestController
 @RequestMapping("/db")
 @CrossOrigin(origins = "*")
 public class DatabaseController {
 
-    private static final String BACKUPS_DIR = "backup";
-    private static final Pattern DIACRITICS_PATTERN = Pattern.compile("\\p{M}+");
-    private static final String SQLITE_EXTENSION = ".sqlite";
+    private static final String UPLOAD_OFFSET_HEADER = "Upload-Offset";
     private final Executor dbTaskExecutor;
-    private final ConcurrentMap<String, ImportJobState> importJobs = new ConcurrentHashMap<>();
+    private final ProjectCatalog projectCatalog;
+    private final ProjectArchiveService projectArchiveService;
+    private final FileDownloadService fileDownloadService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final PageDeltaService pageDeltaService;
+    private final ContentStore contentStore;
+    private final SnapshotService snapshotService;
+    private final ImportJobStore importJobStore;
+    private final ImportJobEvents importJobEvents;
+    private final AdmissionControl admissionControl;
+    private final ProjectQueryService projectQueryService;
+    private final SearchIndexService searchIndexService;
 
     public static class ImportJobResponse {
         public String jobId;
@@ -54,63 +76,14 @@ public class DatabaseController {
         }
     }
 
-    public static class ImportJobState {
-        public String jobId;
-        public String projectName;
-        public String status;
-        public int progress;
-        public String message;
-        public String error;
-
-        public ImportJobState(String jobId, String projectName) {
-            this.jobId = jobId;
-            this.projectName = projectName;
-            this.status = "queued";
-            this.progress = 0;
-            this.message = "Importación en cola.";
-            this.error = null;
-        }
-    }
-
-    private List<Path> getCandidateBackupDirs() {
-        List<Path> candidates = new ArrayList<>();
-        candidates.add(Paths.get(BACKUPS_DIR));
-        return candidates;
-    }
 
     private Path resolvePrimaryProjectsDir() {
-        List<Path> candidates = getCandidateBackupDirs();
-        Path selected = null;
-
-        for (Path candidate : candidates) {
-            if (Files.exists(candidate) && Files.isDirectory(candidate)) {
-                selected = candidate;
-                break;
-            }
-        }
-
-        if (selected == null) {
-            selected = candidates.get(0);
-        }
-
-        return selected;
+        return projectCatalog.getBackupDir();
     }
 
     private Path resolveDatabasePathForRead(String projectName) {
         String canonicalProjectName = sanitizeProjectName(projectName);
-        Path resolvedPath = null;
-
-        for (Path dir : getCandidateBackupDirs()) {
-            Path candidate = dir.resolve(canonicalProjectName + SQLITE_EXTENSION).normalize();
-            if (Files.exists(candidate)) {
-                resolvedPath = candidate;
-                break;
-            }
-        }
-
-        if (resolvedPath == null) {
-            resolvedPath = findDatabasePathByNormalizedName(canonicalProjectName);
-        }
+        Path resolvedPath = projectCatalog.find(canonicalProjectName);
 
         if (resolvedPath == null) {
             resolvedPath = resolvePrimaryProjectsDir().resolve(canonicalProjectName + SQLITE_EXTENSION).normalize();
@@ -119,271 +92,351 @@ public class DatabaseController {
         return resolvedPath;
     }
 
-    private String canonicalizeProjectName(String value) {
-        String safeValue = value == null ? "" : value;
-        return Normalizer.normalize(safeValue, Normalizer.Form.NFC).trim();
+    private ResponseEntity<StreamingResponseBody> buildDownloadResponse(String projectName, HttpHeaders requestHeaders) {
+        ResponseEntity<StreamingResponseBody> response;
+        try {
+            Path filePath = resolveDatabasePathForRead(projectName);
+            String ref = ContentStore.databaseRef(sanitizeProjectName(projectName));
+            response = fileDownloadService.serveStored(filePath, ref, filePath.getFileName().toString(),
+                    MediaType.APPLICATION_OCTET_STREAM, requestHeaders);
+        } catch (IOException e) {
+            response = ResponseEntity.internalServerError().build();
+        }
+        return response;
+    }
+
+    public DatabaseController(@Qualifier("dbTaskExecutor") Executor dbTaskExecutor, ProjectCatalog projectCatalog,
+                              ProjectArchiveService projectArchiveService, FileDownloadService fileDownloadService,
+                              ChunkedUploadService chunkedUploadService, PageDeltaService pageDeltaService,
+                              ContentStore contentStore, SnapshotService snapshotService, ImportJobStore importJobStore,
+                              ImportJobEvents importJobEvents, AdmissionControl admissionControl,
+                              ProjectQueryService projectQueryService, SearchIndexService searchIndexService) {
+        this.dbTaskExecutor = dbTaskExecutor;
+        this.projectCatalog = projectCatalog;
+        this.projectArchiveService = projectArchiveService;
+        this.fileDownloadService = fileDownloadService;
+        this.chunkedUploadService = chunkedUploadService;
+        this.pageDeltaService = pageDeltaService;
+        this.contentStore = contentStore;
+        this.snapshotService = snapshotService;
+        this.importJobStore = importJobStore;
+        this.importJobEvents = importJobEvents;
+        this.admissionControl = admissionControl;
+        this.projectQueryService = projectQueryService;
+        this.searchIndexService = searchIndexService;
+
+        // Reanudar las importaciones que un reinicio dejó a medias
+        Set<Path> resumedZips = new HashSet<>();
+        for (ImportJobStore.PendingJob job : importJobStore.drainInterruptedJobs()) {
+            resumedZips.add(job.spooledZip.toAbsolutePath());
+            try {
+                submitImportJob(job.jobId, job.projectName, job.spooledZip);
+            } catch (RejectedExecutionException e) {
+                importJobStore.transition(job.jobId, ImportJobStore.STATUS_FAILED, 100, "Falló la importación.", "No se pudo reanudar la importación.");
+                deleteQuietly(job.spooledZip);
+            }
+        }
+        deleteOrphanSpools(resumedZips);
     }
 
-    private String normalizeProjectLookupKey(String value) {
-        String normalized = sanitizeProjectName(value);
-        return normalized.trim().toLowerCase(Locale.ROOT);
+    /**
+     * Borra los ZIP de importación de backup/.uploads que no pertenecen a ningún trabajo reanudado.
+     */
+    private void deleteOrphanSpools(Set<Path> resumedZips) {
+        Path uploadsDir = resolvePrimaryProjectsDir().resolve(ChunkedUploadService.UPLOADS_DIR);
+        if (Files.isDirectory(uploadsDir)) {
+            try (DirectoryStream<Path> spools = Files.newDirectoryStream(uploadsDir, "import-*.zip")) {
+                for (Path spool : spools) {
+                    if (!resumedZips.contains(spool.toAbsolutePath())) {
+                        deleteQuietly(spool);
+                    }
+                }
+            } catch (IOException ignored) {
+                // Se reintentará en el próximo arranque.
+            }
+        }
     }
 
-    private String foldProjectLookupKey(String value) {
-        String normalized = sanitizeProjectName(value);
-        String decomposed = Normalizer.normalize(normalized, Normalizer.Form.NFD);
-        String withoutDiacritics = DIACRITICS_PATTERN.matcher(decomposed).replaceAll("");
-        return Normalizer.normalize(withoutDiacritics, Normalizer.Form.NFC)
-                .trim()
-                .toLowerCase(Locale.ROOT);
+    @GetMapping("/list")
+    public List<String> listDatabases() {
+        return projectCatalog.listProjectNames();
     }
 
-    private boolean looksLikeMojibake(String value) {
-        String safeValue = value == null ? "" : value;
-        return safeValue.contains("Ã") || safeValue.contains("Â") || safeValue.contains("Ð") || safeValue.contains("Ñ") || safeValue.contains("â");
+    @GetMapping("/download/{projectName}")
+    public ResponseEntity<StreamingResponseBody> downloadDatabase(@PathVariable String projectName, @RequestHeader HttpHeaders requestHeaders) {
+        return buildDownloadResponse(projectName, requestHeaders);
     }
 
-    private String repairMojibake(String value) {
-        String safeValue = value == null ? "" : value;
-        String repaired = new String(safeValue.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
-        return repaired;
+    @GetMapping("/download")
+    public ResponseEntity<StreamingResponseBody> downloadDatabaseByQuery(@RequestParam("projectName") String projectName,
+                                                                        @RequestHeader HttpHeaders requestHeaders) {
+        return buildDownloadResponse(projectName, requestHeaders);
     }
 
-    private String sanitizeProjectName(String value) {
-        String canonicalName = canonicalizeProjectName(value);
-        String sanitizedName = canonicalName;
+    @PostMapping("/upload/{projectName}")
+    public ResponseEntity<String> uploadDatabase(@PathVariable String projectName, @RequestParam("file") MultipartFile file) {
+        ResponseEntity<String> response;
 
-        if (looksLikeMojibake(canonicalName)) {
-            String repaired = repairMojibake(canonicalName);
-            String canonicalRepaired = canonicalizeProjectName(repaired);
-            if (!canonicalRepaired.isEmpty()) {
-                sanitizedName = canonicalRepaired;
+        if (file.isEmpty()) {
+            response = ResponseEntity.badRequest().body("File is empty");
+        } else {
+            try {
+                String canonicalProjectName = sanitizeProjectName(projectName);
+                Path projectsDir = resolvePrimaryProjectsDir();
+                if (!Files.exists(projectsDir)) {
+                    Files.createDirectories(projectsDir);
+                }
+                Path targetPath = projectsDir.resolve(canonicalProjectName + SQLITE_EXTENSION);
+                Lock lock = projectCatalog.writeLock(canonicalProjectName);
+                lock.lock();
+                try (InputStream in = file.getInputStream()) {
+                    contentStore.store(ContentStore.databaseRef(canonicalProjectName), in, targetPath, false);
+                    projectCatalog.register(targetPath);
+                } finally {
+                    lock.unlock();
+                }
+                snapshotService.capture(canonicalProjectName);
+                searchIndexService.scheduleDatabase(canonicalProjectName, targetPath);
+                response = ResponseEntity.ok("Database '" + canonicalProjectName + "' uploaded successfully");
+            } catch (IOException e) {
+                response = ResponseEntity.internalServerError().body("Failed to upload: " + e.getMessage());
             }
         }
+        return response;
+    }
 
-        return sanitizedName;
+    @PostMapping("/upload")
+    public ResponseEntity<String> uploadDatabaseByQuery(
+            @RequestParam("projectName") String projectName,
+            @RequestParam("file") MultipartFile file
+    ) {
+        return uploadDatabase(projectName, file);
     }
 
-    private Path repairBackupFilenameIfNeeded(Path sqliteFile) {
-        Path resolvedPath = sqliteFile;
+    @PostMapping("/upload-sessions")
+    public ResponseEntity<ChunkedUploadService.UploadSession> createUploadSession(
+            @RequestParam("projectName") String projectName,
+            @RequestParam("size") long size) {
+        ResponseEntity<ChunkedUploadService.UploadSession> response;
+        try {
+            ChunkedUploadService.UploadSession session = chunkedUploadService.createSession(projectName, size);
+            response = ResponseEntity.status(201).body(session);
+        } catch (IllegalArgumentException e) {
+            response = ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            response = ResponseEntity.internalServerError().build();
+        }
+        return response;
+    }
 
-        if (sqliteFile != null && sqliteFile.getFileName() != null) {
-            String filename = sqliteFile.getFileName().toString();
-            if (filename.endsWith(SQLITE_EXTENSION)) {
-                String basename = filename.substring(0, filename.length() - SQLITE_EXTENSION.length());
-                String sanitizedBasename = sanitizeProjectName(basename);
-                boolean shouldRename = looksLikeMojibake(basename) && !sanitizedBasename.equals(basename);
+    @GetMapping("/upload-sessions/{sessionId}")
+    public ResponseEntity<ChunkedUploadService.UploadSession> getUploadSession(@PathVariable String sessionId) {
+        ResponseEntity<ChunkedUploadService.UploadSession> response;
+        ChunkedUploadService.UploadSession session = chunkedUploadService.getSession(sessionId);
 
-                if (shouldRename) {
-                    Path parentDir = sqliteFile.getParent();
-                    if (parentDir != null) {
-                        Path repairedPath = parentDir.resolve(sanitizedBasename + SQLITE_EXTENSION).normalize();
-                        boolean targetAlreadyExists = Files.exists(repairedPath);
-                        if (!targetAlreadyExists) {
-                            try {
-                                resolvedPath = Files.move(sqliteFile, repairedPath);
-                            } catch (IOException ignored) {
-                                resolvedPath = sqliteFile;
-                            }
-                        } else {
-                            resolvedPath = repairedPath;
-                        }
-                    }
-                }
-            }
+        if (session == null) {
+            response = ResponseEntity.notFound().build();
+        } else {
+            response = ResponseEntity.ok().header(UPLOAD_OFFSET_HEADER, Long.toString(session.offset)).body(session);
         }
-
-        return resolvedPath;
+        return response;
     }
 
-    private Path findDatabasePathByNormalizedName(String projectName) {
-        Path resolvedPath = null;
-        String targetKey = normalizeProjectLookupKey(projectName);
-        String targetFoldedKey = foldProjectLookupKey(projectName);
-
-        for (Path dir : getCandidateBackupDirs()) {
-            if (Files.exists(dir) && Files.isDirectory(dir)) {
-                try (var stream = Files.list(dir)) {
-                    List<Path> sqliteFiles = stream
-                            .filter(p -> p.toString().endsWith(SQLITE_EXTENSION))
-                            .collect(Collectors.toList());
-
-                    for (Path scannedFile : sqliteFiles) {
-                        Path sqliteFile = repairBackupFilenameIfNeeded(scannedFile);
-                        String filename = sqliteFile.getFileName().toString();
-                        String basename = filename.substring(0, filename.length() - SQLITE_EXTENSION.length());
-                        String candidateKey = normalizeProjectLookupKey(basename);
-                        String candidateFoldedKey = foldProjectLookupKey(basename);
-                        if (candidateKey.equals(targetKey) || candidateFoldedKey.equals(targetFoldedKey)) {
-                            resolvedPath = sqliteFile.normalize();
-                            break;
-                        }
-                    }
-                } catch (IOException ignored) {
-                    // Si no se puede inspeccionar este directorio, probar el siguiente.
-                }
-            }
+    @PutMapping("/upload-sessions/{sessionId}")
+    public ResponseEntity<ChunkedUploadService.UploadSession> uploadChunk(
+            @PathVariable String sessionId,
+            @RequestParam("offset") long offset,
+            InputStream body) {
+        ResponseEntity<ChunkedUploadService.UploadSession> response;
+        ChunkedUploadService.UploadSession session = chunkedUploadService.getSession(sessionId);
 
-            if (resolvedPath != null) {
-                break;
+        if (session == null) {
+            response = ResponseEntity.notFound().build();
+        } else {
+            try {
+                long newOffset = chunkedUploadService.writeChunk(session, offset, body);
+                response = ResponseEntity.ok().header(UPLOAD_OFFSET_HEADER, Long.toString(newOffset)).body(session);
+            } catch (ChunkedUploadService.UploadConflictException e) {
+                response = ResponseEntity.status(409).header(UPLOAD_OFFSET_HEADER, Long.toString(e.getExpectedOffset())).body(session);
+            } catch (IOException e) {
+                response = ResponseEntity.internalServerError().header(UPLOAD_OFFSET_HEADER, Long.toString(session.offset)).build();
             }
         }
-
-        return resolvedPath;
+        return response;
     }
 
-    private ResponseEntity<Resource> buildDownloadResponse(String projectName) {
-        ResponseEntity<Resource> response;
-        try {
-            Path filePath = resolveDatabasePathForRead(projectName);
-            @SuppressWarnings("null")
-            Resource resource = (Resource) new UrlResource(filePath.toUri());
+    @PostMapping("/upload-sessions/{sessionId}/commit")
+    public ResponseEntity<String> commitUploadSession(@PathVariable String sessionId) {
+        ResponseEntity<String> response;
+        ChunkedUploadService.UploadSession session = chunkedUploadService.getSession(sessionId);
 
-            if (resource.exists()) {
-                @SuppressWarnings("null")
-                MediaType mediaType = (MediaType) MediaType.APPLICATION_OCTET_STREAM;
-                response = ResponseEntity.ok()
-                        .contentType(mediaType)
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"")
-                        .body(resource);
-            } else {
-                response = ResponseEntity.notFound().build();
+        if (session == null) {
+            response = ResponseEntity.notFound().build();
+        } else {
+            try {
+                Path committed = chunkedUploadService.commit(session);
+                indexInBackground(session.projectName, committed);
+                response = ResponseEntity.ok("Database '" + session.projectName + "' uploaded successfully");
+            } catch (ChunkedUploadService.UploadConflictException e) {
+                response = ResponseEntity.status(409).header(UPLOAD_OFFSET_HEADER, Long.toString(e.getExpectedOffset())).body(e.getMessage());
+            } catch (IOException e) {
+                response = ResponseEntity.internalServerError().body("Failed to upload: " + e.getMessage());
             }
-        } catch (MalformedURLException e) {
-            response = ResponseEntity.badRequest().build();
         }
         return response;
     }
 
-    public DatabaseController(@Qualifier("dbTaskExecutor") Executor dbTaskExecutor) {
-        this.dbTaskExecutor = dbTaskExecutor;
-        Path dir = resolvePrimaryProjectsDir();
-        if (!Files.exists(dir)) {
+    @DeleteMapping("/upload-sessions/{sessionId}")
+    public ResponseEntity<Void> abortUploadSession(@PathVariable String sessionId) {
+        ResponseEntity<Void> response;
+        ChunkedUploadService.UploadSession session = chunkedUploadService.getSession(sessionId);
+
+        if (session == null) {
+            response = ResponseEntity.notFound().build();
+        } else {
             try {
-                Files.createDirectories(dir);
-            } catch (IOException ignored) {
-                // Best-effort; endpoints will report concrete IO errors.
+                chunkedUploadService.abort(session);
+                response = ResponseEntity.noContent().build();
+            } catch (IOException e) {
+                response = ResponseEntity.internalServerError().build();
             }
         }
+        return response;
     }
 
-    @GetMapping("/list")
-    public List<String> listDatabases() throws IOException {
-        List<Path> scannedFiles = new ArrayList<>();
-
-        for (Path dir : getCandidateBackupDirs()) {
-            if (Files.exists(dir) && Files.isDirectory(dir)) {
-                try (var stream = Files.list(dir)) {
-                    scannedFiles.addAll(
-                            stream
-                                    .filter(p -> p.toString().endsWith(SQLITE_EXTENSION))
-                                    .collect(Collectors.toList())
-                    );
-                }
-            }
-        }
+    @GetMapping("/pages/{projectName}/manifest")
+    public ResponseEntity<PageDeltaService.PageManifest> getPageManifest(@PathVariable String projectName) {
+        ResponseEntity<PageDeltaService.PageManifest> response;
+        Path dbPath = resolveDatabasePathForRead(projectName);
 
-        Map<String, String> normalizedNames = new LinkedHashMap<>();
-        for (Path rawScannedFile : scannedFiles) {
-            Path scannedFile = repairBackupFilenameIfNeeded(rawScannedFile);
-            String filename = scannedFile.getFileName().toString();
-            String basename = filename.substring(0, filename.length() - SQLITE_EXTENSION.length());
-            String canonicalName = sanitizeProjectName(basename);
-            String lookupKey = normalizeProjectLookupKey(canonicalName);
-            normalizedNames.putIfAbsent(lookupKey, canonicalName);
+        if (!Files.exists(dbPath)) {
+            response = ResponseEntity.notFound().build();
+        } else {
+            try {
+                response = ResponseEntity.ok(pageDeltaService.getManifest(dbPath));
+            } catch (IOException e) {
+                response = ResponseEntity.internalServerError().build();
+            }
         }
+        return response;
+    }
 
-        List<String> databases = new ArrayList<>(normalizedNames.values());
-        databases.sort(String.CASE_INSENSITIVE_ORDER);
+    @PostMapping("/pages/{projectName}/delta")
+    public ResponseEntity<String> uploadPageDelta(
+            @PathVariable String projectName,
+            @RequestParam("baseSha256") String baseSha256,
+            @RequestParam("pageSize") int pageSize,
+            @RequestParam("size") long size,
+            @RequestParam("sha256") String sha256,
+            InputStream body) {
+        ResponseEntity<String> response;
+        Path dbPath = resolveDatabasePathForRead(projectName);
 
-        return databases;
+        if (!Files.exists(dbPath)) {
+            response = ResponseEntity.notFound().build();
+        } else {
+            try {
+                String canonicalProjectName = sanitizeProjectName(projectName);
+                pageDeltaService.applyDelta(canonicalProjectName, dbPath, baseSha256, pageSize, size, sha256, body);
+                // applyDelta ya registra la nueva versión en el almacén: no hace falta volver a trocear el archivo
+                // con contentStore.index; solo se toma la instantánea y se actualiza el índice de búsqueda
+                snapshotService.capture(canonicalProjectName);
+                searchIndexService.scheduleDatabase(canonicalProjectName, dbPath);
+                response = ResponseEntity.ok("Database '" + canonicalProjectName + "' patched successfully");
+            } catch (PageDeltaService.DeltaRejectedException e) {
+                response = ResponseEntity.status(412).body(e.getMessage());
+            } catch (IOException e) {
+                response = ResponseEntity.internalServerError().body("Failed to patch: " + e.getMessage());
+            }
+        }
+        return response;
     }
 
-    @GetMapping("/download/{projectName}")
-    public ResponseEntity<Resource> downloadDatabase(@PathVariable String projectName) {
-        return buildDownloadResponse(projectName);
+    @GetMapping("/snapshots/{projectName}")
+    public List<SnapshotService.SnapshotInfo> listSnapshots(@PathVariable String projectName) {
+        return snapshotService.list(sanitizeProjectName(projectName));
     }
 
-    @GetMapping("/download")
-    public ResponseEntity<Resource> downloadDatabaseByQuery(@RequestParam("projectName") String projectName) {
-        return buildDownloadResponse(projectName);
+    @PostMapping("/snapshots/{projectName}/{snapshotId}/restore")
+    public ResponseEntity<String> restoreSnapshot(@PathVariable String projectName, @PathVariable String snapshotId) {
+        ResponseEntity<String> response;
+        String canonicalProjectName = sanitizeProjectName(projectName);
+
+        try {
+            Path targetPath = resolvePrimaryProjectsDir().resolve(canonicalProjectName + SQLITE_EXTENSION);
+            if (snapshotService.restore(canonicalProjectName, snapshotId, targetPath)) {
+                projectCatalog.register(targetPath);
+                searchIndexService.scheduleDatabase(canonicalProjectName, targetPath);
+                response = ResponseEntity.ok("Database '" + canonicalProjectName + "' restored to snapshot " + snapshotId);
+            } else {
+                response = ResponseEntity.notFound().build();
+            }
+        } catch (IOException e) {
+            response = ResponseEntity.internalServerError().body("Failed to restore: " + e.getMessage());
+        }
+        return response;
     }
 
-    @PostMapping("/upload/{projectName}")
-    public ResponseEntity<String> uploadDatabase(@PathVariable String projectName, @RequestParam("file") MultipartFile file) {
-        ResponseEntity<String> response;
+    @PostMapping(value = "/query/{projectName}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> queryProject(@PathVariable String projectName,
+                                                              @RequestBody ProjectQueryService.QueryRequest request) {
+        ResponseEntity<StreamingResponseBody> response;
+        Path dbPath = resolveDatabasePathForRead(projectName);
 
-        if (file.isEmpty()) {
-            response = ResponseEntity.badRequest().body("File is empty");
+        if (!Files.exists(dbPath)) {
+            response = ResponseEntity.notFound().build();
         } else {
             try {
-                String canonicalProjectName = sanitizeProjectName(projectName);
-                Path projectsDir = resolvePrimaryProjectsDir();
-                if (!Files.exists(projectsDir)) {
-                    Files.createDirectories(projectsDir);
-                }
-                Path targetPath = projectsDir.resolve(canonicalProjectName + SQLITE_EXTENSION);
-                Files.copy(file.getInputStream(), targetPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-                response = ResponseEntity.ok("Database '" + canonicalProjectName + "' uploaded successfully");
-            } catch (IOException e) {
-                response = ResponseEntity.internalServerError().body("Failed to upload: " + e.getMessage());
+                ProjectQueryService.validate(request.sql);
+                // Las filas se escriben en la respuesta según las devuelve SQLite
+                StreamingResponseBody body = outputStream -> {
+                    try {
+                        projectQueryService.execute(sanitizeProjectName(projectName), dbPath, request, outputStream);
+                    } catch (ProjectQueryService.QueryRejectedException e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                };
+                response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+            } catch (ProjectQueryService.QueryRejectedException e) {
+                response = ResponseEntity.badRequest().build();
             }
         }
         return response;
     }
 
-    @PostMapping("/upload")
-    public ResponseEntity<String> uploadDatabaseByQuery(
-            @RequestParam("projectName") String projectName,
-            @RequestParam("file") MultipartFile file
-    ) {
-        return uploadDatabase(projectName, file);
-    }
-
     @GetMapping("/export/{projectName}")
-    public ResponseEntity<Resource> exportProjectZip(@PathVariable String projectName) {
-        ResponseEntity<Resource> response;
+    public ResponseEntity<StreamingResponseBody> exportProjectZip(@PathVariable String projectName) {
+        ResponseEntity<StreamingResponseBody> response;
         try {
             Path dbPath = resolveDatabasePathForRead(projectName);
             if (!Files.exists(dbPath)) {
                 response = ResponseEntity.notFound().build();
             } else {
-                Path zipPath = Files.createTempFile(projectName + "_backup_", ".zip");
-
-                try (java.util.zip.ZipOutputStream zos = new java.util.zip.ZipOutputStream(Files.newOutputStream(zipPath))) {
-                    // 1. Agregar el archivo de base de datos
-                    java.util.zip.ZipEntry dbEntry = new java.util.zip.ZipEntry(projectName + ".sqlite");
-                    zos.putNextEntry(dbEntry);
-                    Files.copy(dbPath, zos);
-                    zos.closeEntry();
-
-                    // 2. Buscar assets asociados al proyecto en maps_assets/ y agregarlos al ZIP
-                    Path assetsDir = Paths.get("maps_assets");
-                    if (Files.exists(assetsDir) && Files.isDirectory(assetsDir)) {
-                        final String prefix = projectName + "_";
-                        Files.list(assetsDir)
-                                .filter(p -> p.getFileName().toString().startsWith(prefix))
-                                .forEach(p -> {
-                                    try {
-                                        String entryName = "assets/" + p.getFileName().toString();
-                                        java.util.zip.ZipEntry assetEntry = new java.util.zip.ZipEntry(entryName);
-                                        zos.putNextEntry(assetEntry);
-                                        Files.copy(p, zos);
-                                        zos.closeEntry();
-                                    } catch (IOException ex) {
-                                        // ignorar fallos individuales de copia de assets
-                                    }
-                                });
-                    }
-                }
-
-                Resource resource = new UrlResource(zipPath.toUri());
+                ProjectExportEvent event = new ProjectExportEvent();
+                event.begin();
+                long scanStart = System.nanoTime();
+                List<Path> assets = projectArchiveService.findProjectAssets(projectName);
+                event.scanDuration = System.nanoTime() - scanStart;
                 MediaType mediaType = MediaType.APPLICATION_OCTET_STREAM;
 
+                // El ZIP se comprime directamente sobre la respuesta: sin archivo temporal ni espera inicial.
+                // El evento abarca desde la búsqueda de assets hasta el último byte enviado.
+                StreamingResponseBody body = outputStream -> {
+                    long streamStart = System.nanoTime();
+                    try {
+                        event.bytesWritten = projectArchiveService.writeProjectArchive(projectName, dbPath, assets, outputStream);
+                    } finally {
+                        event.streamDuration = System.nanoTime() - streamStart;
+                        event.projectName = projectName;
+                        event.entries = assets.size() + 1;
+                        event.commit();
+                    }
+                };
+
                 response = ResponseEntity.ok()
                         .contentType(mediaType)
                         .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + projectName + ".zip\"")
-                        .body(resource);
+                        .body(body);
             }
 
         } catch (IOException e) {
@@ -415,18 +468,28 @@ public class DatabaseController {
                     java.util.zip.ZipEntry entry;
                     while ((entry = zis.getNextEntry()) != null) {
                         String name = entry.getName();
-                        if (name.endsWith(".sqlite")) {
-                            Files.copy(zis, finalDbPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-                        } else if (name.startsWith("assets/")) {
+                        if (!entry.isDirectory() && name.endsWith(".sqlite")) {
+                            Lock lock = projectCatalog.writeLock(canonicalProjectName);
+                            lock.lock();
+                            try {
+                                contentStore.store(ContentStore.databaseRef(canonicalProjectName), zis, finalDbPath, false);
+                            } finally {
+                                lock.unlock();
+                            }
+                        } else if (!entry.isDirectory() && name.startsWith("assets/")) {
                             String fileName = name.substring("assets/".length());
                             Path targetAssetPath = assetsPath.resolve(fileName);
-                            Files.copy(zis, targetAssetPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                            contentStore.store(ContentStore.assetRef(fileName), zis, targetAssetPath,
+                                    ProjectArchiveService.isAlreadyCompressed(fileName));
                         }
                         zis.closeEntry();
                     }
                 }
 
                 if (Files.exists(finalDbPath)) {
+                    projectCatalog.register(finalDbPath);
+                    snapshotService.capture(canonicalProjectName);
+                    searchIndexService.scheduleDatabase(canonicalProjectName, finalDbPath);
                     Resource resource = new UrlResource(finalDbPath.toUri());
                     response = ResponseEntity.ok()
                             .contentType(MediaType.APPLICATION_OCTET_STREAM)
@@ -454,19 +517,28 @@ public class DatabaseController {
                     new ImportJobResponse(null, "error", "El archivo ZIP está vacío.")
             );
         } else {
+            String jobId = UUID.randomUUID().toString();
+            Path spooledZip = null;
             try {
-                byte[] zipBytes = file.getBytes();
-                String jobId = UUID.randomUUID().toString();
-                String canonicalProjectName = sanitizeProjectName(projectName);
-                ImportJobState state = new ImportJobState(jobId, canonicalProjectName);
-                importJobs.put(jobId, state);
+                // Volcar la subida a disco (dentro de backup/ para que sobreviva a un reinicio)
+                // y que el trabajo en cola no retenga el ZIP en memoria
+                Path uploadsDir = resolvePrimaryProjectsDir().resolve(ChunkedUploadService.UPLOADS_DIR);
+                Files.createDirectories(uploadsDir);
+                spooledZip = uploadsDir.resolve("import-" + jobId + ".zip");
+                try (InputStream in = file.getInputStream()) {
+                    Files.copy(in, spooledZip, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                }
 
-                CompletableFuture.runAsync(() -> processImportJob(jobId, canonicalProjectName, zipBytes), dbTaskExecutor);
+                String canonicalProjectName = sanitizeProjectName(projectName);
+                importJobStore.create(jobId, canonicalProjectName, spooledZip);
+                submitImportJob(jobId, canonicalProjectName, spooledZip);
 
                 response = ResponseEntity.accepted().body(
                         new ImportJobResponse(jobId, "queued", "Importación iniciada en segundo plano.")
                 );
-            } catch (IOException e) {
+            } catch (IOException | RejectedExecutionException e) {
+                importJobStore.remove(jobId);
+                deleteQuietly(spooledZip);
                 response = ResponseEntity.internalServerError().body(
                         new ImportJobResponse(null, "error", "No se pudo leer el archivo ZIP.")
                 );
@@ -479,7 +551,7 @@ public class DatabaseController {
     @GetMapping("/import/status/{jobId}")
     public ResponseEntity<ImportJobState> getImportJobStatus(@PathVariable String jobId) {
         ResponseEntity<ImportJobState> response;
-        ImportJobState state = importJobs.get(jobId);
+        ImportJobState state = importJobStore.get(jobId);
 
         if (state == null) {
             response = ResponseEntity.notFound().build();
@@ -489,32 +561,61 @@ public class DatabaseController {
         return response;
     }
 
+    @GetMapping(value = "/import/events/{jobId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamImportJobEvents(@PathVariable String jobId) {
+        ResponseEntity<SseEmitter> response;
+        SseEmitter emitter = importJobEvents.subscribe(jobId);
+
+        if (emitter == null) {
+            response = ResponseEntity.notFound().build();
+        } else {
+            // Evitar que un proxy intermedio acumule los eventos antes de reenviarlos
+            response = ResponseEntity.ok()
+                    .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                    .header("X-Accel-Buffering", "no")
+                    .body(emitter);
+        }
+        return response;
+    }
+
     @GetMapping("/import/result/{jobId}")
-    public ResponseEntity<Resource> getImportJobResult(@PathVariable String jobId) {
-        ResponseEntity<Resource> response;
-        ImportJobState state = importJobs.get(jobId);
+    public ResponseEntity<StreamingResponseBody> getImportJobResult(@PathVariable String jobId, @RequestHeader HttpHeaders requestHeaders) {
+        ResponseEntity<StreamingResponseBody> response;
+        ImportJobState state = importJobStore.get(jobId);
 
         if (state == null) {
             response = ResponseEntity.notFound().build();
-        } else if (!"completed".equals(state.status)) {
+        } else if (!ImportJobStore.STATUS_COMPLETED.equals(state.status)) {
             response = ResponseEntity.status(202).build();
         } else {
-            response = buildDownloadResponse(state.projectName);
+            response = buildDownloadResponse(state.projectName, requestHeaders);
         }
 
         return response;
     }
 
-    private void processImportJob(String jobId, String projectName, byte[] zipBytes) {
-        ImportJobState state = importJobs.get(jobId);
-        if (state == null) {
+    private void submitImportJob(String jobId, String projectName, Path zipPath) {
+        CompletableFuture.runAsync(() -> processImportJob(jobId, projectName, zipPath), dbTaskExecutor);
+    }
+
+    // El permiso no se usa dentro del try: se retiene mientras dura el bloque y su cierre lo devuelve
+    @SuppressWarnings("try")
+    private void processImportJob(String jobId, String projectName, Path zipPath) {
+        if (importJobStore.get(jobId) == null) {
+            deleteQuietly(zipPath);
             return;
         }
 
-        try {
-            state.status = "running";
-            state.progress = 10;
-            state.message = "Preparando importación...";
+        ProjectImportEvent event = new ProjectImportEvent();
+        event.begin();
+        event.jobId = jobId;
+        long waitStart = System.nanoTime();
+
+        // El trabajo ya fue admitido al subirse: aquí espera turno en lugar de rechazarse
+        try (AdmissionControl.Permit permit = admissionControl.acquireBlocking(AdmissionControl.OperationClass.IMPORT,
+                AdmissionControl.estimateBytes(AdmissionControl.OperationClass.IMPORT, Files.size(zipPath)))) {
+            event.admissionWait = System.nanoTime() - waitStart;
+            importJobStore.transition(jobId, ImportJobStore.STATUS_RUNNING, 10, "Preparando importación...", null);
 
             Path projectsPath = resolvePrimaryProjectsDir();
             Path assetsPath = Paths.get("maps_assets");
@@ -527,60 +628,183 @@ public class DatabaseController {
 
             String canonicalProjectName = sanitizeProjectName(projectName);
             Path finalDbPath = projectsPath.resolve(canonicalProjectName + SQLITE_EXTENSION);
-            int totalEntries = countZipEntries(zipBytes);
-            int processedEntries = 0;
+            int totalEntries = countZipEntries(zipPath);
+            long totalBytes = Math.max(1L, Files.size(zipPath));
+            event.projectName = canonicalProjectName;
+            event.entries = totalEntries;
+            event.zipBytes = totalBytes;
 
-            state.progress = 20;
-            state.message = "Procesando contenido del ZIP...";
+            long newBytes = 0;
 
-            try (java.util.zip.ZipInputStream zis = new java.util.zip.ZipInputStream(new ByteArrayInputStream(zipBytes))) {
+            importJobStore.progress(jobId, 20, "Procesando contenido del ZIP (" + totalEntries + " entradas)...");
+
+            // El progreso se mide en bytes comprimidos leídos del ZIP, no en entradas procesadas
+            long extractStart = System.nanoTime();
+            try (CountingInputStream counter = new CountingInputStream(Files.newInputStream(zipPath));
+                 java.util.zip.ZipInputStream zis = new java.util.zip.ZipInputStream(new java.io.BufferedInputStream(counter))) {
                 java.util.zip.ZipEntry entry;
                 while ((entry = zis.getNextEntry()) != null) {
                     String name = entry.getName();
-                    if (name.endsWith(".sqlite")) {
-                        Files.copy(zis, finalDbPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                    ContentStore.StoreResult stored = null;
+                    if (entry.isDirectory()) {
+                        stored = null;
+                    } else if (name.endsWith(".sqlite")) {
+                        Lock lock = projectCatalog.writeLock(canonicalProjectName);
+                        lock.lock();
+                        try {
+                            stored = storeEntryWithProgress(zis, ContentStore.databaseRef(canonicalProjectName), finalDbPath,
+                                    false, counter, totalBytes, jobId);
+                        } finally {
+                            lock.unlock();
+                        }
                     } else if (name.startsWith("assets/")) {
                         String fileName = name.substring("assets/".length());
-                        Path targetAssetPath = assetsPath.resolve(fileName);
-                        Files.copy(zis, targetAssetPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                        stored = storeEntryWithProgress(zis, ContentStore.assetRef(fileName), assetsPath.resolve(fileName),
+                                ProjectArchiveService.isAlreadyCompressed(fileName), counter, totalBytes, jobId);
+                    }
+                    if (stored != null) {
+                        newBytes += stored.newBytes;
                     }
                     zis.closeEntry();
-
-                    processedEntries += 1;
-                    int progressWithinZip = totalEntries > 0
-                            ? Math.round((processedEntries * 70.0f) / totalEntries)
-                            : 70;
-                    state.progress = Math.min(95, 20 + progressWithinZip);
-                    state.message = "Importando archivos del respaldo...";
+                    updateImportProgress(jobId, counter.getCount(), totalBytes);
                 }
             }
+            event.extractDuration = System.nanoTime() - extractStart;
+            event.newBytes = newBytes;
 
             if (Files.exists(finalDbPath)) {
-                state.status = "completed";
-                state.progress = 100;
-                state.message = "Importación completada.";
-                state.error = null;
+                long registerStart = System.nanoTime();
+                projectCatalog.register(finalDbPath);
+                snapshotService.capture(canonicalProjectName);
+                searchIndexService.scheduleDatabase(canonicalProjectName, finalDbPath);
+                event.registerDuration = System.nanoTime() - registerStart;
+                event.succeeded = true;
+                importJobStore.transition(jobId, ImportJobStore.STATUS_COMPLETED, 100,
+                        "Importación completada (" + (newBytes / 1024) + " KB de datos nuevos).", null);
             } else {
-                state.status = "failed";
-                state.progress = 100;
-                state.message = "Falló la importación.";
-                state.error = "No se encontró un archivo .sqlite válido en el ZIP.";
+                importJobStore.transition(jobId, ImportJobStore.STATUS_FAILED, 100, "Falló la importación.",
+                        "No se encontró un archivo .sqlite válido en el ZIP.");
             }
         } catch (IOException e) {
-            state.status = "failed";
-            state.progress = 100;
-            state.message = "Falló la importación.";
-            state.error = e.getMessage();
+            importJobStore.transition(jobId, ImportJobStore.STATUS_FAILED, 100, "Falló la importación.", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            importJobStore.transition(jobId, ImportJobStore.STATUS_FAILED, 100, "Falló la importación.", "El servidor se está deteniendo.");
+        } finally {
+            event.commit();
+            deleteQuietly(zipPath);
+        }
+    }
+
+    /**
+     * Guarda la entrada en el almacén por contenido (solo se escriben los trozos nuevos)
+     * actualizando el progreso a medida que se consume el ZIP.
+     */
+    private ContentStore.StoreResult storeEntryWithProgress(InputStream in, String ref, Path target, boolean wholeFile,
+                                                            CountingInputStream counter, long totalBytes,
+                                                            String jobId) throws IOException {
+        InputStream progressStream = new java.io.FilterInputStream(in) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                updateImportProgress(jobId, counter.getCount(), totalBytes);
+                return read;
+            }
+
+            @Override
+            public void close() {
+                // El ZipInputStream lo cierra el llamante.
+            }
+        };
+        return contentStore.store(ref, progressStream, target, wholeFile);
+    }
+
+    /**
+     * Registra en el almacén por contenido un respaldo escrito por subida reanudable, fuera del hilo de la petición.
+     */
+    private void indexInBackground(String projectName, Path dbPath) {
+        try {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    Lock lock = projectCatalog.writeLock(projectName);
+                    lock.lock();
+                    try {
+                        contentStore.index(ContentStore.databaseRef(projectName), dbPath);
+                    } finally {
+                        lock.unlock();
+                    }
+                    snapshotService.capture(projectName);
+                    searchIndexService.scheduleDatabase(projectName, dbPath);
+                } catch (IOException ignored) {
+                    // El respaldo vivo ya está guardado; se indexará en la próxima escritura.
+                }
+            }, dbTaskExecutor);
+        } catch (RejectedExecutionException ignored) {
+            // Cola llena: se indexará en la próxima escritura.
+        }
+    }
+
+    private void updateImportProgress(String jobId, long processedBytes, long totalBytes) {
+        int progressWithinZip = Math.round((Math.min(processedBytes, totalBytes) * 70.0f) / totalBytes);
+        importJobStore.progress(jobId, Math.min(95, 20 + progressWithinZip), "Importando archivos del respaldo...");
+    }
+
+    /**
+     * Lee el número de entradas del directorio central del ZIP sin descomprimir su contenido.
+     */
+    private int countZipEntries(Path zipPath) throws IOException {
+        try (java.util.zip.ZipFile zipFile = new java.util.zip.ZipFile(zipPath.toFile())) {
+            return zipFile.size();
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path != null) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // Queda en backup/.uploads; deleteOrphanSpools lo borra en el próximo arranque.
+            }
         }
     }
 
-    private int countZipEntries(byte[] zipBytes) throws IOException {
-        int count = 0;
-        try (java.util.zip.ZipInputStream zis = new java.util.zip.ZipInputStream(new ByteArrayInputStream(zipBytes))) {
-            while (zis.getNextEntry() != null) {
+    /**
+     * Cuenta los bytes leídos del flujo subyacente (bytes comprimidos cuando envuelve un ZIP).
+     */
+    private static final class CountingInputStream extends java.io.FilterInputStream {
+        private volatile long count;
+
+        CountingInputStream(java.io.InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
                 count += 1;
             }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
         }
-        return count;
     }
 }
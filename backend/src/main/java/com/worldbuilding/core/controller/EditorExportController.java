@@ -1,5 +1,6 @@
 package com.worldbuilding.core.controller;
 
+import com.worldbuilding.core.jfr.PdfExportEvent;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -21,21 +22,30 @@ public class EditorExportController {
         if (htmlContent == null || htmlContent.trim().isEmpty()) {
             response = ResponseEntity.badRequest().build();
         } else {
+            PdfExportEvent event = new PdfExportEvent();
+            event.begin();
             try {
                 // 1. Limpiar e higienizar el HTML a XHTML bien formado usando jsoup
+                long phaseStart = System.nanoTime();
                 org.jsoup.nodes.Document doc = org.jsoup.Jsoup.parse(htmlContent);
                 doc.outputSettings().syntax(org.jsoup.nodes.Document.OutputSettings.Syntax.xml);
                 String xhtmlContent = doc.html();
+                long layoutStart = System.nanoTime();
+                event.parseDuration = layoutStart - phaseStart;
 
                 // 2. Generar el PDF usando Flying Saucer
                 ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
                 org.xhtmlrenderer.pdf.ITextRenderer renderer = new org.xhtmlrenderer.pdf.ITextRenderer();
                 renderer.setDocumentFromString(xhtmlContent);
                 renderer.layout();
+                long renderStart = System.nanoTime();
+                event.layoutDuration = renderStart - layoutStart;
                 renderer.createPDF(outputStream);
                 renderer.finishPDF();
+                event.renderDuration = System.nanoTime() - renderStart;
 
                 byte[] pdfBytes = outputStream.toByteArray();
+                event.pdfBytes = pdfBytes.length;
 
                 // 3. Devolver el archivo PDF como descarga
                 String filename = (title != null && !title.trim().isEmpty() ? title.replaceAll("[\\\\/:*?\"<>|]", "_") : "documento") + ".pdf";
@@ -48,6 +58,10 @@ public class EditorExportController {
 
             } catch (Exception e) {
                 response = ResponseEntity.internalServerError().build();
+            } finally {
+                // Los fallos también se registran: pdfBytes queda a 0 y las fases no alcanzadas también
+                event.htmlChars = htmlContent.length();
+                event.commit();
             }
         }
         return response;
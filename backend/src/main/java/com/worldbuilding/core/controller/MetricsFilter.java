@@ -0,0 +1,106 @@
+package com.worldbuilding.core.controller;
+
+import com.worldbuilding.core.service.RuntimeMetrics;
+import org.eclipse.jetty.server.Request;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Mide cada petición (latencia, estado, bytes) y la agrupa por el patrón de ruta de Spring MVC, no por la URL,
+ * para que /db/download/{projectName} sea una sola serie. Las respuestas asíncronas se miden al completarse.
+ */
+@Component("metricsFilter")
+public class MetricsFilter extends OncePerRequestFilter {
+
+    private static final String API_PREFIX = "/api/";
+    private static final String STATIC_ROUTE = "static";
+    private static final String UNMATCHED_ROUTE = "unmatched";
+
+    private final RuntimeMetrics runtimeMetrics;
+
+    public MetricsFilter(RuntimeMetrics runtimeMetrics) {
+        this.runtimeMetrics = runtimeMetrics;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new RecordingListener(request, response, start));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                record(request, response, start);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, HttpServletResponse response, long start) {
+        long elapsed = System.nanoTime() - start;
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String route;
+        if (pattern != null) {
+            route = pattern.toString();
+        } else {
+            String uri = request.getRequestURI();
+            route = uri != null && uri.startsWith(API_PREFIX) ? UNMATCHED_ROUTE : STATIC_ROUTE;
+        }
+        runtimeMetrics.record(route, request.getMethod(), response.getStatus(), elapsed,
+                request.getContentLengthLong(), bytesWritten(request));
+    }
+
+    /**
+     * Bytes realmente escritos en la conexión según Jetty (incluye respuestas en streaming sin Content-Length).
+     */
+    private static long bytesWritten(HttpServletRequest request) {
+        Request baseRequest = Request.getBaseRequest(request);
+        return baseRequest == null ? -1L : baseRequest.getHttpChannel().getBytesWritten();
+    }
+
+    private final class RecordingListener implements AsyncListener {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final long start;
+
+        RecordingListener(HttpServletRequest request, HttpServletResponse response, long start) {
+            this.request = request;
+            this.response = response;
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            record(request, response, start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // onComplete llega después y registra la petición
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            // onComplete llega después y registra la petición
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Un nuevo ciclo asíncrono descarta los listeners: volver a registrarse para no perder la medición
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
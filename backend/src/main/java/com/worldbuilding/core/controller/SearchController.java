@@ -0,0 +1,41 @@
+package com.worldbuilding.core.controller;
+
+import com.worldbuilding.core.service.SearchIndexService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Búsqueda de texto sobre las entidades y carpetas de todos los proyectos respaldados.
+ */
+@RestController
+@RequestMapping("/search")
+@CrossOrigin(origins = "*")
+public class SearchController {
+
+    private final SearchIndexService searchIndexService;
+
+    public SearchController(SearchIndexService searchIndexService) {
+        this.searchIndexService = searchIndexService;
+    }
+
+    @GetMapping
+    public ResponseEntity<SearchIndexService.SearchResult> search(
+            @RequestParam("q") String query,
+            @RequestParam(value = "projects", required = false) List<String> projects,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        ResponseEntity<SearchIndexService.SearchResult> response;
+
+        if (query.isBlank()) {
+            response = ResponseEntity.badRequest().build();
+        } else {
+            response = ResponseEntity.ok(searchIndexService.search(query, projects, limit));
+        }
+        return response;
+    }
+}
@@ -1,17 +1,17 @@
 package com.worldbuilding.core.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.worldbuilding.core.service.SearchIndexService;
+import com.worldbuilding.core.service.SyncPayloadArchiver;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -24,14 +24,16 @@ public class SyncController {
 
     private static final String BACKUPS_DIR = "backup";
     private static final String SAFE_NAME_PATTERN = "^[a-zA-Z0-9._-]+$";
-    private final ObjectMapper objectMapper;
+    private final SyncPayloadArchiver payloadArchiver;
+    private final SearchIndexService searchIndexService;
 
     private Path resolvePrimaryBackupDir() {
         return Paths.get(BACKUPS_DIR);
     }
 
-    public SyncController() {
-        this.objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    public SyncController(SyncPayloadArchiver payloadArchiver, SearchIndexService searchIndexService) {
+        this.payloadArchiver = payloadArchiver;
+        this.searchIndexService = searchIndexService;
         Path[] dirsToPrepare = new Path[]{
             resolvePrimaryBackupDir()
         };
@@ -47,7 +49,7 @@ public class SyncController {
     @PostMapping("/payload/{projectName}")
     public ResponseEntity<Map<String, Object>> archivePayload(
             @PathVariable String projectName,
-            @RequestBody Map<String, Object> payload
+            InputStream body
     ) {
         ResponseEntity<Map<String, Object>> response;
 
@@ -56,8 +58,11 @@ public class SyncController {
         } else {
             try {
                 Path filePath = resolvePrimaryBackupDir().resolve(projectName + ".sync.json").normalize();
-                objectMapper.writeValue(filePath.toFile(), payload);
+                payloadArchiver.archive(body, filePath);
+                searchIndexService.schedulePayload(projectName, filePath);
                 response = ResponseEntity.ok(buildResponse(true, "Payload archivado correctamente.", filePath.toString()));
+            } catch (SyncPayloadArchiver.InvalidPayloadException exception) {
+                response = ResponseEntity.badRequest().body(buildResponse(false, "Payload inválido: " + exception.getMessage(), null));
             } catch (IOException exception) {
                 response = ResponseEntity.internalServerError().body(buildResponse(false, "No se pudo archivar payload: " + exception.getMessage(), null));
             }
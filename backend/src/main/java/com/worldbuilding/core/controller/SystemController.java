@@ -1,11 +1,27 @@
 package com.worldbuilding.core.controller;
 
+import com.worldbuilding.core.service.AdmissionControl;
+import com.worldbuilding.core.service.FlightRecorderService;
+import com.worldbuilding.core.service.RuntimeMetrics;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Controlador REST para servicios del sistema.
@@ -14,6 +30,19 @@ import java.util.Map;
 @RequestMapping("/system")
 public class SystemController {
 
+    private static final Set<String> JFR_SETTINGS = Set.of("default", "profile");
+
+    private final AdmissionControl admissionControl;
+    private final RuntimeMetrics runtimeMetrics;
+    private final FlightRecorderService flightRecorderService;
+
+    public SystemController(AdmissionControl admissionControl, RuntimeMetrics runtimeMetrics,
+                            FlightRecorderService flightRecorderService) {
+        this.admissionControl = admissionControl;
+        this.runtimeMetrics = runtimeMetrics;
+        this.flightRecorderService = flightRecorderService;
+    }
+
     @GetMapping("/status")
     public Map<String, Object> getStatus() {
         Map<String, Object> status = new HashMap<>();
@@ -24,6 +53,77 @@ public class SystemController {
         return status;
     }
 
+    @GetMapping("/admission")
+    public Map<String, Object> getAdmission() {
+        return admissionControl.utilization();
+    }
+
+    /**
+     * Métricas de ejecución en formato de texto de Prometheus.
+     */
+    @GetMapping(value = "/metrics", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public String getMetrics() {
+        return runtimeMetrics.exportPrometheus();
+    }
+
+    @GetMapping("/jfr")
+    public Map<String, Object> getFlightRecording() {
+        return flightRecorderService.status();
+    }
+
+    /**
+     * Inicia una grabación de Flight Recorder en el servidor en marcha. Se detiene sola al cumplirse la duración
+     * (como máximo 30 minutos) y se descarga con POST /system/jfr/stop.
+     */
+    @PostMapping("/jfr/start")
+    public ResponseEntity<Map<String, Object>> startFlightRecording(
+            @RequestParam(defaultValue = "default") String settings,
+            @RequestParam(defaultValue = "300") long durationSeconds) {
+        ResponseEntity<Map<String, Object>> response;
+        if (!JFR_SETTINGS.contains(settings)) {
+            response = ResponseEntity.badRequest().build();
+        } else {
+            try {
+                response = ResponseEntity.ok(flightRecorderService.start(settings, Duration.ofSeconds(durationSeconds)));
+            } catch (FlightRecorderService.RecordingStateException e) {
+                Map<String, Object> error = new HashMap<>();
+                error.put("error", e.getMessage());
+                response = ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+            } catch (IOException | ParseException e) {
+                response = ResponseEntity.internalServerError().build();
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Para la grabación en curso (o recoge la ya terminada) y devuelve el archivo .jfr, que se borra tras enviarse.
+     */
+    @PostMapping("/jfr/stop")
+    public ResponseEntity<StreamingResponseBody> stopFlightRecording() {
+        ResponseEntity<StreamingResponseBody> response;
+        try {
+            Path recording = flightRecorderService.stop();
+            StreamingResponseBody body = outputStream -> {
+                try {
+                    Files.copy(recording, outputStream);
+                } finally {
+                    Files.deleteIfExists(recording);
+                }
+            };
+            response = ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .contentLength(Files.size(recording))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + recording.getFileName() + "\"")
+                    .body(body);
+        } catch (FlightRecorderService.RecordingStateException e) {
+            response = ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IOException e) {
+            response = ResponseEntity.internalServerError().build();
+        }
+        return response;
+    }
+
     @GetMapping("/ping")
     public String ping() {
         return "pong";
@@ -0,0 +1,39 @@
+package com.worldbuilding.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Compilación del manuscrito de la World Bible a un documento en disco.
+ */
+@Name("worldbuilding.BookCompile")
+@Label("Compilación de libro")
+@Category({"Worldbuilding", "Exportación"})
+@StackTrace(false)
+public class BookCompileEvent extends jdk.jfr.Event {
+
+    @Label("Proyecto")
+    public String projectName;
+
+    @Label("Formato")
+    public String format;
+
+    @Label("Secciones")
+    public int sections;
+
+    @Label("Bytes escritos")
+    @DataAmount
+    public long bytesWritten;
+
+    @Label("Composición")
+    @Timespan
+    public long buildDuration;
+
+    @Label("Escritura")
+    @Timespan
+    public long writeDuration;
+}
@@ -0,0 +1,36 @@
+package com.worldbuilding.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Compilación de los glifos de una lengua construida a un archivo de fuente.
+ */
+@Name("worldbuilding.FontCompile")
+@Label("Compilación de fuente")
+@Category({"Worldbuilding", "Exportación"})
+@StackTrace(false)
+public class FontCompileEvent extends jdk.jfr.Event {
+
+    @Label("Familia")
+    public String fontFamily;
+
+    @Label("Glifos")
+    public int glyphs;
+
+    @Label("Bytes escritos")
+    @DataAmount
+    public long bytesWritten;
+
+    @Label("Composición")
+    @Timespan
+    public long buildDuration;
+
+    @Label("Escritura")
+    @Timespan
+    public long writeDuration;
+}
@@ -0,0 +1,44 @@
+package com.worldbuilding.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Alta de una imagen de mapa: subida, descarga desde URL o lienzo en blanco.
+ */
+@Name("worldbuilding.MapAsset")
+@Label("Asset de mapa")
+@Category({"Worldbuilding", "Mapas"})
+@StackTrace(false)
+public class MapAssetEvent extends jdk.jfr.Event {
+
+    @Label("Proyecto")
+    public String projectName;
+
+    @Label("Operación")
+    public String operation;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Ancho")
+    public int width;
+
+    @Label("Alto")
+    public int height;
+
+    @Label("Almacenamiento")
+    @Timespan
+    public long storeDuration;
+
+    @Label("Imagen")
+    @Description("Lectura para obtener la resolución o codificación del lienzo en blanco")
+    @Timespan
+    public long imageDuration;
+}
@@ -0,0 +1,37 @@
+package com.worldbuilding.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Conversión de HTML del editor a PDF: limpieza con jsoup, maquetación y generación con Flying Saucer.
+ */
+@Name("worldbuilding.PdfExport")
+@Label("Exportación a PDF")
+@Category({"Worldbuilding", "Exportación"})
+@StackTrace(false)
+public class PdfExportEvent extends jdk.jfr.Event {
+
+    @Label("Caracteres de HTML")
+    public int htmlChars;
+
+    @Label("Bytes del PDF")
+    @DataAmount
+    public long pdfBytes;
+
+    @Label("Limpieza (jsoup)")
+    @Timespan
+    public long parseDuration;
+
+    @Label("Maquetación")
+    @Timespan
+    public long layoutDuration;
+
+    @Label("Generación del PDF")
+    @Timespan
+    public long renderDuration;
+}
@@ -0,0 +1,36 @@
+package com.worldbuilding.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Exportación de un proyecto como ZIP comprimido directamente sobre la respuesta.
+ */
+@Name("worldbuilding.ProjectExport")
+@Label("Exportación de proyecto")
+@Category({"Worldbuilding", "Proyectos"})
+@StackTrace(false)
+public class ProjectExportEvent extends jdk.jfr.Event {
+
+    @Label("Proyecto")
+    public String projectName;
+
+    @Label("Entradas")
+    public int entries;
+
+    @Label("Bytes escritos")
+    @DataAmount
+    public long bytesWritten;
+
+    @Label("Búsqueda de assets")
+    @Timespan
+    public long scanDuration;
+
+    @Label("Compresión y envío")
+    @Timespan
+    public long streamDuration;
+}
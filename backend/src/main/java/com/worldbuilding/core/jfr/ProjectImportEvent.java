@@ -0,0 +1,53 @@
+package com.worldbuilding.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Importación de un ZIP de proyecto en segundo plano, desde la espera de admisión hasta el registro del respaldo.
+ */
+@Name("worldbuilding.ProjectImport")
+@Label("Importación de proyecto")
+@Category({"Worldbuilding", "Proyectos"})
+@StackTrace(false)
+public class ProjectImportEvent extends jdk.jfr.Event {
+
+    @Label("Proyecto")
+    public String projectName;
+
+    @Label("Trabajo")
+    public String jobId;
+
+    @Label("Tamaño del ZIP")
+    @DataAmount
+    public long zipBytes;
+
+    @Label("Entradas")
+    public int entries;
+
+    @Label("Bytes nuevos")
+    @Description("Bytes escritos en el almacén por contenido (los trozos ya conocidos no cuentan)")
+    @DataAmount
+    public long newBytes;
+
+    @Label("Espera de admisión")
+    @Timespan
+    public long admissionWait;
+
+    @Label("Extracción")
+    @Timespan
+    public long extractDuration;
+
+    @Label("Registro")
+    @Description("Alta en el catálogo, instantánea y programación del índice de búsqueda")
+    @Timespan
+    public long registerDuration;
+
+    @Label("Completada")
+    public boolean succeeded;
+}
@@ -0,0 +1,279 @@
+package com.worldbuilding.core.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Control de admisión para las operaciones pesadas. Cada clase de operación tiene un presupuesto de bytes
+ * en vuelo (estimación de memoria) y de operaciones simultáneas (CPU). Una petición que no cabe espera en cola
+ * un tiempo acotado y, si el presupuesto sigue lleno, se rechaza para que el cliente reintente más tarde.
+ * Los límites se pueden ajustar con -Dworldbuilding.admission.&lt;clase&gt;.maxBytes / .maxConcurrent.
+ */
+@Service
+public class AdmissionControl {
+
+    private static final long MAX_QUEUE_WAIT_MS = 5_000;
+    private static final long MB = 1024L * 1024L;
+
+    private final Map<OperationClass, Budget> budgets = new EnumMap<>(OperationClass.class);
+
+    /**
+     * Clases de operación con presupuesto propio.
+     */
+    public enum OperationClass {
+        IMPORT("import", 4, 2),
+        EXPORT("export", 4, 0),
+        PDF("pdf", 4, -2),
+        MAP_UPLOAD("mapUpload", 4, 0),
+        QUERY("query", 8, 0);
+
+        public final String key;
+        final int heapDivisor;
+        final int concurrencyHint;
+
+        /**
+         * @param heapDivisor      fracción del heap máximo asignada (1/heapDivisor)
+         * @param concurrencyHint  concurrencia fija si es positiva, núcleos si es 0, núcleos/n si es -n
+         */
+        OperationClass(String key, int heapDivisor, int concurrencyHint) {
+            this.key = key;
+            this.heapDivisor = heapDivisor;
+            this.concurrencyHint = concurrencyHint;
+        }
+    }
+
+    /**
+     * Reserva concedida; al cerrarla se devuelve su parte del presupuesto.
+     */
+    public final class Permit implements AutoCloseable {
+        private final Budget budget;
+        private final long bytes;
+        private final long acquiredAt = System.nanoTime();
+        private boolean released;
+
+        Permit(Budget budget, long bytes) {
+            this.budget = budget;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            boolean release;
+            synchronized (this) {
+                release = !released;
+                released = true;
+            }
+            if (release) {
+                budget.release(bytes, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acquiredAt));
+            }
+        }
+    }
+
+    /**
+     * El presupuesto sigue lleno tras la espera máxima; indica cuándo conviene reintentar.
+     */
+    public static class AdmissionRejectedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfterSeconds;
+
+        public AdmissionRejectedException(String message, long retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    /**
+     * Presupuesto de una clase. Se usa ReentrantLock en lugar de synchronized para no anclar hilos virtuales en la espera.
+     */
+    private static final class Budget {
+        final OperationClass operationClass;
+        final long maxBytes;
+        final int maxConcurrent;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition released = lock.newCondition();
+        final AtomicLong admitted = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        long inFlightBytes;
+        int active;
+        int waiting;
+        // Media móvil exponencial de la duración de las reservas, para estimar Retry-After
+        double averageHoldMs = 1_000;
+
+        Budget(OperationClass operationClass, long maxBytes, int maxConcurrent) {
+            this.operationClass = operationClass;
+            this.maxBytes = maxBytes;
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        boolean fits(long bytes) {
+            // Una operación mayor que todo el presupuesto se admite sola, cuando no hay nada más en vuelo
+            return active < maxConcurrent && (active == 0 || inFlightBytes + bytes <= maxBytes);
+        }
+
+        void release(long bytes, long heldMs) {
+            lock.lock();
+            try {
+                inFlightBytes -= bytes;
+                active--;
+                averageHoldMs = averageHoldMs * 0.8 + heldMs * 0.2;
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long retryAfterSeconds() {
+            return Math.max(1L, Math.min(60L, (long) Math.ceil(averageHoldMs / 1000.0)));
+        }
+    }
+
+    public AdmissionControl() {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (OperationClass operationClass : OperationClass.values()) {
+            int defaultConcurrency = operationClass.concurrencyHint > 0
+                    ? operationClass.concurrencyHint
+                    : Math.max(1, cores / Math.max(1, -operationClass.concurrencyHint));
+            String prefix = "worldbuilding.admission." + operationClass.key;
+            budgets.put(operationClass, new Budget(operationClass,
+                    Long.getLong(prefix + ".maxBytes", maxHeap / operationClass.heapDivisor),
+                    Integer.getInteger(prefix + ".maxConcurrent", defaultConcurrency)));
+        }
+    }
+
+    /**
+     * Reserva presupuesto esperando como mucho {@link #MAX_QUEUE_WAIT_MS}.
+     */
+    public Permit acquire(OperationClass operationClass, long estimatedBytes) throws AdmissionRejectedException {
+        return acquire(operationClass, estimatedBytes, MAX_QUEUE_WAIT_MS);
+    }
+
+    /**
+     * Reserva presupuesto esperando hasta que quede libre; para trabajos en segundo plano que ya fueron admitidos.
+     */
+    public Permit acquireBlocking(OperationClass operationClass, long estimatedBytes) throws InterruptedException {
+        Budget budget = budgets.get(operationClass);
+        long bytes = Math.max(0L, estimatedBytes);
+        budget.lock.lock();
+        try {
+            budget.waiting++;
+            try {
+                while (!budget.fits(bytes)) {
+                    budget.released.await();
+                }
+            } finally {
+                budget.waiting--;
+            }
+            return admit(budget, bytes);
+        } finally {
+            budget.lock.unlock();
+        }
+    }
+
+    private Permit acquire(OperationClass operationClass, long estimatedBytes, long maxWaitMs) throws AdmissionRejectedException {
+        Budget budget = budgets.get(operationClass);
+        long bytes = Math.max(0L, estimatedBytes);
+        budget.lock.lock();
+        try {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+            budget.waiting++;
+            try {
+                while (!budget.fits(bytes) && remainingNanos > 0) {
+                    remainingNanos = budget.released.awaitNanos(remainingNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                budget.waiting--;
+            }
+
+            if (!budget.fits(bytes)) {
+                budget.rejected.incrementAndGet();
+                throw new AdmissionRejectedException("Servidor ocupado con otras operaciones de tipo " + operationClass.key + ".",
+                        budget.retryAfterSeconds());
+            }
+            return admit(budget, bytes);
+        } finally {
+            budget.lock.unlock();
+        }
+    }
+
+    private Permit admit(Budget budget, long bytes) {
+        budget.inFlightBytes += bytes;
+        budget.active++;
+        budget.admitted.incrementAndGet();
+        return new Permit(budget, bytes);
+    }
+
+    /**
+     * Estado actual de cada presupuesto, para diagnóstico.
+     */
+    public Map<String, Object> utilization() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Budget budget : budgets.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            budget.lock.lock();
+            try {
+                entry.put("inFlightBytes", budget.inFlightBytes);
+                entry.put("maxBytes", budget.maxBytes);
+                entry.put("active", budget.active);
+                entry.put("maxConcurrent", budget.maxConcurrent);
+                entry.put("waiting", budget.waiting);
+                entry.put("byteUtilization", budget.maxBytes == 0 ? 0.0 : (double) budget.inFlightBytes / budget.maxBytes);
+                entry.put("averageHoldMs", Math.round(budget.averageHoldMs));
+            } finally {
+                budget.lock.unlock();
+            }
+            entry.put("admitted", budget.admitted.get());
+            entry.put("rejected", budget.rejected.get());
+            result.put(budget.operationClass.key, entry);
+        }
+        return result;
+    }
+
+    /**
+     * Estimación de memoria de una operación a partir del tamaño declarado de la petición.
+     */
+    public static long estimateBytes(OperationClass operationClass, long contentLength) {
+        long declared = Math.max(0L, contentLength);
+        long estimate;
+        switch (operationClass) {
+            case IMPORT:
+                // Las partes multipart y los ZIP se vuelcan a disco; en memoria solo quedan búferes
+                estimate = Math.max(8 * MB, Math.min(declared, 64 * MB));
+                break;
+            case EXPORT:
+                // Búferes de compresión paralela de ParallelZipWriter
+                estimate = 32 * MB;
+                break;
+            case PDF:
+                // DOM de jsoup + maquetación de Flying Saucer + PDF en memoria
+                estimate = Math.max(16 * MB, declared * 12);
+                break;
+            case MAP_UPLOAD:
+                // ImageIO decodifica la imagen entera (4 bytes por píxel, muy por encima del tamaño comprimido)
+                estimate = Math.max(32 * MB, declared * 8);
+                break;
+            case QUERY:
+                // Las filas se escriben en streaming: caché de páginas de SQLite y búfer de salida
+                estimate = 8 * MB;
+                break;
+            default:
+                estimate = declared;
+                break;
+        }
+        return estimate;
+    }
+}
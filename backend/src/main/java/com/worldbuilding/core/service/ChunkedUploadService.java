@@ -0,0 +1,275 @@
+package com.worldbuilding.core.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Subidas reanudables de respaldos .sqlite por bloques direccionados por offset.
+ * Cada sesión escribe sobre un archivo preasignado en backup/.uploads/ y, al confirmarse,
+ * se renombra de forma atómica a backup/&lt;proyecto&gt;.sqlite. El estado de cada sesión se
+ * persiste junto al archivo parcial, de modo que una subida sobrevive a reinicios del servidor.
+ */
+@Service
+public class ChunkedUploadService {
+
+    public static final String UPLOADS_DIR = ".uploads";
+    private static final String PART_EXTENSION = ".part";
+    private static final String META_EXTENSION = ".json";
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final long SESSION_TTL_MS = TimeUnit.HOURS.toMillis(24);
+    private static final long MAX_UPLOAD_SIZE = 1024L * 1024L * 1024L * 8L;
+
+    private final ProjectCatalog projectCatalog;
+    private final ContentStore contentStore;
+    private final Path uploadsDir;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ConcurrentMap<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Estado de una sesión de subida. Los campos mutables solo se modifican bajo el candado de la sesión.
+     */
+    public static class UploadSession {
+        public String sessionId;
+        public String projectName;
+        public long size;
+        public volatile long offset;
+        public volatile long updatedAt;
+        // ReentrantLock y no el monitor: writeChunk lo retiene mientras lee el bloque del socket, y un hilo virtual
+        // dentro de synchronized dejaría fijado su portador durante toda la lectura
+        final ReentrantLock lock = new ReentrantLock();
+
+        public UploadSession() {
+        }
+
+        UploadSession(String sessionId, String projectName, long size) {
+            this.sessionId = sessionId;
+            this.projectName = projectName;
+            this.size = size;
+            this.offset = 0;
+            this.updatedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Error de protocolo (offset o tamaño incoherentes) que el controlador traduce a un código HTTP.
+     */
+    public static class UploadConflictException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final long expectedOffset;
+
+        public UploadConflictException(String message, long expectedOffset) {
+            super(message);
+            this.expectedOffset = expectedOffset;
+        }
+
+        public long getExpectedOffset() {
+            return expectedOffset;
+        }
+    }
+
+    public ChunkedUploadService(ProjectCatalog projectCatalog, ContentStore contentStore) {
+        this.projectCatalog = projectCatalog;
+        this.contentStore = contentStore;
+        this.uploadsDir = projectCatalog.getBackupDir().resolve(UPLOADS_DIR);
+        try {
+            Files.createDirectories(uploadsDir);
+        } catch (IOException ignored) {
+            // Best-effort; createSession informará del error concreto.
+        }
+        restoreSessions();
+    }
+
+    /**
+     * Crea una sesión y preasigna el archivo parcial con el tamaño final declarado.
+     */
+    public UploadSession createSession(String projectName, long size) throws IOException {
+        if (size <= 0 || size > MAX_UPLOAD_SIZE) {
+            throw new IllegalArgumentException("Tamaño de subida inválido: " + size);
+        }
+        purgeExpiredSessions();
+        Files.createDirectories(uploadsDir);
+
+        String sessionId = UUID.randomUUID().toString();
+        UploadSession session = new UploadSession(sessionId, ProjectNames.sanitizeProjectName(projectName), size);
+        try (RandomAccessFile file = new RandomAccessFile(partPath(sessionId).toFile(), "rw")) {
+            file.setLength(size);
+        }
+        persist(session);
+        sessions.put(sessionId, session);
+        return session;
+    }
+
+    public UploadSession getSession(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * Escribe el bloque recibido en el offset indicado, que debe coincidir con el offset confirmado.
+     * Devuelve el nuevo offset; si la conexión se corta a mitad, se conserva lo ya escrito.
+     */
+    public long writeChunk(UploadSession session, long offset, InputStream body) throws IOException, UploadConflictException {
+        session.lock.lock();
+        try {
+            if (offset != session.offset) {
+                throw new UploadConflictException("Offset inesperado: " + offset, session.offset);
+            }
+
+            long position = offset;
+            IOException failure = null;
+            try (FileChannel channel = FileChannel.open(partPath(session.sessionId), StandardOpenOption.WRITE)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    if (position + read > session.size) {
+                        throw new UploadConflictException("El bloque excede el tamaño declarado", session.offset);
+                    }
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) {
+                        position += channel.write(chunk, position);
+                    }
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // Corte de red a mitad de bloque: se confirma lo recibido para que el cliente reanude desde ahí
+                failure = e;
+            }
+
+            session.offset = position;
+            session.updatedAt = System.currentTimeMillis();
+            persist(session);
+
+            if (failure != null) {
+                throw failure;
+            }
+            return session.offset;
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Confirma una subida completa: sincroniza el archivo y lo mueve atómicamente a backup/.
+     */
+    public Path commit(UploadSession session) throws IOException, UploadConflictException {
+        session.lock.lock();
+        try {
+            if (session.offset != session.size) {
+                throw new UploadConflictException("La subida está incompleta", session.offset);
+            }
+
+            Path part = partPath(session.sessionId);
+            try (FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+
+            Path target = projectCatalog.getBackupDir().resolve(session.projectName + ProjectNames.SQLITE_EXTENSION).normalize();
+            Lock lock = projectCatalog.writeLock(session.projectName);
+            lock.lock();
+            try {
+                // Las instantáneas pueden usar trozos que solo están en el respaldo que se va a sustituir
+                contentStore.detach(ContentStore.databaseRef(session.projectName));
+                try {
+                    Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                projectCatalog.register(target);
+            } finally {
+                lock.unlock();
+            }
+
+            sessions.remove(session.sessionId);
+            Files.deleteIfExists(metaPath(session.sessionId));
+            return target;
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    public void abort(UploadSession session) throws IOException {
+        session.lock.lock();
+        try {
+            sessions.remove(session.sessionId);
+            Files.deleteIfExists(partPath(session.sessionId));
+            Files.deleteIfExists(metaPath(session.sessionId));
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    private void purgeExpiredSessions() {
+        long now = System.currentTimeMillis();
+        for (UploadSession session : sessions.values()) {
+            if (now - session.updatedAt > SESSION_TTL_MS) {
+                try {
+                    abort(session);
+                } catch (IOException ignored) {
+                    // Se reintentará en la próxima purga.
+                }
+            }
+        }
+    }
+
+    private void restoreSessions() {
+        if (Files.isDirectory(uploadsDir)) {
+            try (var stream = Files.list(uploadsDir)) {
+                stream.filter(p -> p.getFileName().toString().endsWith(META_EXTENSION)).forEach(meta -> {
+                    try {
+                        UploadSession session = objectMapper.readValue(meta.toFile(), UploadSession.class);
+                        if (Files.exists(partPath(session.sessionId))) {
+                            sessions.put(session.sessionId, session);
+                        } else {
+                            Files.deleteIfExists(meta);
+                        }
+                    } catch (IOException ignored) {
+                        // Metadatos corruptos: la sesión se descarta.
+                    }
+                });
+            } catch (IOException ignored) {
+                // Sin sesiones previas recuperables.
+            }
+        }
+    }
+
+    private void persist(UploadSession session) throws IOException {
+        Map<String, Object> meta = new HashMap<>();
+        meta.put("sessionId", session.sessionId);
+        meta.put("projectName", session.projectName);
+        meta.put("size", session.size);
+        meta.put("offset", session.offset);
+        meta.put("updatedAt", session.updatedAt);
+
+        Path metaPath = metaPath(session.sessionId);
+        Path tmp = uploadsDir.resolve(session.sessionId + META_EXTENSION + ".tmp");
+        objectMapper.writeValue(tmp.toFile(), meta);
+        Files.move(tmp, metaPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path partPath(String sessionId) {
+        return uploadsDir.resolve(sessionId + PART_EXTENSION);
+    }
+
+    private Path metaPath(String sessionId) {
+        return uploadsDir.resolve(sessionId + META_EXTENSION);
+    }
+}
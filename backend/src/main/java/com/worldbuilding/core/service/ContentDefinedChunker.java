@@ -0,0 +1,115 @@
+package com.worldbuilding.core.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * Troceado por contenido (estilo FastCDC con hash "gear" y normalización de tamaños).
+ * Los cortes dependen de los bytes y no de su posición, así que una inserción o un cambio local
+ * solo altera los trozos cercanos y el resto del archivo sigue produciendo los mismos trozos.
+ */
+final class ContentDefinedChunker {
+
+    static final int MIN_SIZE = 4 * 1024;
+    static final int AVG_SIZE = 16 * 1024;
+    static final int MAX_SIZE = 64 * 1024;
+
+    // Máscara más exigente antes del tamaño medio y más permisiva después (normalización de nivel 2)
+    private static final long MASK_SMALL = spreadMask(Integer.numberOfTrailingZeros(AVG_SIZE) + 2);
+    private static final long MASK_LARGE = spreadMask(Integer.numberOfTrailingZeros(AVG_SIZE) - 2);
+
+    // Semilla fija: los cortes deben ser estables entre ejecuciones para que la deduplicación funcione
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_C0DE_CDC0L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] window = new byte[MAX_SIZE * 2];
+    private int start;
+    private int end;
+    private boolean eof;
+
+    ContentDefinedChunker(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Devuelve el siguiente trozo en {@code chunk} y su longitud, o -1 al final del flujo.
+     * {@code chunk} debe tener al menos {@link #MAX_SIZE} bytes.
+     */
+    int next(byte[] chunk) throws IOException {
+        fill();
+        int available = end - start;
+        int length = -1;
+
+        if (available > 0) {
+            length = available <= MIN_SIZE ? available : cut(window, start, Math.min(available, MAX_SIZE));
+            System.arraycopy(window, start, chunk, 0, length);
+            start += length;
+        }
+        return length;
+    }
+
+    private void fill() throws IOException {
+        if (!eof && end - start < MAX_SIZE) {
+            if (start > 0) {
+                System.arraycopy(window, start, window, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            while (!eof && end < window.length) {
+                int read = in.read(window, end, window.length - end);
+                if (read == -1) {
+                    eof = true;
+                } else {
+                    end += read;
+                }
+            }
+        }
+    }
+
+    /**
+     * Posición de corte dentro de [offset, offset + length) relativa a offset.
+     */
+    static int cut(byte[] data, int offset, int length) {
+        int normal = Math.min(AVG_SIZE, length);
+        long hash = 0;
+        int i = MIN_SIZE;
+        int cut = length;
+
+        while (i < normal && cut == length) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((hash & MASK_SMALL) == 0) {
+                cut = i + 1;
+            }
+            i++;
+        }
+        while (i < length && cut == length) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((hash & MASK_LARGE) == 0) {
+                cut = i + 1;
+            }
+            i++;
+        }
+        return cut;
+    }
+
+    /**
+     * Máscara con {@code bits} bits repartidos por la palabra, como propone FastCDC,
+     * para que el corte dependa de una ventana de bytes amplia.
+     */
+    private static long spreadMask(int bits) {
+        long mask = 0;
+        int step = 64 / bits;
+        for (int i = 0; i < bits; i++) {
+            mask |= 1L << (63 - i * step);
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,1075 @@
+package com.worldbuilding.core.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Almacén direccionado por contenido para respaldos y assets de mapas.
+ * Cada archivo se describe con una receta (lista de trozos SHA-256 en backup/.store/recipes/) y cada trozo
+ * se guarda una sola vez en backup/.store/objects/, con conteo de referencias y recolección de los que
+ * ninguna receta usa. Los archivos vivos (backup/*.sqlite, maps_assets/*) siguen siendo archivos normales
+ * para no perder las descargas por rangos ni los deltas por página. Para no guardar cada versión dos veces,
+ * los trozos de la versión viva no se escriben como objeto: se leen del propio archivo vivo, y solo se copian
+ * a objects/ cuando ese archivo va a sustituirse y otra receta (una instantánea) todavía los usa. Los archivos
+ * guardados como un único trozo (formatos ya comprimidos) sí son objeto, enlazado al archivo vivo sin ocupar
+ * espacio adicional. Quien modifique los .sqlite a mano con el servidor en marcha puede arrancarlo con
+ * -Dworldbuilding.store.eagerObjects=true para que las instantáneas no dependan de los archivos vivos.
+ * Con -Dworldbuilding.store.compress=true los trozos troceados se guardan siempre como miembros gzip
+ * independientes (&lt;hash&gt;.gz), además del archivo vivo; la receta anota el tamaño de cada marco, así que
+ * la concatenación de los objetos es un gzip válido que puede servirse tal cual, con rangos, sin volver a comprimir.
+ */
+@Service
+public class ContentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentStore.class);
+
+    public static final String STORE_DIR = ".store";
+    private static final String OBJECTS_DIR = "objects";
+    private static final String RECIPES_DIR = "recipes";
+    private static final String RECIPE_EXTENSION = ".json";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int COMMIT_LOCK_STRIPES = 64;
+    private static final long STALE_TEMPORARY_MS = 60L * 60L * 1000L;
+    private static final String FRAME_EXTENSION = ".gz";
+    private static final boolean COMPRESS_OBJECTS = Boolean.getBoolean("worldbuilding.store.compress");
+    private static final int COMPRESSION_LEVEL = Integer.getInteger("worldbuilding.store.compressionLevel", 6);
+    // Los marcos gzip se sirven desde objects/, así que con compresión los objetos se escriben siempre al guardar
+    private static final boolean EAGER_OBJECTS = COMPRESS_OBJECTS || Boolean.getBoolean("worldbuilding.store.eagerObjects");
+    // Cabecera gzip mínima: deflate, sin nombre ni fecha, sistema desconocido
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final Path objectsDir;
+    private final Path recipesDir;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Recetas y conteos solo se modifican bajo el monitor de refCounts
+    private final Map<String, Recipe> recipes = new HashMap<>();
+    private final Map<String, Integer> refCounts = new HashMap<>();
+    // Serializan las publicaciones de una misma referencia sin bloquear al resto del almacén. Se retienen durante
+    // fsync y renombrados, así que son candados y no monitores: un hilo virtual en espera no fija su portador
+    private final ReentrantLock[] commitLocks = new ReentrantLock[COMMIT_LOCK_STRIPES];
+
+    /**
+     * Descripción de un archivo almacenado: tamaño, SHA-256 completo y trozos en orden.
+     * lastModified es la fecha del archivo vivo al registrarlo, para detectar cambios hechos por otra vía.
+     * frameSizes es el índice de marcos: bytes en disco de cada trozo comprimido, o 0 si el trozo está sin comprimir
+     * (vacía en recetas anteriores a la compresión). chunkSizes son los bytes originales de cada trozo, con los que
+     * {@link #storePatch} localiza los trozos que un parche no toca (vacía en recetas anteriores).
+     * file es la ruta del archivo vivo de la versión registrada, del que se leen los trozos que no tienen objeto
+     * (null en las copias de {@link #retain} y en recetas anteriores, cuyos trozos tienen todos objeto).
+     */
+    public static class Recipe {
+        public String ref;
+        public long size;
+        public String sha256;
+        public long lastModified;
+        public String file;
+        public List<String> chunks = new ArrayList<>();
+        public List<Long> frameSizes = new ArrayList<>();
+        public List<Long> chunkSizes = new ArrayList<>();
+    }
+
+    /**
+     * Nueva versión de un archivo descrita como cambios sobre la versión registrada (p. ej. un delta por páginas).
+     */
+    public interface Patch {
+        /**
+         * Tamaño final del archivo.
+         */
+        long size();
+
+        /**
+         * Indica si los bytes [start, end) del resultado son idénticos a los de la versión base en esas posiciones.
+         */
+        boolean unchanged(long start, long end);
+
+        /**
+         * Lee bytes del resultado a partir de position (menor que {@link #size()}) y devuelve cuántos leyó, al menos uno.
+         */
+        int read(long position, byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    /**
+     * El resultado de un parche no tiene el SHA-256 esperado; el archivo vivo no se ha tocado.
+     */
+    public static class ChecksumMismatchException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public ChecksumMismatchException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Resultado de guardar un archivo: cuántos trozos había y cuántos bytes fueron realmente nuevos.
+     */
+    public static class StoreResult {
+        public final Recipe recipe;
+        public final int newChunks;
+        public final long newBytes;
+        public final boolean unchanged;
+
+        StoreResult(Recipe recipe, int newChunks, long newBytes, boolean unchanged) {
+            this.recipe = recipe;
+            this.newChunks = newChunks;
+            this.newBytes = newBytes;
+            this.unchanged = unchanged;
+        }
+    }
+
+    public ContentStore(ProjectCatalog projectCatalog) {
+        Path storeDir = projectCatalog.getBackupDir().resolve(STORE_DIR);
+        this.objectsDir = storeDir.resolve(OBJECTS_DIR);
+        this.recipesDir = storeDir.resolve(RECIPES_DIR);
+        for (int i = 0; i < commitLocks.length; i++) {
+            commitLocks[i] = new ReentrantLock();
+        }
+        try {
+            Files.createDirectories(objectsDir);
+            Files.createDirectories(recipesDir);
+        } catch (IOException ignored) {
+            // Best-effort; store() informará del error concreto.
+        }
+        loadRecipes();
+        collectGarbage();
+    }
+
+    public static String databaseRef(String projectName) {
+        return "db/" + projectName;
+    }
+
+    public static String assetRef(String fileName) {
+        return "assets/" + fileName;
+    }
+
+    /**
+     * Guarda el flujo bajo la referencia indicada y deja el archivo vivo en {@code target}.
+     * Solo se escriben los trozos que el almacén no tenía; si el contenido es idéntico al ya registrado,
+     * el archivo vivo no se toca. Con {@code wholeFile} el archivo entero es un único trozo
+     * (formatos ya comprimidos, donde trocear no encuentra coincidencias parciales).
+     */
+    public StoreResult store(String ref, InputStream in, Path target, boolean wholeFile) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path tmp = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        List<String> pinned = new ArrayList<>();
+
+        try {
+            Recipe recipe = new Recipe();
+            recipe.ref = ref;
+            int newChunks = 0;
+            long newBytes = 0;
+
+            if (wholeFile) {
+                MessageDigest digest = newSha256();
+                try (OutputStream out = Files.newOutputStream(tmp)) {
+                    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                        out.write(buffer, 0, read);
+                        recipe.size += read;
+                    }
+                }
+                String hash = HexFormat.of().formatHex(digest.digest());
+                recipe.sha256 = hash;
+                recipe.chunks.add(hash);
+                recipe.chunkSizes.add(recipe.size);
+                recipe.frameSizes.add(frameSize(hash));
+                pin(hash, pinned);
+                if (adoptObject(hash, tmp)) {
+                    newChunks++;
+                    newBytes += recipe.size;
+                }
+            } else {
+                MessageDigest whole = newSha256();
+                MessageDigest perChunk = newSha256();
+                ContentDefinedChunker chunker = new ContentDefinedChunker(in);
+                byte[] chunk = new byte[ContentDefinedChunker.MAX_SIZE];
+                Deflater deflater = COMPRESS_OBJECTS ? new Deflater(COMPRESSION_LEVEL, true) : null;
+
+                try (OutputStream out = Files.newOutputStream(tmp)) {
+                    int length;
+                    while ((length = chunker.next(chunk)) != -1) {
+                        out.write(chunk, 0, length);
+                        whole.update(chunk, 0, length);
+                        perChunk.update(chunk, 0, length);
+                        String hash = HexFormat.of().formatHex(perChunk.digest());
+                        recipe.chunks.add(hash);
+                        recipe.chunkSizes.add((long) length);
+                        recipe.size += length;
+                        if (storeChunk(hash, chunk, length, deflater, pin(hash, pinned))) {
+                            newChunks++;
+                            newBytes += length;
+                        }
+                        recipe.frameSizes.add(frameSize(hash));
+                    }
+                } finally {
+                    if (deflater != null) {
+                        deflater.end();
+                    }
+                }
+                recipe.sha256 = HexFormat.of().formatHex(whole.digest());
+            }
+
+            return commit(recipe, tmp, target, newChunks, newBytes, pinned);
+        } finally {
+            release(pinned);
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Registra en el almacén un archivo vivo escrito por otra vía (subidas, deltas) sin reescribirlo.
+     */
+    public StoreResult index(String ref, Path file) throws IOException {
+        List<String> pinned = new ArrayList<>();
+        Deflater deflater = COMPRESS_OBJECTS ? new Deflater(COMPRESSION_LEVEL, true) : null;
+        try (InputStream in = Files.newInputStream(file)) {
+            Recipe recipe = new Recipe();
+            recipe.ref = ref;
+            int newChunks = 0;
+            long newBytes = 0;
+
+            MessageDigest whole = newSha256();
+            MessageDigest perChunk = newSha256();
+            ContentDefinedChunker chunker = new ContentDefinedChunker(in);
+            byte[] chunk = new byte[ContentDefinedChunker.MAX_SIZE];
+            int length;
+            while ((length = chunker.next(chunk)) != -1) {
+                whole.update(chunk, 0, length);
+                perChunk.update(chunk, 0, length);
+                String hash = HexFormat.of().formatHex(perChunk.digest());
+                recipe.chunks.add(hash);
+                recipe.chunkSizes.add((long) length);
+                recipe.size += length;
+                if (storeChunk(hash, chunk, length, deflater, pin(hash, pinned))) {
+                    newChunks++;
+                    newBytes += length;
+                }
+                recipe.frameSizes.add(frameSize(hash));
+            }
+            recipe.sha256 = HexFormat.of().formatHex(whole.digest());
+
+            return commit(recipe, null, file, newChunks, newBytes, pinned);
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            release(pinned);
+        }
+    }
+
+    /**
+     * Guarda como nueva versión de {@code ref} el resultado de {@code patch} sobre la versión registrada, cuyo SHA-256
+     * debe ser {@code baseSha256}, y la publica en {@code target} solo si su SHA-256 es {@code expectedSha256}.
+     * Los trozos de la base que el parche no toca se reutilizan tal cual (mismo hash, sin volver a guardarlos):
+     * un corte depende solo de los bytes desde el corte anterior, así que un trozo base intacto que empieza en un corte
+     * del resultado vuelve a salir idéntico. Solo las zonas modificadas se trocean de nuevo, hasta que un corte coincide
+     * con uno de la base. El resultado se lee una única vez, al escribirlo en el temporal y calcular su SHA-256.
+     * El llamante debe tener el candado de escritura del proyecto para que la base no cambie mientras tanto.
+     */
+    public StoreResult storePatch(String ref, String baseSha256, Patch patch, Path target, String expectedSha256)
+            throws IOException, ChecksumMismatchException {
+        Path tmp = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        List<String> pinned = new ArrayList<>();
+        Deflater deflater = COMPRESS_OBJECTS ? new Deflater(COMPRESSION_LEVEL, true) : null;
+
+        try {
+            Recipe base = getRecipe(ref);
+            boolean reusable = base != null
+                    && base.sha256.equalsIgnoreCase(baseSha256)
+                    && base.chunkSizes.size() == base.chunks.size();
+            Recipe recipe = new Recipe();
+            recipe.ref = ref;
+            int newChunks = 0;
+            long newBytes = 0;
+
+            MessageDigest whole = newSha256();
+            MessageDigest perChunk = newSha256();
+            byte[] chunk = new byte[ContentDefinedChunker.MAX_SIZE];
+            long size = patch.size();
+            int baseIndex = 0;
+            long baseStart = 0;
+            ContentDefinedChunker chunker = null;
+
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                while (recipe.size < size) {
+                    long position = recipe.size;
+                    while (reusable && baseIndex < base.chunks.size() && baseStart < position) {
+                        baseStart += base.chunkSizes.get(baseIndex);
+                        baseIndex++;
+                    }
+
+                    int length;
+                    String hash;
+                    if (reusable && baseStart == position && baseIndex < base.chunks.size()
+                            && isIntact(base, baseIndex, baseStart, patch)) {
+                        length = (int) (long) base.chunkSizes.get(baseIndex);
+                        readPatch(patch, position, chunk, length);
+                        hash = base.chunks.get(baseIndex);
+                        // El troceador se reinicia en la próxima zona modificada
+                        chunker = null;
+                    } else {
+                        if (chunker == null) {
+                            chunker = new ContentDefinedChunker(new PatchInputStream(patch, position));
+                        }
+                        length = chunker.next(chunk);
+                        if (length == -1) {
+                            throw new EOFException("El parche terminó antes de su tamaño declarado");
+                        }
+                        perChunk.update(chunk, 0, length);
+                        hash = HexFormat.of().formatHex(perChunk.digest());
+                    }
+
+                    out.write(chunk, 0, length);
+                    whole.update(chunk, 0, length);
+                    recipe.chunks.add(hash);
+                    recipe.chunkSizes.add((long) length);
+                    recipe.size += length;
+                    if (storeChunk(hash, chunk, length, deflater, pin(hash, pinned))) {
+                        newChunks++;
+                        newBytes += length;
+                    }
+                    recipe.frameSizes.add(frameSize(hash));
+                }
+            }
+
+            recipe.sha256 = HexFormat.of().formatHex(whole.digest());
+            if (!recipe.sha256.equalsIgnoreCase(expectedSha256)) {
+                throw new ChecksumMismatchException("La suma de verificación del resultado no coincide");
+            }
+            return commit(recipe, tmp, target, newChunks, newBytes, pinned);
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            release(pinned);
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Un trozo base que empieza en un corte del resultado se repite si sus bytes no cambian y el troceador ve
+     * la misma longitud disponible (el corte se busca en min(restante, MAX_SIZE) bytes).
+     */
+    private static boolean isIntact(Recipe base, int index, long start, Patch patch) {
+        long end = start + base.chunkSizes.get(index);
+        long window = ContentDefinedChunker.MAX_SIZE;
+        return end <= patch.size()
+                && Math.min(patch.size() - start, window) == Math.min(base.size - start, window)
+                && patch.unchanged(start, end);
+    }
+
+    private static void readPatch(Patch patch, long position, byte[] buffer, int length) throws IOException {
+        int filled = 0;
+        while (filled < length) {
+            filled += patch.read(position + filled, buffer, filled, length - filled);
+        }
+    }
+
+    public Recipe getRecipe(String ref) {
+        synchronized (refCounts) {
+            return recipes.get(ref);
+        }
+    }
+
+    /**
+     * Referencias registradas que empiezan por el prefijo indicado.
+     */
+    public List<String> listRefs(String prefix) {
+        List<String> refs = new ArrayList<>();
+        synchronized (refCounts) {
+            for (String ref : recipes.keySet()) {
+                if (ref.startsWith(prefix)) {
+                    refs.add(ref);
+                }
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Reconstruye en {@code target} (de forma atómica) el contenido de una receta y lo registra bajo {@code ref}.
+     * Los trozos sin objeto se leen del archivo vivo que los contiene (p. ej. al restaurar la versión actual).
+     */
+    public StoreResult restore(Recipe source, String ref, Path target) throws IOException {
+        Path tmp = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        List<String> pinned = new ArrayList<>();
+        try {
+            Recipe recipe = copyOf(source, ref);
+            for (String hash : recipe.chunks) {
+                pin(hash, pinned);
+            }
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                for (int i = 0; i < recipe.chunks.size(); i++) {
+                    copyChunk(recipe.chunks.get(i), recipe.chunkSizes.size() == recipe.chunks.size() ? recipe.chunkSizes.get(i) : -1, out);
+                }
+            }
+            return commit(recipe, tmp, target, 0, 0, pinned);
+        } finally {
+            release(pinned);
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Tamaño de la representación gzip de la receta (suma de sus marcos), o -1 si no está entera comprimida
+     * o si el archivo vivo ya no coincide con ella (modificado por otra vía desde que se registró).
+     */
+    public long compressedLength(Recipe recipe, Path liveFile) throws IOException {
+        long length = -1;
+        if (recipe.frameSizes.size() == recipe.chunks.size() && !recipe.chunks.isEmpty()
+                && Files.isRegularFile(liveFile)
+                && Files.size(liveFile) == recipe.size
+                && Files.getLastModifiedTime(liveFile).toMillis() == recipe.lastModified) {
+            length = 0;
+            for (Long frameSize : recipe.frameSizes) {
+                if (frameSize == null || frameSize <= 0) {
+                    length = -1;
+                    break;
+                }
+                length += frameSize;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Escribe los bytes [start, end] de la representación gzip de la receta copiando los marcos almacenados,
+     * sin descomprimir ni recomprimir. El índice de marcos permite saltar directamente al primero afectado.
+     * Los trozos quedan fijados mientras dura la transferencia para que una nueva versión no los borre.
+     */
+    public void transferFrames(Recipe recipe, long start, long end, OutputStream out) throws IOException {
+        List<String> pinned = new ArrayList<>();
+        synchronized (refCounts) {
+            if (recipes.get(recipe.ref) != recipe) {
+                throw new IOException("La receta " + recipe.ref + " ha cambiado durante la descarga");
+            }
+            for (String hash : recipe.chunks) {
+                pin(hash, pinned);
+            }
+        }
+        try {
+            WritableByteChannel target = Channels.newChannel(out);
+            long frameStart = 0;
+            for (int i = 0; i < recipe.chunks.size() && frameStart <= end; i++) {
+                long frameSize = recipe.frameSizes.get(i);
+                long frameEnd = frameStart + frameSize - 1;
+                if (frameEnd >= start) {
+                    long from = Math.max(start, frameStart) - frameStart;
+                    long to = Math.min(end, frameEnd) - frameStart;
+                    try (FileChannel channel = FileChannel.open(compressedObjectPath(recipe.chunks.get(i)), StandardOpenOption.READ)) {
+                        long position = from;
+                        while (position <= to) {
+                            position += channel.transferTo(position, to - position + 1, target);
+                        }
+                    }
+                }
+                frameStart += frameSize;
+            }
+            out.flush();
+        } finally {
+            release(pinned);
+        }
+    }
+
+    /**
+     * Registra una copia inmutable de la receta bajo otra referencia. No copia datos: solo suma referencias.
+     * Si la receta es una versión viva que ya se ha sustituido, se registra la versión vigente de su referencia
+     * (la devuelta): los trozos de la anterior que solo estaban en su archivo vivo ya no existen.
+     */
+    public Recipe retain(String ref, Recipe source) throws IOException {
+        Recipe recipe;
+        // Las referencias se suman bajo el candado de la referencia origen: una publicación que sustituya su
+        // archivo vivo las ve y guarda antes como objeto los trozos que pasan a usar
+        Lock sourceLock = commitLock(source.ref);
+        sourceLock.lock();
+        try {
+            synchronized (refCounts) {
+                Recipe current = recipes.get(source.ref);
+                recipe = copyOf(source.file != null && current != null && current != source ? current : source, ref);
+                for (String hash : recipe.chunks) {
+                    refCounts.merge(hash, 1, Integer::sum);
+                }
+            }
+        } finally {
+            sourceLock.unlock();
+        }
+        Lock commitLock = commitLock(ref);
+        commitLock.lock();
+        try {
+            try {
+                writeRecipe(recipe);
+            } catch (IOException e) {
+                release(recipe.chunks);
+                throw e;
+            }
+            synchronized (refCounts) {
+                Recipe previous = recipes.put(ref, recipe);
+                if (previous != null) {
+                    release(previous.chunks);
+                }
+            }
+        } finally {
+            commitLock.unlock();
+        }
+        return recipe;
+    }
+
+    /**
+     * Prepara la sustitución por otra vía (subidas reanudables) del archivo vivo de {@code ref}: guarda como objeto
+     * los trozos que solo están en ese archivo y que otra receta usa. El llamante debe tener el candado de escritura
+     * del proyecto hasta sustituir el archivo, para que no cambie entre medias.
+     */
+    public void detach(String ref) throws IOException {
+        Lock commitLock = commitLock(ref);
+        commitLock.lock();
+        try {
+            Recipe live = getRecipe(ref);
+            if (live != null) {
+                materializeShared(live, List.of());
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Elimina la referencia y libera los trozos que solo ella usaba.
+     */
+    public void drop(String ref) throws IOException {
+        // Como en commit, el borrado de la receta se serializa con las publicaciones de la referencia, no con refCounts
+        Lock commitLock = commitLock(ref);
+        commitLock.lock();
+        try {
+            Recipe recipe;
+            synchronized (refCounts) {
+                recipe = recipes.remove(ref);
+            }
+            if (recipe != null) {
+                Files.deleteIfExists(recipePath(ref));
+                release(recipe.chunks);
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Borra los objetos sin referencias (incluidos los huérfanos de una escritura interrumpida).
+     * Devuelve el número de objetos eliminados.
+     */
+    public int collectGarbage() {
+        int removed = 0;
+        if (Files.isDirectory(objectsDir)) {
+            List<Path> objects = new ArrayList<>();
+            try (var stream = Files.walk(objectsDir, 2)) {
+                stream.filter(Files::isRegularFile).forEach(objects::add);
+            } catch (IOException ignored) {
+                // Se reintentará en la próxima recolección.
+            }
+
+            synchronized (refCounts) {
+                for (Path object : objects) {
+                    String name = object.getFileName().toString();
+                    String hash = name.endsWith(FRAME_EXTENSION)
+                            ? name.substring(0, name.length() - FRAME_EXTENSION.length())
+                            : name;
+                    boolean garbage = name.endsWith(".tmp")
+                            ? isStaleTemporary(object)
+                            : !refCounts.containsKey(hash);
+                    if (garbage && deleteObject(object)) {
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Publica la receta, sustituye el archivo vivo si hace falta y libera los trozos de la versión anterior.
+     */
+    private StoreResult commit(Recipe recipe, Path tmp, Path target, int newChunks, long newBytes, List<String> pinned) throws IOException {
+        // La E/S (fsync, renombrados) se hace fuera de refCounts; solo se serializan las publicaciones de la misma referencia
+        Lock commitLock = commitLock(recipe.ref);
+        commitLock.lock();
+        try {
+            Recipe previous = getRecipe(recipe.ref);
+            boolean unchanged = previous != null
+                    && previous.sha256.equals(recipe.sha256)
+                    && Files.isRegularFile(target)
+                    && Files.size(target) == recipe.size
+                    && Files.getLastModifiedTime(target).toMillis() == previous.lastModified;
+
+            if (unchanged) {
+                // Los pines se liberan al salir; la receta anterior conserva sus referencias
+                return new StoreResult(previous, newChunks, newBytes, true);
+            }
+
+            if (tmp != null) {
+                if (previous != null) {
+                    materializeShared(previous, recipe.chunks);
+                }
+                if (recipe.chunks.size() == 1 && Files.exists(objectPath(recipe.chunks.get(0)))) {
+                    // Un solo trozo sin comprimir: el archivo vivo comparte inodo con el objeto
+                    Files.deleteIfExists(tmp);
+                    linkOrCopy(objectPath(recipe.chunks.get(0)), tmp);
+                }
+                publish(tmp, target);
+            }
+
+            recipe.lastModified = Files.getLastModifiedTime(target).toMillis();
+            recipe.file = target.toAbsolutePath().normalize().toString();
+            writeRecipe(recipe);
+
+            synchronized (refCounts) {
+                Recipe replaced = recipes.put(recipe.ref, recipe);
+                // Los pines pasan a ser las referencias de la nueva receta
+                pinned.clear();
+                if (replaced != null) {
+                    release(replaced.chunks);
+                }
+            }
+            return new StoreResult(recipe, newChunks, newBytes, false);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private Lock commitLock(String ref) {
+        return commitLocks[Math.floorMod(ref.hashCode(), commitLocks.length)];
+    }
+
+    /**
+     * Suma una referencia al trozo y devuelve si ninguna receta ni operación en curso lo usaba.
+     */
+    private boolean pin(String hash, List<String> pinned) {
+        boolean fresh;
+        synchronized (refCounts) {
+            fresh = refCounts.merge(hash, 1, Integer::sum) == 1;
+        }
+        pinned.add(hash);
+        return fresh;
+    }
+
+    /**
+     * Resta una referencia a cada trozo y borra los que quedan sin ninguna.
+     */
+    private void release(List<String> hashes) {
+        if (!hashes.isEmpty()) {
+            synchronized (refCounts) {
+                for (String hash : hashes) {
+                    Integer count = refCounts.get(hash);
+                    if (count != null && count > 1) {
+                        refCounts.put(hash, count - 1);
+                    } else if (count != null) {
+                        refCounts.remove(hash);
+                        deleteObject(objectPath(hash));
+                        deleteObject(compressedObjectPath(hash));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Guarda un trozo recién leído y devuelve si es nuevo para el almacén. Salvo con objetos inmediatos, el trozo
+     * no se escribe: queda en el archivo vivo que se está publicando y {@link #materializeShared} lo copia a objects/
+     * solo si otra receta lo sigue usando cuando ese archivo se sustituye.
+     */
+    private boolean storeChunk(String hash, byte[] data, int length, Deflater deflater, boolean fresh) throws IOException {
+        return EAGER_OBJECTS ? writeObject(hash, data, length, deflater) : fresh;
+    }
+
+    /**
+     * Antes de sustituir el archivo vivo de {@code live}, guarda como objeto sus trozos sin objeto que otra receta
+     * u operación en curso usa y que no siguen en {@code kept} (los trozos de la nueva versión, que estarán en el
+     * nuevo archivo vivo). Si el archivo ya no coincide con la receta (modificado por otra vía), esos trozos no
+     * se pueden recuperar: se avisa y se sigue, como haría el archivo vivo sin almacén.
+     */
+    private void materializeShared(Recipe live, List<String> kept) throws IOException {
+        if (live.file != null && live.chunkSizes.size() == live.chunks.size()) {
+            Set<String> keptHashes = new HashSet<>(kept);
+            Map<String, Integer> ownCounts = new HashMap<>();
+            for (String hash : live.chunks) {
+                ownCounts.merge(hash, 1, Integer::sum);
+            }
+
+            // Posición en el archivo vivo de cada trozo que otra receta necesita
+            Map<String, Long> shared = new HashMap<>();
+            synchronized (refCounts) {
+                long offset = 0;
+                for (int i = 0; i < live.chunks.size(); i++) {
+                    String hash = live.chunks.get(i);
+                    if (!keptHashes.contains(hash) && refCounts.getOrDefault(hash, 0) > ownCounts.get(hash)) {
+                        shared.putIfAbsent(hash, offset);
+                    }
+                    offset += live.chunkSizes.get(i);
+                }
+            }
+            shared.keySet().removeIf(hash -> Files.exists(objectPath(hash)) || Files.exists(compressedObjectPath(hash)));
+
+            if (!shared.isEmpty()) {
+                Path file = Path.of(live.file);
+                if (matchesLiveFile(live, file)) {
+                    byte[] chunk = new byte[ContentDefinedChunker.MAX_SIZE];
+                    for (int i = 0; i < live.chunks.size(); i++) {
+                        String hash = live.chunks.get(i);
+                        Long offset = shared.remove(hash);
+                        if (offset != null) {
+                            int length = (int) (long) live.chunkSizes.get(i);
+                            if (readLiveChunk(file, offset, chunk, length, hash)) {
+                                writeObject(hash, chunk, length, null);
+                            } else {
+                                log.warn("El trozo {} de {} ya no coincide con su archivo vivo", hash, live.ref);
+                            }
+                        }
+                    }
+                } else {
+                    log.warn("El archivo vivo de {} cambió por otra vía: {} trozos de versiones anteriores se pierden",
+                            live.ref, shared.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * Copia el contenido original del trozo desde su objeto o, si no lo tiene, desde la versión viva que lo contiene.
+     */
+    private void copyChunk(String hash, long length, OutputStream out) throws IOException {
+        if (Files.exists(objectPath(hash)) || Files.exists(compressedObjectPath(hash)) || length < 0) {
+            copyDecoded(hash, out);
+        } else {
+            List<Recipe> live = new ArrayList<>();
+            synchronized (refCounts) {
+                for (Recipe recipe : recipes.values()) {
+                    if (recipe.file != null && recipe.chunkSizes.size() == recipe.chunks.size() && recipe.chunks.contains(hash)) {
+                        live.add(recipe);
+                    }
+                }
+            }
+
+            byte[] chunk = new byte[(int) length];
+            boolean copied = false;
+            for (int r = 0; r < live.size() && !copied; r++) {
+                Recipe recipe = live.get(r);
+                Path file = Path.of(recipe.file);
+                long offset = 0;
+                for (int i = 0; i < recipe.chunks.size() && !copied; i++) {
+                    if (recipe.chunks.get(i).equals(hash) && matchesLiveFile(recipe, file)
+                            && readLiveChunk(file, offset, chunk, chunk.length, hash)) {
+                        out.write(chunk);
+                        copied = true;
+                    }
+                    offset += recipe.chunkSizes.get(i);
+                }
+            }
+            if (!copied) {
+                throw new IOException("El trozo " + hash + " ya no está disponible");
+            }
+        }
+    }
+
+    private static boolean matchesLiveFile(Recipe recipe, Path file) throws IOException {
+        return Files.isRegularFile(file)
+                && Files.size(file) == recipe.size
+                && Files.getLastModifiedTime(file).toMillis() == recipe.lastModified;
+    }
+
+    /**
+     * Lee un trozo del archivo vivo y comprueba que su SHA-256 sigue siendo el de la receta.
+     */
+    private static boolean readLiveChunk(Path file, long offset, byte[] buffer, int length, String hash) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, 0, length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (target.hasRemaining()) {
+                if (channel.read(target, offset + target.position()) == -1) {
+                    throw new EOFException("El archivo vivo " + file + " es más corto que su receta");
+                }
+            }
+        }
+        MessageDigest digest = newSha256();
+        digest.update(buffer, 0, length);
+        return HexFormat.of().formatHex(digest.digest()).equals(hash);
+    }
+
+    /**
+     * Escribe el trozo si no existe en ninguna de sus dos formas. El llamante ya lo tiene fijado, así que no puede
+     * borrarse en medio. Con {@code deflater} se guarda como marco gzip; si no, sin comprimir.
+     */
+    private boolean writeObject(String hash, byte[] data, int length, Deflater deflater) throws IOException {
+        Path object = objectPath(hash);
+        Path compressed = compressedObjectPath(hash);
+        boolean written = false;
+        if (!Files.exists(object) && !Files.exists(compressed)) {
+            Files.createDirectories(object.getParent());
+            Path tmp = object.resolveSibling(hash + "." + UUID.randomUUID() + ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(tmp)) {
+                    if (deflater == null) {
+                        out.write(data, 0, length);
+                    } else {
+                        writeFrame(data, length, deflater, out);
+                    }
+                }
+                publish(tmp, deflater == null ? object : compressed);
+                written = true;
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Codifica el trozo como un miembro gzip completo (cabecera, deflate y CRC32/ISIZE en little-endian),
+     * reutilizando el Deflater de toda la operación.
+     */
+    private static void writeFrame(byte[] data, int length, Deflater deflater, OutputStream out) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        out.write(GZIP_HEADER);
+
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        while (!deflater.finished()) {
+            int produced = deflater.deflate(buffer);
+            out.write(buffer, 0, produced);
+        }
+
+        long checksum = crc.getValue();
+        byte[] trailer = new byte[8];
+        for (int i = 0; i < 4; i++) {
+            trailer[i] = (byte) (checksum >>> (8 * i));
+            trailer[4 + i] = (byte) (length >>> (8 * i));
+        }
+        out.write(trailer);
+    }
+
+    /**
+     * Copia el contenido original del trozo, descomprimiendo el marco si está guardado comprimido.
+     */
+    private void copyDecoded(String hash, OutputStream out) throws IOException {
+        Path compressed = compressedObjectPath(hash);
+        if (Files.exists(compressed)) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(compressed), COPY_BUFFER_SIZE)) {
+                in.transferTo(out);
+            }
+        } else {
+            Files.copy(objectPath(hash), out);
+        }
+    }
+
+    /**
+     * Bytes en disco del marco comprimido del trozo, o 0 si el trozo está guardado sin comprimir.
+     */
+    private long frameSize(String hash) throws IOException {
+        Path compressed = compressedObjectPath(hash);
+        return Files.exists(compressed) ? Files.size(compressed) : 0L;
+    }
+
+    /**
+     * Convierte un archivo temporal completo en objeto enlazándolo, sin copiar sus bytes.
+     * Estos objetos nunca se comprimen: son formatos ya comprimidos y el archivo vivo puede compartir su inodo.
+     */
+    private boolean adoptObject(String hash, Path source) throws IOException {
+        Path object = objectPath(hash);
+        boolean written = false;
+        if (!Files.exists(object) && !Files.exists(compressedObjectPath(hash))) {
+            Files.createDirectories(object.getParent());
+            try {
+                linkOrCopy(source, object);
+                written = true;
+            } catch (FileAlreadyExistsException ignored) {
+                // Otro hilo guardó el mismo contenido a la vez.
+            }
+        }
+        return written;
+    }
+
+    private void linkOrCopy(Path existing, Path link) throws IOException {
+        try {
+            Files.createLink(link, existing);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (IOException | UnsupportedOperationException e) {
+            // Sin enlaces duros (FAT/exFAT, recursos de red, otro volumen o límite de enlaces): se copia
+            Files.copy(existing, link);
+        }
+    }
+
+    private void writeRecipe(Recipe recipe) throws IOException {
+        Path path = recipePath(recipe.ref);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        objectMapper.writeValue(tmp.toFile(), recipe);
+        publish(tmp, path);
+    }
+
+    private static Recipe copyOf(Recipe source, String ref) {
+        Recipe recipe = new Recipe();
+        recipe.ref = ref;
+        recipe.size = source.size;
+        recipe.sha256 = source.sha256;
+        recipe.lastModified = source.lastModified;
+        recipe.chunks = new ArrayList<>(source.chunks);
+        recipe.frameSizes = new ArrayList<>(source.frameSizes);
+        recipe.chunkSizes = new ArrayList<>(source.chunkSizes);
+        return recipe;
+    }
+
+    private void loadRecipes() {
+        if (Files.isDirectory(recipesDir)) {
+            try (var stream = Files.list(recipesDir)) {
+                stream.filter(p -> p.getFileName().toString().endsWith(RECIPE_EXTENSION)).forEach(path -> {
+                    try {
+                        Recipe recipe = objectMapper.readValue(path.toFile(), Recipe.class);
+                        recipes.put(recipe.ref, recipe);
+                        for (String hash : recipe.chunks) {
+                            refCounts.merge(hash, 1, Integer::sum);
+                        }
+                    } catch (IOException ignored) {
+                        // Receta corrupta: sus trozos quedarán sin referencias y se recolectarán.
+                    }
+                });
+            } catch (IOException ignored) {
+                // Almacén vacío.
+            }
+        }
+    }
+
+    /**
+     * Un temporario reciente puede pertenecer a una escritura en curso; solo se borran los abandonados.
+     */
+    private boolean isStaleTemporary(Path path) {
+        boolean stale;
+        try {
+            stale = System.currentTimeMillis() - Files.getLastModifiedTime(path).toMillis() > STALE_TEMPORARY_MS;
+        } catch (IOException e) {
+            stale = false;
+        }
+        return stale;
+    }
+
+    private boolean deleteObject(Path object) {
+        boolean deleted;
+        try {
+            deleted = Files.deleteIfExists(object);
+        } catch (IOException e) {
+            deleted = false;
+        }
+        return deleted;
+    }
+
+    private Path objectPath(String hash) {
+        return objectsDir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Path compressedObjectPath(String hash) {
+        return objectsDir.resolve(hash.substring(0, 2)).resolve(hash + FRAME_EXTENSION);
+    }
+
+    private Path recipePath(String ref) {
+        String name = HexFormat.of().formatHex(newSha256().digest(ref.getBytes(StandardCharsets.UTF_8)));
+        return recipesDir.resolve(name + RECIPE_EXTENSION);
+    }
+
+    /**
+     * Sincroniza el temporal con el disco, lo renombra atómicamente y sincroniza el directorio,
+     * de modo que tras un corte de luz solo existe la versión anterior completa o la nueva completa.
+     */
+    static void publish(Path tmp, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        moveAtomically(tmp, target);
+        Path directory = target.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException ignored) {
+            // Algunos sistemas (Windows) no permiten abrir directorios; el renombrado ya es atómico.
+        }
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Flujo secuencial sobre el resultado de un parche a partir de una posición, para el troceador.
+     */
+    private static final class PatchInputStream extends InputStream {
+        private final Patch patch;
+        private long position;
+
+        PatchInputStream(Patch patch, long position) {
+            this.patch = patch;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = -1;
+            if (len == 0) {
+                read = 0;
+            } else if (position < patch.size()) {
+                read = patch.read(position, b, off, (int) Math.min(len, patch.size() - position));
+                position += read;
+            }
+            return read;
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
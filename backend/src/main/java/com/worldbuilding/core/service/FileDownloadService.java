@@ -0,0 +1,451 @@
+package com.worldbuilding.core.service;
+
+import org.eclipse.jetty.server.HttpOutput;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Sirve archivos del disco con validadores (ETag fuerte, Last-Modified), peticiones condicionales,
+ * rangos simples y múltiples (206) y transferencia desde buffers directos reutilizables, sin pasar por el heap.
+ * Los archivos registrados en el {@link ContentStore} con marcos comprimidos se negocian por Accept-Encoding:
+ * los clientes que aceptan gzip reciben los marcos almacenados y el resto el archivo vivo sin comprimir.
+ */
+@Service
+public class FileDownloadService {
+
+    private static final int MAX_RANGES = 16;
+    private static final int TRANSFER_BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 16;
+    private static final int HASH_BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_CACHED_TAGS = 10_000;
+
+    private final ConcurrentMap<Path, CachedTag> etagCache = new ConcurrentHashMap<>();
+    // Buffers directos para las descargas en curso: como mucho 4 MB retenidos entre peticiones
+    private final BlockingQueue<ByteBuffer> transferBuffers = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+    private final ContentStore contentStore;
+
+    private static final class CachedTag {
+        final long size;
+        final long lastModified;
+        final String etag;
+
+        CachedTag(long size, long lastModified, String etag) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.etag = etag;
+        }
+    }
+
+    /**
+     * Tramo de bytes inclusivo [start, end] del archivo.
+     */
+    static final class ByteRange {
+        final long start;
+        final long end;
+
+        ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {
+            return end - start + 1;
+        }
+    }
+
+    public FileDownloadService(ContentStore contentStore) {
+        this.contentStore = contentStore;
+    }
+
+    /**
+     * Como {@link #serve}, pero si el archivo está en el almacén con todos sus trozos comprimidos ofrece además
+     * la variante gzip: la concatenación de los marcos guardados, con su propio ETag y rangos sobre los bytes
+     * codificados. Ambas variantes llevan Vary: Accept-Encoding para que las cachés no las mezclen.
+     */
+    public ResponseEntity<StreamingResponseBody> serveStored(Path file, String ref, String downloadName, MediaType mediaType,
+                                                             HttpHeaders requestHeaders) throws IOException {
+        ResponseEntity<StreamingResponseBody> response;
+        ContentStore.Recipe recipe = contentStore.getRecipe(ref);
+        long encodedLength = recipe == null ? -1 : contentStore.compressedLength(recipe, file);
+
+        if (encodedLength <= 0) {
+            response = serve(file, downloadName, mediaType, requestHeaders);
+        } else if (acceptsEncoding(requestHeaders.get(HttpHeaders.ACCEPT_ENCODING), "gzip")) {
+            response = serveFrames(recipe, encodedLength, downloadName, mediaType, requestHeaders);
+        } else {
+            ResponseEntity<StreamingResponseBody> identity = serve(file, downloadName, mediaType, requestHeaders);
+            response = ResponseEntity.status(identity.getStatusCode()).headers(identity.getHeaders())
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .body(identity.getBody());
+        }
+        return response;
+    }
+
+    private ResponseEntity<StreamingResponseBody> serveFrames(ContentStore.Recipe recipe, long encodedLength, String downloadName,
+                                                              MediaType mediaType, HttpHeaders requestHeaders) {
+        ResponseEntity<StreamingResponseBody> response;
+        // El SHA-256 del contenido identifica la versión; el sufijo distingue la representación codificada
+        String etag = "\"" + recipe.sha256.substring(0, 32) + "-gzip\"";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        headers.setLastModified(recipe.lastModified);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setCacheControl(CacheControl.noCache());
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + downloadName + "\"");
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        if (matchesNoneMatch(requestHeaders.getIfNoneMatch(), etag)) {
+            response = ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        } else {
+            List<ByteRange> ranges = rangesToServe(requestHeaders, etag, recipe.lastModified, encodedLength);
+            headers.setContentType(mediaType);
+
+            if (ranges != null && ranges.isEmpty()) {
+                headers.remove(HttpHeaders.CONTENT_TYPE);
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + encodedLength);
+                response = ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+            } else if (ranges != null && ranges.size() == 1) {
+                ByteRange range = ranges.get(0);
+                headers.setContentLength(range.length());
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + range.start + "-" + range.end + "/" + encodedLength);
+                response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers)
+                        .body(out -> contentStore.transferFrames(recipe, range.start, range.end, out));
+            } else {
+                // Sin rangos o con varios: se sirve la representación completa, que también es una respuesta válida
+                headers.setContentLength(encodedLength);
+                response = ResponseEntity.ok().headers(headers)
+                        .body(out -> contentStore.transferFrames(recipe, 0, encodedLength - 1, out));
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Interpreta Accept-Encoding: la codificación se acepta si aparece (gzip también como x-gzip) o si lo hace
+     * el comodín, con calidad mayor que cero. Una mención explícita prevalece sobre el comodín.
+     */
+    public static boolean acceptsEncoding(List<String> acceptEncoding, String wanted) {
+        // -1 = no mencionado
+        double explicitQuality = -1;
+        double wildcardQuality = -1;
+        if (acceptEncoding != null) {
+            for (String header : acceptEncoding) {
+                for (String element : header.split(",")) {
+                    String[] parts = element.split(";");
+                    String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+                    if (coding.equals("x-gzip")) {
+                        coding = "gzip";
+                    }
+                    double quality = 1.0;
+                    for (int i = 1; i < parts.length; i++) {
+                        String parameter = parts[i].trim();
+                        if (parameter.startsWith("q=")) {
+                            try {
+                                quality = Double.parseDouble(parameter.substring(2));
+                            } catch (NumberFormatException e) {
+                                quality = 0.0;
+                            }
+                        }
+                    }
+                    if (coding.equals(wanted)) {
+                        explicitQuality = Math.max(explicitQuality, quality);
+                    } else if (coding.equals("*")) {
+                        wildcardQuality = quality;
+                    }
+                }
+            }
+        }
+        return explicitQuality >= 0 ? explicitQuality > 0 : wildcardQuality > 0;
+    }
+
+    /**
+     * Construye la respuesta de descarga de un archivo teniendo en cuenta If-None-Match, If-Range y Range.
+     */
+    public ResponseEntity<StreamingResponseBody> serve(Path file, String downloadName, MediaType mediaType, HttpHeaders requestHeaders) throws IOException {
+        ResponseEntity<StreamingResponseBody> response;
+
+        if (!Files.isRegularFile(file)) {
+            response = ResponseEntity.notFound().build();
+        } else {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            long size = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            String etag = computeEtag(file, size, lastModified);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setETag(etag);
+            headers.setLastModified(lastModified);
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            // Cacheable pero siempre revalidada: las repeticiones se resuelven con un 304
+            headers.setCacheControl(CacheControl.noCache());
+            headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + downloadName + "\"");
+
+            if (matchesNoneMatch(requestHeaders.getIfNoneMatch(), etag)) {
+                response = ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+            } else {
+                List<ByteRange> ranges = rangesToServe(requestHeaders, etag, lastModified, size);
+
+                if (ranges == null) {
+                    headers.setContentType(mediaType);
+                    headers.setContentLength(size);
+                    response = ResponseEntity.ok().headers(headers)
+                            .body(out -> transfer(file, List.of(new ByteRange(0, size - 1)), out));
+                } else if (ranges.isEmpty()) {
+                    headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    response = ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+                } else if (ranges.size() == 1) {
+                    ByteRange range = ranges.get(0);
+                    headers.setContentType(mediaType);
+                    headers.setContentLength(range.length());
+                    headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + range.start + "-" + range.end + "/" + size);
+                    response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers)
+                            .body(out -> transfer(file, ranges, out));
+                } else {
+                    String boundary = UUID.randomUUID().toString().replace("-", "");
+                    List<byte[]> partHeaders = new ArrayList<>();
+                    long contentLength = 0;
+                    for (ByteRange range : ranges) {
+                        byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                                + HttpHeaders.CONTENT_TYPE + ": " + mediaType + "\r\n"
+                                + HttpHeaders.CONTENT_RANGE + ": bytes " + range.start + "-" + range.end + "/" + size + "\r\n\r\n")
+                                .getBytes(StandardCharsets.US_ASCII);
+                        partHeaders.add(partHeader);
+                        contentLength += partHeader.length + range.length();
+                    }
+                    byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+                    contentLength += closing.length;
+
+                    headers.setContentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary));
+                    headers.setContentLength(contentLength);
+                    response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers)
+                            .body(out -> transferMultipart(file, ranges, partHeaders, closing, out));
+                }
+            }
+        }
+        return response;
+    }
+
+    /**
+     * ETag fuerte derivada del tamaño, la fecha de modificación y un CRC32C del contenido.
+     * El hash se calcula una sola vez por versión del archivo.
+     */
+    public String computeEtag(Path file, long size, long lastModified) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        CachedTag cached = etagCache.get(key);
+        String etag;
+
+        if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+            etag = cached.etag;
+        } else {
+            CRC32C crc = new CRC32C();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    crc.update(buffer);
+                    buffer.clear();
+                }
+            }
+            etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "-" + Long.toHexString(crc.getValue()) + "\"";
+            if (etagCache.size() >= MAX_CACHED_TAGS) {
+                etagCache.clear();
+            }
+            etagCache.put(key, new CachedTag(size, lastModified, etag));
+        }
+        return etag;
+    }
+
+    private boolean matchesNoneMatch(List<String> ifNoneMatch, String etag) {
+        boolean matches = false;
+        for (String candidate : ifNoneMatch) {
+            // If-None-Match usa comparación débil: se ignora el prefijo W/
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if ("*".equals(value) || etag.equals(value)) {
+                matches = true;
+                break;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Devuelve null si debe servirse el archivo completo, una lista vacía si el rango no es satisfacible
+     * y los tramos a servir en cualquier otro caso.
+     */
+    private List<ByteRange> rangesToServe(HttpHeaders requestHeaders, String etag, long lastModified, long size) {
+        String rangeHeader = requestHeaders.getFirst(HttpHeaders.RANGE);
+        List<ByteRange> ranges = null;
+
+        if (rangeHeader != null && size > 0 && ifRangeMatches(requestHeaders.getFirst(HttpHeaders.IF_RANGE), etag, lastModified)) {
+            ranges = parseRanges(rangeHeader.trim(), size);
+        }
+        return ranges;
+    }
+
+    private boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        boolean matches = true;
+        if (ifRange != null) {
+            String value = ifRange.trim();
+            if (value.startsWith("\"") || value.startsWith("W/")) {
+                // If-Range exige comparación fuerte
+                matches = etag.equals(value);
+            } else {
+                try {
+                    long since = java.time.ZonedDateTime.parse(value, java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME)
+                            .toInstant().toEpochMilli();
+                    matches = lastModified / 1000 == since / 1000;
+                } catch (java.time.format.DateTimeParseException e) {
+                    matches = false;
+                }
+            }
+        }
+        return matches;
+    }
+
+    static List<ByteRange> parseRanges(String header, long size) {
+        List<ByteRange> ranges = null;
+
+        if (header.startsWith("bytes=")) {
+            String[] specs = header.substring("bytes=".length()).split(",");
+            List<ByteRange> parsed = new ArrayList<>();
+            boolean valid = specs.length <= MAX_RANGES;
+
+            for (int i = 0; i < specs.length && valid; i++) {
+                String spec = specs[i].trim();
+                int dash = spec.indexOf('-');
+                if (dash < 0) {
+                    valid = false;
+                } else {
+                    try {
+                        String first = spec.substring(0, dash).trim();
+                        String last = spec.substring(dash + 1).trim();
+                        if (first.isEmpty()) {
+                            long suffix = Long.parseLong(last);
+                            if (suffix > 0) {
+                                parsed.add(new ByteRange(Math.max(0, size - suffix), size - 1));
+                            }
+                        } else {
+                            long start = Long.parseLong(first);
+                            long requestedEnd = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                            if (requestedEnd < start) {
+                                valid = false;
+                            } else if (start < size) {
+                                parsed.add(new ByteRange(start, Math.min(requestedEnd, size - 1)));
+                            }
+                        }
+                    } catch (NumberFormatException e) {
+                        valid = false;
+                    }
+                }
+            }
+
+            // Una cabecera mal formada se ignora (se sirve el archivo completo)
+            if (valid) {
+                ranges = parsed;
+            }
+        }
+        return ranges;
+    }
+
+    private void transferMultipart(Path file, List<ByteRange> ranges, List<byte[]> partHeaders, byte[] closing, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                out.write(partHeaders.get(i));
+                transferRange(channel, ranges.get(i), out);
+            }
+        }
+        out.write(closing);
+        out.flush();
+    }
+
+    private void transfer(Path file, List<ByteRange> ranges, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (ByteRange range : ranges) {
+                transferRange(channel, range, out);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Con Jetty el archivo se lee en un buffer directo que se escribe tal cual en el socket, sin pasar por el heap.
+     * No se mapea el archivo: en Windows un mapeo vive hasta el siguiente GC e impide sustituir el respaldo.
+     * En cualquier otro contenedor se recurre a FileChannel.transferTo.
+     */
+    private void transferRange(FileChannel channel, ByteRange range, OutputStream out) throws IOException {
+        long position = range.start;
+        long remaining = range.length();
+
+        if (out instanceof HttpOutput) {
+            HttpOutput httpOutput = (HttpOutput) out;
+            ByteBuffer buffer = acquireBuffer();
+            try {
+                while (remaining > 0) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new IOException("El archivo se truncó durante la descarga");
+                    }
+                    buffer.flip();
+                    // La escritura bloqueante consume el buffer entero antes de volver
+                    httpOutput.write(buffer);
+                    position += read;
+                    remaining -= read;
+                }
+            } finally {
+                releaseBuffer(buffer);
+            }
+        } else {
+            WritableByteChannel target = Channels.newChannel(out);
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    throw new IOException("El archivo se truncó durante la descarga");
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = transferBuffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE);
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        transferBuffers.offer(buffer);
+    }
+}
@@ -0,0 +1,134 @@
+package com.worldbuilding.core.service;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Grabaciones de Java Flight Recorder bajo demanda para perfilar el servidor en marcha sin reiniciarlo.
+ * Solo hay una grabación activa a la vez; tiene siempre una duración máxima para que olvidarse de pararla
+ * no deje el perfilado encendido indefinidamente. Al pararla (o al agotarse) se vuelca a un archivo temporal
+ * que el llamante envía y borra.
+ */
+@Service
+public class FlightRecorderService implements DisposableBean {
+
+    public static final Duration MAX_DURATION = Duration.ofMinutes(30);
+    private static final String RECORDING_NAME = "worldbuilding-on-demand";
+
+    private Recording recording;
+    private Path destination;
+
+    /**
+     * Se lanza cuando ya hay una grabación en curso o no hay ninguna que parar.
+     */
+    public static class RecordingStateException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public RecordingStateException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Inicia una grabación con la configuración indicada ("default", de bajo coste, o "profile", con más muestreo).
+     */
+    public synchronized Map<String, Object> start(String settings, Duration duration)
+            throws IOException, ParseException, RecordingStateException {
+        if (!FlightRecorder.isAvailable()) {
+            throw new RecordingStateException("Flight Recorder no está disponible en esta JVM.");
+        }
+        if (recording != null) {
+            if (isRunning()) {
+                throw new RecordingStateException("Ya hay una grabación en curso.");
+            }
+            // Grabación agotada y aún sin descargar: se descarta al empezar otra
+            discard();
+        }
+
+        Duration effective = duration.isNegative() || duration.isZero() || duration.compareTo(MAX_DURATION) > 0
+                ? MAX_DURATION : duration;
+        Path file = Files.createTempFile("worldbuilding-", ".jfr");
+        Recording next = new Recording(Configuration.getConfiguration(settings));
+        next.setName(RECORDING_NAME);
+        next.setToDisk(true);
+        // Con destino fijado, JFR vuelca el archivo al parar o al agotarse la duración
+        next.setDestination(file);
+        next.setDuration(effective);
+        next.start();
+
+        recording = next;
+        destination = file;
+        return status();
+    }
+
+    /**
+     * Para la grabación (si sigue en curso) y devuelve el archivo .jfr. El llamante debe borrarlo tras enviarlo.
+     */
+    public synchronized Path stop() throws IOException, RecordingStateException {
+        if (recording == null) {
+            throw new RecordingStateException("No hay ninguna grabación que parar.");
+        }
+        // Al agotarse la duración JFR ya la ha volcado y cerrado por su cuenta
+        if (isRunning()) {
+            recording.stop();
+        }
+        recording.close();
+        Path file = destination;
+        recording = null;
+        destination = null;
+        if (!Files.exists(file)) {
+            throw new IOException("La grabación no generó ningún archivo.");
+        }
+        return file;
+    }
+
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("available", FlightRecorder.isAvailable());
+        if (recording == null) {
+            status.put("state", "NONE");
+        } else {
+            // FINISHED: la duración se agotó y el archivo espera a descargarse con stop()
+            status.put("state", isRunning() ? recording.getState().name() : "FINISHED");
+            status.put("startTime", recording.getStartTime() != null ? recording.getStartTime().toString() : null);
+            status.put("durationSeconds", recording.getDuration() != null ? recording.getDuration().getSeconds() : null);
+            status.put("bytes", isRunning() ? recording.getSize() : destination.toFile().length());
+        }
+        return status;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (recording != null) {
+            discard();
+        }
+    }
+
+    private boolean isRunning() {
+        RecordingState state = recording.getState();
+        return state == RecordingState.RUNNING || state == RecordingState.DELAYED;
+    }
+
+    private void discard() {
+        recording.close();
+        try {
+            Files.deleteIfExists(destination);
+        } catch (IOException ignored) {
+            // Es un archivo temporal: el sistema lo limpiará.
+        }
+        recording = null;
+        destination = null;
+    }
+}
@@ -0,0 +1,201 @@
+package com.worldbuilding.core.service;
+
+import com.worldbuilding.core.service.ImportJobStore.ImportJobState;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Difusión por Server-Sent Events del estado de los trabajos de importación.
+ * Las conexiones son asíncronas (ningún hilo queda retenido por suscriptor) y un único hilo despachador
+ * reparte cada cambio a todos los suscriptores del trabajo. Los cambios se agrupan por trabajo: si llegan
+ * varios antes de que el despachador los atienda, solo se envía el último. El flujo se cierra al terminar el trabajo.
+ */
+@Service
+public class ImportJobEvents implements AutoCloseable {
+
+    public static final String EVENT_PROGRESS = "progress";
+    public static final String EVENT_STATUS = "status";
+
+    private static final long EMITTER_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+    private static final long HEARTBEAT_MS = TimeUnit.SECONDS.toMillis(15);
+
+    private final ImportJobStore importJobStore;
+    private final ConcurrentMap<String, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ImportJobState> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> dirtyJobs = new LinkedBlockingQueue<>();
+    private final Thread dispatcherThread;
+
+    /**
+     * Conexión abierta y último estado que ha recibido (solo lo toca el despachador tras la suscripción).
+     */
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        volatile String lastStatus;
+
+        Subscriber(SseEmitter emitter, String lastStatus) {
+            this.emitter = emitter;
+            this.lastStatus = lastStatus;
+        }
+    }
+
+    public ImportJobEvents(ImportJobStore importJobStore) {
+        this.importJobStore = importJobStore;
+        importJobStore.addListener(this::publish);
+        dispatcherThread = new Thread(this::dispatchLoop, "import-job-events");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+
+    /**
+     * Abre un flujo para el trabajo indicado; devuelve null si el trabajo no existe.
+     * El estado actual se envía de inmediato y, si ya ha terminado, el flujo se cierra tras enviarlo.
+     */
+    public SseEmitter subscribe(String jobId) {
+        ImportJobState current = importJobStore.get(jobId);
+        if (current == null) {
+            return null;
+        }
+
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        if (current.finished()) {
+            sendQuietly(emitter, EVENT_STATUS, current);
+            emitter.complete();
+        } else {
+            Subscriber subscriber = new Subscriber(emitter, current.status);
+            List<Subscriber> jobSubscribers = subscribers.computeIfAbsent(jobId, id -> new CopyOnWriteArrayList<>());
+            jobSubscribers.add(subscriber);
+            Runnable detach = () -> detach(jobId, subscriber);
+            emitter.onCompletion(detach);
+            emitter.onTimeout(detach);
+            emitter.onError(error -> detach.run());
+            sendQuietly(emitter, EVENT_STATUS, current);
+
+            // El trabajo pudo terminar entre la lectura y el alta: forzar un reparto con el estado vigente
+            ImportJobState latest = importJobStore.get(jobId);
+            if (latest != null && latest != current) {
+                publish(latest);
+            }
+        }
+        return emitter;
+    }
+
+    public int subscriberCount() {
+        int count = 0;
+        for (List<Subscriber> jobSubscribers : subscribers.values()) {
+            count += jobSubscribers.size();
+        }
+        return count;
+    }
+
+    /**
+     * Anota el último estado del trabajo para el despachador; nunca bloquea al hilo de importación.
+     */
+    private void publish(ImportJobState state) {
+        if (subscribers.containsKey(state.jobId) && pending.put(state.jobId, state) == null) {
+            dirtyJobs.offer(state.jobId);
+        }
+    }
+
+    private void dispatchLoop() {
+        boolean running = true;
+        long lastHeartbeat = System.currentTimeMillis();
+        while (running) {
+            try {
+                String jobId = dirtyJobs.poll(HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+                if (jobId != null) {
+                    ImportJobState state = pending.remove(jobId);
+                    if (state != null) {
+                        dispatch(state);
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastHeartbeat >= HEARTBEAT_MS) {
+                    heartbeat();
+                    lastHeartbeat = now;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (RuntimeException ignored) {
+                // Un suscriptor defectuoso no debe detener el reparto a los demás.
+            }
+        }
+    }
+
+    private void dispatch(ImportJobState state) {
+        List<Subscriber> jobSubscribers = subscribers.get(state.jobId);
+        if (jobSubscribers != null) {
+            for (Subscriber subscriber : jobSubscribers) {
+                String eventName = state.status.equals(subscriber.lastStatus) ? EVENT_PROGRESS : EVENT_STATUS;
+                subscriber.lastStatus = state.status;
+                if (!sendQuietly(subscriber.emitter, eventName, state)) {
+                    detach(state.jobId, subscriber);
+                } else if (state.finished()) {
+                    subscriber.emitter.complete();
+                }
+            }
+            if (state.finished()) {
+                subscribers.remove(state.jobId);
+            }
+        }
+    }
+
+    /**
+     * Comentario SSE periódico: mantiene viva la conexión a través de proxies y descubre clientes desconectados.
+     */
+    private void heartbeat() {
+        for (Map.Entry<String, List<Subscriber>> entry : subscribers.entrySet()) {
+            for (Subscriber subscriber : entry.getValue()) {
+                try {
+                    subscriber.emitter.send(SseEmitter.event().comment("keep-alive"));
+                } catch (IOException | IllegalStateException e) {
+                    detach(entry.getKey(), subscriber);
+                }
+            }
+        }
+    }
+
+    private boolean sendQuietly(SseEmitter emitter, String eventName, ImportJobState state) {
+        boolean sent;
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(Long.toString(state.updatedAt))
+                    .name(eventName)
+                    .data(state, MediaType.APPLICATION_JSON));
+            sent = true;
+        } catch (IOException | IllegalStateException e) {
+            // Cliente desconectado o flujo ya cerrado.
+            sent = false;
+        }
+        return sent;
+    }
+
+    private void detach(String jobId, Subscriber subscriber) {
+        subscribers.computeIfPresent(jobId, (id, jobSubscribers) -> {
+            jobSubscribers.remove(subscriber);
+            return jobSubscribers.isEmpty() ? null : jobSubscribers;
+        });
+    }
+
+    @Override
+    public void close() {
+        dispatcherThread.interrupt();
+        for (List<Subscriber> jobSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : jobSubscribers) {
+                subscriber.emitter.complete();
+            }
+        }
+        subscribers.clear();
+    }
+}
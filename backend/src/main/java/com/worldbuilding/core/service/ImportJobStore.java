@@ -0,0 +1,378 @@
+package com.worldbuilding.core.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Registro de trabajos de importación acotado en tamaño y tiempo.
+ * Cada estado es inmutable y se sustituye entero, así que los hilos HTTP siempre leen una instantánea coherente
+ * publicada por el ConcurrentHashMap. Los cambios de estado (no el progreso) se anotan en un diario de solo
+ * añadido que se compacta al crecer; al arrancar se reproduce y los trabajos interrumpidos se reanudan.
+ */
+@Service
+public class ImportJobStore implements AutoCloseable {
+
+    public static final String STATUS_QUEUED = "queued";
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_COMPLETED = "completed";
+    public static final String STATUS_FAILED = "failed";
+
+    private static final String JOURNAL_FILE = "import-jobs.log";
+    private static final int MAX_JOBS = 1000;
+    private static final long FINISHED_TTL_MS = TimeUnit.HOURS.toMillis(24);
+    private static final int COMPACTION_SLACK = 1000;
+
+    private final ConcurrentMap<String, ImportJobState> jobs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Path> spooledArchives = new ConcurrentHashMap<>();
+    private final List<PendingJob> interruptedJobs = new ArrayList<>();
+    private final List<Consumer<ImportJobState>> listeners = new CopyOnWriteArrayList<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path journalPath;
+
+    // Candado y no monitor: se retiene durante el fsync del diario y los hilos virtuales que esperan no deben
+    // quedar fijados a su portador
+    private final ReentrantLock journalLock = new ReentrantLock();
+
+    // Solo se accede bajo journalLock
+    private FileChannel journal;
+    private int journalLines;
+
+    /**
+     * Estado público e inmutable de un trabajo de importación.
+     */
+    public static final class ImportJobState {
+        public final String jobId;
+        public final String projectName;
+        public final String status;
+        public final int progress;
+        public final String message;
+        public final String error;
+        public final long updatedAt;
+
+        public ImportJobState(String jobId, String projectName, String status, int progress, String message, String error, long updatedAt) {
+            this.jobId = jobId;
+            this.projectName = projectName;
+            this.status = status;
+            this.progress = progress;
+            this.message = message;
+            this.error = error;
+            this.updatedAt = updatedAt;
+        }
+
+        public boolean finished() {
+            return STATUS_COMPLETED.equals(status) || STATUS_FAILED.equals(status);
+        }
+
+        ImportJobState with(String newStatus, int newProgress, String newMessage, String newError) {
+            return new ImportJobState(jobId, projectName, newStatus, newProgress, newMessage, newError, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Trabajo que quedó a medias en un reinicio y cuyo ZIP sigue en disco.
+     */
+    public static final class PendingJob {
+        public final String jobId;
+        public final String projectName;
+        public final Path spooledZip;
+
+        PendingJob(String jobId, String projectName, Path spooledZip) {
+            this.jobId = jobId;
+            this.projectName = projectName;
+            this.spooledZip = spooledZip;
+        }
+    }
+
+    public ImportJobStore(ProjectCatalog projectCatalog) {
+        this.journalPath = projectCatalog.getBackupDir().resolve(ContentStore.STORE_DIR).resolve(JOURNAL_FILE);
+        replayJournal();
+        journalLock.lock();
+        try {
+            try {
+                rewriteJournal();
+            } catch (IOException ignored) {
+                // Sin diario los trabajos siguen funcionando, solo que no sobreviven a un reinicio.
+            }
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * Registra un trabajo nuevo en cola con el ZIP ya volcado a disco.
+     */
+    public ImportJobState create(String jobId, String projectName, Path spooledZip) {
+        ImportJobState state = new ImportJobState(jobId, projectName, STATUS_QUEUED, 0, "Importación en cola.", null, System.currentTimeMillis());
+        jobs.put(jobId, state);
+        spooledArchives.put(jobId, spooledZip.toAbsolutePath());
+        journal(state);
+        evict();
+        return state;
+    }
+
+    public ImportJobState get(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * Registra un observador que recibe cada estado nuevo publicado. Se invoca en el hilo que hace el cambio,
+     * así que no debe bloquear.
+     */
+    public void addListener(Consumer<ImportJobState> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Actualiza el progreso solo en memoria; no se publica un estado nuevo si no cambia nada visible.
+     */
+    public void progress(String jobId, int progress, String message) {
+        ImportJobState previous = jobs.get(jobId);
+        ImportJobState updated = jobs.computeIfPresent(jobId, (id, current) ->
+                current.progress == progress && current.message.equals(message)
+                        ? current
+                        : current.with(current.status, progress, message, current.error));
+        if (updated != null && updated != previous) {
+            notifyListeners(updated);
+        }
+    }
+
+    /**
+     * Cambia el estado del trabajo y lo anota en el diario.
+     */
+    public void transition(String jobId, String status, int progress, String message, String error) {
+        ImportJobState updated = jobs.computeIfPresent(jobId, (id, current) -> current.with(status, progress, message, error));
+        if (updated != null) {
+            if (updated.finished()) {
+                spooledArchives.remove(jobId);
+            }
+            journal(updated);
+            notifyListeners(updated);
+        }
+    }
+
+    public void remove(String jobId) {
+        if (jobs.remove(jobId) != null) {
+            spooledArchives.remove(jobId);
+            journalRemoval(jobId);
+        }
+    }
+
+    /**
+     * Devuelve (una sola vez) los trabajos interrumpidos por el último reinicio que pueden reanudarse.
+     */
+    public List<PendingJob> drainInterruptedJobs() {
+        List<PendingJob> pending;
+        synchronized (interruptedJobs) {
+            pending = new ArrayList<>(interruptedJobs);
+            interruptedJobs.clear();
+        }
+        return pending;
+    }
+
+    private void notifyListeners(ImportJobState state) {
+        for (Consumer<ImportJobState> listener : listeners) {
+            listener.accept(state);
+        }
+    }
+
+    /**
+     * Descarta los trabajos terminados que superan el TTL y, si aún se excede el límite, los terminados más antiguos.
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        for (ImportJobState state : jobs.values()) {
+            if (state.finished() && now - state.updatedAt > FINISHED_TTL_MS) {
+                remove(state.jobId);
+            }
+        }
+
+        int excess = jobs.size() - MAX_JOBS;
+        if (excess > 0) {
+            List<ImportJobState> finished = new ArrayList<>();
+            for (ImportJobState state : jobs.values()) {
+                if (state.finished()) {
+                    finished.add(state);
+                }
+            }
+            finished.sort(Comparator.comparingLong(state -> state.updatedAt));
+            for (int i = 0; i < excess && i < finished.size(); i++) {
+                remove(finished.get(i).jobId);
+            }
+        }
+    }
+
+    private void journal(ImportJobState state) {
+        appendRecord(toRecord(state));
+    }
+
+    private Map<String, Object> toRecord(ImportJobState state) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("jobId", state.jobId);
+        record.put("projectName", state.projectName);
+        record.put("status", state.status);
+        record.put("progress", state.progress);
+        record.put("message", state.message);
+        record.put("error", state.error);
+        record.put("updatedAt", state.updatedAt);
+        Path spooledZip = spooledArchives.get(state.jobId);
+        if (spooledZip != null) {
+            record.put("spooledZip", spooledZip.toString());
+        }
+        return record;
+    }
+
+    private void journalRemoval(String jobId) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("jobId", jobId);
+        record.put("removed", true);
+        appendRecord(record);
+    }
+
+    private void appendRecord(Map<String, Object> record) {
+        journalLock.lock();
+        try {
+            try {
+                if (journal != null) {
+                    byte[] line = (objectMapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer buffer = ByteBuffer.wrap(line);
+                    while (buffer.hasRemaining()) {
+                        journal.write(buffer);
+                    }
+                    journal.force(false);
+                    journalLines++;
+                    if (journalLines > jobs.size() * 2 + COMPACTION_SLACK) {
+                        rewriteJournal();
+                    }
+                }
+            } catch (IOException ignored) {
+                // El estado en memoria sigue siendo válido; solo se pierde su persistencia.
+            }
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * Compacta el diario a una línea por trabajo vivo (temporal + fsync + renombrado atómico).
+     */
+    private void rewriteJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        Files.createDirectories(journalPath.getParent());
+        Path tmp = journalPath.resolveSibling(JOURNAL_FILE + ".tmp");
+        List<ImportJobState> states = new ArrayList<>(jobs.values());
+        states.sort(Comparator.comparingLong(state -> state.updatedAt));
+
+        StringBuilder content = new StringBuilder();
+        for (ImportJobState state : states) {
+            content.append(objectMapper.writeValueAsString(toRecord(state))).append('\n');
+        }
+        Files.writeString(tmp, content, StandardCharsets.UTF_8);
+        ContentStore.publish(tmp, journalPath);
+
+        journal = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journalLines = states.size();
+    }
+
+    /**
+     * Reconstruye el registro desde el diario. Los trabajos en cola o en curso con su ZIP todavía en disco
+     * quedan pendientes de reanudar; los demás se marcan como fallidos.
+     */
+    private void replayJournal() {
+        if (Files.isRegularFile(journalPath)) {
+            try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    replayRecord(line);
+                }
+            } catch (IOException ignored) {
+                // Diario ilegible a partir de este punto: se conserva lo reproducido hasta aquí.
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (ImportJobState state : new ArrayList<>(jobs.values())) {
+            Path spooledZip = spooledArchives.get(state.jobId);
+            if (state.finished()) {
+                if (now - state.updatedAt > FINISHED_TTL_MS) {
+                    jobs.remove(state.jobId);
+                }
+            } else if (spooledZip != null && Files.isRegularFile(spooledZip)) {
+                jobs.put(state.jobId, state.with(STATUS_QUEUED, 0, "Reanudando importación tras un reinicio.", null));
+                interruptedJobs.add(new PendingJob(state.jobId, state.projectName, spooledZip));
+            } else {
+                spooledArchives.remove(state.jobId);
+                jobs.put(state.jobId, state.with(STATUS_FAILED, 100, "Falló la importación.", "Importación interrumpida por un reinicio del servidor."));
+            }
+        }
+    }
+
+    private void replayRecord(String line) {
+        try {
+            JsonNode record = objectMapper.readTree(line);
+            String jobId = record.path("jobId").asText(null);
+            if (jobId != null) {
+                if (record.path("removed").asBoolean(false)) {
+                    jobs.remove(jobId);
+                    spooledArchives.remove(jobId);
+                } else {
+                    jobs.put(jobId, new ImportJobState(
+                            jobId,
+                            record.path("projectName").asText(null),
+                            record.path("status").asText(STATUS_FAILED),
+                            record.path("progress").asInt(0),
+                            record.path("message").asText(""),
+                            record.path("error").isNull() ? null : record.path("error").asText(null),
+                            record.path("updatedAt").asLong(0)));
+                    if (record.hasNonNull("spooledZip")) {
+                        spooledArchives.put(jobId, Path.of(record.get("spooledZip").asText()));
+                    } else {
+                        spooledArchives.remove(jobId);
+                    }
+                }
+            }
+        } catch (IOException ignored) {
+            // Línea truncada por un corte durante la escritura: se ignora.
+        }
+    }
+
+    @Override
+    public void close() {
+        journalLock.lock();
+        try {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException ignored) {
+                    // Nada más que hacer al apagar.
+                }
+                journal = null;
+            }
+        } finally {
+            journalLock.unlock();
+        }
+    }
+}
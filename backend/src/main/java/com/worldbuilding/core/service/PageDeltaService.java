@@ -0,0 +1,375 @@
+package com.worldbuilding.core.service;
+
+import org.springframework.stereotype.Service;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Sincronización diferencial por páginas de los respaldos SQLite.
+ * Publica un manifiesto con el hash de cada página del respaldo almacenado y aplica deltas que
+ * solo contienen las páginas modificadas, reconstruyendo el archivo de forma atómica a través del
+ * {@link ContentStore}, que reutiliza los trozos que el delta no toca.
+ */
+@Service
+public class PageDeltaService {
+
+    public static final int HASH_LENGTH = 16;
+    private static final int DEFAULT_PAGE_SIZE = 4096;
+    private static final int MAX_CACHED_MANIFESTS = 16;
+    private static final long MAX_FILE_SIZE = 1024L * 1024L * 1024L * 8L;
+
+    private final ProjectCatalog projectCatalog;
+    private final ContentStore contentStore;
+    private final Map<Path, PageManifest> manifestCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, PageManifest> eldest) {
+            return size() > MAX_CACHED_MANIFESTS;
+        }
+    };
+
+    /**
+     * Hash por página (SHA-256 truncado a 16 bytes) y SHA-256 completo de un respaldo.
+     */
+    public static class PageManifest {
+        public int pageSize;
+        public long size;
+        public int hashLength;
+        public String sha256;
+        public String pages;
+
+        transient long lastModified;
+    }
+
+    /**
+     * El delta no corresponde al respaldo actual o el resultado no supera la verificación.
+     */
+    public static class DeltaRejectedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public DeltaRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    public PageDeltaService(ProjectCatalog projectCatalog, ContentStore contentStore) {
+        this.projectCatalog = projectCatalog;
+        this.contentStore = contentStore;
+    }
+
+    /**
+     * Calcula (o recupera de caché) el manifiesto de páginas del archivo.
+     */
+    public PageManifest getManifest(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Path key = file.toAbsolutePath().normalize();
+        PageManifest manifest;
+
+        synchronized (manifestCache) {
+            manifest = manifestCache.get(key);
+        }
+
+        if (manifest == null || manifest.size != attributes.size() || manifest.lastModified != attributes.lastModifiedTime().toMillis()) {
+            manifest = buildManifest(file, attributes);
+            synchronized (manifestCache) {
+                manifestCache.put(key, manifest);
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Aplica un delta sobre el respaldo actual y lo sustituye de forma atómica.
+     * Cuerpo: secuencia de registros [índice de página uint32 big-endian][pageSize bytes];
+     * la última página se envía rellenada hasta pageSize y se recorta a newSize.
+     * Las páginas recibidas se guardan aparte y el resultado se compone al vuelo sobre la receta del almacén,
+     * que reutiliza los trozos que el delta no toca; el respaldo no se copia ni se vuelve a trocear entero.
+     */
+    public Path applyDelta(String projectName, Path file, String baseSha256, int pageSize, long newSize,
+                           String expectedSha256, InputStream body) throws IOException, DeltaRejectedException {
+        // El mismo candado que el resto de escritores, para que la comprobación de la base siga siendo válida
+        Lock lock = projectCatalog.writeLock(projectName);
+        lock.lock();
+        try {
+            return applyDeltaLocked(projectName, file, baseSha256, pageSize, newSize, expectedSha256, body);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path applyDeltaLocked(String projectName, Path file, String baseSha256, int pageSize, long newSize,
+                                  String expectedSha256, InputStream body) throws IOException, DeltaRejectedException {
+        if (newSize <= 0 || newSize > MAX_FILE_SIZE) {
+            throw new DeltaRejectedException("Tamaño final inválido: " + newSize);
+        }
+
+        PageManifest base = getManifest(file);
+        if (!base.sha256.equalsIgnoreCase(baseSha256)) {
+            throw new DeltaRejectedException("El respaldo del servidor cambió desde que se generó el delta");
+        }
+        if (base.pageSize != pageSize) {
+            throw new DeltaRejectedException("Tamaño de página distinto: " + pageSize + " != " + base.pageSize);
+        }
+
+        Path workDir = projectCatalog.getBackupDir().resolve(ChunkedUploadService.UPLOADS_DIR);
+        Files.createDirectories(workDir);
+        Path work = workDir.resolve("delta-" + UUID.randomUUID() + ".part");
+
+        try (FileChannel pages = FileChannel.open(work, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.READ);
+             FileChannel live = FileChannel.open(file, StandardOpenOption.READ)) {
+            DeltaPatch patch = new DeltaPatch(live, base.size, pages, pageSize, newSize);
+            patch.spool(body);
+
+            ContentStore.StoreResult stored;
+            try {
+                stored = contentStore.storePatch(ContentStore.databaseRef(projectName), baseSha256, patch, file, expectedSha256);
+            } catch (ContentStore.ChecksumMismatchException e) {
+                throw new DeltaRejectedException(e.getMessage());
+            }
+
+            if (!stored.unchanged) {
+                PageManifest manifest = patchManifest(base, patch, file, stored.recipe);
+                synchronized (manifestCache) {
+                    manifestCache.put(file.toAbsolutePath().normalize(), manifest);
+                }
+            }
+            projectCatalog.register(file);
+            return file;
+        } finally {
+            Files.deleteIfExists(work);
+        }
+    }
+
+    /**
+     * Manifiesto de la nueva versión a partir del anterior: solo se vuelven a leer las páginas del delta
+     * y las que cambian de longitud (la última de cada versión y las añadidas).
+     */
+    private PageManifest patchManifest(PageManifest base, DeltaPatch patch, Path file, ContentStore.Recipe recipe)
+            throws IOException {
+        int pageSize = base.pageSize;
+        long pageCount = (recipe.size + pageSize - 1) / pageSize;
+        if (pageCount * HASH_LENGTH > Integer.MAX_VALUE) {
+            throw new IOException("Archivo demasiado grande para el manifiesto de páginas");
+        }
+
+        byte[] baseHashes = Base64.getDecoder().decode(base.pages);
+        byte[] pageHashes = new byte[(int) (pageCount * HASH_LENGTH)];
+        MessageDigest perPage = newSha256();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+            for (long index = 0; index < pageCount; index++) {
+                long end = (index + 1) * pageSize;
+                boolean reuse = end <= base.size && end <= recipe.size && !patch.isDirty(index);
+                if (reuse) {
+                    System.arraycopy(baseHashes, (int) (index * HASH_LENGTH), pageHashes, (int) (index * HASH_LENGTH), HASH_LENGTH);
+                } else {
+                    channel.position(index * pageSize);
+                    readPage(channel, buffer);
+                    perPage.update(buffer);
+                    System.arraycopy(perPage.digest(), 0, pageHashes, (int) (index * HASH_LENGTH), HASH_LENGTH);
+                }
+            }
+        }
+
+        PageManifest manifest = new PageManifest();
+        manifest.pageSize = pageSize;
+        manifest.size = recipe.size;
+        manifest.hashLength = HASH_LENGTH;
+        manifest.sha256 = recipe.sha256;
+        manifest.pages = Base64.getEncoder().encodeToString(pageHashes);
+        manifest.lastModified = recipe.lastModified;
+        return manifest;
+    }
+
+    /**
+     * Resultado de un delta visto como parche sobre el respaldo vivo: las páginas recibidas se leen del archivo
+     * de trabajo, el resto del respaldo y, más allá de su final, ceros (como al extender el archivo).
+     */
+    private static final class DeltaPatch implements ContentStore.Patch {
+        private final FileChannel live;
+        private final long baseSize;
+        private final FileChannel pages;
+        private final int pageSize;
+        private final long newSize;
+        // Índice de página -> posición de su copia en el archivo de trabajo; una página repetida gana la última
+        private final NavigableMap<Long, Long> dirty = new TreeMap<>();
+
+        DeltaPatch(FileChannel live, long baseSize, FileChannel pages, int pageSize, long newSize) {
+            this.live = live;
+            this.baseSize = baseSize;
+            this.pages = pages;
+            this.pageSize = pageSize;
+            this.newSize = newSize;
+        }
+
+        void spool(InputStream body) throws IOException, DeltaRejectedException {
+            long pageCount = (newSize + pageSize - 1) / pageSize;
+            DataInputStream in = new DataInputStream(body);
+            byte[] page = new byte[pageSize];
+            boolean more = true;
+
+            while (more) {
+                long pageIndex;
+                try {
+                    pageIndex = Integer.toUnsignedLong(in.readInt());
+                } catch (EOFException e) {
+                    pageIndex = -1;
+                }
+
+                if (pageIndex < 0) {
+                    more = false;
+                } else {
+                    if (pageIndex >= pageCount) {
+                        throw new DeltaRejectedException("Página fuera de rango: " + pageIndex);
+                    }
+                    in.readFully(page);
+                    long slot = dirty.computeIfAbsent(pageIndex, k -> (long) dirty.size() * pageSize);
+                    ByteBuffer buffer = ByteBuffer.wrap(page);
+                    long position = slot;
+                    while (buffer.hasRemaining()) {
+                        position += pages.write(buffer, position);
+                    }
+                }
+            }
+        }
+
+        boolean isDirty(long pageIndex) {
+            return dirty.containsKey(pageIndex);
+        }
+
+        @Override
+        public long size() {
+            return newSize;
+        }
+
+        @Override
+        public boolean unchanged(long start, long end) {
+            return end <= baseSize && dirty.subMap(start / pageSize, true, (end - 1) / pageSize, true).isEmpty();
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+            long pageIndex = position / pageSize;
+            int inPage = (int) (position % pageSize);
+            int count = (int) Math.min(Math.min(length, pageSize - inPage), newSize - position);
+            Long slot = dirty.get(pageIndex);
+
+            if (slot != null) {
+                readFully(pages, ByteBuffer.wrap(buffer, offset, count), slot + inPage);
+            } else if (position < baseSize) {
+                count = (int) Math.min(count, baseSize - position);
+                readFully(live, ByteBuffer.wrap(buffer, offset, count), position);
+            } else {
+                Arrays.fill(buffer, offset, offset + count, (byte) 0);
+            }
+            return count;
+        }
+
+        private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+            long next = position;
+            while (target.hasRemaining()) {
+                int read = channel.read(target, next);
+                if (read == -1) {
+                    throw new EOFException("El respaldo se acortó mientras se aplicaba el delta");
+                }
+                next += read;
+            }
+        }
+    }
+
+    private PageManifest buildManifest(Path file, BasicFileAttributes attributes) throws IOException {
+        int pageSize = readSqlitePageSize(file);
+        long size = attributes.size();
+        long pageCount = (size + pageSize - 1) / pageSize;
+        if (pageCount * HASH_LENGTH > Integer.MAX_VALUE) {
+            throw new IOException("Archivo demasiado grande para el manifiesto de páginas");
+        }
+
+        MessageDigest whole = newSha256();
+        MessageDigest perPage = newSha256();
+        byte[] pageHashes = new byte[(int) (pageCount * HASH_LENGTH)];
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+            for (long index = 0; index < pageCount; index++) {
+                readPage(channel, buffer);
+                whole.update(buffer.duplicate());
+                perPage.update(buffer);
+                byte[] digest = perPage.digest();
+                System.arraycopy(digest, 0, pageHashes, (int) (index * HASH_LENGTH), HASH_LENGTH);
+            }
+        }
+
+        PageManifest manifest = new PageManifest();
+        manifest.pageSize = pageSize;
+        manifest.size = size;
+        manifest.hashLength = HASH_LENGTH;
+        manifest.sha256 = HexFormat.of().formatHex(whole.digest());
+        manifest.pages = Base64.getEncoder().encodeToString(pageHashes);
+        manifest.lastModified = attributes.lastModifiedTime().toMillis();
+        return manifest;
+    }
+
+    /**
+     * Llena el buffer con la siguiente página; la última puede quedar parcial.
+     */
+    private static void readPage(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int read = 0;
+        while (buffer.hasRemaining() && read != -1) {
+            read = channel.read(buffer);
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Lee el tamaño de página de la cabecera SQLite (offset 16, big-endian; 1 significa 65536).
+     */
+    private int readSqlitePageSize(Path file) throws IOException {
+        int pageSize = DEFAULT_PAGE_SIZE;
+        byte[] header = new byte[18];
+
+        try (InputStream in = Files.newInputStream(file)) {
+            int read = in.readNBytes(header, 0, header.length);
+            boolean isSqlite = read == header.length
+                    && new String(Arrays.copyOf(header, 15), java.nio.charset.StandardCharsets.US_ASCII).equals("SQLite format 3");
+            if (isSqlite) {
+                int raw = ((header[16] & 0xFF) << 8) | (header[17] & 0xFF);
+                pageSize = raw == 1 ? 65536 : raw;
+                if (pageSize < 512 || Integer.bitCount(pageSize) != 1) {
+                    pageSize = DEFAULT_PAGE_SIZE;
+                }
+            }
+        }
+        return pageSize;
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
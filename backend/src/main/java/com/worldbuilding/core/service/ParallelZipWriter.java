@@ -0,0 +1,629 @@
+package com.worldbuilding.core.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Escritor de ZIP que comprime los archivos en bloques independientes sobre un pool de hilos
+ * y los concatena en orden en un único flujo DEFLATE por entrada (mismo esquema que pigz).
+ * Las entradas ya comprimidas (imágenes) se guardan con el método STORED.
+ * El resultado es un ZIP estándar legible por ZipInputStream/ZipFile, con soporte ZIP64.
+ * Cada archivo se abre una sola vez y todos sus bloques se leen de ese descriptor, así que un archivo borrado
+ * después de abrirse se exporta entero; uno que ya no existe al llegar su turno se omite, como hacía la exportación
+ * secuencial con los assets que fallaban.
+ */
+public class ParallelZipWriter {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private final Executor executor;
+    private final int maxInFlightChunks;
+    private final int level;
+
+    /**
+     * Entrada a escribir en el ZIP, respaldada por un archivo en disco.
+     */
+    public static final class Source {
+        final String name;
+        final Path path;
+        final boolean stored;
+
+        public Source(String name, Path path, boolean stored) {
+            this.name = name;
+            this.path = path;
+            this.stored = stored;
+        }
+    }
+
+    private static final class CentralRecord {
+        final byte[] name;
+        final int method;
+        final int flags;
+        final long dosTime;
+        long crc;
+        long compressedSize;
+        long size;
+        final long offset;
+
+        CentralRecord(byte[] name, int method, int flags, long dosTime, long offset) {
+            this.name = name;
+            this.method = method;
+            this.flags = flags;
+            this.dosTime = dosTime;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Archivo de una entrada ya abierto: su tamaño y fecha se fijan al abrirlo.
+     */
+    private static final class OpenSource {
+        final FileChannel channel;
+        final long size;
+        final long lastModified;
+
+        OpenSource(FileChannel channel, long size, long lastModified) {
+            this.channel = channel;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Unidad de trabajo en vuelo: un bloque DEFLATE o el CRC de una entrada STORED.
+     */
+    private static final class Unit {
+        final int sourceIndex;
+        final OpenSource file;
+        final boolean lastOfSource;
+        final CompletableFuture<ChunkResult> result;
+
+        Unit(int sourceIndex, OpenSource file, boolean lastOfSource, CompletableFuture<ChunkResult> result) {
+            this.sourceIndex = sourceIndex;
+            this.file = file;
+            this.lastOfSource = lastOfSource;
+            this.result = result;
+        }
+    }
+
+    private static final class ChunkResult {
+        final byte[] compressed;
+        final int compressedLength;
+        final long crc;
+        final long rawLength;
+
+        ChunkResult(byte[] compressed, int compressedLength, long crc, long rawLength) {
+            this.compressed = compressed;
+            this.compressedLength = compressedLength;
+            this.crc = crc;
+            this.rawLength = rawLength;
+        }
+    }
+
+    public ParallelZipWriter(Executor executor, int parallelism) {
+        this(executor, parallelism, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ParallelZipWriter(Executor executor, int parallelism, int level) {
+        this.executor = executor;
+        // Dos bloques por hilo mantienen el pool ocupado mientras se acota la memoria a ~4 MB por hilo
+        this.maxInFlightChunks = Math.max(2, parallelism * 2);
+        this.level = level;
+    }
+
+    /**
+     * Escribe todas las entradas en el flujo de destino y devuelve los bytes del ZIP escritos. No cierra el flujo.
+     */
+    public long write(List<Source> sources, OutputStream target) throws IOException {
+        CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(target, COPY_BUFFER_SIZE));
+        List<CentralRecord> records = new ArrayList<>();
+        Deque<Unit> inFlight = new ArrayDeque<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        UnitProducer producer = new UnitProducer(sources, cancelled);
+
+        try {
+            fill(producer, inFlight);
+            CentralRecord current = null;
+            int currentIndex = -1;
+
+            while (!inFlight.isEmpty()) {
+                Unit unit = inFlight.pollFirst();
+                ChunkResult chunk = join(unit.result);
+                fill(producer, inFlight);
+                Source source = sources.get(unit.sourceIndex);
+
+                if (unit.sourceIndex != currentIndex) {
+                    currentIndex = unit.sourceIndex;
+                    current = startEntry(source, unit.file, chunk, out);
+                    records.add(current);
+                }
+
+                if (source.stored) {
+                    copyStored(source, unit.file, current, out);
+                } else {
+                    out.write(chunk.compressed, 0, chunk.compressedLength);
+                    current.crc = crc32Combine(current.crc, chunk.crc, chunk.rawLength);
+                    current.size += chunk.rawLength;
+                    current.compressedSize += chunk.compressedLength;
+                    if (unit.lastOfSource) {
+                        writeDataDescriptor(current, out);
+                    }
+                }
+                if (unit.lastOfSource) {
+                    closeQuietly(unit.file.channel);
+                }
+            }
+
+            writeCentralDirectory(records, out);
+            out.flush();
+        } finally {
+            // cancel() no interrumpe las tareas ya en marcha: deflateChunk consulta la bandera entre pasos
+            cancelled.set(true);
+            for (Unit pending : inFlight) {
+                pending.result.cancel(false);
+            }
+            producer.close();
+        }
+        return out.getCount();
+    }
+
+    private void fill(UnitProducer producer, Deque<Unit> inFlight) {
+        Unit unit;
+        while (inFlight.size() < maxInFlightChunks && (unit = producer.next()) != null) {
+            inFlight.addLast(unit);
+        }
+    }
+
+    private ChunkResult join(CompletableFuture<ChunkResult> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Fallo al comprimir el archivo", cause);
+        }
+    }
+
+    /**
+     * Genera las unidades en orden (entrada, bloque) y las envía al pool a medida que se piden.
+     * Abre cada archivo al empezar su entrada; los que ya no existen se omiten.
+     */
+    private final class UnitProducer {
+        private final List<Source> sources;
+        private final AtomicBoolean cancelled;
+        private final List<FileChannel> opened = new ArrayList<>();
+        private int sourceIndex = 0;
+        private long offset = 0;
+        private OpenSource file;
+
+        UnitProducer(List<Source> sources, AtomicBoolean cancelled) {
+            this.sources = sources;
+            this.cancelled = cancelled;
+        }
+
+        /**
+         * Siguiente unidad, o null si no quedan entradas.
+         */
+        Unit next() {
+            while (file == null && sourceIndex < sources.size()) {
+                file = open(sources.get(sourceIndex).path);
+                if (file == null) {
+                    sourceIndex += 1;
+                }
+            }
+
+            Unit unit = null;
+            if (file != null) {
+                Source source = sources.get(sourceIndex);
+                OpenSource current = file;
+                if (source.stored) {
+                    unit = new Unit(sourceIndex, current, true, CompletableFuture.supplyAsync(() -> checksum(current), executor));
+                } else {
+                    final long chunkOffset = offset;
+                    final int chunkLength = (int) Math.min(CHUNK_SIZE, current.size - offset);
+                    final boolean last = chunkOffset + chunkLength >= current.size;
+                    unit = new Unit(sourceIndex, current, last, CompletableFuture.supplyAsync(
+                            () -> deflateChunk(current.channel, chunkOffset, chunkLength, last, cancelled), executor));
+                    offset += chunkLength;
+                }
+                if (unit.lastOfSource) {
+                    sourceIndex += 1;
+                    offset = 0;
+                    file = null;
+                }
+            }
+            return unit;
+        }
+
+        private OpenSource open(Path path) {
+            OpenSource result = null;
+            FileChannel channel = null;
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                result = new OpenSource(channel, channel.size(), Files.getLastModifiedTime(path).toMillis());
+                opened.add(channel);
+            } catch (IOException ignored) {
+                // Borrado entre el listado y la compresión: se omite la entrada.
+                closeQuietly(channel);
+            }
+            return result;
+        }
+
+        void close() {
+            for (FileChannel channel : opened) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private ChunkResult deflateChunk(FileChannel channel, long offset, int length, boolean last, AtomicBoolean cancelled) {
+        checkCancelled(cancelled);
+        try {
+            byte[] raw = readFully(channel, offset, length);
+            CRC32 crc = new CRC32();
+            crc.update(raw, 0, raw.length);
+
+            Deflater deflater = new Deflater(level, true);
+            try {
+                // Usar los 32 KB previos como diccionario conserva casi todo el ratio de un flujo secuencial
+                if (offset > 0) {
+                    int dictionaryLength = (int) Math.min(DICTIONARY_SIZE, offset);
+                    byte[] dictionary = readFully(channel, offset - dictionaryLength, dictionaryLength);
+                    deflater.setDictionary(dictionary);
+                }
+                deflater.setInput(raw);
+
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, length / 2));
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        checkCancelled(cancelled);
+                        int n = deflater.deflate(buffer);
+                        compressed.write(buffer, 0, n);
+                    }
+                } else {
+                    // SYNC_FLUSH alinea el bloque a byte sin marcarlo como final, para poder concatenarlo
+                    int n;
+                    do {
+                        checkCancelled(cancelled);
+                        n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        compressed.write(buffer, 0, n);
+                    } while (n == buffer.length);
+                }
+                byte[] bytes = compressed.toByteArray();
+                return new ChunkResult(bytes, bytes.length, crc.getValue(), length);
+            } finally {
+                deflater.end();
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static void checkCancelled(AtomicBoolean cancelled) {
+        if (cancelled.get()) {
+            throw new CancellationException("Exportación cancelada");
+        }
+    }
+
+    private ChunkResult checksum(OpenSource file) {
+        try {
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            long total = 0;
+            int read;
+            while (total < file.size && (read = file.channel.read(buffer, total)) != -1) {
+                buffer.flip();
+                total += read;
+                crc.update(buffer);
+                buffer.clear();
+            }
+            return new ChunkResult(null, 0, crc.getValue(), total);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("El archivo cambió de tamaño durante la exportación");
+            }
+        }
+        return buffer.array();
+    }
+
+    private CentralRecord startEntry(Source source, OpenSource file, ChunkResult first, CountingOutputStream out) throws IOException {
+        byte[] name = source.name.getBytes(StandardCharsets.UTF_8);
+        long dosTime = toDosTime(file.lastModified);
+        int method = source.stored ? ZipEntry.STORED : ZipEntry.DEFLATED;
+        int flags = FLAG_UTF8 | (source.stored ? 0 : FLAG_DATA_DESCRIPTOR);
+        CentralRecord record = new CentralRecord(name, method, flags, dosTime, out.getCount());
+
+        // STORED exige CRC y tamaños en la cabecera local (ZipInputStream no admite descriptor para STORED)
+        boolean zip64 = source.stored && first.rawLength >= ZIP64_MAGIC;
+        if (source.stored) {
+            record.crc = first.crc;
+            record.size = first.rawLength;
+            record.compressedSize = first.rawLength;
+        }
+
+        writeInt(out, 0x04034b50L);
+        writeShort(out, zip64 ? 45 : 20);
+        writeShort(out, flags);
+        writeShort(out, method);
+        writeInt(out, dosTime);
+        writeInt(out, record.crc);
+        writeInt(out, zip64 ? ZIP64_MAGIC : record.compressedSize);
+        writeInt(out, zip64 ? ZIP64_MAGIC : record.size);
+        writeShort(out, name.length);
+        writeShort(out, zip64 ? 20 : 0);
+        out.write(name);
+        if (zip64) {
+            writeShort(out, 0x0001);
+            writeShort(out, 16);
+            writeLong(out, record.size);
+            writeLong(out, record.compressedSize);
+        }
+        return record;
+    }
+
+    private void copyStored(Source source, OpenSource file, CentralRecord record, CountingOutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        long copied = 0;
+        int read;
+        while (copied < record.size && (read = file.channel.read(buffer.limit((int) Math.min(buffer.capacity(), record.size - copied)), copied)) != -1) {
+            out.write(buffer.array(), 0, read);
+            copied += read;
+            buffer.clear();
+        }
+        if (copied != record.size) {
+            throw new IOException("El archivo " + source.path + " cambió de tamaño durante la exportación");
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Solo lectura: no hay nada que perder al cerrar.
+            }
+        }
+    }
+
+    private void writeDataDescriptor(CentralRecord record, CountingOutputStream out) throws IOException {
+        writeInt(out, 0x08074b50L);
+        writeInt(out, record.crc);
+        if (record.compressedSize >= ZIP64_MAGIC || record.size >= ZIP64_MAGIC) {
+            writeLong(out, record.compressedSize);
+            writeLong(out, record.size);
+        } else {
+            writeInt(out, record.compressedSize);
+            writeInt(out, record.size);
+        }
+    }
+
+    private void writeCentralDirectory(List<CentralRecord> records, CountingOutputStream out) throws IOException {
+        long centralStart = out.getCount();
+
+        for (CentralRecord record : records) {
+            boolean sizeOverflow = record.size >= ZIP64_MAGIC;
+            boolean compressedOverflow = record.compressedSize >= ZIP64_MAGIC;
+            boolean offsetOverflow = record.offset >= ZIP64_MAGIC;
+            int extraLength = (sizeOverflow ? 8 : 0) + (compressedOverflow ? 8 : 0) + (offsetOverflow ? 8 : 0);
+            boolean zip64 = extraLength > 0;
+
+            writeInt(out, 0x02014b50L);
+            writeShort(out, zip64 ? 45 : 20);
+            writeShort(out, zip64 ? 45 : 20);
+            writeShort(out, record.flags);
+            writeShort(out, record.method);
+            writeInt(out, record.dosTime);
+            writeInt(out, record.crc);
+            writeInt(out, compressedOverflow ? ZIP64_MAGIC : record.compressedSize);
+            writeInt(out, sizeOverflow ? ZIP64_MAGIC : record.size);
+            writeShort(out, record.name.length);
+            writeShort(out, zip64 ? extraLength + 4 : 0);
+            writeShort(out, 0);
+            writeShort(out, 0);
+            writeShort(out, 0);
+            writeInt(out, 0);
+            writeInt(out, offsetOverflow ? ZIP64_MAGIC : record.offset);
+            out.write(record.name);
+            if (zip64) {
+                writeShort(out, 0x0001);
+                writeShort(out, extraLength);
+                if (sizeOverflow) {
+                    writeLong(out, record.size);
+                }
+                if (compressedOverflow) {
+                    writeLong(out, record.compressedSize);
+                }
+                if (offsetOverflow) {
+                    writeLong(out, record.offset);
+                }
+            }
+        }
+
+        long centralEnd = out.getCount();
+        long centralSize = centralEnd - centralStart;
+        int count = records.size();
+        boolean zip64End = count >= ZIP64_MAGIC_COUNT || centralStart >= ZIP64_MAGIC || centralSize >= ZIP64_MAGIC;
+
+        if (zip64End) {
+            writeInt(out, 0x06064b50L);
+            writeLong(out, 44);
+            writeShort(out, 45);
+            writeShort(out, 45);
+            writeInt(out, 0);
+            writeInt(out, 0);
+            writeLong(out, count);
+            writeLong(out, count);
+            writeLong(out, centralSize);
+            writeLong(out, centralStart);
+
+            writeInt(out, 0x07064b50L);
+            writeInt(out, 0);
+            writeLong(out, centralEnd);
+            writeInt(out, 1);
+        }
+
+        writeInt(out, 0x06054b50L);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, zip64End ? ZIP64_MAGIC_COUNT : count);
+        writeShort(out, zip64End ? ZIP64_MAGIC_COUNT : count);
+        writeInt(out, zip64End ? ZIP64_MAGIC : centralSize);
+        writeInt(out, zip64End ? ZIP64_MAGIC : centralStart);
+        writeShort(out, 0);
+    }
+
+    private static long toDosTime(long epochMillis) {
+        LocalDateTime time = LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+        long dosTime;
+        if (time.getYear() < 1980) {
+            dosTime = (1 << 21) | (1 << 16);
+        } else {
+            dosTime = ((long) (time.getYear() - 1980) << 25)
+                    | ((long) time.getMonthValue() << 21)
+                    | ((long) time.getDayOfMonth() << 16)
+                    | ((long) time.getHour() << 11)
+                    | ((long) time.getMinute() << 5)
+                    | ((long) time.getSecond() >> 1);
+        }
+        return dosTime;
+    }
+
+    /**
+     * Combina el CRC32 de dos bloques consecutivos (algoritmo crc32_combine de zlib).
+     */
+    static long crc32Combine(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        odd[0] = 0xEDB88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+
+        long remaining = length2;
+        long crc = crc1;
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((remaining & 1) != 0) {
+                crc = gf2MatrixTimes(even, crc);
+            }
+            remaining >>= 1;
+            if (remaining == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((remaining & 1) != 0) {
+                crc = gf2MatrixTimes(odd, crc);
+            }
+            remaining >>= 1;
+        } while (remaining != 0);
+
+        return crc ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] matrix, long vector) {
+        long sum = 0;
+        int index = 0;
+        long remaining = vector;
+        while (remaining != 0) {
+            if ((remaining & 1) != 0) {
+                sum ^= matrix[index];
+            }
+            remaining >>>= 1;
+            index++;
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private static void writeInt(OutputStream out, long value) throws IOException {
+        writeShort(out, (int) (value & 0xFFFF));
+        writeShort(out, (int) ((value >>> 16) & 0xFFFF));
+    }
+
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        writeInt(out, value & 0xFFFFFFFFL);
+        writeInt(out, value >>> 32);
+    }
+
+    private static final class CountingOutputStream extends java.io.FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
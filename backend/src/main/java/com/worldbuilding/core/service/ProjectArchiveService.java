@@ -0,0 +1,86 @@
+package com.worldbuilding.core.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * Construye el ZIP de exportación de un proyecto (base de datos + assets de mapas)
+ * escribiendo directamente sobre el flujo de salida, sin archivos temporales.
+ * La compresión se reparte entre todos los núcleos mediante {@link ParallelZipWriter}.
+ */
+@Service
+public class ProjectArchiveService {
+
+    public static final String ASSETS_DIR = "maps_assets";
+    public static final String ASSETS_ENTRY_PREFIX = "assets/";
+
+    // Formatos ya comprimidos: volver a aplicar DEFLATE gasta CPU sin reducir tamaño
+    private static final Set<String> STORED_EXTENSIONS = Set.of("png", "jpg", "jpeg", "webp", "gif", "avif", "zip", "gz");
+
+    private final ParallelZipWriter zipWriter;
+
+    public ProjectArchiveService(@Qualifier("archiveTaskExecutor") Executor archiveTaskExecutor) {
+        this.zipWriter = new ParallelZipWriter(archiveTaskExecutor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Lista los assets de maps_assets/ que pertenecen al proyecto (prefijo "<proyecto>_").
+     */
+    public List<Path> findProjectAssets(String projectName) throws IOException {
+        List<Path> assets = new ArrayList<>();
+        Path assetsDir = Paths.get(ASSETS_DIR);
+
+        if (Files.isDirectory(assetsDir)) {
+            final String prefix = projectName + "_";
+            try (var stream = Files.list(assetsDir)) {
+                assets.addAll(stream
+                        .filter(p -> p.getFileName().toString().startsWith(prefix))
+                        .filter(Files::isRegularFile)
+                        .sorted()
+                        .collect(Collectors.toList()));
+            }
+        }
+        return assets;
+    }
+
+    /**
+     * Escribe el ZIP del proyecto en el flujo indicado y devuelve los bytes escritos. No cierra el flujo de destino.
+     */
+    public long writeProjectArchive(String projectName, Path dbPath, List<Path> assets, OutputStream target) throws IOException {
+        List<ParallelZipWriter.Source> sources = new ArrayList<>();
+
+        // 1. Agregar el archivo de base de datos
+        sources.add(new ParallelZipWriter.Source(projectName + ProjectNames.SQLITE_EXTENSION, dbPath, false));
+
+        // 2. Agregar los assets asociados al proyecto
+        for (Path asset : assets) {
+            if (Files.isReadable(asset)) {
+                String fileName = asset.getFileName().toString();
+                sources.add(new ParallelZipWriter.Source(ASSETS_ENTRY_PREFIX + fileName, asset, isAlreadyCompressed(fileName)));
+            }
+        }
+
+        return zipWriter.write(sources, target);
+    }
+
+    /**
+     * Indica si el archivo ya viene comprimido por su formato (imágenes, ZIP, gzip).
+     */
+    public static boolean isAlreadyCompressed(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        String extension = dot >= 0 ? fileName.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+        return STORED_EXTENSIONS.contains(extension);
+    }
+}
@@ -0,0 +1,405 @@
+package com.worldbuilding.core.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Índice en memoria de los respaldos .sqlite del directorio backup/.
+ * Resuelve nombres de proyecto (exactos, normalizados o sin diacríticos) sin recorrer el disco
+ * y se mantiene actualizado mediante un WatchService.
+ */
+@Service
+public class ProjectCatalog implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ProjectCatalog.class);
+    public static final String BACKUPS_DIR = "backup";
+
+    private final Path backupDir;
+    private final Map<Path, CatalogEntry> entries = new HashMap<>();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    // Un candado por proyecto (clave normalizada); no se eliminan nunca, hay uno por respaldo conocido
+    private final ConcurrentMap<String, ReentrantReadWriteLock> projectLocks = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> writeListeners = new CopyOnWriteArrayList<>();
+    private WatchService watchService;
+    private Thread watcherThread;
+
+    private static final class CatalogEntry {
+        final Path path;
+        final String canonicalName;
+        final String lookupKey;
+        final String foldedKey;
+
+        CatalogEntry(Path path, String basename) {
+            this.path = path;
+            this.canonicalName = ProjectNames.sanitizeProjectName(basename);
+            this.lookupKey = ProjectNames.normalizeProjectLookupKey(canonicalName);
+            this.foldedKey = ProjectNames.foldProjectLookupKey(canonicalName);
+        }
+    }
+
+    /**
+     * Vista inmutable publicada a los hilos HTTP; se reconstruye solo cuando cambia el directorio.
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), Collections.emptyList());
+
+        final Map<String, Path> byCanonicalName;
+        final Map<String, Path> byLookupKey;
+        final Map<String, Path> byFoldedKey;
+        final List<String> projectNames;
+
+        Snapshot(Map<String, Path> byCanonicalName, Map<String, Path> byLookupKey, Map<String, Path> byFoldedKey, List<String> projectNames) {
+            this.byCanonicalName = byCanonicalName;
+            this.byLookupKey = byLookupKey;
+            this.byFoldedKey = byFoldedKey;
+            this.projectNames = projectNames;
+        }
+    }
+
+    public ProjectCatalog() {
+        this(Paths.get(BACKUPS_DIR));
+    }
+
+    public ProjectCatalog(Path backupDir) {
+        this.backupDir = backupDir.normalize();
+        try {
+            Files.createDirectories(this.backupDir);
+        } catch (IOException ignored) {
+            // Best-effort; el reescaneo fallará en silencio si el directorio no es accesible.
+        }
+        rescan();
+        startWatcher();
+    }
+
+    public Path getBackupDir() {
+        return backupDir;
+    }
+
+    /**
+     * Busca el respaldo de un proyecto por nombre exacto, clave normalizada o clave sin diacríticos.
+     * Devuelve null si ningún respaldo coincide.
+     */
+    public Path find(String projectName) {
+        Snapshot current = snapshot;
+        String canonicalName = ProjectNames.sanitizeProjectName(projectName);
+        Path resolvedPath = current.byCanonicalName.get(canonicalName);
+
+        if (resolvedPath == null) {
+            resolvedPath = current.byLookupKey.get(ProjectNames.normalizeProjectLookupKey(canonicalName));
+        }
+        if (resolvedPath == null) {
+            resolvedPath = current.byFoldedKey.get(ProjectNames.foldProjectLookupKey(canonicalName));
+        }
+
+        return resolvedPath;
+    }
+
+    /**
+     * Nombres canónicos de todos los proyectos, sin duplicados y ordenados sin distinguir mayúsculas.
+     */
+    public List<String> listProjectNames() {
+        return snapshot.projectNames;
+    }
+
+    /**
+     * Candado de escritura del respaldo de un proyecto. Todo el que sustituya backup/&lt;proyecto&gt;.sqlite
+     * (subidas, deltas, importaciones, restauraciones) lo toma mientras escribe y publica, de modo que
+     * lo que comprobó sobre la versión actual sigue siendo cierto hasta que publica la nueva.
+     * No debe retenerse mientras se espera a otros monitores (instantáneas, índice de búsqueda).
+     */
+    public Lock writeLock(String projectName) {
+        return new ProjectWriteLock(ProjectNames.sanitizeProjectName(projectName), projectLock(projectName).writeLock());
+    }
+
+    /**
+     * Candado de lectura del respaldo de un proyecto, para quien lo mantiene abierto (consultas SQL):
+     * los escritores esperan a que lo suelte antes de sustituir el archivo.
+     */
+    public Lock readLock(String projectName) {
+        return projectLock(projectName).readLock();
+    }
+
+    /**
+     * Registra un oyente que se invoca con el nombre del proyecto cada vez que se adquiere su candado de escritura,
+     * antes de tocar el archivo (p. ej. para cerrar conexiones ociosas, que en Windows impiden el renombrado).
+     */
+    public void addWriteListener(Consumer<String> listener) {
+        writeListeners.add(listener);
+    }
+
+    private void notifyWriteListeners(String projectName) {
+        for (Consumer<String> listener : writeListeners) {
+            try {
+                listener.accept(projectName);
+            } catch (RuntimeException e) {
+                // Un oyente defectuoso no debe dejar el candado tomado sin devolverlo
+                log.warn("Falló un oyente de escritura del proyecto {}", projectName, e);
+            }
+        }
+    }
+
+    /**
+     * Candado de escritura que avisa a los oyentes cada vez que se adquiere.
+     */
+    private final class ProjectWriteLock implements Lock {
+        private final String projectName;
+        private final Lock delegate;
+
+        ProjectWriteLock(String projectName, Lock delegate) {
+            this.projectName = projectName;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void lock() {
+            delegate.lock();
+            notifyWriteListeners(projectName);
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            delegate.lockInterruptibly();
+            notifyWriteListeners(projectName);
+        }
+
+        @Override
+        public boolean tryLock() {
+            boolean acquired = delegate.tryLock();
+            if (acquired) {
+                notifyWriteListeners(projectName);
+            }
+            return acquired;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            boolean acquired = delegate.tryLock(time, unit);
+            if (acquired) {
+                notifyWriteListeners(projectName);
+            }
+            return acquired;
+        }
+
+        @Override
+        public void unlock() {
+            delegate.unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            return delegate.newCondition();
+        }
+    }
+
+    private ReentrantReadWriteLock projectLock(String projectName) {
+        String key = ProjectNames.normalizeProjectLookupKey(ProjectNames.sanitizeProjectName(projectName));
+        return projectLocks.computeIfAbsent(key, k -> new ReentrantReadWriteLock());
+    }
+
+    /**
+     * Registra inmediatamente un respaldo recién escrito, sin esperar al evento del WatchService.
+     */
+    public synchronized void register(Path sqliteFile) {
+        Path normalized = sqliteFile.normalize();
+        if (indexFile(normalized)) {
+            publish();
+        }
+    }
+
+    /**
+     * Elimina inmediatamente un respaldo del índice.
+     */
+    public synchronized void unregister(Path sqliteFile) {
+        if (entries.remove(sqliteFile.normalize()) != null) {
+            publish();
+        }
+    }
+
+    /**
+     * Reconstruye el índice completo a partir del contenido actual del directorio.
+     */
+    public synchronized void rescan() {
+        entries.clear();
+        if (Files.isDirectory(backupDir)) {
+            try (var stream = Files.list(backupDir)) {
+                List<Path> sqliteFiles = stream
+                        .filter(p -> p.toString().endsWith(ProjectNames.SQLITE_EXTENSION))
+                        .sorted()
+                        .collect(Collectors.toList());
+
+                for (Path scannedFile : sqliteFiles) {
+                    indexFile(scannedFile.normalize());
+                }
+            } catch (IOException e) {
+                log.warn("No se pudo escanear {}: {}", backupDir, e.getMessage());
+            }
+        }
+        publish();
+    }
+
+    private boolean indexFile(Path scannedFile) {
+        boolean indexed = false;
+        Path sqliteFile = repairBackupFilenameIfNeeded(scannedFile);
+        String basename = ProjectNames.basenameOf(sqliteFile.getFileName().toString());
+
+        if (basename != null && Files.isRegularFile(sqliteFile)) {
+            if (!sqliteFile.equals(scannedFile)) {
+                entries.remove(scannedFile);
+            }
+            entries.put(sqliteFile, new CatalogEntry(sqliteFile, basename));
+            indexed = true;
+        }
+        return indexed;
+    }
+
+    private Path repairBackupFilenameIfNeeded(Path sqliteFile) {
+        Path resolvedPath = sqliteFile;
+        String basename = ProjectNames.basenameOf(sqliteFile.getFileName().toString());
+
+        if (basename != null) {
+            String sanitizedBasename = ProjectNames.sanitizeProjectName(basename);
+            boolean shouldRename = ProjectNames.looksLikeMojibake(basename) && !sanitizedBasename.equals(basename);
+
+            if (shouldRename && sqliteFile.getParent() != null) {
+                Path repairedPath = sqliteFile.getParent().resolve(sanitizedBasename + ProjectNames.SQLITE_EXTENSION).normalize();
+                if (!Files.exists(repairedPath)) {
+                    try {
+                        resolvedPath = Files.move(sqliteFile, repairedPath);
+                    } catch (IOException ignored) {
+                        resolvedPath = sqliteFile;
+                    }
+                } else {
+                    resolvedPath = repairedPath;
+                }
+            }
+        }
+
+        return resolvedPath;
+    }
+
+    private void publish() {
+        // Orden estable por ruta para que la resolución de colisiones no dependa del orden de eventos.
+        Map<Path, CatalogEntry> ordered = new TreeMap<>(entries);
+        Map<String, Path> byCanonicalName = new HashMap<>();
+        Map<String, Path> byLookupKey = new HashMap<>();
+        Map<String, Path> byFoldedKey = new HashMap<>();
+        Map<String, String> namesByKey = new LinkedHashMap<>();
+
+        for (CatalogEntry entry : ordered.values()) {
+            byCanonicalName.putIfAbsent(entry.canonicalName, entry.path);
+            byLookupKey.putIfAbsent(entry.lookupKey, entry.path);
+            byFoldedKey.putIfAbsent(entry.foldedKey, entry.path);
+            namesByKey.putIfAbsent(entry.lookupKey, entry.canonicalName);
+        }
+
+        List<String> projectNames = new ArrayList<>(namesByKey.values());
+        projectNames.sort(String.CASE_INSENSITIVE_ORDER);
+
+        snapshot = new Snapshot(
+                Collections.unmodifiableMap(byCanonicalName),
+                Collections.unmodifiableMap(byLookupKey),
+                Collections.unmodifiableMap(byFoldedKey),
+                Collections.unmodifiableList(projectNames)
+        );
+    }
+
+    private void startWatcher() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            backupDir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            watcherThread = new Thread(this::watchLoop, "project-catalog-watcher");
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+        } catch (IOException e) {
+            // Sin WatchService el índice solo se actualiza con register()/unregister().
+            log.warn("No se pudo vigilar {}: {}", backupDir, e.getMessage());
+        }
+    }
+
+    private void watchLoop() {
+        boolean running = true;
+        while (running) {
+            try {
+                WatchKey key = watchService.take();
+                handleEvents(key);
+                if (!key.reset()) {
+                    // El directorio vigilado desapareció: vaciar el índice y dejar de vigilar.
+                    rescan();
+                    running = false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (ClosedWatchServiceException e) {
+                running = false;
+            }
+        }
+    }
+
+    private synchronized void handleEvents(WatchKey key) {
+        boolean changed = false;
+        boolean overflow = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else {
+                Path changedFile = backupDir.resolve((Path) event.context()).normalize();
+                if (changedFile.toString().endsWith(ProjectNames.SQLITE_EXTENSION)) {
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        changed |= entries.remove(changedFile) != null;
+                    } else if (!entries.containsKey(changedFile)) {
+                        changed |= indexFile(changedFile);
+                    }
+                }
+            }
+        }
+
+        if (overflow) {
+            rescan();
+        } else if (changed) {
+            publish();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.worldbuilding.core.service;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Reglas de canonicalización de nombres de proyecto compartidas por los controladores y el catálogo.
+ */
+public final class ProjectNames {
+
+    public static final String SQLITE_EXTENSION = ".sqlite";
+    private static final Pattern DIACRITICS_PATTERN = Pattern.compile("\\p{M}+");
+
+    private ProjectNames() {
+    }
+
+    public static String canonicalizeProjectName(String value) {
+        String safeValue = value == null ? "" : value;
+        return Normalizer.normalize(safeValue, Normalizer.Form.NFC).trim();
+    }
+
+    public static String normalizeProjectLookupKey(String value) {
+        String normalized = sanitizeProjectName(value);
+        return normalized.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public static String foldProjectLookupKey(String value) {
+        String normalized = sanitizeProjectName(value);
+        String decomposed = Normalizer.normalize(normalized, Normalizer.Form.NFD);
+        String withoutDiacritics = DIACRITICS_PATTERN.matcher(decomposed).replaceAll("");
+        return Normalizer.normalize(withoutDiacritics, Normalizer.Form.NFC)
+                .trim()
+                .toLowerCase(Locale.ROOT);
+    }
+
+    public static boolean looksLikeMojibake(String value) {
+        String safeValue = value == null ? "" : value;
+        return safeValue.contains("Ã") || safeValue.contains("Â") || safeValue.contains("Ð") || safeValue.contains("Ñ") || safeValue.contains("â");
+    }
+
+    public static String repairMojibake(String value) {
+        String safeValue = value == null ? "" : value;
+        String repaired = new String(safeValue.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+        return repaired;
+    }
+
+    public static String sanitizeProjectName(String value) {
+        String canonicalName = canonicalizeProjectName(value);
+        String sanitizedName = canonicalName;
+
+        if (looksLikeMojibake(canonicalName)) {
+            String repaired = repairMojibake(canonicalName);
+            String canonicalRepaired = canonicalizeProjectName(repaired);
+            if (!canonicalRepaired.isEmpty()) {
+                sanitizedName = canonicalRepaired;
+            }
+        }
+
+        return sanitizedName;
+    }
+
+    /**
+     * Devuelve el nombre base de un archivo de respaldo, o null si no es un archivo .sqlite.
+     */
+    public static String basenameOf(String filename) {
+        String basename = null;
+        if (filename != null && filename.endsWith(SQLITE_EXTENSION)) {
+            basename = filename.substring(0, filename.length() - SQLITE_EXTENSION.length());
+        }
+        return basename;
+    }
+}
@@ -0,0 +1,426 @@
+package com.worldbuilding.core.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.sqlite.ProgressHandler;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteOpenMode;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Consultas SQL de solo lectura ejecutadas en el servidor sobre backup/&lt;proyecto&gt;.sqlite.
+ * Cada proyecto tiene un pequeño pool de conexiones abiertas en modo solo lectura con query_only activado,
+ * y cada conexión guarda en caché sus sentencias preparadas. Las filas se escriben en JSON según se leen,
+ * sin materializar el resultado, y cada consulta está acotada en tiempo y en número de filas. El plazo lo vigila un
+ * manejador de progreso de SQLite, que interrumpe la sentencia aunque aún no haya producido ninguna fila.
+ * Una consulta retiene el candado de lectura del proyecto; al tomarse el de escritura se cierran las conexiones
+ * ociosas de ese proyecto, de modo que ningún escritor sustituye el respaldo con conexiones abiertas a él
+ * (en Windows lo impedirían).
+ */
+@Service
+public class ProjectQueryService implements AutoCloseable {
+
+    private static final int CONNECTIONS_PER_PROJECT = Integer.getInteger("worldbuilding.query.connectionsPerProject", 4);
+    private static final int MAX_ROWS = Integer.getInteger("worldbuilding.query.maxRows", 100_000);
+    private static final long MAX_TIMEOUT_MS = Long.getLong("worldbuilding.query.maxTimeoutMs", 30_000L);
+    private static final int MAX_CACHED_STATEMENTS = 32;
+    private static final long BORROW_TIMEOUT_MS = 10_000;
+    // Instrucciones de la máquina virtual de SQLite entre comprobaciones del plazo
+    private static final int PROGRESS_STEPS = 1_000;
+
+    private final ProjectCatalog projectCatalog;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final ConcurrentMap<Path, ConnectionPool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Petición de consulta tal como llega del cliente; los límites se recortan a los máximos del servidor.
+     */
+    public static class QueryRequest {
+        public String sql;
+        public List<Object> params;
+        public Integer maxRows;
+        public Long timeoutMs;
+    }
+
+    /**
+     * La sentencia no es una consulta de solo lectura admitida.
+     */
+    public static class QueryRejectedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public QueryRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Conexión de solo lectura con su caché LRU de sentencias preparadas; la usa un solo hilo a la vez.
+     */
+    private static final class PooledConnection {
+        final Connection connection;
+        // Plazo de la consulta en curso (System.nanoTime); el manejador de progreso lo lee desde el hilo de SQLite
+        volatile long deadline = Long.MAX_VALUE;
+        volatile boolean interrupted;
+        final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                boolean evict = size() > MAX_CACHED_STATEMENTS;
+                if (evict) {
+                    closeQuietly(eldest.getValue());
+                }
+                return evict;
+            }
+        };
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        void close() {
+            for (PreparedStatement statement : statements.values()) {
+                closeQuietly(statement);
+            }
+            statements.clear();
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Pool acotado de conexiones a una versión concreta del archivo. Los respaldos se sustituyen por renombrado
+     * atómico, así que cuando cambia la identidad del archivo el pool se retira y se abre uno nuevo.
+     */
+    private static final class ConnectionPool {
+        final String projectKey;
+        final Path dbPath;
+        final Object fileKey;
+        final long lastModified;
+        final BlockingQueue<PooledConnection> idle = new ArrayBlockingQueue<>(CONNECTIONS_PER_PROJECT);
+        int opened;
+        volatile boolean retired;
+
+        ConnectionPool(String projectKey, Path dbPath, BasicFileAttributes attributes) {
+            this.projectKey = projectKey;
+            this.dbPath = dbPath;
+            this.fileKey = attributes.fileKey();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return attributes.lastModifiedTime().toMillis() == lastModified
+                    && (fileKey == null || fileKey.equals(attributes.fileKey()));
+        }
+
+        PooledConnection borrow() throws SQLException, IOException {
+            PooledConnection pooled = idle.poll();
+            if (pooled == null) {
+                boolean open;
+                synchronized (this) {
+                    open = opened < CONNECTIONS_PER_PROJECT;
+                    if (open) {
+                        opened++;
+                    }
+                }
+                if (open) {
+                    pooled = openConnection();
+                } else {
+                    try {
+                        pooled = idle.poll(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (pooled == null) {
+                        throw new IOException("No hay conexiones libres para " + dbPath.getFileName());
+                    }
+                }
+            }
+            return pooled;
+        }
+
+        void giveBack(PooledConnection pooled) {
+            if (retired || !idle.offer(pooled)) {
+                discard(pooled);
+            }
+        }
+
+        void discard(PooledConnection pooled) {
+            pooled.close();
+            synchronized (this) {
+                opened--;
+            }
+        }
+
+        void retire() {
+            retired = true;
+            PooledConnection pooled;
+            while ((pooled = idle.poll()) != null) {
+                discard(pooled);
+            }
+        }
+
+        private PooledConnection openConnection() throws SQLException {
+            try {
+                SQLiteConfig config = new SQLiteConfig();
+                config.setReadOnly(true);
+                config.setOpenMode(SQLiteOpenMode.READONLY);
+                config.setSharedCache(false);
+                Connection connection = config.createConnection("jdbc:sqlite:" + dbPath.toAbsolutePath());
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("PRAGMA query_only = ON");
+                }
+                PooledConnection pooled = new PooledConnection(connection);
+                // setQueryTimeout solo fija el busy timeout en sqlite-jdbc: el plazo se impone interrumpiendo
+                // la sentencia (sqlite3_interrupt) en cuanto se supera
+                ProgressHandler.setHandler(connection, PROGRESS_STEPS, new ProgressHandler() {
+                    @Override
+                    protected int progress() {
+                        boolean expired = System.nanoTime() > pooled.deadline;
+                        if (expired) {
+                            pooled.interrupted = true;
+                        }
+                        return expired ? 1 : 0;
+                    }
+                });
+                return pooled;
+            } catch (SQLException e) {
+                synchronized (this) {
+                    opened--;
+                }
+                throw e;
+            }
+        }
+    }
+
+    public ProjectQueryService(ProjectCatalog projectCatalog) {
+        this.projectCatalog = projectCatalog;
+        projectCatalog.addWriteListener(this::retireProject);
+    }
+
+    /**
+     * Ejecuta la consulta y escribe el resultado en streaming:
+     * {"columns":[...],"rows":[[...],...],"rowCount":n,"truncated":bool,"elapsedMs":n[,"error":"..."]}.
+     * Los errores posteriores al inicio del streaming se notifican en el campo "error".
+     */
+    public void execute(String projectName, Path dbPath, QueryRequest request, OutputStream out)
+            throws IOException, QueryRejectedException {
+        Lock lock = projectCatalog.readLock(projectName);
+        lock.lock();
+        try {
+            executeLocked(projectName, dbPath, request, out);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void executeLocked(String projectName, Path dbPath, QueryRequest request, OutputStream out)
+            throws IOException, QueryRejectedException {
+        String sql = validate(request.sql);
+        int maxRows = request.maxRows == null || request.maxRows <= 0 ? MAX_ROWS : Math.min(request.maxRows, MAX_ROWS);
+        long timeoutMs = request.timeoutMs == null || request.timeoutMs <= 0 ? MAX_TIMEOUT_MS : Math.min(request.timeoutMs, MAX_TIMEOUT_MS);
+
+        ConnectionPool pool = poolFor(projectName, dbPath);
+        PooledConnection pooled;
+        try {
+            pooled = pool.borrow();
+        } catch (SQLException e) {
+            throw new IOException("No se pudo abrir " + dbPath.getFileName() + ": " + e.getMessage(), e);
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        String timeoutError = "Se superó el tiempo máximo de la consulta (" + timeoutMs + " ms).";
+        pooled.deadline = deadline;
+        pooled.interrupted = false;
+        boolean healthy = true;
+        try (JsonGenerator json = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            int rowCount = 0;
+            boolean truncated = false;
+            String error = null;
+            boolean rowsOpen = false;
+            try {
+                PreparedStatement statement = pooled.prepare(sql);
+                statement.clearParameters();
+                List<Object> params = request.params == null ? List.of() : request.params;
+                for (int i = 0; i < params.size(); i++) {
+                    statement.setObject(i + 1, params.get(i));
+                }
+                // Una fila de más para saber si el resultado se ha truncado
+                statement.setMaxRows(maxRows + 1);
+
+                try (ResultSet rows = statement.executeQuery()) {
+                    ResultSetMetaData meta = rows.getMetaData();
+                    int columns = meta.getColumnCount();
+                    json.writeArrayFieldStart("columns");
+                    for (int c = 1; c <= columns; c++) {
+                        json.writeString(meta.getColumnLabel(c));
+                    }
+                    json.writeEndArray();
+
+                    json.writeArrayFieldStart("rows");
+                    rowsOpen = true;
+                    while (!truncated && rows.next()) {
+                        if (rowCount == maxRows) {
+                            truncated = true;
+                        } else if (System.nanoTime() > deadline) {
+                            truncated = true;
+                            error = timeoutError;
+                        } else {
+                            json.writeStartArray();
+                            for (int c = 1; c <= columns; c++) {
+                                json.writeObject(rows.getObject(c));
+                            }
+                            json.writeEndArray();
+                            rowCount++;
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (pooled.interrupted) {
+                    // Interrumpida por el manejador de progreso: la conexión se descarta en lugar de reutilizarla
+                    truncated = true;
+                    error = timeoutError;
+                    healthy = false;
+                } else {
+                    error = e.getMessage();
+                }
+            } catch (IOException e) {
+                // El cliente cerró la conexión a mitad del resultado: la conexión se descarta por si quedó a medias.
+                healthy = false;
+                throw e;
+            }
+
+            if (rowsOpen) {
+                json.writeEndArray();
+            }
+            json.writeNumberField("rowCount", rowCount);
+            json.writeBooleanField("truncated", truncated);
+            json.writeNumberField("elapsedMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (error != null) {
+                json.writeStringField("error", error);
+            }
+            json.writeEndObject();
+        } finally {
+            pooled.deadline = Long.MAX_VALUE;
+            if (healthy) {
+                pool.giveBack(pooled);
+            } else {
+                pool.discard(pooled);
+            }
+        }
+    }
+
+    /**
+     * Admite una única sentencia SELECT/WITH/EXPLAIN (más un ';' final). El modo solo lectura ya impide escribir;
+     * esto además bloquea ATTACH y PRAGMA, que podrían abrir otros archivos o cambiar la conexión compartida.
+     */
+    public static String validate(String sql) throws QueryRejectedException {
+        if (sql == null || sql.isBlank()) {
+            throw new QueryRejectedException("La consulta está vacía.");
+        }
+        String trimmed = sql.strip();
+        if (trimmed.endsWith(";")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).strip();
+        }
+        if (trimmed.indexOf(';') >= 0) {
+            throw new QueryRejectedException("Solo se admite una sentencia por consulta.");
+        }
+        String head = trimmed.toUpperCase(Locale.ROOT);
+        if (!head.startsWith("SELECT") && !head.startsWith("WITH") && !head.startsWith("EXPLAIN")) {
+            throw new QueryRejectedException("Solo se admiten consultas SELECT.");
+        }
+        return trimmed;
+    }
+
+    private ConnectionPool poolFor(String projectName, Path dbPath) throws IOException {
+        Path key = dbPath.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        ConnectionPool replaced = null;
+        ConnectionPool pool;
+        synchronized (pools) {
+            pool = pools.get(key);
+            if (pool == null || pool.retired || !pool.matches(attributes)) {
+                replaced = pool;
+                pool = new ConnectionPool(projectKey(projectName), key, attributes);
+                pools.put(key, pool);
+            }
+        }
+        if (replaced != null) {
+            replaced.retire();
+        }
+        return pool;
+    }
+
+    /**
+     * Cierra las conexiones ociosas del proyecto y retira sus pools; lo invoca el candado de escritura del catálogo,
+     * cuando ninguna consulta del proyecto está en curso.
+     */
+    private void retireProject(String projectName) {
+        String projectKey = projectKey(projectName);
+        List<ConnectionPool> retired = new ArrayList<>();
+        synchronized (pools) {
+            pools.values().removeIf(pool -> {
+                boolean matches = pool.projectKey.equals(projectKey);
+                if (matches) {
+                    retired.add(pool);
+                }
+                return matches;
+            });
+        }
+        for (ConnectionPool pool : retired) {
+            pool.retire();
+        }
+    }
+
+    private static String projectKey(String projectName) {
+        return ProjectNames.normalizeProjectLookupKey(ProjectNames.sanitizeProjectName(projectName));
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+            // Recurso ya cerrado o archivo desaparecido.
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ConnectionPool pool : new ArrayList<>(pools.values())) {
+            pool.retire();
+        }
+        pools.clear();
+    }
+}
@@ -0,0 +1,249 @@
+package com.worldbuilding.core.service;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas de ejecución en formato de texto de Prometheus: latencia por ruta (p50/p99/p999), peticiones por clase
+ * de estado, bytes de petición y de respuesta, ocupación de los ejecutores y estado del heap y del GC.
+ * El camino de cada petición solo hace dos búsquedas en mapas concurrentes e incrementos sin bloqueo;
+ * todo el cálculo (cuantiles, formato) ocurre al exportar.
+ */
+@Service
+public class RuntimeMetrics {
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.99", "0.999"};
+    private static final String OTHER_METHOD = "OTHER";
+
+    // ruta → método → métricas; sin claves compuestas para no crear cadenas en cada petición
+    private final ConcurrentMap<String, ConcurrentMap<String, RouteMetrics>> routes = new ConcurrentHashMap<>();
+    private final Map<String, Executor> executors;
+
+    /**
+     * Contadores de una ruta y método.
+     */
+    private static final class RouteMetrics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder[] statusClasses = new LongAdder[5];
+        final LongAdder requestBytes = new LongAdder();
+        final LongAdder responseBytes = new LongAdder();
+
+        RouteMetrics() {
+            for (int i = 0; i < statusClasses.length; i++) {
+                statusClasses[i] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * Recibe todos los ejecutores del contexto por nombre de bean (dbTaskExecutor, mvcAsyncExecutor, archiveTaskExecutor).
+     */
+    public RuntimeMetrics(Map<String, Executor> executors) {
+        this.executors = new TreeMap<>(executors);
+    }
+
+    public void record(String route, String method, int status, long nanos, long requestBytes, long responseBytes) {
+        String methodLabel = normalizeMethod(method);
+        ConcurrentMap<String, RouteMetrics> byMethod = routes.get(route);
+        if (byMethod == null) {
+            byMethod = routes.computeIfAbsent(route, key -> new ConcurrentHashMap<>());
+        }
+        RouteMetrics metrics = byMethod.get(methodLabel);
+        if (metrics == null) {
+            metrics = byMethod.computeIfAbsent(methodLabel, key -> new RouteMetrics());
+        }
+
+        metrics.latency.record(nanos);
+        int statusClass = status / 100 - 1;
+        if (statusClass >= 0 && statusClass < metrics.statusClasses.length) {
+            metrics.statusClasses[statusClass].increment();
+        }
+        if (requestBytes > 0) {
+            metrics.requestBytes.add(requestBytes);
+        }
+        if (responseBytes > 0) {
+            metrics.responseBytes.add(responseBytes);
+        }
+    }
+
+    /**
+     * Jetty admite cualquier token como método: los que no son estándar se agrupan en OTHER para que un cliente no
+     * pueda crear métricas (y series de Prometheus) sin límite inventando verbos.
+     */
+    private static String normalizeMethod(String method) {
+        String normalized;
+        switch (method) {
+            case "GET":
+            case "HEAD":
+            case "POST":
+            case "PUT":
+            case "PATCH":
+            case "DELETE":
+            case "OPTIONS":
+                normalized = method;
+                break;
+            default:
+                normalized = OTHER_METHOD;
+                break;
+        }
+        return normalized;
+    }
+
+    /**
+     * Exposición en formato de texto 0.0.4 de Prometheus.
+     */
+    public String exportPrometheus() {
+        StringBuilder out = new StringBuilder(8 * 1024);
+        Map<String, Map<String, RouteMetrics>> sorted = new TreeMap<>();
+        for (Map.Entry<String, ConcurrentMap<String, RouteMetrics>> entry : routes.entrySet()) {
+            sorted.put(entry.getKey(), new TreeMap<>(entry.getValue()));
+        }
+
+        header(out, "worldbuilding_http_request_duration_seconds", "summary", "Latencia de las peticiones por ruta");
+        for (Map.Entry<String, Map<String, RouteMetrics>> route : sorted.entrySet()) {
+            for (Map.Entry<String, RouteMetrics> method : route.getValue().entrySet()) {
+                String labels = routeLabels(route.getKey(), method.getKey());
+                LatencyHistogram latency = method.getValue().latency;
+                long[] quantiles = latency.quantilesMicros(QUANTILES);
+                for (int i = 0; i < quantiles.length; i++) {
+                    sample(out, "worldbuilding_http_request_duration_seconds",
+                            labels + ",quantile=\"" + QUANTILE_LABELS[i] + "\"", quantiles[i] / 1_000_000.0);
+                }
+                sample(out, "worldbuilding_http_request_duration_seconds_sum", labels, latency.sumNanos() / 1_000_000_000.0);
+                sample(out, "worldbuilding_http_request_duration_seconds_count", labels, latency.count());
+            }
+        }
+
+        header(out, "worldbuilding_http_requests_total", "counter", "Peticiones por ruta y clase de estado");
+        for (Map.Entry<String, Map<String, RouteMetrics>> route : sorted.entrySet()) {
+            for (Map.Entry<String, RouteMetrics> method : route.getValue().entrySet()) {
+                String labels = routeLabels(route.getKey(), method.getKey());
+                LongAdder[] statusClasses = method.getValue().statusClasses;
+                for (int i = 0; i < statusClasses.length; i++) {
+                    long count = statusClasses[i].sum();
+                    if (count > 0) {
+                        sample(out, "worldbuilding_http_requests_total", labels + ",status=\"" + (i + 1) + "xx\"", count);
+                    }
+                }
+            }
+        }
+
+        header(out, "worldbuilding_http_request_bytes_total", "counter", "Bytes recibidos en el cuerpo de las peticiones");
+        for (Map.Entry<String, Map<String, RouteMetrics>> route : sorted.entrySet()) {
+            for (Map.Entry<String, RouteMetrics> method : route.getValue().entrySet()) {
+                sample(out, "worldbuilding_http_request_bytes_total", routeLabels(route.getKey(), method.getKey()),
+                        method.getValue().requestBytes.sum());
+            }
+        }
+
+        header(out, "worldbuilding_http_response_bytes_total", "counter", "Bytes enviados en las respuestas");
+        for (Map.Entry<String, Map<String, RouteMetrics>> route : sorted.entrySet()) {
+            for (Map.Entry<String, RouteMetrics> method : route.getValue().entrySet()) {
+                sample(out, "worldbuilding_http_response_bytes_total", routeLabels(route.getKey(), method.getKey()),
+                        method.getValue().responseBytes.sum());
+            }
+        }
+
+        appendExecutors(out);
+        appendJvm(out);
+        return out.toString();
+    }
+
+    private void appendExecutors(StringBuilder out) {
+        Map<String, ThreadPoolExecutor> pools = new TreeMap<>();
+        for (Map.Entry<String, Executor> entry : executors.entrySet()) {
+            Executor executor = entry.getValue();
+            if (executor instanceof ThreadPoolTaskExecutor) {
+                pools.put(entry.getKey(), ((ThreadPoolTaskExecutor) executor).getThreadPoolExecutor());
+            } else if (executor instanceof ThreadPoolExecutor) {
+                pools.put(entry.getKey(), (ThreadPoolExecutor) executor);
+            }
+            // Los ejecutores de hilos virtuales no tienen cola ni hilos fijos que medir
+        }
+
+        header(out, "worldbuilding_executor_queue_depth", "gauge", "Tareas en cola por ejecutor");
+        for (Map.Entry<String, ThreadPoolExecutor> pool : pools.entrySet()) {
+            sample(out, "worldbuilding_executor_queue_depth", executorLabel(pool.getKey()), pool.getValue().getQueue().size());
+        }
+        header(out, "worldbuilding_executor_active_threads", "gauge", "Hilos ejecutando una tarea por ejecutor");
+        for (Map.Entry<String, ThreadPoolExecutor> pool : pools.entrySet()) {
+            sample(out, "worldbuilding_executor_active_threads", executorLabel(pool.getKey()), pool.getValue().getActiveCount());
+        }
+        header(out, "worldbuilding_executor_pool_threads", "gauge", "Hilos creados por ejecutor");
+        for (Map.Entry<String, ThreadPoolExecutor> pool : pools.entrySet()) {
+            sample(out, "worldbuilding_executor_pool_threads", executorLabel(pool.getKey()), pool.getValue().getPoolSize());
+        }
+        header(out, "worldbuilding_executor_completed_tasks_total", "counter", "Tareas completadas por ejecutor");
+        for (Map.Entry<String, ThreadPoolExecutor> pool : pools.entrySet()) {
+            sample(out, "worldbuilding_executor_completed_tasks_total", executorLabel(pool.getKey()), pool.getValue().getCompletedTaskCount());
+        }
+    }
+
+    private void appendJvm(StringBuilder out) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        header(out, "jvm_memory_heap_used_bytes", "gauge", "Heap en uso");
+        sample(out, "jvm_memory_heap_used_bytes", null, heap.getUsed());
+        header(out, "jvm_memory_heap_committed_bytes", "gauge", "Heap reservado");
+        sample(out, "jvm_memory_heap_committed_bytes", null, heap.getCommitted());
+        header(out, "jvm_memory_heap_max_bytes", "gauge", "Heap máximo");
+        sample(out, "jvm_memory_heap_max_bytes", null, heap.getMax());
+
+        header(out, "jvm_gc_collections_total", "counter", "Recolecciones por colector");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(out, "jvm_gc_collections_total", "gc=\"" + escape(gc.getName()) + "\"", Math.max(0L, gc.getCollectionCount()));
+        }
+        header(out, "jvm_gc_collection_seconds_total", "counter", "Tiempo acumulado de recolección por colector");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(out, "jvm_gc_collection_seconds_total", "gc=\"" + escape(gc.getName()) + "\"", Math.max(0L, gc.getCollectionTime()) / 1000.0);
+        }
+
+        header(out, "jvm_threads_live", "gauge", "Hilos de plataforma vivos");
+        sample(out, "jvm_threads_live", null, ManagementFactory.getThreadMXBean().getThreadCount());
+        header(out, "process_uptime_seconds", "gauge", "Tiempo desde el arranque de la JVM");
+        sample(out, "process_uptime_seconds", null, ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0);
+    }
+
+    private static String routeLabels(String route, String method) {
+        return "method=\"" + escape(method) + "\",route=\"" + escape(route) + "\"";
+    }
+
+    private static String executorLabel(String name) {
+        return "executor=\"" + escape(name) + "\"";
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(String.format(Locale.ROOT, "%.6g", value));
+        }
+        out.append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,760 @@
+package com.worldbuilding.core.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteOpenMode;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido de búsqueda de texto sobre las entidades y carpetas de todos los proyectos.
+ * Cada actualización solo reindexa los documentos cuyo contenido cambió: se escriben en un segmento nuevo
+ * e inmutable (backup/.store/search/seg-N.idx) y sus versiones anteriores se marcan como borradas.
+ * Los segmentos se leen mapeados en memoria y se fusionan en segundo plano cuando hay demasiados.
+ * Las consultas se puntúan con BM25 sobre una vista inmutable, sin bloquear a los escritores.
+ */
+@Service
+public class SearchIndexService {
+
+    public static final String KIND_ENTITY = "entity";
+    public static final String KIND_FOLDER = "folder";
+
+    private static final String INDEX_DIR = "search";
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_EXTENSION = ".idx";
+    private static final int MAX_SEGMENTS = 8;
+    private static final int TITLE_BOOST = 3;
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final int MAX_LIMIT = 200;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Registros de payload por lote: cada lote es una actualización no autoritativa, así que trocearlo es seguro
+    private static final int PAYLOAD_BATCH_SIZE = 500;
+    private static final Pattern SPLIT = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final Path indexDir;
+    private final Path manifestPath;
+    private final Executor dbTaskExecutor;
+    private final SyncPayloadArchiver payloadArchiver;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ConcurrentMap<String, Path> pendingDatabases = new ConcurrentHashMap<>();
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+
+    // Solo se modifican bajo writeLock
+    private final Map<String, DocLocation> liveDocs = new HashMap<>();
+    private int nextSegment = 1;
+
+    // Vista publicada a los lectores; se sustituye entera en cada cambio
+    private volatile IndexView view = new IndexView(List.of(), 0, 0);
+
+    /**
+     * Documento de origen (entidad o carpeta) tal como llega de un respaldo o de un payload de sincronización.
+     */
+    public static class SourceDocument {
+        public final String kind;
+        public final long id;
+        public final String title;
+        public final List<String> texts;
+        public final boolean deleted;
+
+        public SourceDocument(String kind, long id, String title, List<String> texts, boolean deleted) {
+            this.kind = kind;
+            this.id = id;
+            this.title = title;
+            this.texts = texts;
+            this.deleted = deleted;
+        }
+    }
+
+    public static class SearchHit {
+        public String project;
+        public String kind;
+        public long id;
+        public String title;
+        public double score;
+    }
+
+    public static class SearchResult {
+        public String query;
+        public long tookMs;
+        public int totalHits;
+        public List<SearchHit> hits = new ArrayList<>();
+    }
+
+    private static final class DocLocation {
+        final String segment;
+        final int doc;
+        final long hash;
+        final int length;
+
+        DocLocation(String segment, int doc, long hash, int length) {
+            this.segment = segment;
+            this.doc = doc;
+            this.hash = hash;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Segmento más su conjunto de documentos borrados; el BitSet nunca se modifica una vez publicado.
+     */
+    private static final class SegmentState {
+        final SearchSegment segment;
+        final BitSet deleted;
+
+        SegmentState(SearchSegment segment, BitSet deleted) {
+            this.segment = segment;
+            this.deleted = deleted;
+        }
+
+        int liveCount() {
+            return segment.documents.length - deleted.cardinality();
+        }
+    }
+
+    private static final class IndexView {
+        final List<SegmentState> segments;
+        final long liveDocCount;
+        final long totalLength;
+
+        IndexView(List<SegmentState> segments, long liveDocCount, long totalLength) {
+            this.segments = segments;
+            this.liveDocCount = liveDocCount;
+            this.totalLength = totalLength;
+        }
+    }
+
+    public SearchIndexService(ProjectCatalog projectCatalog, @Qualifier("dbTaskExecutor") Executor dbTaskExecutor,
+                              SyncPayloadArchiver payloadArchiver) {
+        this.dbTaskExecutor = dbTaskExecutor;
+        this.payloadArchiver = payloadArchiver;
+        this.indexDir = projectCatalog.getBackupDir().resolve(ContentStore.STORE_DIR).resolve(INDEX_DIR);
+        this.manifestPath = indexDir.resolve(MANIFEST_FILE);
+        loadManifest();
+
+        // Puesta al día con los respaldos existentes: solo se reescriben los documentos que hayan cambiado
+        for (String projectName : projectCatalog.listProjectNames()) {
+            Path dbPath = projectCatalog.find(projectName);
+            if (dbPath != null) {
+                scheduleDatabase(projectName, dbPath);
+            }
+        }
+    }
+
+    /**
+     * Programa la reindexación de un respaldo en segundo plano. Varias peticiones seguidas del mismo proyecto
+     * se agrupan en una sola pasada sobre la última versión.
+     */
+    public void scheduleDatabase(String projectName, Path dbPath) {
+        if (pendingDatabases.put(projectName, dbPath) == null) {
+            try {
+                dbTaskExecutor.execute(() -> {
+                    Path latest = pendingDatabases.remove(projectName);
+                    if (latest != null) {
+                        try {
+                            indexDatabase(projectName, latest);
+                        } catch (IOException ignored) {
+                            // El índice conserva la versión anterior; se reintentará en la próxima escritura.
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Cola llena: se reindexará en la próxima escritura o al arrancar.
+                pendingDatabases.remove(projectName);
+            }
+        }
+    }
+
+    /**
+     * Campos indexables de una entidad o carpeta de un payload de sincronización, sin procesar
+     * (la descripción llega en HTML y contenido_json como texto JSON del editor).
+     */
+    public static class PayloadRecord {
+        public final String kind;
+        public final long id;
+        public final String nombre;
+        public final String tipo;
+        public final String descripcion;
+        public final String contenidoJson;
+        public final boolean deleted;
+
+        public PayloadRecord(String kind, long id, String nombre, String tipo, String descripcion, String contenidoJson,
+                             boolean deleted) {
+            this.kind = kind;
+            this.id = id;
+            this.nombre = nombre;
+            this.tipo = tipo;
+            this.descripcion = descripcion;
+            this.contenidoJson = contenidoJson;
+            this.deleted = deleted;
+        }
+    }
+
+    /**
+     * Programa la indexación de las entidades y carpetas de un payload de sincronización ya archivado.
+     * El archivo se relee en segundo plano por lotes, así que ni la petición ni la tarea retienen el payload entero.
+     */
+    public void schedulePayload(String projectName, Path archivedPayload) {
+        try {
+            dbTaskExecutor.execute(() -> {
+                try {
+                    payloadArchiver.readIndexRecords(archivedPayload, PAYLOAD_BATCH_SIZE,
+                            batch -> update(projectName, fromPayload(batch), false));
+                } catch (IOException ignored) {
+                    // El respaldo archivado sigue en disco; se indexará con la próxima subida.
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // Cola llena: se indexará con la próxima subida.
+        }
+    }
+
+    /**
+     * Reindexa las entidades y carpetas vivas de un respaldo. El respaldo es la fuente de verdad del proyecto,
+     * así que los documentos que ya no contiene se eliminan del índice.
+     */
+    public void indexDatabase(String projectName, Path dbPath) throws IOException {
+        List<SourceDocument> documents = new ArrayList<>();
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setOpenMode(SQLiteOpenMode.READONLY);
+        try (Connection connection = config.createConnection("jdbc:sqlite:" + dbPath.toAbsolutePath())) {
+            Map<Long, List<String>> attributeValues = new HashMap<>();
+            readTable(connection, "SELECT entidad_id, valor FROM valores WHERE valor IS NOT NULL", rows ->
+                    attributeValues.computeIfAbsent(rows.getLong(1), id -> new ArrayList<>()).add(rows.getString(2)));
+            readTable(connection, "SELECT id, nombre, tipo, descripcion, contenido_json FROM entidades WHERE COALESCE(borrado, 0) = 0", rows -> {
+                List<String> texts = new ArrayList<>();
+                texts.add(rows.getString(3));
+                texts.add(plainText(rows.getString(4)));
+                texts.add(jsonText(rows.getString(5)));
+                for (String value : attributeValues.getOrDefault(rows.getLong(1), List.of())) {
+                    texts.add(plainText(value));
+                }
+                documents.add(new SourceDocument(KIND_ENTITY, rows.getLong(1), rows.getString(2), texts, false));
+            });
+            readTable(connection, "SELECT id, nombre, tipo FROM carpetas WHERE COALESCE(borrado, 0) = 0", rows ->
+                    documents.add(new SourceDocument(KIND_FOLDER, rows.getLong(1), rows.getString(2), List.of(nullToEmpty(rows.getString(3))), false)));
+        } catch (SQLException e) {
+            throw new IOException("No se pudo leer " + dbPath.getFileName() + ": " + e.getMessage(), e);
+        }
+        update(projectName, documents, true);
+    }
+
+    private interface RowReader {
+        void read(ResultSet rows) throws SQLException;
+    }
+
+    /**
+     * Lee todas las filas de la consulta. Solo se toleran las tablas o columnas inexistentes (respaldos de versiones
+     * antiguas); cualquier otro error se propaga para que la reindexación completa no borre documentos que el
+     * respaldo sí contiene.
+     */
+    private static void readTable(Connection connection, String sql, RowReader reader) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rows = statement.executeQuery(sql)) {
+            while (rows.next()) {
+                reader.read(rows);
+            }
+        } catch (SQLException e) {
+            if (!isMissingSchema(e)) {
+                throw e;
+            }
+            // Respaldo de una versión antigua sin esta tabla o columna: se indexa el resto.
+        }
+    }
+
+    /**
+     * SQLite notifica las tablas y columnas inexistentes con SQLITE_ERROR y un mensaje "no such table/column".
+     */
+    private static boolean isMissingSchema(SQLException e) {
+        String message = e.getMessage();
+        return message != null && (message.contains("no such table") || message.contains("no such column"));
+    }
+
+    private List<SourceDocument> fromPayload(List<PayloadRecord> records) {
+        List<SourceDocument> documents = new ArrayList<>(records.size());
+        for (PayloadRecord record : records) {
+            List<String> texts;
+            if (KIND_ENTITY.equals(record.kind)) {
+                texts = new ArrayList<>();
+                texts.add(nullToEmpty(record.tipo));
+                texts.add(plainText(nullToEmpty(record.descripcion)));
+                texts.add(jsonText(record.contenidoJson));
+            } else {
+                texts = List.of(nullToEmpty(record.tipo));
+            }
+            documents.add(new SourceDocument(record.kind, record.id, nullToEmpty(record.nombre), texts, record.deleted));
+        }
+        return documents;
+    }
+
+    /**
+     * Aplica un lote de documentos de un proyecto. Si es completo (authoritative), también borra los que falten.
+     */
+    public void update(String projectName, Collection<SourceDocument> sources, boolean authoritative) throws IOException {
+        writeLock.lock();
+        try {
+            String prefix = projectName + "/";
+            Set<String> seen = new HashSet<>();
+            Set<String> removed = new HashSet<>();
+            List<SearchSegment.Document> added = new ArrayList<>();
+
+            for (SourceDocument source : sources) {
+                String key = prefix + source.kind + "/" + source.id;
+                seen.add(key);
+                DocLocation existing = liveDocs.get(key);
+                if (source.deleted) {
+                    if (existing != null) {
+                        removed.add(key);
+                    }
+                } else {
+                    SearchSegment.Document document = analyze(key, projectName, source);
+                    if (existing == null || existing.hash != document.hash) {
+                        added.add(document);
+                        if (existing != null) {
+                            removed.add(key);
+                        }
+                    }
+                }
+            }
+            if (authoritative) {
+                for (String key : liveDocs.keySet()) {
+                    if (key.startsWith(prefix) && !seen.contains(key)) {
+                        removed.add(key);
+                    }
+                }
+            }
+
+            if (!added.isEmpty() || !removed.isEmpty()) {
+                SearchSegment segment = null;
+                if (!added.isEmpty()) {
+                    segment = writeSegment(added);
+                }
+                publish(removed, segment, List.of());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Marca como borrados los documentos indicados, añade el segmento nuevo (si lo hay), retira los segmentos
+     * fusionados y publica la vista resultante junto con el manifiesto.
+     */
+    private void publish(Set<String> removedKeys, SearchSegment addedSegment, List<SegmentState> retired) throws IOException {
+        Map<String, SegmentState> byName = new LinkedHashMap<>();
+        for (SegmentState state : view.segments) {
+            if (!retired.contains(state)) {
+                byName.put(state.segment.name, state);
+            }
+        }
+
+        Map<String, BitSet> copies = new HashMap<>();
+        for (String key : removedKeys) {
+            DocLocation location = liveDocs.remove(key);
+            if (location != null && byName.containsKey(location.segment)) {
+                copies.computeIfAbsent(location.segment, name -> (BitSet) byName.get(name).deleted.clone()).set(location.doc);
+            }
+        }
+        for (Map.Entry<String, BitSet> entry : copies.entrySet()) {
+            byName.put(entry.getKey(), new SegmentState(byName.get(entry.getKey()).segment, entry.getValue()));
+        }
+
+        if (addedSegment != null) {
+            byName.put(addedSegment.name, new SegmentState(addedSegment, new BitSet()));
+            SearchSegment.Document[] documents = addedSegment.documents;
+            for (int doc = 0; doc < documents.length; doc++) {
+                liveDocs.put(documents[doc].key, new DocLocation(addedSegment.name, doc, documents[doc].hash, documents[doc].length));
+            }
+        }
+
+        // Los segmentos sin documentos vivos se descartan directamente
+        List<SegmentState> segments = new ArrayList<>();
+        List<SegmentState> emptied = new ArrayList<>();
+        for (SegmentState state : byName.values()) {
+            if (state.liveCount() > 0) {
+                segments.add(state);
+            } else {
+                emptied.add(state);
+            }
+        }
+
+        long totalLength = 0;
+        for (DocLocation location : liveDocs.values()) {
+            totalLength += location.length;
+        }
+        view = new IndexView(List.copyOf(segments), liveDocs.size(), totalLength);
+        writeManifest(segments);
+
+        for (SegmentState state : emptied) {
+            deleteQuietly(state.segment.path);
+        }
+        for (SegmentState state : retired) {
+            deleteQuietly(state.segment.path);
+        }
+        if (segments.size() > MAX_SEGMENTS) {
+            scheduleMerge();
+        }
+    }
+
+    private SearchSegment writeSegment(List<SearchSegment.Document> documents) throws IOException {
+        Files.createDirectories(indexDir);
+        Path target = indexDir.resolve(SEGMENT_PREFIX + (nextSegment++) + SEGMENT_EXTENSION);
+        Path tmp = indexDir.resolve(target.getFileName() + ".tmp");
+        SearchSegment.write(tmp, documents);
+        ContentStore.publish(tmp, target);
+        return SearchSegment.open(target);
+    }
+
+    private void scheduleMerge() {
+        if (mergeScheduled.compareAndSet(false, true)) {
+            try {
+                dbTaskExecutor.execute(() -> {
+                    mergeScheduled.set(false);
+                    try {
+                        merge();
+                    } catch (IOException ignored) {
+                        // Los segmentos siguen siendo válidos; se reintentará en la próxima actualización.
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                mergeScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Fusiona los segmentos más pequeños en uno solo, descartando los documentos borrados.
+     */
+    void merge() throws IOException {
+        writeLock.lock();
+        try {
+            List<SegmentState> candidates = new ArrayList<>(view.segments);
+            if (candidates.size() > MAX_SEGMENTS) {
+                candidates.sort(Comparator.comparingInt(SegmentState::liveCount));
+                List<SegmentState> chosen = List.copyOf(candidates.subList(0, candidates.size() - MAX_SEGMENTS / 2 + 1));
+
+                List<SearchSegment.Document> merged = new ArrayList<>();
+                for (SegmentState state : chosen) {
+                    SearchSegment.Document[] documents = state.segment.documents;
+                    int[] remap = new int[documents.length];
+                    List<Map<String, Integer>> frequencies = new ArrayList<>();
+                    for (int doc = 0; doc < documents.length; doc++) {
+                        if (state.deleted.get(doc)) {
+                            remap[doc] = -1;
+                        } else {
+                            remap[doc] = frequencies.size();
+                            frequencies.add(new HashMap<>());
+                        }
+                    }
+                    state.segment.forEachTerm((term, postings) -> {
+                        while (postings.next()) {
+                            int target = remap[postings.doc];
+                            if (target >= 0) {
+                                frequencies.get(target).put(term, postings.termFrequency);
+                            }
+                        }
+                    });
+                    for (int doc = 0; doc < documents.length; doc++) {
+                        if (remap[doc] >= 0) {
+                            SearchSegment.Document source = documents[doc];
+                            merged.add(new SearchSegment.Document(source.key, source.project, source.kind, source.id,
+                                    source.title, source.length, source.hash, frequencies.get(remap[doc])));
+                        }
+                    }
+                }
+
+                SearchSegment segment = merged.isEmpty() ? null : writeSegment(merged);
+                Set<String> movedKeys = new HashSet<>();
+                for (SearchSegment.Document document : merged) {
+                    movedKeys.add(document.key);
+                }
+                // Los documentos movidos se quitan de liveDocs y el segmento fusionado los vuelve a registrar
+                liveDocs.keySet().removeAll(movedKeys);
+                publish(Set.of(), segment, chosen);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Busca en todos los proyectos (o solo en los indicados) y devuelve los mejores resultados por BM25.
+     */
+    public SearchResult search(String query, Collection<String> projects, int limit) {
+        long start = System.nanoTime();
+        IndexView current = view;
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        Set<String> projectFilter = projects == null || projects.isEmpty() ? null : new HashSet<>(projects);
+        int maxHits = Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        SearchResult result = new SearchResult();
+        result.query = query;
+
+        if (!terms.isEmpty() && current.liveDocCount > 0) {
+            double averageLength = Math.max(1.0, (double) current.totalLength / current.liveDocCount);
+            // Un acumulador por segmento tocado, indexado por documento local (sin boxing)
+            Map<SegmentState, double[]> scores = new HashMap<>();
+
+            for (String term : terms) {
+                List<SearchSegment.Postings> perSegment = new ArrayList<>();
+                long docFreq = 0;
+                for (SegmentState state : current.segments) {
+                    SearchSegment.Postings postings = state.segment.postings(term);
+                    perSegment.add(postings);
+                    if (postings != null) {
+                        docFreq += postings.docFreq;
+                    }
+                }
+                double idf = Math.log(1.0 + (current.liveDocCount - docFreq + 0.5) / (docFreq + 0.5));
+
+                for (int i = 0; i < perSegment.size(); i++) {
+                    SearchSegment.Postings postings = perSegment.get(i);
+                    if (postings != null) {
+                        SegmentState state = current.segments.get(i);
+                        while (postings.next()) {
+                            SearchSegment.Document document = state.segment.documents[postings.doc];
+                            if (!state.deleted.get(postings.doc)
+                                    && (projectFilter == null || projectFilter.contains(document.project))) {
+                                double tf = postings.termFrequency;
+                                double norm = K1 * (1 - B + B * document.length / averageLength);
+                                scores.computeIfAbsent(state, s -> new double[s.segment.documents.length])
+                                        [postings.doc] += idf * tf * (K1 + 1) / (tf + norm);
+                            }
+                        }
+                    }
+                }
+            }
+
+            PriorityQueue<SearchHit> top = new PriorityQueue<>(Comparator.comparingDouble(hit -> hit.score));
+            for (Map.Entry<SegmentState, double[]> segmentScores : scores.entrySet()) {
+                double[] docScores = segmentScores.getValue();
+                for (int doc = 0; doc < docScores.length; doc++) {
+                    double score = docScores[doc];
+                    if (score > 0) {
+                        result.totalHits++;
+                        if (top.size() < maxHits || score > top.peek().score) {
+                            SearchSegment.Document document = segmentScores.getKey().segment.documents[doc];
+                            SearchHit hit = new SearchHit();
+                            hit.project = document.project;
+                            hit.kind = document.kind;
+                            hit.id = document.id;
+                            hit.title = document.title;
+                            hit.score = score;
+                            top.add(hit);
+                            if (top.size() > maxHits) {
+                                top.poll();
+                            }
+                        }
+                    }
+                }
+            }
+            while (!top.isEmpty()) {
+                result.hits.add(0, top.poll());
+            }
+        }
+
+        result.tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Tokeniza el documento (título con peso extra) y calcula la huella de su contenido para detectar cambios.
+     */
+    private SearchSegment.Document analyze(String key, String projectName, SourceDocument source) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = 0;
+        for (String token : tokenize(source.title)) {
+            frequencies.merge(token, TITLE_BOOST, Integer::sum);
+            length += TITLE_BOOST;
+        }
+        long hash = fnv1a(0xcbf29ce484222325L, nullToEmpty(source.title));
+        for (String text : source.texts) {
+            for (String token : tokenize(text)) {
+                frequencies.merge(token, 1, Integer::sum);
+                length++;
+            }
+            hash = fnv1a(hash, "\u0000" + nullToEmpty(text));
+        }
+        return new SearchSegment.Document(key, projectName, source.kind, source.id, nullToEmpty(source.title), length, hash, frequencies);
+    }
+
+    /**
+     * Minúsculas, sin tildes y partido por todo lo que no sea letra o dígito.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text != null && !text.isEmpty()) {
+            String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+            for (String token : SPLIT.split(folded)) {
+                if (token.length() >= 2 && token.length() <= MAX_TOKEN_LENGTH) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static long fnv1a(long hash, String value) {
+        long result = hash;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            result ^= b & 0xff;
+            result *= 0x100000001b3L;
+        }
+        return result;
+    }
+
+    /**
+     * Texto visible de un campo que puede contener HTML del editor.
+     */
+    private static String plainText(String value) {
+        return value != null && value.indexOf('<') >= 0 ? org.jsoup.Jsoup.parse(value).text() : nullToEmpty(value);
+    }
+
+    /**
+     * Solo los valores de texto de un JSON (no sus claves), para que la estructura del editor no ensucie el índice.
+     */
+    private String jsonText(String json) {
+        String text = "";
+        if (json != null && !json.isBlank()) {
+            try {
+                StringBuilder builder = new StringBuilder();
+                collectText(objectMapper.readTree(json), builder);
+                text = builder.toString();
+            } catch (IOException e) {
+                text = plainText(json);
+            }
+        }
+        return text;
+    }
+
+    private static void collectText(JsonNode node, StringBuilder builder) {
+        if (node.isTextual()) {
+            builder.append(plainText(node.asText())).append(' ');
+        } else if (node.isContainerNode()) {
+            for (JsonNode child : node) {
+                collectText(child, builder);
+            }
+        }
+    }
+
+    private void writeManifest(List<SegmentState> segments) throws IOException {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (SegmentState state : segments) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", state.segment.name);
+            entry.put("deleted", state.deleted.stream().toArray());
+            entries.add(entry);
+        }
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("nextSegment", nextSegment);
+        manifest.put("segments", entries);
+
+        Files.createDirectories(indexDir);
+        Path tmp = indexDir.resolve(MANIFEST_FILE + ".tmp");
+        objectMapper.writeValue(tmp.toFile(), manifest);
+        ContentStore.publish(tmp, manifestPath);
+    }
+
+    /**
+     * Abre los segmentos del manifiesto, reconstruye la tabla de documentos vivos y borra los segmentos huérfanos
+     * (fusionados o escritos a medias antes de un reinicio).
+     */
+    private void loadManifest() {
+        List<SegmentState> segments = new ArrayList<>();
+        Set<String> listed = new HashSet<>();
+        if (Files.isRegularFile(manifestPath)) {
+            try {
+                JsonNode manifest = objectMapper.readTree(manifestPath.toFile());
+                nextSegment = Math.max(1, manifest.path("nextSegment").asInt(1));
+                for (JsonNode entry : manifest.path("segments")) {
+                    String name = entry.path("name").asText();
+                    try {
+                        SearchSegment segment = SearchSegment.open(indexDir.resolve(name));
+                        BitSet deleted = new BitSet();
+                        for (JsonNode doc : entry.path("deleted")) {
+                            deleted.set(doc.asInt());
+                        }
+                        segments.add(new SegmentState(segment, deleted));
+                        listed.add(name);
+                    } catch (IOException ignored) {
+                        // Segmento perdido: sus documentos se recuperan al reindexar los respaldos.
+                    }
+                }
+            } catch (IOException ignored) {
+                // Manifiesto ilegible: se reconstruye el índice desde los respaldos.
+            }
+        }
+
+        long totalLength = 0;
+        for (SegmentState state : segments) {
+            SearchSegment.Document[] documents = state.segment.documents;
+            for (int doc = 0; doc < documents.length; doc++) {
+                if (!state.deleted.get(doc)) {
+                    liveDocs.put(documents[doc].key, new DocLocation(state.segment.name, doc, documents[doc].hash, documents[doc].length));
+                    totalLength += documents[doc].length;
+                }
+            }
+        }
+        view = new IndexView(List.copyOf(segments), liveDocs.size(), totalLength);
+
+        if (Files.isDirectory(indexDir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(indexDir, SEGMENT_PREFIX + "*")) {
+                for (Path file : files) {
+                    if (!listed.contains(file.getFileName().toString())) {
+                        deleteQuietly(file);
+                    }
+                }
+            } catch (IOException ignored) {
+                // Se volverá a intentar en el próximo arranque.
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // En Windows un segmento aún mapeado no se puede borrar; se limpia en el próximo arranque.
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,252 @@
+package com.worldbuilding.core.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Segmento inmutable del índice de búsqueda, leído mediante un mapeo en memoria del archivo.
+ * Formato (big-endian, cadenas como int longitud + UTF-8):
+ * <pre>
+ * cabecera:  int MAGIC, int VERSION, int docCount, int termCount
+ * documentos: por documento: key, project, kind, long id, title, int length, long hash
+ * términos:  por término (orden de bytes UTF-8): term, int docFreq, docFreq × (int doc, int tf)
+ * tabla:     termCount × int offset del término
+ * pie:       int offset de la tabla
+ * </pre>
+ * La tabla ordenada permite buscar un término por búsqueda binaria sin cargar el diccionario en el heap.
+ */
+final class SearchSegment {
+
+    private static final int MAGIC = 0x57425349; // "WBSI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    final Path path;
+    final String name;
+    private final MappedByteBuffer buffer;
+    private final int termCount;
+    private final int termTableOffset;
+    final Document[] documents;
+
+    /**
+     * Documento indexado. Las frecuencias por término solo existen mientras se construye un segmento.
+     */
+    static final class Document {
+        final String key;
+        final String project;
+        final String kind;
+        final long id;
+        final String title;
+        final int length;
+        final long hash;
+        final Map<String, Integer> termFrequencies;
+
+        Document(String key, String project, String kind, long id, String title, int length, long hash,
+                 Map<String, Integer> termFrequencies) {
+            this.key = key;
+            this.project = project;
+            this.kind = kind;
+            this.id = id;
+            this.title = title;
+            this.length = length;
+            this.hash = hash;
+            this.termFrequencies = termFrequencies;
+        }
+    }
+
+    /**
+     * Lista de apariciones de un término en este segmento.
+     */
+    final class Postings {
+        final int docFreq;
+        private int position;
+        private int remaining;
+        int doc;
+        int termFrequency;
+
+        Postings(int docFreq, int position) {
+            this.docFreq = docFreq;
+            this.position = position;
+            this.remaining = docFreq;
+        }
+
+        boolean next() {
+            boolean hasNext = remaining > 0;
+            if (hasNext) {
+                doc = buffer.getInt(position);
+                termFrequency = buffer.getInt(position + 4);
+                position += 8;
+                remaining--;
+            }
+            return hasNext;
+        }
+    }
+
+    private SearchSegment(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.name = path.getFileName().toString();
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE + 4 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Segmento de búsqueda no válido: " + name);
+        }
+        int docCount = buffer.getInt(8);
+        this.termCount = buffer.getInt(12);
+        this.termTableOffset = buffer.getInt(buffer.capacity() - 4);
+
+        this.documents = new Document[docCount];
+        int position = HEADER_SIZE;
+        for (int i = 0; i < docCount; i++) {
+            String key = readString(position);
+            position += 4 + buffer.getInt(position);
+            String project = readString(position);
+            position += 4 + buffer.getInt(position);
+            String kind = readString(position);
+            position += 4 + buffer.getInt(position);
+            long id = buffer.getLong(position);
+            position += 8;
+            String title = readString(position);
+            position += 4 + buffer.getInt(position);
+            int length = buffer.getInt(position);
+            long hash = buffer.getLong(position + 4);
+            position += 12;
+            documents[i] = new Document(key, project, kind, id, title, length, hash, null);
+        }
+    }
+
+    static SearchSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // El mapeo sigue siendo válido tras cerrar el canal
+            return new SearchSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Escribe un segmento con los documentos dados (usando sus frecuencias por término) en el archivo indicado.
+     */
+    static void write(Path target, List<Document> documents) throws IOException {
+        Map<String, List<int[]>> postingsByTerm = new HashMap<>();
+        for (int doc = 0; doc < documents.size(); doc++) {
+            for (Map.Entry<String, Integer> entry : documents.get(doc).termFrequencies.entrySet()) {
+                postingsByTerm.computeIfAbsent(entry.getKey(), term -> new ArrayList<>()).add(new int[]{doc, entry.getValue()});
+            }
+        }
+        List<byte[]> terms = new ArrayList<>(postingsByTerm.size());
+        Map<byte[], List<int[]>> postingsByBytes = new HashMap<>();
+        for (Map.Entry<String, List<int[]>> entry : postingsByTerm.entrySet()) {
+            byte[] term = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            terms.add(term);
+            postingsByBytes.put(term, entry.getValue());
+        }
+        terms.sort(Arrays::compareUnsigned);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(documents.size());
+            out.writeInt(terms.size());
+            for (Document document : documents) {
+                writeString(out, document.key);
+                writeString(out, document.project);
+                writeString(out, document.kind);
+                out.writeLong(document.id);
+                writeString(out, document.title);
+                out.writeInt(document.length);
+                out.writeLong(document.hash);
+            }
+
+            int[] termOffsets = new int[terms.size()];
+            for (int i = 0; i < terms.size(); i++) {
+                byte[] term = terms.get(i);
+                termOffsets[i] = out.size();
+                out.writeInt(term.length);
+                out.write(term);
+                List<int[]> postings = postingsByBytes.get(term);
+                out.writeInt(postings.size());
+                for (int[] posting : postings) {
+                    out.writeInt(posting[0]);
+                    out.writeInt(posting[1]);
+                }
+            }
+
+            int tableOffset = out.size();
+            for (int offset : termOffsets) {
+                out.writeInt(offset);
+            }
+            out.writeInt(tableOffset);
+        }
+    }
+
+    /**
+     * Busca el término en la tabla ordenada; null si no aparece en el segmento.
+     */
+    Postings postings(String term) {
+        byte[] wanted = term.getBytes(StandardCharsets.UTF_8);
+        Postings found = null;
+        int low = 0;
+        int high = termCount - 1;
+        while (found == null && low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = buffer.getInt(termTableOffset + mid * 4);
+            int comparison = compareTerm(offset, wanted);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                int postingsOffset = offset + 4 + wanted.length;
+                found = new Postings(buffer.getInt(postingsOffset), postingsOffset + 4);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Recorre todos los términos del segmento en orden (para la fusión de segmentos).
+     */
+    void forEachTerm(TermVisitor visitor) {
+        for (int i = 0; i < termCount; i++) {
+            int offset = buffer.getInt(termTableOffset + i * 4);
+            String term = readString(offset);
+            int postingsOffset = offset + 4 + buffer.getInt(offset);
+            visitor.visit(term, new Postings(buffer.getInt(postingsOffset), postingsOffset + 4));
+        }
+    }
+
+    interface TermVisitor {
+        void visit(String term, Postings postings);
+    }
+
+    private int compareTerm(int offset, byte[] wanted) {
+        int length = buffer.getInt(offset);
+        int common = Math.min(length, wanted.length);
+        int result = 0;
+        for (int i = 0; i < common && result == 0; i++) {
+            result = Integer.compare(buffer.get(offset + 4 + i) & 0xff, wanted[i] & 0xff);
+        }
+        return result != 0 ? result : Integer.compare(length, wanted.length);
+    }
+
+    private String readString(int position) {
+        byte[] bytes = new byte[buffer.getInt(position)];
+        buffer.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,345 @@
+package com.worldbuilding.core.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Versiones inmutables de cada respaldo .sqlite.
+ * Una instantánea es una receta del {@link ContentStore} con referencia propia, así que no copia datos:
+ * solo fija los trozos de esa versión. El índice de instantáneas vive en memoria y se persiste en un único
+ * archivo, de modo que listar y restaurar no recorren directorios. La retención (últimas N, una por hora
+ * y una por día) se aplica en segundo plano sobre dbTaskExecutor.
+ */
+@Service
+public class SnapshotService {
+
+    private static final String INDEX_FILE = "snapshots.json";
+    private static final String SNAPSHOT_REF_PREFIX = "snapshots/";
+    private static final String RESTORE_REF_PREFIX = "restoring/";
+
+    private final ContentStore contentStore;
+    private final ProjectCatalog projectCatalog;
+    private final Executor dbTaskExecutor;
+    private final Path indexPath;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RetentionPolicy retentionPolicy = RetentionPolicy.fromSystemProperties();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    // Índice por proyecto, ordenado de más antigua a más reciente; se modifica bajo indexLock, que se retiene
+    // mientras se escriben recetas y el índice (y la compactación borra objetos): candado y no monitor para no
+    // fijar a su portador los hilos virtuales que esperan
+    private final Map<String, List<SnapshotInfo>> snapshots = new HashMap<>();
+    private final ReentrantLock indexLock = new ReentrantLock();
+
+    /**
+     * Metadatos de una instantánea; el contenido está en la receta {@link #ref} del almacén.
+     */
+    public static class SnapshotInfo {
+        public String snapshotId;
+        public String projectName;
+        public long createdAt;
+        public long size;
+        public String sha256;
+
+        String ref() {
+            return SNAPSHOT_REF_PREFIX + projectName + "/" + snapshotId;
+        }
+    }
+
+    /**
+     * Política de retención configurable con propiedades del sistema
+     * (worldbuilding.snapshots.keepLast, .hourlyHours y .dailyDays).
+     */
+    public static class RetentionPolicy {
+        public final int keepLast;
+        public final int hourlyHours;
+        public final int dailyDays;
+
+        public RetentionPolicy(int keepLast, int hourlyHours, int dailyDays) {
+            this.keepLast = Math.max(1, keepLast);
+            this.hourlyHours = Math.max(0, hourlyHours);
+            this.dailyDays = Math.max(0, dailyDays);
+        }
+
+        static RetentionPolicy fromSystemProperties() {
+            return new RetentionPolicy(
+                    Integer.getInteger("worldbuilding.snapshots.keepLast", 10),
+                    Integer.getInteger("worldbuilding.snapshots.hourlyHours", 48),
+                    Integer.getInteger("worldbuilding.snapshots.dailyDays", 30));
+        }
+    }
+
+    public SnapshotService(ContentStore contentStore, ProjectCatalog projectCatalog,
+                           @Qualifier("dbTaskExecutor") Executor dbTaskExecutor) {
+        this.contentStore = contentStore;
+        this.projectCatalog = projectCatalog;
+        this.dbTaskExecutor = dbTaskExecutor;
+        this.indexPath = projectCatalog.getBackupDir().resolve(ContentStore.STORE_DIR).resolve(INDEX_FILE);
+        loadIndex();
+        dropRestorePins();
+    }
+
+    /**
+     * Crea una instantánea de la versión registrada del proyecto si difiere de la última.
+     * Devuelve la instantánea más reciente, o null si el proyecto no está en el almacén.
+     */
+    public SnapshotInfo capture(String projectName) throws IOException {
+        ContentStore.Recipe current = contentStore.getRecipe(ContentStore.databaseRef(projectName));
+        SnapshotInfo latest = null;
+
+        if (current != null) {
+            indexLock.lock();
+            try {
+                List<SnapshotInfo> history = snapshots.computeIfAbsent(projectName, k -> new ArrayList<>());
+                latest = history.isEmpty() ? null : history.get(history.size() - 1);
+
+                if (latest == null || !latest.sha256.equals(current.sha256)) {
+                    SnapshotInfo snapshot = new SnapshotInfo();
+                    snapshot.projectName = projectName;
+                    snapshot.createdAt = Math.max(System.currentTimeMillis(), latest == null ? 0 : latest.createdAt + 1);
+                    snapshot.snapshotId = Long.toString(snapshot.createdAt);
+
+                    // Si otra escritura acaba de sustituir la versión, el almacén fija la vigente
+                    ContentStore.Recipe retained = contentStore.retain(snapshot.ref(), current);
+                    snapshot.size = retained.size;
+                    snapshot.sha256 = retained.sha256;
+                    history.add(snapshot);
+                    persistIndex();
+                    latest = snapshot;
+                    scheduleCompaction();
+                }
+            } finally {
+                indexLock.unlock();
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Lista las instantáneas de un proyecto, de la más reciente a la más antigua.
+     */
+    public List<SnapshotInfo> list(String projectName) {
+        List<SnapshotInfo> result;
+        indexLock.lock();
+        try {
+            result = new ArrayList<>(snapshots.getOrDefault(projectName, List.of()));
+        } finally {
+            indexLock.unlock();
+        }
+        java.util.Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Restaura la instantánea como versión viva del proyecto. La versión actual se conserva antes como instantánea.
+     * Devuelve false si la instantánea no existe.
+     */
+    public boolean restore(String projectName, String snapshotId, Path target) throws IOException {
+        SnapshotInfo snapshot = find(projectName, snapshotId);
+        ContentStore.Recipe pinned = null;
+        String pinRef = RESTORE_REF_PREFIX + UUID.randomUUID();
+        boolean restored = false;
+
+        if (snapshot != null) {
+            // Bajo el candado del índice solo se fija la versión, para que la compactación no la libere
+            indexLock.lock();
+            try {
+                ContentStore.Recipe recipe = contentStore.getRecipe(snapshot.ref());
+                if (recipe != null) {
+                    pinned = contentStore.retain(pinRef, recipe);
+                }
+            } finally {
+                indexLock.unlock();
+            }
+        }
+
+        if (pinned != null) {
+            try {
+                capture(projectName);
+                Lock lock = projectCatalog.writeLock(projectName);
+                lock.lock();
+                try {
+                    contentStore.restore(pinned, ContentStore.databaseRef(projectName), target);
+                } finally {
+                    lock.unlock();
+                }
+                capture(projectName);
+                restored = true;
+            } finally {
+                contentStore.drop(pinRef);
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Libera las fijaciones de restauraciones que un reinicio dejó a medias.
+     */
+    private void dropRestorePins() {
+        for (String ref : contentStore.listRefs(RESTORE_REF_PREFIX)) {
+            try {
+                contentStore.drop(ref);
+            } catch (IOException ignored) {
+                // Se reintentará en el próximo arranque.
+            }
+        }
+    }
+
+    private SnapshotInfo find(String projectName, String snapshotId) {
+        SnapshotInfo found = null;
+        indexLock.lock();
+        try {
+            for (SnapshotInfo snapshot : snapshots.getOrDefault(projectName, List.of())) {
+                if (snapshot.snapshotId.equals(snapshotId)) {
+                    found = snapshot;
+                }
+            }
+        } finally {
+            indexLock.unlock();
+        }
+        return found;
+    }
+
+    private void scheduleCompaction() {
+        if (compactionScheduled.compareAndSet(false, true)) {
+            try {
+                dbTaskExecutor.execute(() -> {
+                    compactionScheduled.set(false);
+                    compact();
+                });
+            } catch (RejectedExecutionException e) {
+                // Cola llena: la próxima instantánea volverá a intentarlo.
+                compactionScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Aplica la política de retención a todos los proyectos y libera los trozos de las versiones descartadas.
+     */
+    public int compact() {
+        int removed = 0;
+        indexLock.lock();
+        try {
+            Instant now = Instant.now();
+            for (List<SnapshotInfo> history : snapshots.values()) {
+                Set<SnapshotInfo> keep = selectRetained(history, retentionPolicy, now);
+                List<SnapshotInfo> survivors = new ArrayList<>();
+                for (SnapshotInfo snapshot : history) {
+                    if (keep.contains(snapshot)) {
+                        survivors.add(snapshot);
+                    } else {
+                        try {
+                            contentStore.drop(snapshot.ref());
+                            removed++;
+                        } catch (IOException e) {
+                            survivors.add(snapshot);
+                        }
+                    }
+                }
+                history.clear();
+                history.addAll(survivors);
+            }
+
+            if (removed > 0) {
+                try {
+                    persistIndex();
+                } catch (IOException ignored) {
+                    // El índice en disco conserva entradas ya eliminadas; loadIndex las descarta al no tener receta.
+                }
+            }
+        } finally {
+            indexLock.unlock();
+        }
+        return removed;
+    }
+
+    /**
+     * Instantáneas que sobreviven: las N más recientes, la más reciente de cada hora dentro de la ventana horaria
+     * y la más reciente de cada día dentro de la ventana diaria.
+     */
+    static Set<SnapshotInfo> selectRetained(List<SnapshotInfo> history, RetentionPolicy policy, Instant now) {
+        Set<SnapshotInfo> keep = new HashSet<>();
+        Set<Long> hoursSeen = new HashSet<>();
+        Set<Long> daysSeen = new HashSet<>();
+        Instant hourlyLimit = now.minus(Duration.ofHours(policy.hourlyHours));
+        Instant dailyLimit = now.minus(Duration.ofDays(policy.dailyDays));
+
+        for (int i = history.size() - 1; i >= 0; i--) {
+            SnapshotInfo snapshot = history.get(i);
+            Instant createdAt = Instant.ofEpochMilli(snapshot.createdAt);
+            boolean retained = history.size() - i <= policy.keepLast;
+
+            if (createdAt.isAfter(hourlyLimit)) {
+                long hour = createdAt.truncatedTo(ChronoUnit.HOURS).toEpochMilli();
+                retained |= hoursSeen.add(hour);
+            }
+            if (createdAt.isAfter(dailyLimit)) {
+                long day = createdAt.atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+                retained |= daysSeen.add(day);
+            }
+            if (retained) {
+                keep.add(snapshot);
+            }
+        }
+        return keep;
+    }
+
+    private void loadIndex() {
+        if (Files.isRegularFile(indexPath)) {
+            try {
+                Map<String, List<SnapshotInfo>> stored = objectMapper.readValue(indexPath.toFile(),
+                        new TypeReference<Map<String, List<SnapshotInfo>>>() { });
+                stored.forEach((projectName, history) -> {
+                    // Una instantánea sin receta (corte entre retención e índice) ya no es restaurable
+                    history.removeIf(snapshot -> contentStore.getRecipe(snapshot.ref()) == null);
+                    snapshots.put(projectName, new ArrayList<>(history));
+                });
+            } catch (IOException ignored) {
+                // Índice corrupto: se empieza de cero.
+            }
+        }
+
+        // Recetas de instantáneas que el índice no conoce (corte entre la receta y el índice): se liberan
+        Set<String> known = new HashSet<>();
+        snapshots.values().forEach(history -> history.forEach(snapshot -> known.add(snapshot.ref())));
+        for (String ref : contentStore.listRefs(SNAPSHOT_REF_PREFIX)) {
+            if (!known.contains(ref)) {
+                try {
+                    contentStore.drop(ref);
+                } catch (IOException ignored) {
+                    // Se reintentará en el próximo arranque.
+                }
+            }
+        }
+    }
+
+    private void persistIndex() throws IOException {
+        Files.createDirectories(indexPath.getParent());
+        Path tmp = indexPath.resolveSibling(INDEX_FILE + ".tmp");
+        objectMapper.writeValue(tmp.toFile(), snapshots);
+        ContentStore.publish(tmp, indexPath);
+    }
+}
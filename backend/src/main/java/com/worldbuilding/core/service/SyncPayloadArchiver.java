@@ -0,0 +1,297 @@
+package com.worldbuilding.core.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Archiva el payload de sincronización copiando los tokens del cuerpo directamente al archivo, sin construir
+ * el árbol completo: la memoria por petición no depende del tamaño del proyecto. La estructura se valida mientras
+ * se copia (objeto raíz, project como objeto, folders/entities/relationships como listas de objetos y entidades y
+ * carpetas con id) sin retener nada de las entidades. El archivo se escribe compacto en un temporal y se mueve al
+ * destino al terminar, así que un payload inválido o cortado nunca sustituye al último archivado.
+ * El índice de búsqueda vuelve a leer el archivo ya validado en segundo plano, por lotes de tamaño acotado
+ * ({@link #readIndexRecords}).
+ */
+@Service
+public class SyncPayloadArchiver {
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    // El cuerpo de la petición lo cierra el contenedor
+    private final JsonFactory jsonFactory = new JsonFactory().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    /**
+     * El cuerpo no es JSON válido o no tiene la forma de un payload de sincronización.
+     */
+    public static class InvalidPayloadException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public InvalidPayloadException(String message) {
+            super(message);
+        }
+    }
+
+    public static class ArchiveResult {
+        public final long bytesWritten;
+        public final int folders;
+        public final int entities;
+        public final int relationships;
+
+        ArchiveResult(long bytesWritten, int folders, int entities, int relationships) {
+            this.bytesWritten = bytesWritten;
+            this.folders = folders;
+            this.entities = entities;
+            this.relationships = relationships;
+        }
+    }
+
+    /**
+     * Recibe los registros indexables de un payload archivado, un lote cada vez.
+     */
+    public interface RecordBatchConsumer {
+        void accept(List<SearchIndexService.PayloadRecord> batch) throws IOException;
+    }
+
+    /**
+     * Copia el payload a target (sustituyéndolo de forma atómica) y devuelve cuántos elementos tenía.
+     */
+    public ArchiveResult archive(InputStream body, Path target) throws IOException, InvalidPayloadException {
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            int[] counts = new int[3];
+            try (JsonParser parser = jsonFactory.createParser(body);
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), OUTPUT_BUFFER_SIZE);
+                 JsonGenerator generator = jsonFactory.createGenerator(out)) {
+                copyPayload(parser, generator, counts);
+            } catch (JsonParseException e) {
+                throw new InvalidPayloadException("JSON inválido: " + e.getOriginalMessage());
+            }
+            long bytesWritten = Files.size(temp);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return new ArchiveResult(bytesWritten, counts[0], counts[1], counts[2]);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Lee las carpetas y entidades de un payload ya archivado (y por tanto validado) y las entrega en lotes de como
+     * mucho batchSize registros, saltándose el resto del documento: la memoria no depende del tamaño del proyecto.
+     */
+    public void readIndexRecords(Path archived, int batchSize, RecordBatchConsumer consumer) throws IOException {
+        try (InputStream in = Files.newInputStream(archived);
+             JsonParser parser = jsonFactory.createParser(in)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    String kind = "folders".equals(field) ? SearchIndexService.KIND_FOLDER
+                            : "entities".equals(field) ? SearchIndexService.KIND_ENTITY
+                            : null;
+                    if (kind != null && value == JsonToken.START_ARRAY) {
+                        readRecords(parser, kind, batchSize, consumer);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void readRecords(JsonParser parser, String kind, int batchSize, RecordBatchConsumer consumer)
+            throws IOException {
+        List<SearchIndexService.PayloadRecord> batch = new ArrayList<>(batchSize);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            RecordFields fields = new RecordFields();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (value.isStructStart()) {
+                    parser.skipChildren();
+                } else {
+                    fields.read(field, parser, value);
+                }
+            }
+            if (fields.id != null) {
+                batch.add(fields.toRecord(kind));
+            }
+            if (batch.size() == batchSize) {
+                consumer.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+    }
+
+    private static void copyPayload(JsonParser parser, JsonGenerator generator, int[] counts)
+            throws IOException, InvalidPayloadException {
+        require(parser.nextToken() == JsonToken.START_OBJECT, "El payload debe ser un objeto JSON");
+        generator.copyCurrentEvent(parser);
+        while (parser.nextToken() != JsonToken.END_OBJECT) {
+            String field = parser.getCurrentName();
+            generator.copyCurrentEvent(parser);
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "project":
+                    require(value == JsonToken.START_OBJECT || value == JsonToken.VALUE_NULL, "project debe ser un objeto");
+                    generator.copyCurrentStructure(parser);
+                    break;
+                case "folders":
+                    counts[0] = copyRecords(parser, generator, true);
+                    break;
+                case "entities":
+                    counts[1] = copyRecords(parser, generator, true);
+                    break;
+                case "relationships":
+                    counts[2] = copyRecords(parser, generator, false);
+                    break;
+                default:
+                    generator.copyCurrentStructure(parser);
+                    break;
+            }
+        }
+        generator.copyCurrentEvent(parser);
+        require(parser.nextToken() == null, "Contenido sobrante tras el objeto raíz");
+    }
+
+    /**
+     * Copia una lista de objetos. Con requireId, cada objeto debe tener un id numérico.
+     */
+    private static int copyRecords(JsonParser parser, JsonGenerator generator, boolean requireId)
+            throws IOException, InvalidPayloadException {
+        String listName = parser.getCurrentName();
+        int count = 0;
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            generator.copyCurrentEvent(parser);
+        } else {
+            require(parser.currentToken() == JsonToken.START_ARRAY, listName + " debe ser una lista");
+            generator.copyCurrentEvent(parser);
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                require(parser.currentToken() == JsonToken.START_OBJECT, listName + "[" + count + "] debe ser un objeto");
+                if (requireId) {
+                    copyRecord(parser, generator, listName + "[" + count + "]");
+                } else {
+                    generator.copyCurrentStructure(parser);
+                }
+                count++;
+            }
+            generator.copyCurrentEvent(parser);
+        }
+        return count;
+    }
+
+    private static void copyRecord(JsonParser parser, JsonGenerator generator, String location)
+            throws IOException, InvalidPayloadException {
+        Long id = null;
+
+        generator.copyCurrentEvent(parser);
+        while (parser.nextToken() != JsonToken.END_OBJECT) {
+            String field = parser.getCurrentName();
+            generator.copyCurrentEvent(parser);
+            JsonToken value = parser.nextToken();
+            if (value.isStructStart()) {
+                // Objetos anidados (p. ej. metadatos) se copian sin mirarlos: el índice solo usa valores simples
+                generator.copyCurrentStructure(parser);
+            } else {
+                if ("id".equals(field)) {
+                    id = longValue(parser, value);
+                }
+                generator.copyCurrentEvent(parser);
+            }
+        }
+        generator.copyCurrentEvent(parser);
+        require(id != null, location + " no tiene un id numérico");
+    }
+
+    /**
+     * Campos simples de una carpeta o entidad que usa el índice de búsqueda.
+     */
+    private static final class RecordFields {
+        Long id;
+        String nombre;
+        String tipo;
+        String descripcion;
+        String contenidoJson;
+        boolean deleted;
+
+        void read(String field, JsonParser parser, JsonToken value) throws IOException {
+            switch (field) {
+                case "id":
+                    id = longValue(parser, value);
+                    break;
+                case "nombre":
+                    nombre = textValue(parser, value);
+                    break;
+                case "tipo":
+                    tipo = textValue(parser, value);
+                    break;
+                case "descripcion":
+                    descripcion = textValue(parser, value);
+                    break;
+                case "contenido_json":
+                    contenidoJson = textValue(parser, value);
+                    break;
+                case "borrado":
+                    Long flag = longValue(parser, value);
+                    deleted = flag != null && flag != 0;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        SearchIndexService.PayloadRecord toRecord(String kind) {
+            return new SearchIndexService.PayloadRecord(kind, id, nombre, tipo, descripcion, contenidoJson, deleted);
+        }
+    }
+
+    private static String textValue(JsonParser parser, JsonToken value) throws IOException {
+        return value == JsonToken.VALUE_NULL ? null : parser.getText();
+    }
+
+    /**
+     * Número, booleano o texto numérico, como los acepta el frontend; null si no es ninguno.
+     */
+    private static Long longValue(JsonParser parser, JsonToken value) throws IOException {
+        Long result = null;
+        if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+            result = parser.getValueAsLong();
+        } else if (value == JsonToken.VALUE_TRUE || value == JsonToken.VALUE_FALSE) {
+            result = value == JsonToken.VALUE_TRUE ? 1L : 0L;
+        } else if (value == JsonToken.VALUE_STRING) {
+            try {
+                result = Long.parseLong(parser.getText().trim());
+            } catch (NumberFormatException ignored) {
+                // Texto no numérico: se trata como ausente.
+            }
+        }
+        return result;
+    }
+
+    private static void require(boolean condition, String message) throws InvalidPayloadException {
+        if (!condition) {
+            throw new InvalidPayloadException(message);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.worldbuilding.domains.linguistics.service;
 
+import com.worldbuilding.core.jfr.FontCompileEvent;
 import com.worldbuilding.domains.linguistics.model.ConlangGlyph;
 import com.worldbuilding.domains.linguistics.model.FontConfig;
 import org.springframework.stereotype.Service;
@@ -27,6 +28,9 @@ public class FontCompilerService {
      * Toma una lista de glifos vectoriales y una configuración, y genera un archivo físico de fuente TTF.
      */
     public Path compileTrueTypeFont(FontConfig config, List<ConlangGlyph> glyphs) throws IOException {
+        FontCompileEvent event = new FontCompileEvent();
+        event.begin();
+        long phaseStart = System.nanoTime();
         String cleanFontName = config.getFontFamily().toLowerCase().replaceAll("[^a-z0-9]", "_");
         String fileName = cleanFontName + ".ttf";
         Path targetPath = Paths.get(FONTS_DIR).resolve(fileName);
@@ -47,7 +51,19 @@ public class FontCompilerService {
             }
         }
 
-        Files.writeString(targetPath, rawFont.toString());
+        String content = rawFont.toString();
+        long writeStart = System.nanoTime();
+        event.buildDuration = writeStart - phaseStart;
+        Files.writeString(targetPath, content);
+        event.writeDuration = System.nanoTime() - writeStart;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.fontFamily = config.getFontFamily();
+            event.glyphs = glyphs != null ? glyphs.size() : 0;
+            event.bytesWritten = Files.size(targetPath);
+            event.commit();
+        }
         return targetPath;
     }
 }
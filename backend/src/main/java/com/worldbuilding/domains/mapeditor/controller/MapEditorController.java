@@ -1,17 +1,16 @@
 package com.worldbuilding.domains.mapeditor.controller;
 
+import com.worldbuilding.core.service.FileDownloadService;
 import com.worldbuilding.domains.mapeditor.model.MapAsset;
 import com.worldbuilding.domains.mapeditor.service.MapAssetProcessor;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -21,9 +20,11 @@ import java.nio.file.Paths;
 public class MapEditorController {
 
     private final MapAssetProcessor assetProcessor;
+    private final FileDownloadService fileDownloadService;
 
-    public MapEditorController(MapAssetProcessor assetProcessor) {
+    public MapEditorController(MapAssetProcessor assetProcessor, FileDownloadService fileDownloadService) {
         this.assetProcessor = assetProcessor;
+        this.fileDownloadService = fileDownloadService;
     }
 
     @PostMapping("/assets/{projectName}/upload")
@@ -48,27 +49,17 @@ public class MapEditorController {
     }
 
     @GetMapping("/assets/{projectName}/download/{fileName}")
-    public ResponseEntity<Resource> downloadMapAsset(
+    public ResponseEntity<StreamingResponseBody> downloadMapAsset(
             @PathVariable String projectName,
-            @PathVariable String fileName) {
-        ResponseEntity<Resource> response;
+            @PathVariable String fileName,
+            @RequestHeader HttpHeaders requestHeaders) {
+        ResponseEntity<StreamingResponseBody> response;
         try {
             Path filePath = Paths.get("maps_assets").resolve(projectName + "_" + fileName).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
-
-            boolean isResourceValid = resource.exists();
-            if (isResourceValid) {
-                MediaType mediaType = MediaType.APPLICATION_OCTET_STREAM;
-                response = ResponseEntity.ok()
-                        .contentType(mediaType)
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"")
-                        .body(resource);
-            } else {
-                response = ResponseEntity.notFound().build();
-            }
-
-        } catch (MalformedURLException e) {
-            response = ResponseEntity.badRequest().build();
+            MediaType mediaType = MediaType.APPLICATION_OCTET_STREAM;
+            response = fileDownloadService.serve(filePath, filePath.getFileName().toString(), mediaType, requestHeaders);
+        } catch (IOException e) {
+            response = ResponseEntity.internalServerError().build();
         }
         return response;
     }
@@ -1,11 +1,17 @@
 package com.worldbuilding.domains.mapeditor.service;
 
+import com.worldbuilding.core.jfr.MapAssetEvent;
+import com.worldbuilding.core.service.ContentStore;
+import com.worldbuilding.core.service.ProjectArchiveService;
 import com.worldbuilding.domains.mapeditor.model.MapAsset;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -14,8 +20,10 @@ import java.nio.file.Paths;
 public class MapAssetProcessor {
 
     private final String MAPS_DIR = "maps_assets";
+    private final ContentStore contentStore;
 
-    public MapAssetProcessor() {
+    public MapAssetProcessor(ContentStore contentStore) {
+        this.contentStore = contentStore;
         File dir = new File(MAPS_DIR);
         if (!dir.exists()) {
             dir.mkdirs();
@@ -26,6 +34,8 @@ public class MapAssetProcessor {
      * Guarda físicamente la imagen de alta resolución de un mapa en disco y devuelve sus metadatos procesados.
      */
     public MapAsset saveMapImage(String projectName, String mapName, MultipartFile file) throws IOException {
+        MapAssetEvent event = new MapAssetEvent();
+        event.begin();
         String cleanMapName = mapName.toLowerCase().replaceAll("[^a-z0-9]", "_");
         String extension = "png";
         
@@ -38,17 +48,21 @@ public class MapAssetProcessor {
         String fileName = cleanMapName + "." + extension;
         Path targetPath = Paths.get(MAPS_DIR).resolve(projectName + "_" + fileName);
 
-        Files.copy(file.getInputStream(), targetPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        long storeStart = System.nanoTime();
+        try (InputStream in = file.getInputStream()) {
+            storeAsset(in, targetPath);
+        }
+        long imageStart = System.nanoTime();
+        event.storeDuration = imageStart - storeStart;
 
         String resolution = "unknown";
-        try {
-            java.awt.image.BufferedImage bufferedImage = javax.imageio.ImageIO.read(targetPath.toFile());
-            resolution = bufferedImage != null
-                ? bufferedImage.getWidth() + "x" + bufferedImage.getHeight()
-                : "unknown";
-        } catch (Exception e) {
-            // [LOG REMOVED]
+        java.awt.Dimension dimensions = readDimensions(targetPath);
+        if (dimensions != null) {
+            resolution = dimensions.width + "x" + dimensions.height;
+            event.width = dimensions.width;
+            event.height = dimensions.height;
         }
+        event.imageDuration = System.nanoTime() - imageStart;
 
         MapAsset asset = new MapAsset();
         asset.setId(System.currentTimeMillis());
@@ -60,6 +74,7 @@ public class MapAssetProcessor {
         asset.setResolution(resolution);
         asset.setLayerCount(1);
 
+        commitEvent(event, projectName, "upload", file.getSize());
         return asset;
     }
 
@@ -67,6 +82,8 @@ public class MapAssetProcessor {
      * Descarga una imagen desde una URL externa, la guarda en el disco del servidor y devuelve sus metadatos.
      */
     public MapAsset saveMapImageFromUrl(String projectName, String mapName, String imageUrl) throws IOException {
+        MapAssetEvent event = new MapAssetEvent();
+        event.begin();
         String cleanMapName = mapName.toLowerCase().replaceAll("[^a-z0-9]", "_");
         String extension = "png";
 
@@ -84,20 +101,22 @@ public class MapAssetProcessor {
         String fileName = cleanMapName + "_url." + extension;
         Path targetPath = Paths.get(MAPS_DIR).resolve(projectName + "_" + fileName);
 
+        long storeStart = System.nanoTime();
         java.net.URL url = new java.net.URL(imageUrl);
-        try (java.io.InputStream in = url.openStream()) {
-            Files.copy(in, targetPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        try (InputStream in = url.openStream()) {
+            storeAsset(in, targetPath);
         }
+        long imageStart = System.nanoTime();
+        event.storeDuration = imageStart - storeStart;
 
         String resolution = "unknown";
-        try {
-            java.awt.image.BufferedImage bufferedImage = javax.imageio.ImageIO.read(targetPath.toFile());
-            resolution = bufferedImage != null
-                ? bufferedImage.getWidth() + "x" + bufferedImage.getHeight()
-                : "unknown";
-        } catch (Exception e) {
-            // Ignorar fallos de lectura de resolución para tipos de imagen específicos
+        java.awt.Dimension dimensions = readDimensions(targetPath);
+        if (dimensions != null) {
+            resolution = dimensions.width + "x" + dimensions.height;
+            event.width = dimensions.width;
+            event.height = dimensions.height;
         }
+        event.imageDuration = System.nanoTime() - imageStart;
 
         MapAsset asset = new MapAsset();
         asset.setId(System.currentTimeMillis());
@@ -109,6 +128,7 @@ public class MapAssetProcessor {
         asset.setResolution(resolution);
         asset.setLayerCount(1);
 
+        commitEvent(event, projectName, "url", asset.getSizeBytes());
         return asset;
     }
 
@@ -116,19 +136,31 @@ public class MapAssetProcessor {
      * Genera una imagen en blanco de 2048x2048 en el disco del servidor para actuar como un lienzo base vacío e ilimitado.
      */
     public MapAsset createBlankCanvas(String projectName, String mapName) throws IOException {
+        MapAssetEvent event = new MapAssetEvent();
+        event.begin();
         String cleanMapName = mapName.toLowerCase().replaceAll("[^a-z0-9]", "_");
         String fileName = cleanMapName + "_blank.png";
         Path targetPath = Paths.get(MAPS_DIR).resolve(projectName + "_" + fileName);
 
         int width = 2048;
         int height = 2048;
+        long imageStart = System.nanoTime();
         java.awt.image.BufferedImage img = new java.awt.image.BufferedImage(width, height, java.awt.image.BufferedImage.TYPE_INT_ARGB);
         java.awt.Graphics2D g2d = img.createGraphics();
         g2d.setColor(java.awt.Color.WHITE);
         g2d.fillRect(0, 0, width, height);
         g2d.dispose();
 
-        javax.imageio.ImageIO.write(img, "png", targetPath.toFile());
+        // Se codifica en memoria: el archivo vivo puede ser un enlace duro a un objeto del almacén
+        // y escribir sobre él en su sitio corrompería las demás copias
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        javax.imageio.ImageIO.write(img, "png", encoded);
+        long storeStart = System.nanoTime();
+        event.imageDuration = storeStart - imageStart;
+        storeAsset(new ByteArrayInputStream(encoded.toByteArray()), targetPath);
+        event.storeDuration = System.nanoTime() - storeStart;
+        event.width = width;
+        event.height = height;
 
         MapAsset asset = new MapAsset();
         asset.setId(System.currentTimeMillis());
@@ -140,6 +172,41 @@ public class MapAssetProcessor {
         asset.setResolution(width + "x" + height);
         asset.setLayerCount(1);
 
+        commitEvent(event, projectName, "blank", asset.getSizeBytes());
         return asset;
     }
+
+    /**
+     * Dimensiones de la imagen guardada, o null si ImageIO no sabe leer el formato (SVG, WebP sin plugin...).
+     */
+    public static java.awt.Dimension readDimensions(Path imagePath) {
+        java.awt.Dimension dimensions = null;
+        try {
+            java.awt.image.BufferedImage bufferedImage = javax.imageio.ImageIO.read(imagePath.toFile());
+            if (bufferedImage != null) {
+                dimensions = new java.awt.Dimension(bufferedImage.getWidth(), bufferedImage.getHeight());
+            }
+        } catch (Exception ignored) {
+            // Ignorar fallos de lectura de resolución para tipos de imagen específicos
+        }
+        return dimensions;
+    }
+
+    private static void commitEvent(MapAssetEvent event, String projectName, String operation, long bytes) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.projectName = projectName;
+            event.operation = operation;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Guarda el asset en el almacén por contenido: una misma imagen usada en varios proyectos ocupa disco una sola vez.
+     */
+    private void storeAsset(InputStream in, Path targetPath) throws IOException {
+        String fileName = targetPath.getFileName().toString();
+        contentStore.store(ContentStore.assetRef(fileName), in, targetPath, ProjectArchiveService.isAlreadyCompressed(fileName));
+    }
 }
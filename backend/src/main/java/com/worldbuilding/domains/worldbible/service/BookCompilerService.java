@@ -1,5 +1,6 @@
 package com.worldbuilding.domains.worldbible.service;
 
+import com.worldbuilding.core.jfr.BookCompileEvent;
 import com.worldbuilding.domains.worldbible.model.CompilationSettings;
 import com.worldbuilding.domains.worldbible.model.ExportFormat;
 import org.springframework.stereotype.Service;
@@ -27,6 +28,9 @@ public class BookCompilerService {
      * Compila la estructura del libro (artículos y sus contenidos) en un documento físico en disco.
      */
     public Path compileBook(String projectName, ExportFormat format, CompilationSettings settings, Map<String, Object> contentTree) throws IOException {
+        BookCompileEvent event = new BookCompileEvent();
+        event.begin();
+        long phaseStart = System.nanoTime();
         String fileExtension = format.toString().toLowerCase();
         String fileName = projectName + "_manuscript." + fileExtension;
         Path targetPath = Paths.get(EXPORTS_DIR).resolve(fileName);
@@ -48,7 +52,20 @@ public class BookCompilerService {
             rawBook.append("(El manuscrito no contiene artículos aún)\n");
         }
 
-        Files.writeString(targetPath, rawBook.toString());
+        String content = rawBook.toString();
+        long writeStart = System.nanoTime();
+        event.buildDuration = writeStart - phaseStart;
+        Files.writeString(targetPath, content);
+        event.writeDuration = System.nanoTime() - writeStart;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.projectName = projectName;
+            event.format = format.toString();
+            event.sections = hasContent && contentTree != null ? contentTree.size() : 0;
+            event.bytesWritten = Files.size(targetPath);
+            event.commit();
+        }
         return targetPath;
     }
 }
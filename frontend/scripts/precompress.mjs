@@ -0,0 +1,91 @@
+import fs from "node:fs";
+import path from "node:path";
+import zlib from "node:zlib";
+
+// Genera variantes .br y .gz junto a cada archivo comprimible de dist.
+// El servidor Java no tiene codificador brotli: usa las .br de aquí y comprime gzip al arrancar si faltan.
+const projectRoot = process.cwd();
+const distRoot = path.join(projectRoot, "dist");
+
+const compressibleExtensions = new Set([
+  ".js",
+  ".mjs",
+  ".css",
+  ".html",
+  ".json",
+  ".wasm",
+  ".svg",
+  ".txt",
+  ".map",
+  ".xml",
+  ".ico",
+]);
+const minSize = 1024;
+// Solo se guarda la variante si ahorra al menos un 10 %
+const maxRatio = 0.9;
+
+const readAllFiles = (dir) => {
+  const entries = fs.readdirSync(dir, { withFileTypes: true });
+  const files = [];
+
+  for (const entry of entries) {
+    const fullPath = path.join(dir, entry.name);
+    if (entry.isDirectory()) {
+      files.push(...readAllFiles(fullPath));
+    } else if (
+      entry.isFile() &&
+      compressibleExtensions.has(path.extname(entry.name).toLowerCase())
+    ) {
+      files.push(fullPath);
+    }
+  }
+
+  return files;
+};
+
+const writeIfSmaller = (target, original, compressed) => {
+  const keep = compressed.length <= original.length * maxRatio;
+  if (keep) {
+    fs.writeFileSync(target, compressed);
+  } else if (fs.existsSync(target)) {
+    fs.rmSync(target);
+  }
+  return keep ? compressed.length : 0;
+};
+
+if (!fs.existsSync(distRoot)) {
+  console.error(`No existe ${distRoot}; ejecuta antes vite build.`);
+  process.exit(1);
+}
+
+let originalBytes = 0;
+let brotliBytes = 0;
+let gzipBytes = 0;
+
+for (const file of readAllFiles(distRoot)) {
+  const original = fs.readFileSync(file);
+  if (original.length < minSize) {
+    continue;
+  }
+
+  originalBytes += original.length;
+  brotliBytes += writeIfSmaller(
+    `${file}.br`,
+    original,
+    zlib.brotliCompressSync(original, {
+      params: {
+        [zlib.constants.BROTLI_PARAM_QUALITY]: zlib.constants.BROTLI_MAX_QUALITY,
+        [zlib.constants.BROTLI_PARAM_SIZE_HINT]: original.length,
+      },
+    }),
+  );
+  gzipBytes += writeIfSmaller(
+    `${file}.gz`,
+    original,
+    zlib.gzipSync(original, { level: zlib.constants.Z_BEST_COMPRESSION }),
+  );
+}
+
+console.log(
+  `Precompresión: ${originalBytes} bytes -> brotli ${brotliBytes}, gzip ${gzipBytes}`,
+);
@@ -18,81 +18,139 @@ export interface AppSettings {
   autoBackup: boolean;
 }
 
+interface ImportJobStatus {
+  status?: string;
+  error?: string | null;
+}
+
 const DEFAULT_BACKUP_IDENTIFIER = "worldbuilding_backup";
 
 export class SettingsUseCase {
+  /**
+   * Espera a que el trabajo termine escuchando el flujo SSE del servidor.
+   * Si el navegador no soporta EventSource o la conexión se cae, se recurre al sondeo.
+   */
+  private static waitForImportJobEvents(
+    jobId: string,
+    timeoutMs: number,
+  ): Promise<ImportJobStatus | null> {
+    return new Promise((resolve) => {
+      if (typeof EventSource === "undefined") {
+        resolve(null);
+        return;
+      }
+
+      const source = new EventSource(`/api/db/import/events/${jobId}`);
+      const finish = (value: ImportJobStatus | null) => {
+        clearTimeout(timer);
+        source.close();
+        resolve(value);
+      };
+      const timer = setTimeout(
+        () => finish({ status: "timeout" }),
+        timeoutMs,
+      );
+
+      source.addEventListener("status", (event) => {
+        const data = JSON.parse((event as MessageEvent).data) as ImportJobStatus;
+        if (data.status === "completed" || data.status === "failed") {
+          finish(data);
+        }
+      });
+      // El servidor cierra el flujo al terminar; cualquier otro corte pasa al sondeo
+      source.onerror = () => finish(null);
+    });
+  }
+
+  private static async pollImportJobStatus(
+    jobId: string,
+    deadline: number,
+    pollEveryMs: number,
+  ): Promise<ImportJobStatus> {
+    let status: ImportJobStatus | null = null;
+
+    while (!status) {
+      if (Date.now() > deadline) {
+        status = { status: "timeout" };
+      } else {
+        const statusRes = await fetch(`/api/db/import/status/${jobId}`);
+        if (!statusRes.ok) {
+          status = { status: "unavailable" };
+        } else {
+          const statusData = (await statusRes.json()) as ImportJobStatus;
+          if (
+            statusData.status === "completed" ||
+            statusData.status === "failed"
+          ) {
+            status = statusData;
+          } else {
+            await new Promise((resolve) => setTimeout(resolve, pollEveryMs));
+          }
+        }
+      }
+    }
+
+    return status;
+  }
+
   private static async waitForAsyncImportJob(
     jobId: string,
     timeoutMs: number = 180000,
     pollEveryMs: number = 350,
   ): Promise<{ success: boolean; message: string }> {
-    const start = Date.now();
-    let done = false;
+    const deadline = Date.now() + timeoutMs;
     let result = {
       success: false,
       message: "La importación asíncrona no pudo completarse.",
     };
 
-    while (!done) {
-      if (Date.now() - start > timeoutMs) {
-        done = true;
-        result = {
-          success: false,
-          message: "La importación tardó demasiado en completarse.",
-        };
-      } else {
-        const statusRes = await fetch(`/api/db/import/status/${jobId}`);
-        if (!statusRes.ok) {
-          done = true;
+    const statusData =
+      (await SettingsUseCase.waitForImportJobEvents(jobId, timeoutMs)) ??
+      (await SettingsUseCase.pollImportJobStatus(jobId, deadline, pollEveryMs));
+
+    switch (statusData.status) {
+      case "completed": {
+        const resultRes = await fetch(`/api/db/import/result/${jobId}`, {
+          method: "GET",
+          headers: { "Cache-Control": "no-cache" },
+        });
+        if (resultRes.ok) {
+          const dbBlob = await resultRes.blob();
+          await sqlocal.overwriteDatabaseFile(dbBlob);
           result = {
-            success: false,
-            message: "No se pudo consultar el estado de la importación.",
+            success: true,
+            message:
+              "Universo y assets importados con éxito. Por favor recarga la página.",
           };
         } else {
-          const statusData = (await statusRes.json()) as {
-            status?: string;
-            error?: string | null;
+          result = {
+            success: false,
+            message:
+              "La importación finalizó, pero no se pudo descargar el resultado.",
           };
-
-          switch (statusData.status) {
-            case "completed": {
-              const resultRes = await fetch(`/api/db/import/result/${jobId}`, {
-                method: "GET",
-                headers: { "Cache-Control": "no-cache" },
-              });
-              if (resultRes.ok) {
-                const dbBlob = await resultRes.blob();
-                await sqlocal.overwriteDatabaseFile(dbBlob);
-                result = {
-                  success: true,
-                  message:
-                    "Universo y assets importados con éxito. Por favor recarga la página.",
-                };
-              } else {
-                result = {
-                  success: false,
-                  message:
-                    "La importación finalizó, pero no se pudo descargar el resultado.",
-                };
-              }
-              done = true;
-              break;
-            }
-            case "failed":
-              done = true;
-              result = {
-                success: false,
-                message:
-                  statusData.error ||
-                  "La importación en el servidor falló durante el procesamiento.",
-              };
-              break;
-            default:
-              await new Promise((resolve) => setTimeout(resolve, pollEveryMs));
-              break;
-          }
         }
+        break;
       }
+      case "failed":
+        result = {
+          success: false,
+          message:
+            statusData.error ||
+            "La importación en el servidor falló durante el procesamiento.",
+        };
+        break;
+      case "timeout":
+        result = {
+          success: false,
+          message: "La importación tardó demasiado en completarse.",
+        };
+        break;
+      default:
+        result = {
+          success: false,
+          message: "No se pudo consultar el estado de la importación.",
+        };
+        break;
     }
 
     return result;
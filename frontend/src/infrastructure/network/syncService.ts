@@ -20,6 +20,170 @@ const toNumberBoolean = (
   return value === true || value === 1 ? 1 : 0;
 };
 
+const UPLOAD_CHUNK_SIZE = 8 * 1024 * 1024;
+const UPLOAD_MAX_RETRIES = 5;
+
+const wait = (ms: number): Promise<void> =>
+  new Promise((resolve) => setTimeout(resolve, ms));
+
+/**
+ * Sube el archivo por bloques mediante una sesión reanudable del servidor.
+ * Ante un corte de red consulta el offset confirmado y continúa desde ahí.
+ * Devuelve null si el backend no expone el protocolo por bloques.
+ */
+const uploadInChunks = async (
+  projectName: string,
+  dbFile: Blob,
+): Promise<Response | null> => {
+  const createResponse = await fetch(
+    `/api/db/upload-sessions?projectName=${encodeURIComponent(projectName)}&size=${dbFile.size}`,
+    { method: "POST" },
+  );
+  if (!createResponse.ok) {
+    return null;
+  }
+
+  const session: { sessionId: string; offset: number } =
+    await createResponse.json();
+  const sessionUrl = `/api/db/upload-sessions/${encodeURIComponent(session.sessionId)}`;
+  let offset = session.offset;
+  let retries = 0;
+
+  while (offset < dbFile.size) {
+    const chunk = dbFile.slice(
+      offset,
+      Math.min(offset + UPLOAD_CHUNK_SIZE, dbFile.size),
+    );
+    try {
+      const response = await fetch(`${sessionUrl}?offset=${offset}`, {
+        method: "PUT",
+        headers: { "Content-Type": "application/octet-stream" },
+        body: chunk,
+      });
+      if (!response.ok && response.status !== 409) {
+        throw new Error(`Chunk upload failed: ${response.statusText}`);
+      }
+      // 409: el servidor tenía otro offset confirmado; se continúa desde el suyo
+      offset = Number(response.headers.get("Upload-Offset") ?? offset);
+      retries = response.ok ? 0 : retries + 1;
+    } catch (error) {
+      retries += 1;
+      if (retries > UPLOAD_MAX_RETRIES) {
+        throw error;
+      }
+      await wait(500 * retries);
+      const statusResponse = await fetch(sessionUrl);
+      if (!statusResponse.ok) {
+        throw error;
+      }
+      offset = (await statusResponse.json()).offset;
+    }
+    if (retries > UPLOAD_MAX_RETRIES) {
+      throw new Error("Upload failed: offset rejected by server");
+    }
+  }
+
+  return fetch(`${sessionUrl}/commit`, { method: "POST" });
+};
+
+const toHex = (buffer: ArrayBuffer): string =>
+  Array.from(new Uint8Array(buffer))
+    .map((byte) => byte.toString(16).padStart(2, "0"))
+    .join("");
+
+interface PageManifest {
+  pageSize: number;
+  size: number;
+  hashLength: number;
+  sha256: string;
+  pages: string;
+}
+
+/**
+ * Envía solo las páginas SQLite que difieren del respaldo almacenado en el servidor.
+ * Devuelve null si no hay respaldo previo, si el delta no compensa o si el servidor lo rechaza.
+ */
+const uploadPageDelta = async (
+  projectName: string,
+  dbFile: Blob,
+): Promise<Response | null> => {
+  if (typeof crypto === "undefined" || !crypto.subtle) {
+    return null;
+  }
+
+  const encodedProjectName = encodeURIComponent(projectName);
+  const manifestResponse = await fetch(
+    `/api/db/pages/${encodedProjectName}/manifest`,
+    { headers: { "Cache-Control": "no-cache" } },
+  );
+  if (!manifestResponse.ok) {
+    return null;
+  }
+
+  const manifest: PageManifest = await manifestResponse.json();
+  const bytes = new Uint8Array(await dbFile.arrayBuffer());
+  const rawPageSize = bytes.length >= 18 ? (bytes[16] << 8) | bytes[17] : 0;
+  const pageSize = rawPageSize === 1 ? 65536 : rawPageSize;
+  if (pageSize !== manifest.pageSize) {
+    return null;
+  }
+
+  const remoteHashes = Uint8Array.from(atob(manifest.pages), (char) =>
+    char.charCodeAt(0),
+  );
+  const pageCount = Math.ceil(bytes.length / pageSize);
+  const pageAt = (index: number): Uint8Array =>
+    bytes.subarray(
+      index * pageSize,
+      Math.min((index + 1) * pageSize, bytes.length),
+    );
+
+  const changedPages: number[] = [];
+  for (let index = 0; index < pageCount; index++) {
+    const hashOffset = index * manifest.hashLength;
+    if (hashOffset + manifest.hashLength > remoteHashes.length) {
+      changedPages.push(index);
+      continue;
+    }
+    const digest = new Uint8Array(
+      await crypto.subtle.digest("SHA-256", pageAt(index)),
+    );
+    for (let i = 0; i < manifest.hashLength; i++) {
+      if (digest[i] !== remoteHashes[hashOffset + i]) {
+        changedPages.push(index);
+        break;
+      }
+    }
+  }
+
+  // Si cambia más de la mitad del archivo, la subida completa cuesta lo mismo
+  if (changedPages.length > pageCount / 2) {
+    return null;
+  }
+
+  // Registro: [índice uint32 big-endian][página rellenada hasta pageSize]
+  const recordSize = 4 + pageSize;
+  const body = new Uint8Array(changedPages.length * recordSize);
+  const view = new DataView(body.buffer);
+  changedPages.forEach((pageIndex, position) => {
+    view.setUint32(position * recordSize, pageIndex);
+    body.set(pageAt(pageIndex), position * recordSize + 4);
+  });
+
+  const sha256 = toHex(await crypto.subtle.digest("SHA-256", bytes));
+  const response = await fetch(
+    `/api/db/pages/${encodedProjectName}/delta?baseSha256=${manifest.sha256}&pageSize=${pageSize}&size=${bytes.length}&sha256=${sha256}`,
+    {
+      method: "POST",
+      headers: { "Content-Type": "application/octet-stream" },
+      body,
+    },
+  );
+
+  // 412: el respaldo del servidor cambió o la verificación falló; se recurre a la subida completa
+  return response.ok ? response : null;
+};
+
 /**
  * Servicio para la sincronización de archivos SQLite completos (Bulk Operations)
  * entre el frontend (SQLocal/OPFS) y el servidor auxiliar (Spring Boot).
@@ -40,13 +204,14 @@ export const syncService = {
       const formData = new FormData();
       formData.append("file", dbFile, `${projectName}.sqlite`);
 
-      let response = await fetch(
-        `/api/db/upload?projectName=${encodedProjectName}`,
-        {
+      // Delta por páginas; si no aplica, subida reanudable por bloques y, por último, multipart completo.
+      let response =
+        (await uploadPageDelta(projectName, dbFile)) ??
+        (await uploadInChunks(projectName, dbFile)) ??
+        (await fetch(`/api/db/upload?projectName=${encodedProjectName}`, {
           method: "POST",
           body: formData,
-        },
-      );
+        }));
 
       // Compatibilidad con backend antiguo.
       if (